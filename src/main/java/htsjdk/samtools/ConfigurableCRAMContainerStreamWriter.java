@@ -0,0 +1,155 @@
+package htsjdk.samtools;
+
+import htsjdk.samtools.cram.build.ContainerFactory;
+import htsjdk.samtools.cram.ref.CRAMReferenceSource;
+import htsjdk.samtools.cram.structure.Slice;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+
+/**
+ * A {@link CRAMContainerStreamWriter} whose slice and container sizes can be set. htsjdk's writer
+ * takes the number of records in a slice from a static field, and always writes one slice per
+ * container. This is in htsjdk's package so it can read the default number of records per slice.
+ *
+ * <p>The static field is never changed, since other writers may be being created at the same time.
+ * Instead, the number of records per slice is set by replacing the container factory that htsjdk's
+ * writer creates in its constructor, which is the only thing that uses it once the container
+ * boundaries are decided by this class.
+ */
+public class ConfigurableCRAMContainerStreamWriter extends CRAMContainerStreamWriter {
+
+  private static final int DEFAULT_RECORDS_PER_SLICE =
+      CRAMContainerStreamWriter.DEFAULT_RECORDS_PER_SLICE;
+
+  private static final Field CONTAINER_FACTORY_FIELD = getContainerFactoryField();
+
+  private final ContainerBoundary containerBoundary;
+
+  private ConfigurableCRAMContainerStreamWriter(
+      OutputStream outputStream,
+      CRAMReferenceSource source,
+      SAMFileHeader samFileHeader,
+      String cramId,
+      int recordsPerSlice,
+      int slicesPerContainer) {
+    super(outputStream, null, source, samFileHeader, cramId);
+    setRecordsPerSlice(this, samFileHeader, recordsPerSlice);
+    this.containerBoundary =
+        new ContainerBoundary(samFileHeader, recordsPerSlice, slicesPerContainer);
+  }
+
+  /**
+   * Create a writer for CRAM containers (without a header or terminator).
+   *
+   * @param recordsPerSlice the maximum number of records in a slice
+   * @param slicesPerContainer the maximum number of slices in a container
+   */
+  public static ConfigurableCRAMContainerStreamWriter create(
+      OutputStream outputStream,
+      CRAMReferenceSource source,
+      SAMFileHeader samFileHeader,
+      String cramId,
+      int recordsPerSlice,
+      int slicesPerContainer) {
+    return new ConfigurableCRAMContainerStreamWriter(
+        outputStream, source, samFileHeader, cramId, recordsPerSlice, slicesPerContainer);
+  }
+
+  /** @return the number of records in a slice that htsjdk uses by default */
+  public static int getDefaultRecordsPerSlice() {
+    return DEFAULT_RECORDS_PER_SLICE;
+  }
+
+  /**
+   * Set the number of records in each slice that a newly created writer encodes. The writer's own
+   * container size is unchanged, so this is only useful to writers that decide where containers end
+   * themselves, by overriding {@link #shouldFlushContainer(SAMRecord)}.
+   */
+  static void setRecordsPerSlice(
+      CRAMContainerStreamWriter writer, SAMFileHeader samFileHeader, int recordsPerSlice) {
+    try {
+      CONTAINER_FACTORY_FIELD.set(writer, new ContainerFactory(samFileHeader, recordsPerSlice));
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException("Cannot set the number of records per CRAM slice", e);
+    }
+  }
+
+  private static Field getContainerFactoryField() {
+    try {
+      Field field = CRAMContainerStreamWriter.class.getDeclaredField("containerFactory");
+      field.setAccessible(true);
+      return field;
+    } catch (NoSuchFieldException e) {
+      throw new IllegalStateException("Unsupported htsjdk version", e);
+    }
+  }
+
+  @Override
+  protected boolean shouldFlushContainer(SAMRecord nextRecord) {
+    return containerBoundary.isContainerStart(nextRecord);
+  }
+
+  /**
+   * Decides where one container ends and the next begins, in the same way as {@link
+   * CRAMContainerStreamWriter}, but with a given number of slices in a full container. Records are
+   * passed to {@link #isContainerStart(SAMRecord)} in the order they are written, so records can be
+   * grouped into containers before they are encoded.
+   */
+  public static class ContainerBoundary {
+    private static final int REF_SEQ_INDEX_NOT_INITIALIZED = -3;
+
+    private final SAMFileHeader.SortOrder sortOrder;
+    private final int containerSize;
+    private int records;
+    private int refSeqIndex = REF_SEQ_INDEX_NOT_INITIALIZED;
+
+    public ContainerBoundary(
+        SAMFileHeader samFileHeader, int recordsPerSlice, int slicesPerContainer) {
+      this.sortOrder = samFileHeader.getSortOrder();
+      this.containerSize = recordsPerSlice * slicesPerContainer;
+    }
+
+    /**
+     * @param record the next record to be written
+     * @return true if the record is the first of a new container, in which case the records before
+     *     it make up a complete container
+     */
+    public boolean isContainerStart(SAMRecord record) {
+      int referenceIndex = record.getReferenceIndex();
+      boolean start = records > 0 && shouldEndContainer(referenceIndex);
+      if (start) {
+        records = 0;
+        refSeqIndex = REF_SEQ_INDEX_NOT_INITIALIZED;
+      }
+      if (refSeqIndex == REF_SEQ_INDEX_NOT_INITIALIZED) {
+        refSeqIndex = referenceIndex;
+      } else if (refSeqIndex != referenceIndex) {
+        refSeqIndex = Slice.MULTI_REFERENCE;
+      }
+      records++;
+      return start;
+    }
+
+    private boolean shouldEndContainer(int referenceIndex) {
+      if (records >= containerSize) {
+        return true;
+      }
+      if (sortOrder != SAMFileHeader.SortOrder.coordinate) {
+        return false;
+      }
+      // unmapped reads don't go in multi-reference containers
+      if (refSeqIndex != SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX
+          && referenceIndex == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
+        return true;
+      }
+      if (refSeqIndex == Slice.MULTI_REFERENCE || refSeqIndex == referenceIndex) {
+        return false;
+      }
+      if (records > MIN_SINGLE_REF_RECORDS) {
+        return true;
+      }
+      refSeqIndex = Slice.MULTI_REFERENCE; // too few records for a container of their own
+      return false;
+    }
+  }
+}
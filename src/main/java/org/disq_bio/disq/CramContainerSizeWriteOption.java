@@ -0,0 +1,33 @@
+package org.disq_bio.disq;
+
+/**
+ * An option for controlling the size of the slices and containers in CRAM output. Smaller
+ * containers, or containers with several slices, allow a CRAM file to be split more finely when it
+ * is read, at some cost in compression. This option is ignored if the reads are not written as
+ * CRAM, or if they are written as multiple files.
+ */
+public class CramContainerSizeWriteOption implements WriteOption {
+  private final int recordsPerSlice;
+  private final int slicesPerContainer;
+
+  /**
+   * @param recordsPerSlice the maximum number of reads in a slice (htsjdk's default is 10,000)
+   * @param slicesPerContainer the maximum number of slices in a container (htsjdk's default is 1)
+   */
+  public CramContainerSizeWriteOption(int recordsPerSlice, int slicesPerContainer) {
+    if (recordsPerSlice < 1 || slicesPerContainer < 1) {
+      throw new IllegalArgumentException(
+          "Records per slice and slices per container must be positive");
+    }
+    this.recordsPerSlice = recordsPerSlice;
+    this.slicesPerContainer = slicesPerContainer;
+  }
+
+  int getRecordsPerSlice() {
+    return recordsPerSlice;
+  }
+
+  int getSlicesPerContainer() {
+    return slicesPerContainer;
+  }
+}
@@ -0,0 +1,23 @@
+package org.disq_bio.disq;
+
+/**
+ * An option for encoding and compressing CRAM containers on a pool of threads in each task, while
+ * the reads for the next containers are collected. By default containers are encoded on the task's
+ * own thread. This option is ignored if the reads are not written as CRAM, or if they are written
+ * as multiple files.
+ */
+public class CramEncodingThreadsWriteOption implements WriteOption {
+  private final int threads;
+
+  /** @param threads the number of threads each task uses to encode containers */
+  public CramEncodingThreadsWriteOption(int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Number of encoding threads must be positive");
+    }
+    this.threads = threads;
+  }
+
+  int getThreads() {
+    return threads;
+  }
+}
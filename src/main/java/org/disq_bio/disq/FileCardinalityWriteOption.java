@@ -6,13 +6,14 @@ import org.disq_bio.disq.impl.formats.sam.AnySamSinkMultiple;
 import org.disq_bio.disq.impl.formats.sam.SamFormat;
 import org.disq_bio.disq.impl.formats.vcf.AbstractVcfSink;
 import org.disq_bio.disq.impl.formats.vcf.VcfFormat;
-import org.disq_bio.disq.impl.formats.vcf.VcfSink;
 import org.disq_bio.disq.impl.formats.vcf.VcfSinkMultiple;
 
 /** An option for configuring whether to write output in a single file, or multiple files. */
 public enum FileCardinalityWriteOption implements WriteOption {
   /** Write a single file specified by the path. */
-  SINGLE(ReadsFormatWriteOption::createAbstractSamSink, variantsFormatWriteOption -> new VcfSink()),
+  SINGLE(
+      ReadsFormatWriteOption::createAbstractSamSink,
+      VariantsFormatWriteOption::createAbstractVcfSink),
   /** Write multiple files in a directory specified by the path. */
   MULTIPLE(
       readsFormatWriteOption ->
@@ -0,0 +1,65 @@
+package org.disq_bio.disq;
+
+import htsjdk.samtools.util.Locatable;
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * A single position on a contig, used as the key when reads or variants are keyed by their start
+ * position.
+ *
+ * @see GenomicRangePartitioner
+ */
+public final class GenomicPosition implements Locatable, Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final String contig;
+  private final int position;
+
+  /**
+   * @param contig the contig name
+   * @param position the (1-based) position on the contig
+   */
+  public GenomicPosition(String contig, int position) {
+    this.contig = contig;
+    this.position = position;
+  }
+
+  @Override
+  public String getContig() {
+    return contig;
+  }
+
+  @Override
+  public int getStart() {
+    return position;
+  }
+
+  @Override
+  public int getEnd() {
+    return position;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    GenomicPosition that = (GenomicPosition) o;
+    return position == that.position && Objects.equals(contig, that.contig);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(contig, position);
+  }
+
+  @Override
+  public String toString() {
+    return contig + ":" + position;
+  }
+}
@@ -0,0 +1,180 @@
+package org.disq_bio.disq;
+
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.util.Locatable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import org.apache.spark.Partitioner;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.function.Function;
+import org.disq_bio.disq.impl.formats.sam.CompactSequenceDictionary;
+import scala.Tuple2;
+
+/**
+ * A Spark {@link Partitioner} for keys that are genomic positions (any {@link Locatable}; only the
+ * contig and start are used), which assigns each position to the partition of a sorted {@link
+ * HtsjdkReadsRdd} or {@link HtsjdkVariantsRdd} that contains it.
+ *
+ * <p>Each partition covers the range of positions from its first record up to (but not including)
+ * the first record of the next non-empty partition. Unplaced positions (whose contig is null or
+ * <code>*</code>, as for unplaced unmapped reads) sort after all others, which is where they are in
+ * a coordinate-sorted file. The unplaced reads in a file may be spread over several partitions, but
+ * unplaced positions are all assigned to one of them: the first partition that starts with an
+ * unplaced read, or the last non-empty partition if none does. (So operations that rely on the
+ * partitioner to co-locate records by key, such as a join without a shuffle, only do so for placed
+ * positions.) Positions on any other contig that is not in the sequence dictionary are rejected by
+ * {@link #getPartition(Object)} with an {@link IllegalArgumentException}, since they have no place
+ * in the sort order.
+ *
+ * <p>Instances are created when reading with {@link
+ * HtsjdkReadsRddStorage#genomicRangePartitioner(boolean)} or {@link
+ * HtsjdkVariantsRddStorage#genomicRangePartitioner(boolean)}.
+ */
+public class GenomicRangePartitioner extends Partitioner {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final long UNPLACED = Long.MAX_VALUE;
+  private static final long UNKNOWN_CONTIG = -1;
+
+  private final int numPartitions;
+  private final CompactSequenceDictionary sequenceDictionary;
+  private final long[] lowerBounds; // the first position in each non-empty partition, ascending
+  private final int[] partitionIndexes; // the index of each non-empty partition
+
+  private GenomicRangePartitioner(
+      int numPartitions,
+      CompactSequenceDictionary sequenceDictionary,
+      long[] lowerBounds,
+      int[] partitionIndexes) {
+    this.numPartitions = numPartitions;
+    this.sequenceDictionary = sequenceDictionary;
+    this.lowerBounds = lowerBounds;
+    this.partitionIndexes = partitionIndexes;
+  }
+
+  /**
+   * Build a partitioner for an RDD whose partitions are sorted, and whose partition boundaries
+   * never separate records at the same position. Note that this eagerly runs an extra Spark job (a
+   * {@code collect()}) to find the first record in each partition, so the input is computed an
+   * extra time unless it is cached.
+   *
+   * @return the partitioner, or null if the first positions of the partitions are not strictly
+   *     increasing, or are on contigs that are not in the sequence dictionary (which means the
+   *     input is not sorted by it)
+   */
+  static <T> GenomicRangePartitioner fromFirstPositions(
+      JavaRDD<T> rdd,
+      Function<T, GenomicPosition> positionFunction,
+      SAMSequenceDictionary sequenceDictionary) {
+    List<Tuple2<Integer, GenomicPosition>> firstPositions =
+        rdd.mapPartitionsWithIndex(
+                (index, records) ->
+                    records.hasNext()
+                        ? Collections.singletonList(
+                                new Tuple2<>(index, positionFunction.call(records.next())))
+                            .iterator()
+                        : Collections.<Tuple2<Integer, GenomicPosition>>emptyIterator(),
+                false)
+            .collect();
+    CompactSequenceDictionary dictionary =
+        CompactSequenceDictionary.fromSequenceDictionary(sequenceDictionary);
+    long[] lowerBounds = new long[firstPositions.size()];
+    int[] partitionIndexes = new int[firstPositions.size()];
+    for (int i = 0; i < lowerBounds.length; i++) {
+      partitionIndexes[i] = firstPositions.get(i)._1();
+      lowerBounds[i] = pack(dictionary, firstPositions.get(i)._2());
+      if (lowerBounds[i] == UNKNOWN_CONTIG) {
+        return null;
+      }
+      if (i > 0 && lowerBounds[i] <= lowerBounds[i - 1]) {
+        return null;
+      }
+      if (lowerBounds[i] == UNPLACED) {
+        // the later partitions only have unplaced reads, so no positions are assigned to them
+        return new GenomicRangePartitioner(
+            rdd.getNumPartitions(),
+            dictionary,
+            Arrays.copyOf(lowerBounds, i + 1),
+            Arrays.copyOf(partitionIndexes, i + 1));
+      }
+    }
+    return new GenomicRangePartitioner(
+        rdd.getNumPartitions(), dictionary, lowerBounds, partitionIndexes);
+  }
+
+  /**
+   * @return the position packed into a long that sorts in the same order, {@link #UNPLACED} for an
+   *     unplaced position, or {@link #UNKNOWN_CONTIG} for a contig not in the dictionary
+   */
+  private static long pack(CompactSequenceDictionary sequenceDictionary, Locatable locatable) {
+    String contig = locatable.getContig();
+    if (contig == null || SAMRecord.NO_ALIGNMENT_REFERENCE_NAME.equals(contig)) {
+      return UNPLACED;
+    }
+    int sequenceIndex = sequenceDictionary.getSequenceIndex(contig);
+    if (sequenceIndex < 0) {
+      return UNKNOWN_CONTIG;
+    }
+    return ((long) sequenceIndex << 32) | (locatable.getStart() & 0xffffffffL);
+  }
+
+  @Override
+  public int numPartitions() {
+    return numPartitions;
+  }
+
+  @Override
+  public int getPartition(Object key) {
+    if (lowerBounds.length == 0) {
+      return 0;
+    }
+    long packed = pack(sequenceDictionary, (Locatable) key);
+    if (packed == UNKNOWN_CONTIG) {
+      throw new IllegalArgumentException(
+          "Contig is not in the sequence dictionary: " + ((Locatable) key).getContig());
+    }
+    int i = Arrays.binarySearch(lowerBounds, packed);
+    if (i < 0) {
+      i = Math.max(0, -i - 2); // the last lower bound before the key, or the first partition
+    }
+    return partitionIndexes[i];
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    GenomicRangePartitioner that = (GenomicRangePartitioner) o;
+    return numPartitions == that.numPartitions
+        && Arrays.equals(lowerBounds, that.lowerBounds)
+        && Arrays.equals(partitionIndexes, that.partitionIndexes)
+        && sequenceNamesEqual(that);
+  }
+
+  private boolean sequenceNamesEqual(GenomicRangePartitioner that) {
+    if (sequenceDictionary.size() != that.sequenceDictionary.size()) {
+      return false;
+    }
+    for (int i = 0; i < sequenceDictionary.size(); i++) {
+      if (!sequenceDictionary
+          .getSequenceName(i)
+          .equals(that.sequenceDictionary.getSequenceName(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(numPartitions, Arrays.hashCode(lowerBounds));
+  }
+}
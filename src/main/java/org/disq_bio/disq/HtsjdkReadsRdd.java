@@ -2,7 +2,10 @@ package org.disq_bio.disq;
 
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMRecord;
+import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaRDD;
+import org.disq_bio.disq.impl.formats.PartitionerAssigningRdd;
+import scala.Tuple2;
 
 /**
  * A {@link HtsjdkReadsRdd} is the distributed equivalent of a htsjdk {@link
@@ -17,10 +20,21 @@ public class HtsjdkReadsRdd {
 
   private final SAMFileHeader header;
   private final JavaRDD<SAMRecord> reads;
+  private final GenomicRangePartitioner partitioner;
 
   public HtsjdkReadsRdd(SAMFileHeader header, JavaRDD<SAMRecord> reads) {
+    this(header, reads, null);
+  }
+
+  /**
+   * @param partitioner a partitioner that maps the start position of every read to the partition of
+   *     {@code reads} that contains it, or null if there is none
+   */
+  public HtsjdkReadsRdd(
+      SAMFileHeader header, JavaRDD<SAMRecord> reads, GenomicRangePartitioner partitioner) {
     this.header = header;
     this.reads = reads;
+    this.partitioner = partitioner;
   }
 
   /**
@@ -35,4 +49,31 @@ public class HtsjdkReadsRdd {
   public JavaRDD<SAMRecord> getReads() {
     return reads;
   }
+
+  /**
+   * @return the partitioner that describes how reads are partitioned by start position, or null if
+   *     it is not known
+   * @see HtsjdkReadsRddStorage#genomicRangePartitioner(boolean)
+   */
+  public GenomicRangePartitioner getPartitioner() {
+    return partitioner;
+  }
+
+  /**
+   * @return a pair RDD of reads keyed by their start position (reference name and alignment start).
+   *     If the partitioner is known then it is set on the returned RDD, so keyed operations that
+   *     use the same partitioner do not need a shuffle.
+   */
+  public JavaPairRDD<GenomicPosition, SAMRecord> getReadsByPosition() {
+    JavaPairRDD<GenomicPosition, SAMRecord> readsByPosition =
+        reads.mapToPair(read -> new Tuple2<>(getPosition(read), read));
+    if (partitioner == null) {
+      return readsByPosition;
+    }
+    return PartitionerAssigningRdd.withPartitioner(readsByPosition, partitioner);
+  }
+
+  static GenomicPosition getPosition(SAMRecord read) {
+    return new GenomicPosition(read.getReferenceName(), read.getAlignmentStart());
+  }
 }
@@ -10,8 +10,15 @@ import org.apache.spark.api.java.JavaSparkContext;
 import org.disq_bio.disq.impl.file.FileSystemWrapper;
 import org.disq_bio.disq.impl.file.HadoopFileSystemWrapper;
 import org.disq_bio.disq.impl.file.NioFileSystemWrapper;
+import org.disq_bio.disq.impl.file.PooledFileSystemWrapper;
+import org.disq_bio.disq.impl.formats.cram.CramOutputFormat;
+import org.disq_bio.disq.impl.formats.cram.CramSource;
+import org.disq_bio.disq.impl.formats.sam.AbstractSamSink;
 import org.disq_bio.disq.impl.formats.sam.AbstractSamSource;
+import org.disq_bio.disq.impl.formats.sam.AnySamSinkByKey;
+import org.disq_bio.disq.impl.formats.sam.CoordinateSorter;
 import org.disq_bio.disq.impl.formats.sam.SamFormat;
+import org.disq_bio.disq.impl.formats.sam.SplitBoundaryKey;
 
 /** The entry point for reading or writing a {@link HtsjdkReadsRdd}. */
 public class HtsjdkReadsRddStorage {
@@ -21,6 +28,9 @@ public class HtsjdkReadsRddStorage {
   private ValidationStringency validationStringency = ValidationStringency.DEFAULT_STRINGENCY;
   private boolean useNio;
   private String referenceSourcePath;
+  private boolean genomicRangePartitioner;
+  private boolean querynameSplitAlignment;
+  private int cramDecodingThreads;
 
   /**
    * Create a {@link HtsjdkReadsRddStorage} from a Spark context object.
@@ -72,9 +82,52 @@ public class HtsjdkReadsRddStorage {
     return this;
   }
 
+  /**
+   * @param genomicRangePartitioner whether to find a {@link GenomicRangePartitioner} for the reads
+   *     when reading a single coordinate-sorted BAM or SAM file. If true, partition boundaries are
+   *     moved so that placed reads with the same start position are always in the same partition
+   *     (unplaced reads at the end of the file are still split across partitions), and an extra
+   *     Spark job is run to find the first position in each partition. The partitioner is available
+   *     from {@link HtsjdkReadsRdd#getPartitioner()}, and is null if the input is not eligible.
+   * @return the current {@link HtsjdkReadsRddStorage}
+   */
+  public HtsjdkReadsRddStorage genomicRangePartitioner(boolean genomicRangePartitioner) {
+    this.genomicRangePartitioner = genomicRangePartitioner;
+    return this;
+  }
+
+  /**
+   * @param querynameSplitAlignment whether to keep all the records with the same read name in the
+   *     same partition when reading a <code>queryname</code> sorted BAM or SAM file. If true,
+   *     partition boundaries are moved past any records that have the same name as the record
+   *     before the boundary. This needs an extra scan at each boundary, and BAM splitting indexes (
+   *     <code>.sbi</code>) are not used, so it is off by default.
+   * @return the current {@link HtsjdkReadsRddStorage}
+   */
+  public HtsjdkReadsRddStorage querynameSplitAlignment(boolean querynameSplitAlignment) {
+    this.querynameSplitAlignment = querynameSplitAlignment;
+    return this;
+  }
+
+  /**
+   * @param cramDecodingThreads the number of threads that each task uses to decode CRAM containers,
+   *     so that the containers after the current one are decoded while its reads are consumed. The
+   *     default, zero, decodes containers on the task's own thread, unless the number is set with
+   *     the <code>disq.cram.decodingthreads</code> Hadoop configuration property.
+   * @return the current {@link HtsjdkReadsRddStorage}
+   */
+  public HtsjdkReadsRddStorage cramDecodingThreads(int cramDecodingThreads) {
+    this.cramDecodingThreads = cramDecodingThreads;
+    return this;
+  }
+
   /**
    * Read reads from the given path. The input files may be in any format (BAM/CRAM/SAM).
    *
+   * <p>If {@link #querynameSplitAlignment(boolean)} is enabled and the header of a BAM or SAM file
+   * says it is <code>queryname</code> sorted, then all the records with the same read name in a
+   * file are returned in the same partition.
+   *
    * @param path the file or directory to read from
    * @return a {@link HtsjdkReadsRdd} that allows access to the reads
    * @throws IOException if an IO error occurs while determining the format of the files and reading
@@ -98,8 +151,10 @@ public class HtsjdkReadsRddStorage {
   public <T extends Locatable> HtsjdkReadsRdd read(
       String path, HtsjdkReadsTraversalParameters<T> traversalParameters) throws IOException {
 
+    // share one stream per file between partition planning and reading within a task
     FileSystemWrapper fileSystemWrapper =
-        useNio ? new NioFileSystemWrapper() : new HadoopFileSystemWrapper();
+        new PooledFileSystemWrapper(
+            useNio ? new NioFileSystemWrapper() : new HadoopFileSystemWrapper());
 
     String firstSamPath;
     if (fileSystemWrapper.isDirectory(sparkContext.hadoopConfiguration(), path)) {
@@ -108,17 +163,34 @@ public class HtsjdkReadsRddStorage {
     } else {
       firstSamPath = path;
     }
-    SamFormat samFormat = SamFormat.fromPath(firstSamPath);
+    SamFormat samFormat = SamFormat.fromPathForReading(firstSamPath);
 
     if (samFormat == null) {
       throw new IllegalArgumentException("Cannot find format extension for " + path);
     }
 
     AbstractSamSource abstractSamSource = samFormat.createAbstractSamSource(fileSystemWrapper);
+    if (abstractSamSource instanceof CramSource) {
+      ((CramSource) abstractSamSource).setDecodingThreads(cramDecodingThreads);
+    }
 
     SAMFileHeader header =
         abstractSamSource.getFileHeader(
             sparkContext, path, validationStringency, referenceSourcePath);
+    boolean findPartitioner =
+        genomicRangePartitioner
+            && samFormat != SamFormat.CRAM
+            && header.getSortOrder() == SAMFileHeader.SortOrder.coordinate
+            && !fileSystemWrapper.isDirectory(sparkContext.hadoopConfiguration(), path);
+    SplitBoundaryKey splitBoundaryKey = null;
+    if (findPartitioner) {
+      splitBoundaryKey = SplitBoundaryKey.COORDINATE;
+    } else if (querynameSplitAlignment
+        && samFormat != SamFormat.CRAM
+        && header.getSortOrder() == SAMFileHeader.SortOrder.queryname) {
+      // keep all the records for a read name (e.g. both reads in a pair) in one partition
+      splitBoundaryKey = SplitBoundaryKey.QUERYNAME;
+    }
     JavaRDD<SAMRecord> reads =
         abstractSamSource.getReads(
             sparkContext,
@@ -126,8 +198,14 @@ public class HtsjdkReadsRddStorage {
             splitSize,
             traversalParameters,
             validationStringency,
-            referenceSourcePath);
-    return new HtsjdkReadsRdd(header, reads);
+            referenceSourcePath,
+            splitBoundaryKey);
+    GenomicRangePartitioner partitioner =
+        findPartitioner
+            ? GenomicRangePartitioner.fromFirstPositions(
+                reads, HtsjdkReadsRdd::getPosition, header.getSequenceDictionary())
+            : null;
+    return new HtsjdkReadsRdd(header, reads, partitioner);
   }
 
   /**
@@ -138,7 +216,11 @@ public class HtsjdkReadsRddStorage {
    * @param htsjdkReadsRdd a {@link HtsjdkReadsRdd} containing the header and the reads
    * @param path the file or directory to write to
    * @param writeOptions options to control aspects of how to write the reads (e.g. {@link
-   *     ReadsFormatWriteOption} and {@link FileCardinalityWriteOption}
+   *     ReadsFormatWriteOption}, {@link FileCardinalityWriteOption}, and {@link
+   *     ReadsSortOrderWriteOption}. If {@link PartitionByWriteOption} is specified then a file is
+   *     written for each contig or read group, in the directory specified by the path, and {@link
+   *     FileCardinalityWriteOption} is ignored. CRAM output can be tuned with {@link
+   *     CramContainerSizeWriteOption} and {@link CramEncodingThreadsWriteOption}.
    * @throws IOException if an IO error occurs while writing
    */
   public void write(HtsjdkReadsRdd htsjdkReadsRdd, String path, WriteOption... writeOptions)
@@ -146,13 +228,25 @@ public class HtsjdkReadsRddStorage {
     ReadsFormatWriteOption formatWriteOption = null;
     FileCardinalityWriteOption fileCardinalityWriteOption = null;
     TempPartsDirectoryWriteOption tempPartsDirectoryWriteOption = null;
+    ReadsSortOrderWriteOption sortOrderWriteOption = null;
+    PartitionByWriteOption partitionByWriteOption = null;
+    CramContainerSizeWriteOption cramContainerSizeWriteOption = null;
+    CramEncodingThreadsWriteOption cramEncodingThreadsWriteOption = null;
     for (WriteOption writeOption : writeOptions) {
       if (writeOption instanceof ReadsFormatWriteOption) {
         formatWriteOption = (ReadsFormatWriteOption) writeOption;
+      } else if (writeOption instanceof PartitionByWriteOption) {
+        partitionByWriteOption = (PartitionByWriteOption) writeOption;
+      } else if (writeOption instanceof ReadsSortOrderWriteOption) {
+        sortOrderWriteOption = (ReadsSortOrderWriteOption) writeOption;
       } else if (writeOption instanceof FileCardinalityWriteOption) {
         fileCardinalityWriteOption = (FileCardinalityWriteOption) writeOption;
       } else if (writeOption instanceof TempPartsDirectoryWriteOption) {
         tempPartsDirectoryWriteOption = (TempPartsDirectoryWriteOption) writeOption;
+      } else if (writeOption instanceof CramContainerSizeWriteOption) {
+        cramContainerSizeWriteOption = (CramContainerSizeWriteOption) writeOption;
+      } else if (writeOption instanceof CramEncodingThreadsWriteOption) {
+        cramEncodingThreadsWriteOption = (CramEncodingThreadsWriteOption) writeOption;
       }
     }
 
@@ -172,18 +266,37 @@ public class HtsjdkReadsRddStorage {
     String tempPartsDirectory = null;
     if (tempPartsDirectoryWriteOption != null) {
       tempPartsDirectory = tempPartsDirectoryWriteOption.getTempPartsDirectory();
-    } else if (fileCardinalityWriteOption == FileCardinalityWriteOption.SINGLE) {
+    } else if (fileCardinalityWriteOption == FileCardinalityWriteOption.SINGLE
+        || partitionByWriteOption != null) {
       tempPartsDirectory = path + ".parts";
     }
 
-    fileCardinalityWriteOption
-        .getAbstractSamSink(formatWriteOption)
-        .save(
-            sparkContext,
-            htsjdkReadsRdd.getHeader(),
-            htsjdkReadsRdd.getReads(),
-            path,
-            referenceSourcePath,
-            tempPartsDirectory);
+    SAMFileHeader header = htsjdkReadsRdd.getHeader();
+    JavaRDD<SAMRecord> reads = htsjdkReadsRdd.getReads();
+    if (sortOrderWriteOption == ReadsSortOrderWriteOption.COORDINATE) {
+      header = CoordinateSorter.sortedHeader(header);
+      reads = CoordinateSorter.sort(sparkContext, header, reads);
+    }
+
+    AbstractSamSink samSink =
+        partitionByWriteOption == null
+            ? fileCardinalityWriteOption.getAbstractSamSink(formatWriteOption)
+            : new AnySamSinkByKey(
+                SamFormat.fromFormatWriteOption(formatWriteOption), partitionByWriteOption);
+    if (cramContainerSizeWriteOption != null) {
+      samSink
+          .setConfiguration(
+              CramOutputFormat.RECORDS_PER_SLICE,
+              Integer.toString(cramContainerSizeWriteOption.getRecordsPerSlice()))
+          .setConfiguration(
+              CramOutputFormat.SLICES_PER_CONTAINER,
+              Integer.toString(cramContainerSizeWriteOption.getSlicesPerContainer()));
+    }
+    if (cramEncodingThreadsWriteOption != null) {
+      samSink.setConfiguration(
+          CramOutputFormat.ENCODING_THREADS,
+          Integer.toString(cramEncodingThreadsWriteOption.getThreads()));
+    }
+    samSink.save(sparkContext, header, reads, path, referenceSourcePath, tempPartsDirectory);
   }
 }
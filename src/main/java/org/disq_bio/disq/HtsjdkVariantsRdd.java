@@ -2,7 +2,10 @@ package org.disq_bio.disq;
 
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.vcf.VCFHeader;
+import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaRDD;
+import org.disq_bio.disq.impl.formats.PartitionerAssigningRdd;
+import scala.Tuple2;
 
 /**
  * A {@link HtsjdkVariantsRdd} is the distributed equivalent of a htsjdk {@link
@@ -17,10 +20,21 @@ public class HtsjdkVariantsRdd {
 
   private final VCFHeader header;
   private final JavaRDD<VariantContext> variants;
+  private final GenomicRangePartitioner partitioner;
 
   public HtsjdkVariantsRdd(VCFHeader header, JavaRDD<VariantContext> variants) {
+    this(header, variants, null);
+  }
+
+  /**
+   * @param partitioner a partitioner that maps the start position of every variant to the partition
+   *     of {@code variants} that contains it, or null if there is none
+   */
+  public HtsjdkVariantsRdd(
+      VCFHeader header, JavaRDD<VariantContext> variants, GenomicRangePartitioner partitioner) {
     this.header = header;
     this.variants = variants;
+    this.partitioner = partitioner;
   }
 
   /**
@@ -35,4 +49,31 @@ public class HtsjdkVariantsRdd {
   public JavaRDD<VariantContext> getVariants() {
     return variants;
   }
+
+  /**
+   * @return the partitioner that describes how variants are partitioned by start position, or null
+   *     if it is not known
+   * @see HtsjdkVariantsRddStorage#genomicRangePartitioner(boolean)
+   */
+  public GenomicRangePartitioner getPartitioner() {
+    return partitioner;
+  }
+
+  /**
+   * @return a pair RDD of variants keyed by their start position. If the partitioner is known then
+   *     it is set on the returned RDD, so keyed operations that use the same partitioner do not
+   *     need a shuffle.
+   */
+  public JavaPairRDD<GenomicPosition, VariantContext> getVariantsByPosition() {
+    JavaPairRDD<GenomicPosition, VariantContext> variantsByPosition =
+        variants.mapToPair(variant -> new Tuple2<>(getPosition(variant), variant));
+    if (partitioner == null) {
+      return variantsByPosition;
+    }
+    return PartitionerAssigningRdd.withPartitioner(variantsByPosition, partitioner);
+  }
+
+  static GenomicPosition getPosition(VariantContext variant) {
+    return new GenomicPosition(variant.getContig(), variant.getStart());
+  }
 }
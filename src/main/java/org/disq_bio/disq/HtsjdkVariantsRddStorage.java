@@ -5,9 +5,16 @@ import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.vcf.VCFHeader;
 import java.io.IOException;
 import java.util.List;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
+import org.disq_bio.disq.impl.file.FileSystemWrapper;
+import org.disq_bio.disq.impl.file.HadoopFileSystemWrapper;
+import org.disq_bio.disq.impl.formats.bcf.BcfSource;
+import org.disq_bio.disq.impl.formats.vcf.AbstractVcfSink;
 import org.disq_bio.disq.impl.formats.vcf.VcfFormat;
+import org.disq_bio.disq.impl.formats.vcf.VcfLineSubsetter;
+import org.disq_bio.disq.impl.formats.vcf.VcfSinkByKey;
 import org.disq_bio.disq.impl.formats.vcf.VcfSource;
 
 /** The entry point for reading or writing a {@link HtsjdkVariantsRdd}. */
@@ -15,6 +22,9 @@ public class HtsjdkVariantsRddStorage {
 
   private JavaSparkContext sparkContext;
   private int splitSize;
+  private boolean genomicRangePartitioner;
+  private boolean sitesOnly;
+  private List<String> samples;
 
   /**
    * Create a {@link HtsjdkVariantsRddStorage} from a Spark context object.
@@ -40,7 +50,47 @@ public class HtsjdkVariantsRddStorage {
   }
 
   /**
-   * Read variants from the given path. The input files must be VCF format, optionally compressed.
+   * @param genomicRangePartitioner whether to find a {@link GenomicRangePartitioner} for the
+   *     variants when reading a single VCF file that is sorted by position and has contig lines in
+   *     its header. If true, partition boundaries are moved so that variants at the same position
+   *     are always in the same partition, and an extra Spark job is run to find the first position
+   *     in each partition. The partitioner is available from {@link
+   *     HtsjdkVariantsRdd#getPartitioner()}, and is null if the input is not eligible (including
+   *     when intervals are specified, or the input is BCF).
+   * @return the current {@link HtsjdkVariantsRddStorage}
+   */
+  public HtsjdkVariantsRddStorage genomicRangePartitioner(boolean genomicRangePartitioner) {
+    this.genomicRangePartitioner = genomicRangePartitioner;
+    return this;
+  }
+
+  /**
+   * @param sitesOnly whether to read only the site-level columns of each variant (up to and
+   *     including INFO), ignoring the FORMAT and sample columns. If true, the variants have no
+   *     genotypes and the header has no samples, so the time and memory taken to read each variant
+   *     does not depend on the number of samples in the file.
+   * @return the current {@link HtsjdkVariantsRddStorage}
+   */
+  public HtsjdkVariantsRddStorage sitesOnly(boolean sitesOnly) {
+    this.sitesOnly = sitesOnly;
+    return this;
+  }
+
+  /**
+   * @param samples the names of the samples to read genotypes for, or null to read all samples. If
+   *     specified, the columns for other samples are ignored before each variant is decoded, and
+   *     the header only has the given samples, in the order they appear in the file. All the
+   *     samples must be present in the file. Ignored if {@link #sitesOnly(boolean)} is true.
+   * @return the current {@link HtsjdkVariantsRddStorage}
+   */
+  public HtsjdkVariantsRddStorage samples(List<String> samples) {
+    this.samples = samples;
+    return this;
+  }
+
+  /**
+   * Read variants from the given path. The input files must be VCF format, optionally compressed,
+   * or BCF format.
    *
    * @param path the file or directory to read from
    * @return a {@link HtsjdkVariantsRdd} that allows access to the variants
@@ -52,7 +102,8 @@ public class HtsjdkVariantsRddStorage {
 
   /**
    * Read variants from the given path, using the given intervals to filter the variants. The input
-   * files must be VCF format, optionally compressed.
+   * files must be VCF format, optionally compressed, or BCF format. BCF indexes are not used, so
+   * all of a BCF file is read when filtering by intervals.
    *
    * @param path the file or directory to read from
    * @param intervals intervals to filter variants by
@@ -62,11 +113,44 @@ public class HtsjdkVariantsRddStorage {
    */
   public <T extends Locatable> HtsjdkVariantsRdd read(String path, List<T> intervals)
       throws IOException {
+    FileSystemWrapper fileSystemWrapper = new HadoopFileSystemWrapper();
+    Configuration conf = sparkContext.hadoopConfiguration();
+    boolean directory = fileSystemWrapper.isDirectory(conf, path);
+    String firstPath = directory ? fileSystemWrapper.firstFileInDirectory(conf, path) : path;
+    boolean bcf = VcfFormat.BCF.fileMatches(firstPath);
+
     VcfSource vcfSource = new VcfSource();
-    VCFHeader header = vcfSource.getFileHeader(sparkContext, path);
+    BcfSource bcfSource = new BcfSource(fileSystemWrapper);
+    VCFHeader header =
+        bcf
+            ? bcfSource.getFileHeader(sparkContext, path)
+            : vcfSource.getFileHeader(sparkContext, path);
+    VcfLineSubsetter subsetter = null;
+    if (sitesOnly) {
+      subsetter = VcfLineSubsetter.sitesOnly();
+    } else if (samples != null) {
+      subsetter = VcfLineSubsetter.forSamples(header, samples);
+    }
+    if (subsetter != null) {
+      header = subsetter.subsetHeader(header);
+    }
+    boolean findPartitioner =
+        genomicRangePartitioner
+            && !bcf
+            && intervals == null
+            && header.getSequenceDictionary() != null
+            && !directory;
     JavaRDD<VariantContext> variants =
-        vcfSource.getVariants(sparkContext, path, splitSize, intervals);
-    return new HtsjdkVariantsRdd(header, variants);
+        bcf
+            ? bcfSource.getVariants(sparkContext, path, splitSize, intervals, subsetter)
+            : vcfSource.getVariants(
+                sparkContext, path, splitSize, intervals, findPartitioner, subsetter);
+    GenomicRangePartitioner partitioner =
+        findPartitioner
+            ? GenomicRangePartitioner.fromFirstPositions(
+                variants, HtsjdkVariantsRdd::getPosition, header.getSequenceDictionary())
+            : null;
+    return new HtsjdkVariantsRdd(header, variants, partitioner);
   }
 
   /**
@@ -77,7 +161,12 @@ public class HtsjdkVariantsRddStorage {
    * @param htsjdkVariantsRdd a {@link HtsjdkVariantsRdd} containing the header and the variants
    * @param path the file or directory to write to
    * @param writeOptions options to control aspects of how to write the variants (e.g. {@link
-   *     VariantsFormatWriteOption} and {@link FileCardinalityWriteOption}
+   *     VariantsFormatWriteOption} and {@link FileCardinalityWriteOption}. If {@link
+   *     PartitionByWriteOption#CONTIG} is specified then a file is written for each contig, in the
+   *     directory specified by the path, and {@link FileCardinalityWriteOption} is ignored. If
+   *     {@link TabixIndexWriteOption#ENABLE} is specified then a tabix index is written alongside
+   *     the file, which must be a single block compressed VCF file, with variants sorted by
+   *     coordinate.
    * @throws IOException if an IO error occurs while writing
    */
   public void write(HtsjdkVariantsRdd htsjdkVariantsRdd, String path, WriteOption... writeOptions)
@@ -85,13 +174,19 @@ public class HtsjdkVariantsRddStorage {
     VariantsFormatWriteOption formatWriteOption = null;
     FileCardinalityWriteOption fileCardinalityWriteOption = null;
     TempPartsDirectoryWriteOption tempPartsDirectoryWriteOption = null;
+    PartitionByWriteOption partitionByWriteOption = null;
+    TabixIndexWriteOption tabixIndexWriteOption = null;
     for (WriteOption writeOption : writeOptions) {
       if (writeOption instanceof VariantsFormatWriteOption) {
         formatWriteOption = (VariantsFormatWriteOption) writeOption;
+      } else if (writeOption instanceof PartitionByWriteOption) {
+        partitionByWriteOption = (PartitionByWriteOption) writeOption;
       } else if (writeOption instanceof FileCardinalityWriteOption) {
         fileCardinalityWriteOption = (FileCardinalityWriteOption) writeOption;
       } else if (writeOption instanceof TempPartsDirectoryWriteOption) {
         tempPartsDirectoryWriteOption = (TempPartsDirectoryWriteOption) writeOption;
+      } else if (writeOption instanceof TabixIndexWriteOption) {
+        tabixIndexWriteOption = (TabixIndexWriteOption) writeOption;
       }
     }
 
@@ -108,20 +203,38 @@ public class HtsjdkVariantsRddStorage {
       fileCardinalityWriteOption = VcfFormat.fileCardinalityWriteOptionFromPath(path);
     }
 
+    boolean writeTbiFile = tabixIndexWriteOption == TabixIndexWriteOption.ENABLE;
+    if (writeTbiFile) {
+      VcfFormat vcfFormat = VcfFormat.fromFormatWriteOption(formatWriteOption);
+      if (!vcfFormat.isCompressed() || vcfFormat == VcfFormat.BCF) {
+        throw new IllegalArgumentException(
+            "Tabix index can only be written for block compressed VCF, not " + vcfFormat);
+      }
+      if (fileCardinalityWriteOption != FileCardinalityWriteOption.SINGLE
+          || partitionByWriteOption != null) {
+        throw new IllegalArgumentException("Tabix index can only be written for a single file");
+      }
+    }
+
     String tempPartsDirectory = null;
     if (tempPartsDirectoryWriteOption != null) {
       tempPartsDirectory = tempPartsDirectoryWriteOption.getTempPartsDirectory();
-    } else if (fileCardinalityWriteOption == FileCardinalityWriteOption.SINGLE) {
+    } else if (fileCardinalityWriteOption == FileCardinalityWriteOption.SINGLE
+        || partitionByWriteOption != null) {
       tempPartsDirectory = path + ".parts";
     }
 
-    fileCardinalityWriteOption
-        .getAbstractVcfSink(formatWriteOption)
-        .save(
-            sparkContext,
-            htsjdkVariantsRdd.getHeader(),
-            htsjdkVariantsRdd.getVariants(),
-            path,
-            tempPartsDirectory);
+    AbstractVcfSink vcfSink =
+        partitionByWriteOption == null
+            ? fileCardinalityWriteOption.getAbstractVcfSink(formatWriteOption)
+            : new VcfSinkByKey(
+                VcfFormat.fromFormatWriteOption(formatWriteOption), partitionByWriteOption);
+    vcfSink.save(
+        sparkContext,
+        htsjdkVariantsRdd.getHeader(),
+        htsjdkVariantsRdd.getVariants(),
+        path,
+        tempPartsDirectory,
+        writeTbiFile);
   }
 }
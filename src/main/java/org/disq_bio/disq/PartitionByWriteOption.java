@@ -0,0 +1,24 @@
+package org.disq_bio.disq;
+
+/**
+ * An option for writing one file for each value of a key, in a directory specified by the path.
+ * Records are routed to the file for their key as they are written, so all the files are written in
+ * a single pass over the data, then the parts for each key are merged into a complete file (with
+ * header and terminator). The order of records in each file is the order they have in the RDD.
+ *
+ * <p>Files are named after the key (with any characters that are not safe in file names replaced),
+ * followed by the format extension. Records that have no value for the key are written to a file
+ * called <code>unassigned</code>.
+ */
+public enum PartitionByWriteOption implements WriteOption {
+  /**
+   * Write a file for each contig (reference sequence) in the header. Unplaced reads are written to
+   * the <code>unassigned</code> file.
+   */
+  CONTIG,
+  /**
+   * Write a file for each read group in the header. Reads with no read group, or with one that is
+   * not in the header, are written to the <code>unassigned</code> file. Not supported for variants.
+   */
+  READ_GROUP
+}
@@ -0,0 +1,13 @@
+package org.disq_bio.disq;
+
+/**
+ * An option for sorting a {@link HtsjdkReadsRdd} before writing it. Without this option reads are
+ * written in the order of the RDD, and the header is written unchanged.
+ */
+public enum ReadsSortOrderWriteOption implements WriteOption {
+  /**
+   * Sort reads by reference and alignment start (with unplaced reads last), and set the sort order
+   * in the header to <code>coordinate</code>.
+   */
+  COORDINATE
+}
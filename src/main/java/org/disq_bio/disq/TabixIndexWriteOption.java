@@ -0,0 +1,13 @@
+package org.disq_bio.disq;
+
+/**
+ * An option for writing a tabix index (<code>.tbi</code>) alongside a single block compressed VCF
+ * file. The index is built while the file is written, so no extra pass over the data is needed. The
+ * variants must be sorted by coordinate.
+ */
+public enum TabixIndexWriteOption implements WriteOption {
+  /** Write a tabix index. */
+  ENABLE,
+  /** Don't write a tabix index. This is the default. */
+  DISABLE
+}
@@ -1,11 +1,28 @@
 package org.disq_bio.disq;
 
+import java.util.function.Supplier;
+import org.disq_bio.disq.impl.formats.bcf.BcfSink;
+import org.disq_bio.disq.impl.formats.vcf.AbstractVcfSink;
+import org.disq_bio.disq.impl.formats.vcf.VcfSink;
+
 /** An option for configuring which format to write a {@link HtsjdkVariantsRdd} as. */
 public enum VariantsFormatWriteOption implements WriteOption {
   /** VCF format */
-  VCF,
+  VCF(VcfSink::new),
   /** block compressed VCF format (.vcf.bgz) */
-  VCF_BGZ,
+  VCF_BGZ(VcfSink::new),
   /** block compressed VCF format (.vcf.gz) */
-  VCF_GZ
+  VCF_GZ(VcfSink::new),
+  /** BCF format (always block compressed) */
+  BCF(BcfSink::new);
+
+  private final transient Supplier<AbstractVcfSink> sinkProvider;
+
+  VariantsFormatWriteOption(Supplier<AbstractVcfSink> sinkProvider) {
+    this.sinkProvider = sinkProvider;
+  }
+
+  AbstractVcfSink createAbstractVcfSink() {
+    return sinkProvider.get();
+  }
 }
@@ -7,6 +7,7 @@ import java.io.Serializable;
 import java.util.List;
 import java.util.Optional;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.BlockLocation;
 
 /**
  * A wrapper around Hadoop and NIO filesystems so users can choose a single one to use for all
@@ -108,6 +109,19 @@ public interface FileSystemWrapper extends Serializable {
    */
   void concat(Configuration conf, List<String> parts, String path) throws IOException;
 
+  /**
+   * Returns the locations of the blocks that make up a file, so that tasks can be scheduled on
+   * hosts that store the data they read.
+   *
+   * @param conf the Hadoop configuration
+   * @param path the path to the file
+   * @return the block locations, or an empty array if the filesystem does not expose them
+   * @throws IOException if an IO error occurs
+   */
+  default BlockLocation[] getBlockLocations(Configuration conf, String path) throws IOException {
+    return new BlockLocation[0];
+  }
+
   default String firstFileInDirectory(Configuration conf, String path) throws IOException {
     Optional<String> firstPath =
         listDirectory(conf, path).stream().filter(new HiddenFileFilter()).findFirst();
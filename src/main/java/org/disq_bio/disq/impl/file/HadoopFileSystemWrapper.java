@@ -9,6 +9,8 @@ import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.Seekable;
@@ -77,6 +79,14 @@ public class HadoopFileSystemWrapper implements FileSystemWrapper {
     return fileSystem.isDirectory(p);
   }
 
+  @Override
+  public BlockLocation[] getBlockLocations(Configuration conf, String path) throws IOException {
+    Path p = new Path(path);
+    FileSystem fileSystem = p.getFileSystem(conf);
+    FileStatus fileStatus = fileSystem.getFileStatus(p);
+    return fileSystem.getFileBlockLocations(fileStatus, 0, fileStatus.getLen());
+  }
+
   @Override
   public List<String> listDirectory(Configuration conf, String path) throws IOException {
     Path p = new Path(path);
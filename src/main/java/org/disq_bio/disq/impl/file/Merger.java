@@ -1,7 +1,9 @@
 package org.disq_bio.disq.impl.file;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 import org.apache.hadoop.conf.Configuration;
 
@@ -15,9 +17,32 @@ public class Merger {
 
   public void mergeParts(Configuration conf, String tempPartsDirectory, String outputFile)
       throws IOException {
-    List<String> parts = fileSystemWrapper.listDirectory(conf, tempPartsDirectory);
-    List<String> filteredParts =
-        parts.stream().filter(new HiddenFileFilter()).collect(Collectors.toList());
-    fileSystemWrapper.concat(conf, filteredParts, outputFile);
+    fileSystemWrapper.concat(conf, listParts(conf, tempPartsDirectory), outputFile);
+  }
+
+  /**
+   * Find the parts that merging a directory concatenates, and their lengths. Merging removes the
+   * parts, so this is used to index the merged file once it has been written.
+   *
+   * @param conf the Hadoop configuration
+   * @param tempPartsDirectory the directory containing the parts
+   * @return the path of each part, in the order that they are merged, mapped to its length
+   * @throws IOException if an IO error occurs
+   */
+  public Map<String, Long> getPartLengths(Configuration conf, String tempPartsDirectory)
+      throws IOException {
+    Map<String, Long> partLengths = new LinkedHashMap<>();
+    for (String part : listParts(conf, tempPartsDirectory)) {
+      partLengths.put(part, fileSystemWrapper.getFileLength(conf, part));
+    }
+    return partLengths;
+  }
+
+  private List<String> listParts(Configuration conf, String tempPartsDirectory) throws IOException {
+    return fileSystemWrapper
+        .listDirectory(conf, tempPartsDirectory)
+        .stream()
+        .filter(new HiddenFileFilter())
+        .collect(Collectors.toList());
   }
 }
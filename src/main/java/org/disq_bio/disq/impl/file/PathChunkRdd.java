@@ -0,0 +1,244 @@
+package org.disq_bio.disq.impl.file;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.spark.Dependency;
+import org.apache.spark.Partition;
+import org.apache.spark.TaskContext;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.rdd.RDD;
+import org.disq_bio.disq.impl.formats.SerializableHadoopConfiguration;
+import scala.Tuple2;
+import scala.collection.Iterator;
+import scala.collection.JavaConverters;
+import scala.collection.Seq;
+import scala.reflect.ClassTag$;
+
+/**
+ * An RDD with one partition per {@link PathChunk} (or group of chunks), for chunks that have been
+ * planned on the driver. Each partition reports the hosts that store the compressed byte ranges of
+ * its chunks as its preferred locations, so that reads can be scheduled node-local on HDFS.
+ */
+public class PathChunkRdd extends RDD<PathChunk> {
+
+  private static final long serialVersionUID = 1L;
+
+  private final PathChunkPartition[] partitions;
+
+  private PathChunkRdd(JavaSparkContext jsc, PathChunkPartition[] partitions) {
+    super(
+        jsc.sc(),
+        JavaConverters.asScalaBufferConverter(new ArrayList<Dependency<?>>()).asScala(),
+        ClassTag$.MODULE$.apply(PathChunk.class));
+    this.partitions = partitions;
+  }
+
+  /**
+   * Create an RDD for the given chunks, looking up the preferred locations for each one.
+   *
+   * @param jsc the Spark context
+   * @param fileSystemWrapper the filesystem wrapper used to find block locations
+   * @param pathChunks the chunks, one per partition, in partition order
+   * @return an RDD of the chunks
+   * @throws IOException if an IO error occurs while finding block locations
+   */
+  public static JavaRDD<PathChunk> create(
+      JavaSparkContext jsc, FileSystemWrapper fileSystemWrapper, List<PathChunk> pathChunks)
+      throws IOException {
+    List<List<PathChunk>> pathChunkGroups = new ArrayList<>();
+    for (PathChunk pathChunk : pathChunks) {
+      pathChunkGroups.add(Collections.singletonList(pathChunk));
+    }
+    return createFromGroups(jsc, fileSystemWrapper, pathChunkGroups);
+  }
+
+  /**
+   * Create an RDD for the given groups of chunks, with one partition per group, looking up the
+   * preferred locations for each one.
+   *
+   * @param jsc the Spark context
+   * @param fileSystemWrapper the filesystem wrapper used to find block locations
+   * @param pathChunkGroups the groups of chunks, one per partition, in partition order
+   * @return an RDD of the chunks, where each partition has the chunks in its group, in order
+   * @throws IOException if an IO error occurs while finding block locations
+   */
+  public static JavaRDD<PathChunk> createFromGroups(
+      JavaSparkContext jsc,
+      FileSystemWrapper fileSystemWrapper,
+      List<List<PathChunk>> pathChunkGroups)
+      throws IOException {
+    Map<String, BlockLocation[]> pathToBlockLocations =
+        getBlockLocations(jsc, fileSystemWrapper, pathChunkGroups);
+    PathChunkPartition[] partitions = new PathChunkPartition[pathChunkGroups.size()];
+    for (int i = 0; i < partitions.length; i++) {
+      List<PathChunk> pathChunkGroup = pathChunkGroups.get(i);
+      Map<String, Long> hostToBytes = new LinkedHashMap<>();
+      for (PathChunk pathChunk : pathChunkGroup) {
+        BlockLocation[] blockLocations = pathToBlockLocations.get(pathChunk.getPath());
+        // the compressed offset of the last virtual offset is the start of the last block read,
+        // so add one to make the range non-empty
+        long start = pathChunk.getSpan().getChunkStart() >>> 16;
+        long end = (pathChunk.getSpan().getChunkEnd() >>> 16) + 1;
+        addHostBytes(hostToBytes, blockLocations, start, end);
+      }
+      partitions[i] =
+          new PathChunkPartition(
+              i, pathChunkGroup.toArray(new PathChunk[0]), sortHostsByBytes(hostToBytes));
+    }
+    return new PathChunkRdd(jsc, partitions).toJavaRDD();
+  }
+
+  /**
+   * Find the block locations of each file that the chunks are in. If there is more than one file
+   * they are found in a Spark job, rather than one file at a time on the driver.
+   */
+  private static Map<String, BlockLocation[]> getBlockLocations(
+      JavaSparkContext jsc,
+      FileSystemWrapper fileSystemWrapper,
+      List<List<PathChunk>> pathChunkGroups)
+      throws IOException {
+    Configuration conf = jsc.hadoopConfiguration();
+    Set<String> pathSet = new LinkedHashSet<>();
+    for (List<PathChunk> pathChunkGroup : pathChunkGroups) {
+      for (PathChunk pathChunk : pathChunkGroup) {
+        pathSet.add(pathChunk.getPath());
+      }
+    }
+    List<String> paths = new ArrayList<>(pathSet);
+    Map<String, BlockLocation[]> pathToBlockLocations = new HashMap<>();
+    if (paths.size() == 1) {
+      pathToBlockLocations.put(
+          paths.get(0), fileSystemWrapper.getBlockLocations(conf, paths.get(0)));
+    } else if (!paths.isEmpty()) {
+      // block locations are not serializable, so only their hosts and byte ranges are returned
+      SerializableHadoopConfiguration confSer = new SerializableHadoopConfiguration(conf);
+      List<Tuple2<String, List<BlockHosts>>> pathToBlockHosts =
+          jsc.parallelize(paths, paths.size())
+              .map(
+                  p -> {
+                    List<BlockHosts> blockHosts = new ArrayList<>();
+                    for (BlockLocation blockLocation :
+                        fileSystemWrapper.getBlockLocations(confSer.getConf(), p)) {
+                      blockHosts.add(new BlockHosts(blockLocation));
+                    }
+                    return new Tuple2<>(p, blockHosts);
+                  })
+              .collect();
+      for (Tuple2<String, List<BlockHosts>> entry : pathToBlockHosts) {
+        pathToBlockLocations.put(
+            entry._1(),
+            entry._2().stream().map(BlockHosts::toBlockLocation).toArray(BlockLocation[]::new));
+      }
+    }
+    return pathToBlockLocations;
+  }
+
+  /**
+   * @return the hosts storing any of the bytes in the range {@code [start, end)}, ordered by the
+   *     number of bytes in the range that they store, most first
+   */
+  static String[] getPreferredHosts(BlockLocation[] blockLocations, long start, long end)
+      throws IOException {
+    Map<String, Long> hostToBytes = new LinkedHashMap<>();
+    addHostBytes(hostToBytes, blockLocations, start, end);
+    return sortHostsByBytes(hostToBytes);
+  }
+
+  private static void addHostBytes(
+      Map<String, Long> hostToBytes, BlockLocation[] blockLocations, long start, long end)
+      throws IOException {
+    for (BlockLocation blockLocation : blockLocations) {
+      long overlap =
+          Math.min(end, blockLocation.getOffset() + blockLocation.getLength())
+              - Math.max(start, blockLocation.getOffset());
+      if (overlap > 0) {
+        for (String host : blockLocation.getHosts()) {
+          hostToBytes.merge(host, overlap, Long::sum);
+        }
+      }
+    }
+  }
+
+  private static String[] sortHostsByBytes(Map<String, Long> hostToBytes) {
+    List<Map.Entry<String, Long>> entries = new ArrayList<>(hostToBytes.entrySet());
+    entries.sort(Collections.reverseOrder(Map.Entry.comparingByValue()));
+    return entries.stream().map(Map.Entry::getKey).toArray(String[]::new);
+  }
+
+  @Override
+  public Iterator<PathChunk> compute(Partition split, TaskContext context) {
+    PathChunk[] pathChunks = ((PathChunkPartition) split).pathChunks;
+    return JavaConverters.asScalaIteratorConverter(Arrays.asList(pathChunks).iterator()).asScala();
+  }
+
+  @Override
+  public Partition[] getPartitions() {
+    return Arrays.copyOf(partitions, partitions.length, Partition[].class);
+  }
+
+  @Override
+  public Seq<String> getPreferredLocations(Partition split) {
+    return JavaConverters.asScalaBufferConverter(
+            Arrays.asList(((PathChunkPartition) split).preferredHosts))
+        .asScala();
+  }
+
+  private static class BlockHosts implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String[] hosts;
+    private final long offset;
+    private final long length;
+
+    BlockHosts(BlockLocation blockLocation) throws IOException {
+      this.hosts = blockLocation.getHosts();
+      this.offset = blockLocation.getOffset();
+      this.length = blockLocation.getLength();
+    }
+
+    BlockLocation toBlockLocation() {
+      return new BlockLocation(null, hosts, offset, length);
+    }
+  }
+
+  static class PathChunkPartition implements Partition {
+    private static final long serialVersionUID = 1L;
+
+    private final int index;
+    private final PathChunk[] pathChunks;
+    private final String[] preferredHosts;
+
+    PathChunkPartition(int index, PathChunk[] pathChunks, String[] preferredHosts) {
+      this.index = index;
+      this.pathChunks = pathChunks;
+      this.preferredHosts = preferredHosts;
+    }
+
+    @Override
+    public int index() {
+      return index;
+    }
+
+    @Override
+    public int hashCode() {
+      return index;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof PathChunkPartition && ((PathChunkPartition) o).index == index;
+    }
+  }
+}
@@ -2,11 +2,14 @@ package org.disq_bio.disq.impl.file;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.LongStream;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 import org.apache.spark.api.java.JavaRDD;
@@ -23,6 +26,46 @@ public class PathSplitSource implements Serializable {
     this.fileSystemWrapper = fileSystemWrapper;
   }
 
+  /**
+   * Compute the splits for a file (or the files in a directory) on the driver, rather than as an
+   * RDD. This is useful when partitions are planned on the driver, since the resulting partitions
+   * can then be given their own preferred locations.
+   *
+   * @return the splits, in the same order as the partitions of {@link #getPathSplits}
+   */
+  public List<PathSplit> listPathSplits(JavaSparkContext jsc, String path, int splitSize)
+      throws IOException {
+    if (fileSystemWrapper.usesNio()) {
+      long len = fileSystemWrapper.getFileLength(null, path);
+      int numSplits = (int) Math.ceil((double) len / splitSize);
+      return LongStream.range(0, numSplits)
+          .map(idx -> idx * splitSize)
+          .mapToObj(
+              splitStart ->
+                  new PathSplit(
+                      path,
+                      splitStart,
+                      splitStart + splitSize > len ? len : splitStart + splitSize))
+          .collect(Collectors.toList());
+    } else {
+      Job job = Job.getInstance(jsc.hadoopConfiguration());
+      if (splitSize > 0) {
+        FileInputFormat.setMaxInputSplitSize(job, splitSize);
+      }
+      FileInputFormat.setInputPaths(job, path);
+      List<PathSplit> pathSplits = new ArrayList<>();
+      for (InputSplit split : new FileSplitInputFormat().getSplits(job)) {
+        FileSplit fileSplit = (FileSplit) split;
+        pathSplits.add(
+            new PathSplit(
+                fileSplit.getPath().toString(),
+                fileSplit.getStart(),
+                fileSplit.getStart() + fileSplit.getLength()));
+      }
+      return pathSplits;
+    }
+  }
+
   public JavaRDD<PathSplit> getPathSplits(JavaSparkContext jsc, String path, int splitSize)
       throws IOException {
     if (fileSystemWrapper.usesNio()) {
@@ -0,0 +1,261 @@
+package org.disq_bio.disq.impl.file;
+
+import htsjdk.samtools.seekablestream.SeekableStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.spark.TaskContext;
+import org.apache.spark.util.TaskCompletionListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link FileSystemWrapper} that, when used from within a Spark task, shares a single underlying
+ * stream for each (task, path) pair.
+ *
+ * <p>Planning a partition (finding BGZF blocks, guessing the first record) and then reading it
+ * would otherwise open the same file several times in the same task, which on object stores means
+ * an HTTP request, connection setup, and discarded read-ahead for every open. Instead, each call to
+ * {@link #open(Configuration, String)} returns a lightweight view that tracks its own position and
+ * seeks the shared stream only when needed, so consecutive users read sequentially from a single
+ * open. Closing a view does not close the shared stream; that happens when the task completes.
+ *
+ * <p>Outside of a Spark task (e.g. on the driver) streams are opened directly with the wrapped
+ * {@link FileSystemWrapper}. All other operations are delegated.
+ */
+public class PooledFileSystemWrapper implements FileSystemWrapper {
+
+  private static final Logger logger = LoggerFactory.getLogger(PooledFileSystemWrapper.class);
+
+  private static final Map<StreamKey, SeekableStream> pooledStreams = new ConcurrentHashMap<>();
+
+  private final FileSystemWrapper fileSystemWrapper;
+
+  public PooledFileSystemWrapper(FileSystemWrapper fileSystemWrapper) {
+    this.fileSystemWrapper = fileSystemWrapper;
+  }
+
+  @Override
+  public boolean usesNio() {
+    return fileSystemWrapper.usesNio();
+  }
+
+  @Override
+  public String normalize(Configuration conf, String path) throws IOException {
+    return fileSystemWrapper.normalize(conf, path);
+  }
+
+  @Override
+  public SeekableStream open(Configuration conf, String path) throws IOException {
+    TaskContext taskContext = TaskContext.get();
+    if (taskContext == null || taskContext.isCompleted()) {
+      // nothing would close a pooled stream once the task has completed
+      return fileSystemWrapper.open(conf, path);
+    }
+    StreamKey key = new StreamKey(taskContext.taskAttemptId(), path);
+    SeekableStream[] opened = new SeekableStream[1];
+    SeekableStream shared;
+    try {
+      // open and register atomically, so threads in the same task don't both open the path
+      shared =
+          pooledStreams.computeIfAbsent(
+              key,
+              k -> {
+                try {
+                  opened[0] = fileSystemWrapper.open(conf, path);
+                  return opened[0];
+                } catch (IOException e) {
+                  throw new UncheckedIOException(e);
+                }
+              });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    if (shared == opened[0]) {
+      // registered outside computeIfAbsent, since Spark runs the listener straight away if the task
+      // has already completed, and the listener updates the map
+      taskContext.addTaskCompletionListener(
+          (TaskCompletionListener)
+              context -> {
+                if (pooledStreams.remove(key, shared)) {
+                  closeQuietly(shared);
+                }
+              });
+    }
+    return new SharedStreamView(shared);
+  }
+
+  @Override
+  public OutputStream create(Configuration conf, String path) throws IOException {
+    return fileSystemWrapper.create(conf, path);
+  }
+
+  @Override
+  public boolean delete(Configuration conf, String path) throws IOException {
+    return fileSystemWrapper.delete(conf, path);
+  }
+
+  @Override
+  public boolean exists(Configuration conf, String path) throws IOException {
+    return fileSystemWrapper.exists(conf, path);
+  }
+
+  @Override
+  public long getFileLength(Configuration conf, String path) throws IOException {
+    return fileSystemWrapper.getFileLength(conf, path);
+  }
+
+  @Override
+  public boolean isDirectory(Configuration conf, String path) throws IOException {
+    return fileSystemWrapper.isDirectory(conf, path);
+  }
+
+  @Override
+  public BlockLocation[] getBlockLocations(Configuration conf, String path) throws IOException {
+    return fileSystemWrapper.getBlockLocations(conf, path);
+  }
+
+  @Override
+  public List<String> listDirectory(Configuration conf, String path) throws IOException {
+    return fileSystemWrapper.listDirectory(conf, path);
+  }
+
+  @Override
+  public void concat(Configuration conf, List<String> parts, String path) throws IOException {
+    fileSystemWrapper.concat(conf, parts, path);
+  }
+
+  private static void closeQuietly(SeekableStream stream) {
+    if (stream == null) {
+      return;
+    }
+    try {
+      stream.close();
+    } catch (IOException e) {
+      logger.warn("Failed to close pooled stream for " + stream.getSource(), e);
+    }
+  }
+
+  private static class StreamKey {
+    private final long taskAttemptId;
+    private final String path;
+
+    StreamKey(long taskAttemptId, String path) {
+      this.taskAttemptId = taskAttemptId;
+      this.path = path;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      StreamKey that = (StreamKey) o;
+      return taskAttemptId == that.taskAttemptId && path.equals(that.path);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(taskAttemptId, path);
+    }
+  }
+
+  /**
+   * A view of a shared stream with its own position. The shared stream is only repositioned if
+   * another view has moved it since this view last read from it.
+   */
+  static class SharedStreamView extends SeekableStream {
+    private final SeekableStream shared;
+    private long position;
+    private boolean closed;
+
+    SharedStreamView(SeekableStream shared) {
+      this.shared = shared;
+    }
+
+    @Override
+    public long length() {
+      return shared.length();
+    }
+
+    @Override
+    public long position() {
+      return position;
+    }
+
+    @Override
+    public void seek(long position) throws IOException {
+      ensureOpen();
+      this.position = position;
+    }
+
+    @Override
+    public int read() throws IOException {
+      synchronized (shared) {
+        syncPosition();
+        int b = shared.read();
+        if (b >= 0) {
+          position++;
+        }
+        return b;
+      }
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      synchronized (shared) {
+        syncPosition();
+        int n = shared.read(buffer, offset, length);
+        if (n > 0) {
+          position += n;
+        }
+        return n;
+      }
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      ensureOpen();
+      long skipped = Math.max(0, Math.min(n, length() - position));
+      position += skipped;
+      return skipped;
+    }
+
+    @Override
+    public boolean eof() {
+      return position >= length();
+    }
+
+    @Override
+    public String getSource() {
+      return shared.getSource();
+    }
+
+    @Override
+    public void close() {
+      closed = true; // the shared stream is closed when the task completes
+    }
+
+    private void syncPosition() throws IOException {
+      ensureOpen();
+      if (shared.position() != position) {
+        shared.seek(position);
+      }
+    }
+
+    private void ensureOpen() throws IOException {
+      if (closed) {
+        throw new IOException("Stream closed: " + getSource());
+      }
+    }
+  }
+}
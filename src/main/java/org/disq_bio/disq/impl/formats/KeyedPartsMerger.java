@@ -0,0 +1,90 @@
+package org.disq_bio.disq.impl.formats;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.disq_bio.disq.impl.file.FileSystemWrapper;
+import org.disq_bio.disq.impl.file.HadoopFileSystemWrapper;
+import org.disq_bio.disq.impl.file.HiddenFileFilter;
+import org.disq_bio.disq.impl.file.Merger;
+
+/**
+ * Merges the part files written by {@link KeyedRecordWriter} into one complete file per key.
+ *
+ * <p>Keys are the indexes of names in a list (such as the sequences or read groups in a header),
+ * which keeps part directory names safe regardless of the names themselves, or {@link #UNASSIGNED}
+ * for records that have no name.
+ */
+public class KeyedPartsMerger {
+
+  public static final String UNASSIGNED = "unassigned";
+
+  /** Writes the header and terminator files for a directory of parts. */
+  public interface HeaderWriter {
+    void write(String partsDirectory) throws IOException;
+  }
+
+  private final FileSystemWrapper fileSystemWrapper = new HadoopFileSystemWrapper();
+
+  /** @return the key for the name at the given index, or {@link #UNASSIGNED} if it is negative */
+  public static String key(int index) {
+    return index < 0 ? UNASSIGNED : Integer.toString(index);
+  }
+
+  /**
+   * Merge the parts for each key in the temporary parts directory into a file in the output
+   * directory, then delete the temporary parts directory.
+   *
+   * @param conf the Hadoop configuration
+   * @param tempPartsDirectory the directory containing a subdirectory of parts for each key
+   * @param path the output directory
+   * @param names the names that keys are indexes into
+   * @param extension the file extension for the merged files
+   * @param headerWriter writes the header and terminator for each key's parts
+   * @throws IOException if an IO error occurs
+   */
+  public void mergeParts(
+      Configuration conf,
+      String tempPartsDirectory,
+      String path,
+      List<String> names,
+      String extension,
+      HeaderWriter headerWriter)
+      throws IOException {
+    String[] fileNames = fileNames(names);
+    new Path(path).getFileSystem(conf).mkdirs(new Path(path));
+    for (String keyDirectory : fileSystemWrapper.listDirectory(conf, tempPartsDirectory)) {
+      if (!new HiddenFileFilter().test(keyDirectory)
+          || !fileSystemWrapper.isDirectory(conf, keyDirectory)) {
+        continue;
+      }
+      String key = new Path(keyDirectory).getName();
+      String fileName = key.equals(UNASSIGNED) ? UNASSIGNED : fileNames[Integer.parseInt(key)];
+      headerWriter.write(keyDirectory);
+      new Merger().mergeParts(conf, keyDirectory, path + "/" + fileName + extension);
+    }
+    fileSystemWrapper.delete(conf, tempPartsDirectory);
+  }
+
+  /**
+   * @return a file name for each name, with characters that are not letters, digits, '.', '-' or
+   *     '_' replaced by '_', and the index appended to any name that would otherwise not be unique
+   */
+  static String[] fileNames(List<String> names) {
+    String[] fileNames = new String[names.size()];
+    Set<String> used = new HashSet<>();
+    used.add(UNASSIGNED);
+    for (int i = 0; i < fileNames.length; i++) {
+      String fileName = names.get(i).replaceAll("[^A-Za-z0-9._-]", "_");
+      if (fileName.isEmpty() || !used.add(fileName)) {
+        fileName = fileName + "-" + i;
+        used.add(fileName);
+      }
+      fileNames[i] = fileName;
+    }
+    return fileNames;
+  }
+}
@@ -0,0 +1,78 @@
+package org.disq_bio.disq.impl.formats;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+/**
+ * A record writer that routes each record to a writer for its key, so that a single task can write
+ * a part file for each key it sees. The part file for a key is written to a subdirectory named
+ * after the key, so if the task's work file is <code>part-r-00000</code> then records for key
+ * <code>k</code> are written to <code>k/part-r-00000</code>.
+ *
+ * <p>To bound the memory used by output buffers, at most {@link #MAX_OPEN_WRITERS} writers are kept
+ * open. If a key is seen again after its writer has been closed, its records are written to a new
+ * part file whose name sorts after the previous one, so record order is preserved when the parts
+ * for a key are merged.
+ *
+ * @param <V> the type of record
+ */
+public class KeyedRecordWriter<V> extends RecordWriter<String, V> {
+
+  /** Creates a writer for a part file. */
+  public interface WriterFactory<V> {
+    RecordWriter<Void, V> create(Path file) throws IOException;
+  }
+
+  static final int MAX_OPEN_WRITERS = 64;
+
+  private final Path workFile;
+  private final WriterFactory<V> writerFactory;
+  private final Map<String, RecordWriter<Void, V>> openWriters =
+      new LinkedHashMap<>(16, 0.75f, true); // access order, so the eldest is least recently used
+  private final Map<String, Integer> partCounts = new HashMap<>();
+  private final TaskAttemptContext taskAttemptContext;
+
+  public KeyedRecordWriter(
+      TaskAttemptContext taskAttemptContext, Path workFile, WriterFactory<V> writerFactory) {
+    this.taskAttemptContext = taskAttemptContext;
+    this.workFile = workFile;
+    this.writerFactory = writerFactory;
+  }
+
+  @Override
+  public void write(String key, V value) throws IOException, InterruptedException {
+    RecordWriter<Void, V> writer = openWriters.get(key);
+    if (writer == null) {
+      if (openWriters.size() == MAX_OPEN_WRITERS) {
+        Iterator<RecordWriter<Void, V>> eldest = openWriters.values().iterator();
+        eldest.next().close(taskAttemptContext);
+        eldest.remove();
+      }
+      writer = writerFactory.create(partFile(key));
+      openWriters.put(key, writer);
+    }
+    writer.write(null, value);
+  }
+
+  private Path partFile(String key) {
+    int count = partCounts.merge(key, 1, Integer::sum);
+    String name =
+        count == 1 ? workFile.getName() : String.format("%s-%05d", workFile.getName(), count - 1);
+    return new Path(new Path(workFile.getParent(), key), name);
+  }
+
+  @Override
+  public void close(TaskAttemptContext taskAttemptContext)
+      throws IOException, InterruptedException {
+    for (RecordWriter<Void, V> writer : openWriters.values()) {
+      writer.close(taskAttemptContext);
+    }
+    openWriters.clear();
+  }
+}
@@ -0,0 +1,70 @@
+package org.disq_bio.disq.impl.formats;
+
+import org.apache.spark.Partition;
+import org.apache.spark.Partitioner;
+import org.apache.spark.TaskContext;
+import org.apache.spark.api.java.JavaPairRDD;
+import org.apache.spark.rdd.RDD;
+import scala.Option;
+import scala.Tuple2;
+import scala.collection.Iterator;
+import scala.reflect.ClassTag;
+import scala.reflect.ClassTag$;
+
+/**
+ * An RDD that passes through the partitions of its parent unchanged, but reports a {@link
+ * Partitioner} that is already known to describe them. Spark then avoids a shuffle for keyed
+ * operations that use the same partitioner.
+ *
+ * <p>It is the caller's responsibility to ensure that every key in each partition is mapped to that
+ * partition by the partitioner.
+ */
+public class PartitionerAssigningRdd<T> extends RDD<T> {
+
+  private static final long serialVersionUID = 1L;
+
+  private final ClassTag<T> classTag;
+  private final Partitioner partitioner;
+
+  private PartitionerAssigningRdd(RDD<T> parent, ClassTag<T> classTag, Partitioner partitioner) {
+    super(parent, classTag);
+    this.classTag = classTag;
+    this.partitioner = partitioner;
+  }
+
+  /**
+   * @return a pair RDD with the same partitions as the given one, and the given partitioner
+   * @throws IllegalArgumentException if the partitioner has a different number of partitions
+   */
+  @SuppressWarnings("unchecked")
+  public static <K, V> JavaPairRDD<K, V> withPartitioner(
+      JavaPairRDD<K, V> rdd, Partitioner partitioner) {
+    if (partitioner.numPartitions() != rdd.getNumPartitions()) {
+      throw new IllegalArgumentException(
+          "Partitioner has "
+              + partitioner.numPartitions()
+              + " partitions, but RDD has "
+              + rdd.getNumPartitions());
+    }
+    ClassTag<Tuple2<K, V>> classTag = ClassTag$.MODULE$.apply(Tuple2.class);
+    return JavaPairRDD.fromRDD(
+        new PartitionerAssigningRdd<>(rdd.rdd(), classTag, partitioner),
+        rdd.kClassTag(),
+        rdd.vClassTag());
+  }
+
+  @Override
+  public Iterator<T> compute(Partition split, TaskContext context) {
+    return firstParent(classTag).iterator(split, context);
+  }
+
+  @Override
+  public Partition[] getPartitions() {
+    return firstParent(classTag).partitions();
+  }
+
+  @Override
+  public Option<Partitioner> partitioner() {
+    return Option.apply(partitioner);
+  }
+}
@@ -1,6 +1,5 @@
 package org.disq_bio.disq.impl.formats.bam;
 
-import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.seekablestream.SeekableStream;
 import htsjdk.samtools.util.BlockCompressedInputStream;
 import java.io.Closeable;
@@ -10,14 +9,14 @@ import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import org.apache.hadoop.io.IOUtils;
+import org.disq_bio.disq.impl.formats.sam.CompactSequenceDictionary;
 
 class BamRecordGuesser implements Closeable {
 
   private static final int READS_TO_CHECK = 10;
 
   private final BlockCompressedInputStream uncompressedBytes;
-  private final int referenceSequenceCount;
-  private final SAMFileHeader header;
+  private final CompactSequenceDictionary sequenceDictionary;
 
   private final ByteBuffer buf = ByteBuffer.allocate(36).order(ByteOrder.LITTLE_ENDIAN);
 
@@ -25,10 +24,23 @@ class BamRecordGuesser implements Closeable {
 
   private final ByteBuffer cigarOpBuffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
 
-  public BamRecordGuesser(SeekableStream ss, int referenceSequenceCount, SAMFileHeader header) {
+  public BamRecordGuesser(SeekableStream ss, CompactSequenceDictionary sequenceDictionary) {
     this.uncompressedBytes = new BlockCompressedInputStream(ss);
-    this.referenceSequenceCount = referenceSequenceCount;
-    this.header = header;
+    this.sequenceDictionary = sequenceDictionary;
+  }
+
+  /**
+   * Create a guesser that reads the reference sequence names and lengths from the BAM header at the
+   * start of the stream, which avoids parsing the (potentially very large) header text.
+   */
+  public BamRecordGuesser(SeekableStream ss) throws IOException {
+    this.uncompressedBytes = new BlockCompressedInputStream(ss);
+    try {
+      this.sequenceDictionary = CompactSequenceDictionary.fromBamHeader(uncompressedBytes);
+    } catch (IOException | RuntimeException e) {
+      uncompressedBytes.close();
+      throw e;
+    }
   }
 
   public boolean checkRecordStart(long vPos) {
@@ -107,11 +119,11 @@ class BamRecordGuesser implements Closeable {
     // leftmost coordinate.
     final int id = buf.getInt(4);
     final int pos = buf.getInt(8);
-    if (id < -1 || id >= referenceSequenceCount || pos < -1) {
+    if (id < -1 || id >= sequenceDictionary.size() || pos < -1) {
       return NO_START;
     }
 
-    if (id >= 0 && pos > header.getSequenceDictionary().getSequence(id).getSequenceLength()) {
+    if (id >= 0 && pos > sequenceDictionary.getSequenceLength(id)) {
       return NO_START; // Locus too large
     }
 
@@ -122,11 +134,11 @@ class BamRecordGuesser implements Closeable {
 
     final int nid = buf.getInt(24);
     final int npos = buf.getInt(28);
-    if (nid < -1 || nid >= referenceSequenceCount || npos < -1) {
+    if (nid < -1 || nid >= sequenceDictionary.size() || npos < -1) {
       return NO_START;
     }
 
-    if (nid >= 0 && npos > header.getSequenceDictionary().getSequence(nid).getSequenceLength()) {
+    if (nid >= 0 && npos > sequenceDictionary.getSequenceLength(nid)) {
       return NO_START; // Locus too large
     }
 
@@ -27,6 +27,7 @@ import org.disq_bio.disq.impl.file.NioFileSystemWrapper;
 import org.disq_bio.disq.impl.formats.SerializableHadoopConfiguration;
 import org.disq_bio.disq.impl.formats.bgzf.BgzfBlockGuesser;
 import org.disq_bio.disq.impl.formats.bgzf.BgzfBlockSource;
+import org.disq_bio.disq.impl.formats.sam.CompactSequenceDictionary;
 import scala.Tuple2;
 
 /**
@@ -88,6 +89,8 @@ public class BamRecordGuesserChecker implements Serializable {
   public JavaPairRDD<Long, RecordStartResult> check(
       JavaSparkContext jsc, String path, int splitSize, SBIIndex sbiIndex) throws IOException {
     SAMFileHeader header = HtsjdkReadsRddStorage.makeDefault(jsc).read(path).getHeader();
+    CompactSequenceDictionary sequenceDictionary =
+        CompactSequenceDictionary.fromSequenceDictionary(header.getSequenceDictionary());
 
     Broadcast<SBIIndex> indexBroadcast = jsc.broadcast(sbiIndex);
 
@@ -103,7 +106,7 @@ public class BamRecordGuesserChecker implements Serializable {
                   long[] virtualOffsets = index.getVirtualOffsets();
                   try (SeekableStream in = fileSystemWrapper.open(confSer.getConf(), path)) {
                     BamRecordGuesser bamRecordGuesser =
-                        new BamRecordGuesser(in, header.getSequenceDictionary().size(), header);
+                        new BamRecordGuesser(in, sequenceDictionary);
                     List<Tuple2<Long, RecordStartResult>> mismatches = new ArrayList<>();
                     while (bgzfBlockIterator.hasNext()) {
                       BgzfBlockGuesser.BgzfBlock block = bgzfBlockIterator.next();
@@ -6,6 +6,7 @@ import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.util.BlockCompressedStreamConstants;
 import java.io.IOException;
 import java.io.OutputStream;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.api.java.function.PairFunction;
@@ -15,6 +16,7 @@ import org.disq_bio.disq.impl.file.FileSystemWrapper;
 import org.disq_bio.disq.impl.file.HadoopFileSystemWrapper;
 import org.disq_bio.disq.impl.file.Merger;
 import org.disq_bio.disq.impl.formats.sam.AbstractSamSink;
+import org.disq_bio.disq.impl.formats.sam.LazySamFileHeader;
 import scala.Tuple2;
 
 /**
@@ -38,11 +40,11 @@ public class BamSink extends AbstractSamSink {
       String tempPartsDirectory)
       throws IOException {
 
-    Broadcast<SAMFileHeader> headerBroadcast = jsc.broadcast(header);
+    Broadcast<LazySamFileHeader> headerBroadcast = jsc.broadcast(LazySamFileHeader.of(header));
     reads
         .mapPartitions(
             readIterator -> {
-              HeaderlessBamOutputFormat.setHeader(headerBroadcast.getValue());
+              HeaderlessBamOutputFormat.setHeader(headerBroadcast.getValue().getHeader());
               return readIterator;
             })
         .mapToPair(
@@ -54,17 +56,26 @@ public class BamSink extends AbstractSamSink {
             HeaderlessBamOutputFormat.class,
             jsc.hadoopConfiguration());
 
-    String headerFile = tempPartsDirectory + "/header";
-    try (OutputStream out = fileSystemWrapper.create(jsc.hadoopConfiguration(), headerFile)) {
+    writeHeaderAndTerminator(jsc.hadoopConfiguration(), tempPartsDirectory, header);
+    new Merger().mergeParts(jsc.hadoopConfiguration(), tempPartsDirectory, path);
+    fileSystemWrapper.delete(jsc.hadoopConfiguration(), tempPartsDirectory);
+  }
+
+  /**
+   * Write header and terminator files to a directory of headerless BAM parts, so that merging the
+   * directory produces a complete BAM file.
+   */
+  public static void writeHeaderAndTerminator(
+      Configuration conf, String partsDirectory, SAMFileHeader header) throws IOException {
+    FileSystemWrapper fileSystemWrapper = new HadoopFileSystemWrapper();
+    String headerFile = partsDirectory + "/header";
+    try (OutputStream out = fileSystemWrapper.create(conf, headerFile)) {
       BAMFileWriter.writeHeader(out, header);
     }
 
-    String terminatorFile = tempPartsDirectory + "/terminator";
-    try (OutputStream out = fileSystemWrapper.create(jsc.hadoopConfiguration(), terminatorFile)) {
+    String terminatorFile = partsDirectory + "/terminator";
+    try (OutputStream out = fileSystemWrapper.create(conf, terminatorFile)) {
       out.write(BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK);
     }
-
-    new Merger().mergeParts(jsc.hadoopConfiguration(), tempPartsDirectory, path);
-    fileSystemWrapper.delete(jsc.hadoopConfiguration(), tempPartsDirectory);
   }
 }
@@ -3,7 +3,6 @@ package org.disq_bio.disq.impl.formats.bam;
 import htsjdk.samtools.BAMFileReader;
 import htsjdk.samtools.Chunk;
 import htsjdk.samtools.QueryInterval;
-import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMFileSpan;
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.SBIIndex;
@@ -16,22 +15,27 @@ import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.Locatable;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.api.java.function.FlatMapFunction;
-import org.apache.spark.broadcast.Broadcast;
 import org.disq_bio.disq.HtsjdkReadsRdd;
+import org.disq_bio.disq.HtsjdkReadsTraversalParameters;
 import org.disq_bio.disq.impl.file.FileSystemWrapper;
 import org.disq_bio.disq.impl.file.PathChunk;
+import org.disq_bio.disq.impl.file.PathChunkRdd;
+import org.disq_bio.disq.impl.file.PathSplit;
 import org.disq_bio.disq.impl.file.PathSplitSource;
 import org.disq_bio.disq.impl.formats.SerializableHadoopConfiguration;
 import org.disq_bio.disq.impl.formats.bgzf.BgzfBlockGuesser;
 import org.disq_bio.disq.impl.formats.bgzf.BgzfBlockSource;
 import org.disq_bio.disq.impl.formats.sam.AbstractBinarySamSource;
 import org.disq_bio.disq.impl.formats.sam.SamFormat;
+import org.disq_bio.disq.impl.formats.sam.SplitBoundaryKey;
 
 /**
  * Load reads from a BAM file on Spark.
@@ -58,31 +62,34 @@ public class BamSource extends AbstractBinarySamSource implements Serializable {
   }
 
   @Override
-  protected JavaRDD<PathChunk> getPathChunks(
+  protected <T extends Locatable> JavaRDD<PathChunk> getPathChunks(
       JavaSparkContext jsc,
       String path,
       int splitSize,
+      HtsjdkReadsTraversalParameters<T> traversalParameters,
       ValidationStringency stringency,
-      String referenceSourcePath)
+      String referenceSourcePath,
+      SplitBoundaryKey splitBoundaryKey)
       throws IOException {
 
+    if (splitBoundaryKey != null) {
+      return getKeyAlignedPathChunks(jsc, path, splitSize, splitBoundaryKey);
+    }
+
     String sbiPath = path + SBIIndex.FILE_EXTENSION;
     if (fileSystemWrapper.exists(jsc.hadoopConfiguration(), sbiPath)) {
       try (SeekableStream sbiStream = fileSystemWrapper.open(jsc.hadoopConfiguration(), sbiPath)) {
         SBIIndex sbiIndex = SBIIndex.load(sbiStream);
-        Broadcast<SBIIndex> sbiIndexBroadcast = jsc.broadcast(sbiIndex);
-        pathSplitSource
-            .getPathSplits(jsc, path, splitSize)
-            .flatMap(
-                pathSplit -> {
-                  SBIIndex index = sbiIndexBroadcast.getValue();
-                  Chunk chunk = index.getChunk(pathSplit.getStart(), pathSplit.getEnd());
-                  if (chunk == null) {
-                    return Collections.emptyIterator();
-                  } else {
-                    return Collections.singleton(new PathChunk(path, chunk)).iterator();
-                  }
-                });
+        // the index gives exact record boundaries, so plan the partitions on the driver, which
+        // allows each one to be given its preferred locations
+        List<PathChunk> pathChunks = new ArrayList<>();
+        for (PathSplit pathSplit : pathSplitSource.listPathSplits(jsc, path, splitSize)) {
+          Chunk chunk = sbiIndex.getChunk(pathSplit.getStart(), pathSplit.getEnd());
+          if (chunk != null) {
+            pathChunks.add(new PathChunk(path, chunk));
+          }
+        }
+        return PathChunkRdd.create(jsc, fileSystemWrapper, pathChunks);
       }
     }
 
@@ -94,8 +101,7 @@ public class BamSource extends AbstractBinarySamSource implements Serializable {
             (FlatMapFunction<Iterator<BgzfBlockGuesser.BgzfBlock>, PathChunk>)
                 bgzfBlocks -> {
                   Configuration conf = confSer.getConf();
-                  PathChunk pathChunk =
-                      getFirstReadInPartition(conf, bgzfBlocks, stringency, referenceSourcePath);
+                  PathChunk pathChunk = getFirstReadInPartition(conf, bgzfBlocks);
                   if (pathChunk == null) {
                     return Collections.emptyIterator();
                   }
@@ -103,16 +109,43 @@ public class BamSource extends AbstractBinarySamSource implements Serializable {
                 });
   }
 
+  /**
+   * Find one chunk per split, where the boundaries have been moved so that reads with equal keys
+   * are never in different partitions. Each split finds both its own boundaries, so there is one
+   * partition per split (some of which may be empty).
+   */
+  private JavaRDD<PathChunk> getKeyAlignedPathChunks(
+      JavaSparkContext jsc, String path, int splitSize, SplitBoundaryKey splitBoundaryKey)
+      throws IOException {
+    SerializableHadoopConfiguration confSer =
+        new SerializableHadoopConfiguration(jsc.hadoopConfiguration());
+    return pathSplitSource
+        .getPathSplits(jsc, path, splitSize)
+        .flatMap(
+            (FlatMapFunction<PathSplit, PathChunk>)
+                pathSplit -> {
+                  Configuration conf = confSer.getConf();
+                  try (BamSplitBoundaryFinder boundaryFinder =
+                      new BamSplitBoundaryFinder(
+                          fileSystemWrapper, conf, pathSplit.getPath(), splitBoundaryKey)) {
+                    long start = boundaryFinder.findBoundary(pathSplit.getStart());
+                    long end = boundaryFinder.findBoundary(pathSplit.getEnd());
+                    if (start >= end) {
+                      return Collections.emptyIterator();
+                    }
+                    return Collections.singleton(
+                            new PathChunk(pathSplit.getPath(), new Chunk(start, end)))
+                        .iterator();
+                  }
+                });
+  }
+
   /**
    * @return the {@link PathChunk} for the partition, or null if there is none (e.g. in the case of
    *     long reads, and/or very small partitions).
    */
-  private <T extends Locatable> PathChunk getFirstReadInPartition(
-      Configuration conf,
-      Iterator<BgzfBlockGuesser.BgzfBlock> bgzfBlocks,
-      ValidationStringency stringency,
-      String referenceSourcePath)
-      throws IOException {
+  private PathChunk getFirstReadInPartition(
+      Configuration conf, Iterator<BgzfBlockGuesser.BgzfBlock> bgzfBlocks) throws IOException {
     PathChunk pathChunk = null;
     BamRecordGuesser bamRecordGuesser = null;
     try {
@@ -122,11 +155,7 @@ public class BamSource extends AbstractBinarySamSource implements Serializable {
         BgzfBlockGuesser.BgzfBlock block = bgzfBlocks.next();
         if (partitionPath == null) { // assume each partition comes from only a single file path
           partitionPath = block.path;
-          try (SamReader samReader =
-              createSamReader(conf, partitionPath, stringency, referenceSourcePath)) {
-            SAMFileHeader header = samReader.getFileHeader();
-            bamRecordGuesser = getBamRecordGuesser(conf, partitionPath, header);
-          }
+          bamRecordGuesser = getBamRecordGuesser(conf, partitionPath);
         }
         for (int up = 0; up < block.uSize; up++) {
           index++;
@@ -152,10 +181,10 @@ public class BamSource extends AbstractBinarySamSource implements Serializable {
     return pathChunk;
   }
 
-  private BamRecordGuesser getBamRecordGuesser(
-      Configuration conf, String path, SAMFileHeader header) throws IOException {
+  private BamRecordGuesser getBamRecordGuesser(Configuration conf, String path) throws IOException {
+    // read the sequence dictionary from the binary BAM header, rather than parsing the header text
     SeekableStream ss = fileSystemWrapper.open(conf, path);
-    return new BamRecordGuesser(ss, header.getSequenceDictionary().size(), header);
+    return new BamRecordGuesser(ss);
   }
 
   private BAMFileReader getUnderlyingBamFileReader(SamReader samReader) {
@@ -170,13 +199,25 @@ public class BamSource extends AbstractBinarySamSource implements Serializable {
   }
 
   @Override
-  protected CloseableIterator<SAMRecord> getIterator(SamReader samReader, SAMFileSpan chunks) {
+  protected CloseableIterator<SAMRecord> getIterator(
+      Configuration conf,
+      String path,
+      String referenceSourcePath,
+      SamReader samReader,
+      SAMFileSpan chunks) {
     return getUnderlyingBamFileReader(samReader).getIterator(chunks);
   }
 
   @Override
   protected CloseableIterator<SAMRecord> createIndexIterator(
-      SamReader samReader, QueryInterval[] intervals, boolean contained, long[] filePointers) {
+      Configuration conf,
+      String path,
+      String referenceSourcePath,
+      SamReader samReader,
+      SAMFileSpan splitSpan,
+      QueryInterval[] intervals,
+      boolean contained,
+      long[] filePointers) {
     return getUnderlyingBamFileReader(samReader)
         .createIndexIterator(intervals, contained, filePointers);
   }
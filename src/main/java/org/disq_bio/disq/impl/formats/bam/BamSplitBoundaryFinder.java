@@ -0,0 +1,208 @@
+package org.disq_bio.disq.impl.formats.bam;
+
+import htsjdk.samtools.SAMFormatException;
+import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.apache.hadoop.conf.Configuration;
+import org.disq_bio.disq.impl.file.FileSystemWrapper;
+import org.disq_bio.disq.impl.formats.bgzf.BgzfBlockGuesser;
+import org.disq_bio.disq.impl.formats.sam.CompactSequenceDictionary;
+import org.disq_bio.disq.impl.formats.sam.SplitBoundaryKey;
+
+/**
+ * Finds partition boundaries in a BAM file that never separate records with equal keys (see {@link
+ * SplitBoundaryKey}).
+ *
+ * <p>The boundary for a file position is found by guessing the first record that starts in a BGZF
+ * block at or after the position, then moving forward past every record that has the same key as
+ * it. Since the boundary depends only on the position, the boundaries computed independently for
+ * the end of one split and the start of the next are identical, so partitions neither overlap nor
+ * leave gaps. Keys are compared on the raw record bytes, so records are not decoded.
+ *
+ * <p>For {@link SplitBoundaryKey#COORDINATE}, a boundary whose first record is unplaced is not
+ * moved, so the unplaced reads at the end of a file are split between partitions in the usual way.
+ */
+class BamSplitBoundaryFinder implements Closeable {
+
+  private static final int MAX_READ_SIZE = 10_000_000;
+
+  private static final int REF_ID_OFFSET = 0; // offsets within a record, after block_size
+  private static final int L_READ_NAME_OFFSET = 8;
+  private static final int READ_NAME_OFFSET = 32;
+
+  private final SplitBoundaryKey splitBoundaryKey;
+  private final long fileLength;
+  private final BlockCompressedInputStream uncompressedBytes;
+  private final long firstRecordStart;
+  private final BamRecordGuesser bamRecordGuesser;
+  private final BgzfBlockGuesser bgzfBlockGuesser;
+
+  private final byte[] blockSizeBytes = new byte[4];
+  private byte[] record = new byte[1024];
+  private byte[] key = new byte[256];
+
+  BamSplitBoundaryFinder(
+      FileSystemWrapper fileSystemWrapper,
+      Configuration conf,
+      String path,
+      SplitBoundaryKey splitBoundaryKey)
+      throws IOException {
+    this.splitBoundaryKey = splitBoundaryKey;
+    this.fileLength = fileSystemWrapper.getFileLength(conf, path);
+    // the guessers seek their own streams, so each gets a separate one
+    this.uncompressedBytes = new BlockCompressedInputStream(fileSystemWrapper.open(conf, path));
+    CompactSequenceDictionary sequenceDictionary =
+        CompactSequenceDictionary.fromBamHeader(uncompressedBytes);
+    this.firstRecordStart = uncompressedBytes.getFilePointer();
+    this.bamRecordGuesser =
+        new BamRecordGuesser(fileSystemWrapper.open(conf, path), sequenceDictionary);
+    this.bgzfBlockGuesser = new BgzfBlockGuesser(fileSystemWrapper.open(conf, path), path);
+  }
+
+  /**
+   * @param pos a position in the (compressed) file, such as the start or end of a split
+   * @return the virtual file offset of the first record at the boundary for the given position, or
+   *     a virtual offset at the end of the file if there are no records after the boundary
+   */
+  long findBoundary(long pos) throws IOException {
+    if (pos == 0) {
+      return firstRecordStart;
+    }
+    if (pos >= fileLength) {
+      return endOfFile();
+    }
+    long recordStart = guessNextRecordStart(pos);
+    if (recordStart == -1) {
+      return endOfFile();
+    }
+    return skipRecordsWithSameKey(recordStart);
+  }
+
+  private long endOfFile() {
+    return BlockCompressedFilePointerUtil.makeFilePointer(fileLength);
+  }
+
+  /** @return the first record starting in a BGZF block at or after pos, or -1 if none is found */
+  private long guessNextRecordStart(long pos) {
+    int index = 0; // limit search to MAX_READ_SIZE positions
+    long p = pos;
+    while (p < fileLength) {
+      BgzfBlockGuesser.BgzfBlock block = bgzfBlockGuesser.guessNextBGZFPos(p, fileLength);
+      if (block == null) {
+        return -1;
+      }
+      for (int up = 0; up < block.uSize; up++) {
+        index++;
+        if (index > MAX_READ_SIZE) {
+          return -1;
+        }
+        long vPos = BlockCompressedFilePointerUtil.makeFilePointer(block.pos, up);
+        if (bamRecordGuesser.checkRecordStart(vPos)) {
+          return vPos;
+        }
+      }
+      p = block.pos + block.cSize;
+    }
+    return -1;
+  }
+
+  private long skipRecordsWithSameKey(long recordStart) throws IOException {
+    uncompressedBytes.seek(recordStart);
+    int keyLength = readRecordKey();
+    if (keyLength < 0) {
+      return endOfFile();
+    }
+    if (splitBoundaryKey == SplitBoundaryKey.COORDINATE && isUnplaced()) {
+      // unplaced reads are at the end of a coordinate sorted file, and have no order to keep, so
+      // the boundary is at this record rather than after all of them
+      return recordStart;
+    }
+    if (key.length < keyLength) {
+      key = new byte[keyLength];
+    }
+    System.arraycopy(record, keyOffset(), key, 0, keyLength);
+    while (true) {
+      long vPos = uncompressedBytes.getFilePointer();
+      int length = readRecordKey();
+      if (length < 0) {
+        return endOfFile();
+      }
+      if (length != keyLength || !keyEquals(keyLength)) {
+        return vPos;
+      }
+    }
+  }
+
+  private boolean isUnplaced() {
+    return ByteBuffer.wrap(record, REF_ID_OFFSET, 4).order(ByteOrder.LITTLE_ENDIAN).getInt() == -1;
+  }
+
+  private boolean keyEquals(int keyLength) {
+    int offset = keyOffset();
+    for (int i = 0; i < keyLength; i++) {
+      if (record[offset + i] != key[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Read the next record into {@link #record}.
+   *
+   * @return the length of the record's key, or -1 at the end of the file
+   */
+  private int readRecordKey() throws IOException {
+    int b0 = uncompressedBytes.read();
+    if (b0 < 0) {
+      return -1;
+    }
+    blockSizeBytes[0] = (byte) b0;
+    readFully(blockSizeBytes, 1, 3);
+    int blockSize = ByteBuffer.wrap(blockSizeBytes).order(ByteOrder.LITTLE_ENDIAN).getInt();
+    if (blockSize < READ_NAME_OFFSET || blockSize > MAX_READ_SIZE) {
+      throw new SAMFormatException("Invalid BAM record size: " + blockSize);
+    }
+    if (record.length < blockSize) {
+      record = new byte[Math.max(blockSize, record.length * 2)];
+    }
+    readFully(record, 0, blockSize);
+    switch (splitBoundaryKey) {
+      case COORDINATE:
+        return 8; // refID and pos
+      case QUERYNAME:
+        return (record[L_READ_NAME_OFFSET] & 0xff) - 1; // excluding the trailing NUL
+      default:
+        throw new IllegalArgumentException("Unsupported split boundary key: " + splitBoundaryKey);
+    }
+  }
+
+  private int keyOffset() {
+    return splitBoundaryKey == SplitBoundaryKey.QUERYNAME ? READ_NAME_OFFSET : REF_ID_OFFSET;
+  }
+
+  private void readFully(byte[] buf, int offset, int length) throws IOException {
+    int n = 0;
+    while (n < length) {
+      int count = uncompressedBytes.read(buf, offset + n, length - n);
+      if (count < 0) {
+        throw new SAMFormatException("Premature EOF while reading BAM record");
+      }
+      n += count;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      uncompressedBytes.close();
+      bamRecordGuesser.close();
+    } finally {
+      bgzfBlockGuesser.close();
+    }
+  }
+}
@@ -23,7 +23,7 @@ import org.disq_bio.disq.HtsjdkReadsRdd;
  */
 public class HeaderlessBamOutputFormat extends FileOutputFormat<Void, SAMRecord> {
 
-  static class BamRecordWriter extends RecordWriter<Void, SAMRecord> {
+  public static class BamRecordWriter extends RecordWriter<Void, SAMRecord> {
 
     private final OutputStream out;
     private final BinaryCodec binaryCodec;
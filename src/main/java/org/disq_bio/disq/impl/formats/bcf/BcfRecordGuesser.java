@@ -0,0 +1,145 @@
+package org.disq_bio.disq.impl.formats.bcf;
+
+import htsjdk.samtools.seekablestream.SeekableStream;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.variant.vcf.VCFContigHeaderLine;
+import htsjdk.variant.vcf.VCFHeader;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import org.apache.hadoop.io.IOUtils;
+
+/**
+ * Checks whether a BCF record starts at a given virtual file offset, by checking that the fixed
+ * fields of the record, and those of the records following it, are consistent with the header.
+ */
+class BcfRecordGuesser implements Closeable {
+
+  private static final int RECORDS_TO_CHECK = 10;
+
+  private static final int BCF_TYPE_CHAR = 7;
+
+  private final BlockCompressedInputStream uncompressedBytes;
+  private final int[] contigLengths;
+  private final int sampleCount;
+
+  private final ByteBuffer buf = ByteBuffer.allocate(33).order(ByteOrder.LITTLE_ENDIAN);
+
+  public BcfRecordGuesser(SeekableStream ss, VCFHeader header) {
+    this.uncompressedBytes = new BlockCompressedInputStream(ss);
+    List<VCFContigHeaderLine> contigLines = header.getContigLines();
+    this.contigLengths = new int[contigLines.size()];
+    for (int i = 0; i < contigLengths.length; i++) {
+      contigLengths[i] = contigLines.get(i).getSAMSequenceRecord().getSequenceLength();
+    }
+    this.sampleCount = header.getNGenotypeSamples();
+  }
+
+  public boolean checkRecordStart(long vPos) {
+    return checkRecordStart(vPos, 0);
+  }
+
+  private boolean checkRecordStart(long vPos, int successfulRecords) {
+    if (successfulRecords == RECORDS_TO_CHECK) {
+      return true;
+    }
+    try {
+      long nextVPos = checkRecordStartInternal(vPos);
+      // recursive call stack is up to `RECORDS_TO_CHECK` calls deep, which is OK
+      return nextVPos != -1 && checkRecordStart(nextVPos, successfulRecords + 1);
+    } catch (EOFException e) {
+      // EOF is OK if at least one record has been successfully checked (e.g. for the last record)
+      return successfulRecords > 0;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    uncompressedBytes.close();
+  }
+
+  /** @return the virtual file offset of the next record, or -1 if this is not a record start */
+  private long checkRecordStartInternal(long vPos) throws IOException {
+    // The fixed fields at the start of a BCF record are as follows
+    //
+    // Field          Length (bytes)   Cumulative offset (bytes)
+    // -------------- ---------------- -------------------------
+    // l_shared       4                0
+    // l_indiv        4                4
+    // CHROM          4                8
+    // POS            4                12
+    // rlen           4                16
+    // QUAL           4                20
+    // n_allele_info  4                24
+    // n_fmt_sample   4                28
+    // ID             typed string     32
+
+    seek(uncompressedBytes, vPos);
+    readFully(uncompressedBytes, buf.array(), 0, 33);
+
+    long sharedLength = buf.getInt(0) & 0xffffffffL;
+    long indivLength = buf.getInt(4) & 0xffffffffL;
+    int chrom = buf.getInt(8);
+    int pos = buf.getInt(12);
+    int rlen = buf.getInt(16);
+    int alleleCount = buf.getInt(24) >>> 16;
+    int formatCount = buf.getInt(28) >>> 24;
+    int recordSampleCount = buf.getInt(28) & 0xffffff;
+    int idType = buf.get(32) & 0x0f;
+
+    if (chrom < 0 || chrom >= contigLengths.length || pos < -1 || rlen < 0) {
+      return -1;
+    }
+    if (contigLengths[chrom] > 0 && pos > contigLengths[chrom]) {
+      return -1; // Locus too large
+    }
+    if (recordSampleCount != sampleCount || (formatCount == 0) != (indivLength == 0)) {
+      return -1;
+    }
+    if (alleleCount == 0 || idType != BCF_TYPE_CHAR) {
+      return -1;
+    }
+    // the shared fields must at least hold the ID, one typed byte for each allele, and FILTER
+    if (sharedLength < 24 + 1 + alleleCount + 1) {
+      return -1;
+    }
+
+    seek(uncompressedBytes, vPos);
+    IOUtils.skipFully(uncompressedBytes, 8 + sharedLength + indivLength);
+    return uncompressedBytes.getPosition();
+  }
+
+  // Modifies BlockCompressedInputStream#seek to throw EOFException when an attempting to seek past
+  // EOF
+  private static void seek(BlockCompressedInputStream blockCompressedInputStream, long pos)
+      throws IOException {
+    try {
+      blockCompressedInputStream.seek(pos);
+    } catch (IOException e) {
+      if (e.getMessage().startsWith("Invalid file pointer")) {
+        throw new EOFException(e.getMessage());
+      }
+      throw e;
+    }
+  }
+
+  // Duplicate of method in Hadoop IOUtils except it throws EOFException rather than IOException for
+  // EOF
+  private static void readFully(InputStream in, byte buf[], int off, int len) throws IOException {
+    int toRead = len;
+    while (toRead > 0) {
+      int ret = in.read(buf, off, toRead);
+      if (ret < 0) {
+        throw new EOFException("Premature EOF from inputStream");
+      }
+      toRead -= ret;
+      off += ret;
+    }
+  }
+}
@@ -0,0 +1,125 @@
+package org.disq_bio.disq.impl.formats.bcf;
+
+import htsjdk.samtools.seekablestream.SeekableStream;
+import htsjdk.samtools.util.AbstractIterator;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.tribble.readers.PositionalBufferedStream;
+import htsjdk.variant.bcf2.BCF2Codec;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFHeader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.apache.hadoop.io.IOUtils;
+
+/**
+ * Iterates over the BCF records that start in a range of virtual file offsets. Each record is read
+ * in full from the BGZF stream before it is decoded, so the virtual file offset of the next record
+ * is always known exactly.
+ */
+class BcfRecordIterator extends AbstractIterator<VariantContext>
+    implements CloseableIterator<VariantContext> {
+
+  private final BlockCompressedInputStream in;
+  private final long virtualEnd;
+  private final BCF2Codec codec = new BCF2Codec();
+  private final RecordInputStream recordIn = new RecordInputStream();
+  private final PositionalBufferedStream codecIn = new PositionalBufferedStream(recordIn);
+  private final VCFHeader header;
+
+  /**
+   * @param ss the stream for the whole BCF file, which is closed when iteration finishes
+   * @param virtualStart the virtual file offset of the first record to return
+   * @param virtualEnd records starting at or after this virtual file offset are not returned
+   */
+  public BcfRecordIterator(SeekableStream ss, long virtualStart, long virtualEnd)
+      throws IOException {
+    this.in = new BlockCompressedInputStream(ss);
+    this.virtualEnd = virtualEnd;
+    try {
+      this.header = (VCFHeader) codec.readHeader(new PositionalBufferedStream(in)).getHeaderValue();
+      in.seek(virtualStart);
+    } catch (IOException | RuntimeException e) {
+      in.close();
+      throw e;
+    }
+  }
+
+  public VCFHeader getHeader() {
+    return header;
+  }
+
+  @Override
+  protected VariantContext advance() {
+    try {
+      if (in.getFilePointer() >= virtualEnd || !recordIn.readRecord(in)) {
+        close();
+        return null;
+      }
+      return codec.decode(codecIn);
+    } catch (IOException e) {
+      throw new RuntimeIOException(e);
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      in.close();
+    } catch (IOException e) {
+      throw new RuntimeIOException(e);
+    }
+  }
+
+  /**
+   * An input stream over the bytes of a single record, which is refilled before each record is
+   * decoded. The codec reads exactly one record's bytes, so this stream is never read past its end.
+   */
+  private static class RecordInputStream extends InputStream {
+    private final ByteBuffer lengths = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+    private byte[] record = new byte[64 * 1024];
+    private int length;
+    private int position;
+
+    /** @return false if the end of the stream was reached before a record */
+    boolean readRecord(InputStream in) throws IOException {
+      int first = in.read();
+      if (first < 0) {
+        return false;
+      }
+      lengths.put(0, (byte) first);
+      IOUtils.readFully(in, lengths.array(), 1, 7);
+      long recordLength = 8 + (lengths.getInt(0) & 0xffffffffL) + (lengths.getInt(4) & 0xffffffffL);
+      if (recordLength > Integer.MAX_VALUE) {
+        throw new IOException("BCF record too long: " + recordLength);
+      }
+      length = (int) recordLength;
+      if (record.length < length) {
+        record = new byte[Math.max(length, record.length * 2)];
+      }
+      System.arraycopy(lengths.array(), 0, record, 0, 8);
+      IOUtils.readFully(in, record, 8, length - 8);
+      position = 0;
+      return true;
+    }
+
+    @Override
+    public int read() {
+      return position < length ? record[position++] & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (position == length) {
+        return len == 0 ? 0 : -1;
+      }
+      int n = Math.min(len, length - position);
+      System.arraycopy(record, position, b, off, n);
+      position += n;
+      return n;
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package org.disq_bio.disq.impl.formats.bcf;
+
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.samtools.util.BlockCompressedStreamConstants;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.writer.VariantContextWriter;
+import htsjdk.variant.variantcontext.writer.VariantContextWriterBuilder;
+import htsjdk.variant.vcf.VCFHeader;
+import java.io.IOException;
+import java.io.OutputStream;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.api.java.function.PairFunction;
+import org.apache.spark.broadcast.Broadcast;
+import org.disq_bio.disq.HtsjdkVariantsRdd;
+import org.disq_bio.disq.impl.file.FileSystemWrapper;
+import org.disq_bio.disq.impl.file.HadoopFileSystemWrapper;
+import org.disq_bio.disq.impl.file.Merger;
+import org.disq_bio.disq.impl.formats.vcf.AbstractVcfSink;
+import scala.Tuple2;
+
+/**
+ * Write variants to a single BCF file on Spark. This is done by writing to multiple headerless BCF
+ * files in parallel, then merging the resulting files into a single BCF file.
+ *
+ * @see BcfSource
+ * @see HtsjdkVariantsRdd
+ */
+public class BcfSink extends AbstractVcfSink {
+
+  private FileSystemWrapper fileSystemWrapper = new HadoopFileSystemWrapper();
+
+  @Override
+  public void save(
+      JavaSparkContext jsc,
+      VCFHeader vcfHeader,
+      JavaRDD<VariantContext> variants,
+      String path,
+      String tempPartsDirectory,
+      boolean writeTbiFile)
+      throws IOException {
+    Broadcast<VCFHeader> vcfHeaderBroadcast = jsc.broadcast(vcfHeader);
+    variants
+        .mapPartitions(
+            variantIterator -> {
+              HeaderlessBcfOutputFormat.setHeader(vcfHeaderBroadcast.getValue());
+              return variantIterator;
+            })
+        .mapToPair(
+            (PairFunction<VariantContext, Void, VariantContext>)
+                variantContext -> new Tuple2<>(null, variantContext))
+        .saveAsNewAPIHadoopFile(
+            tempPartsDirectory,
+            Void.class,
+            VariantContext.class,
+            HeaderlessBcfOutputFormat.class,
+            jsc.hadoopConfiguration());
+
+    writeHeaderAndTerminator(jsc.hadoopConfiguration(), tempPartsDirectory, vcfHeader);
+    new Merger().mergeParts(jsc.hadoopConfiguration(), tempPartsDirectory, path);
+    fileSystemWrapper.delete(jsc.hadoopConfiguration(), tempPartsDirectory);
+  }
+
+  /**
+   * Write header and terminator files to a directory of headerless BCF parts, so that merging the
+   * directory produces a complete BCF file.
+   */
+  public static void writeHeaderAndTerminator(
+      Configuration conf, String partsDirectory, VCFHeader vcfHeader) throws IOException {
+    FileSystemWrapper fileSystemWrapper = new HadoopFileSystemWrapper();
+    String headerFile = partsDirectory + "/header";
+    try (OutputStream headerOut = fileSystemWrapper.create(conf, headerFile)) {
+      BlockCompressedOutputStream out = new BlockCompressedOutputStream(headerOut, null);
+      VariantContextWriter writer =
+          new VariantContextWriterBuilder().clearOptions().setOutputBCFStream(out).build();
+      writer.writeHeader(vcfHeader);
+      out.flush(); // don't close BlockCompressedOutputStream since we don't want to write the
+      // terminator after the header
+    }
+
+    String terminatorFile = partsDirectory + "/terminator";
+    try (OutputStream out = fileSystemWrapper.create(conf, terminatorFile)) {
+      out.write(BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK);
+    }
+  }
+}
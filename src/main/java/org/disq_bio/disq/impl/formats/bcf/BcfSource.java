@@ -0,0 +1,184 @@
+package org.disq_bio.disq.impl.formats.bcf;
+
+import htsjdk.samtools.Chunk;
+import htsjdk.samtools.seekablestream.SeekableStream;
+import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.Locatable;
+import htsjdk.samtools.util.OverlapDetector;
+import htsjdk.tribble.readers.PositionalBufferedStream;
+import htsjdk.variant.bcf2.BCF2Codec;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFHeader;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.api.java.function.FlatMapFunction;
+import org.apache.spark.broadcast.Broadcast;
+import org.disq_bio.disq.HtsjdkVariantsRdd;
+import org.disq_bio.disq.impl.file.FileSystemWrapper;
+import org.disq_bio.disq.impl.file.PathChunk;
+import org.disq_bio.disq.impl.formats.SerializableHadoopConfiguration;
+import org.disq_bio.disq.impl.formats.bgzf.BgzfBlockGuesser;
+import org.disq_bio.disq.impl.formats.bgzf.BgzfBlockSource;
+import org.disq_bio.disq.impl.formats.vcf.VcfLineSubsetter;
+
+/**
+ * Load variants from a BCF file on Spark. Like BAM, BCF files are block compressed, so they are
+ * split by finding the first BGZF block in each split, then the first BCF record in the block.
+ *
+ * @see BcfSink
+ * @see HtsjdkVariantsRdd
+ */
+public class BcfSource implements Serializable {
+
+  private static final int MAX_RECORD_SIZE = 10_000_000;
+
+  private final FileSystemWrapper fileSystemWrapper;
+  private final BgzfBlockSource bgzfBlockSource;
+
+  public BcfSource(FileSystemWrapper fileSystemWrapper) {
+    this.fileSystemWrapper = fileSystemWrapper;
+    this.bgzfBlockSource = new BgzfBlockSource(fileSystemWrapper);
+  }
+
+  public VCFHeader getFileHeader(JavaSparkContext jsc, String path) throws IOException {
+    Configuration conf = jsc.hadoopConfiguration();
+    String firstPath =
+        fileSystemWrapper.isDirectory(conf, path)
+            ? fileSystemWrapper.firstFileInDirectory(conf, path)
+            : path;
+    try (SeekableStream in = fileSystemWrapper.open(conf, firstPath)) {
+      return readHeader(in);
+    }
+  }
+
+  private static VCFHeader readHeader(SeekableStream in) {
+    BlockCompressedInputStream uncompressedIn = new BlockCompressedInputStream(in);
+    return (VCFHeader)
+        new BCF2Codec().readHeader(new PositionalBufferedStream(uncompressedIn)).getHeaderValue();
+  }
+
+  /**
+   * @param intervals if not null, only variants overlapping these intervals are returned. BCF
+   *     indexes are not used, so the whole file is read.
+   * @param subsetter if not null, used to remove samples from each variant after it is decoded
+   * @return an RDD of variants
+   */
+  public <T extends Locatable> JavaRDD<VariantContext> getVariants(
+      JavaSparkContext jsc,
+      String path,
+      int splitSize,
+      List<T> intervals,
+      VcfLineSubsetter subsetter)
+      throws IOException {
+    SerializableHadoopConfiguration confSer =
+        new SerializableHadoopConfiguration(jsc.hadoopConfiguration());
+    Broadcast<List<T>> intervalsBroadcast = intervals == null ? null : jsc.broadcast(intervals);
+
+    return getPathChunks(jsc, path, splitSize)
+        .mapPartitions(
+            (FlatMapFunction<Iterator<PathChunk>, VariantContext>)
+                pathChunks -> {
+                  if (!pathChunks.hasNext()) {
+                    return Collections.emptyIterator();
+                  }
+                  PathChunk pathChunk = pathChunks.next();
+                  if (pathChunks.hasNext()) {
+                    throw new IllegalArgumentException(
+                        "Should not have more than one path chunk per partition");
+                  }
+                  OverlapDetector<T> overlapDetector =
+                      intervalsBroadcast == null
+                          ? null
+                          : OverlapDetector.create(intervalsBroadcast.getValue());
+                  BcfRecordIterator records =
+                      new BcfRecordIterator(
+                          fileSystemWrapper.open(confSer.getConf(), pathChunk.getPath()),
+                          pathChunk.getSpan().getChunkStart(),
+                          pathChunk.getSpan().getChunkEnd());
+                  // the records iterator closes its stream when the end is reached
+                  return stream(records)
+                      .filter(vc -> overlapDetector == null || overlapDetector.overlapsAny(vc))
+                      .map(vc -> subsetter == null ? vc : subsetter.subset(vc))
+                      .iterator();
+                });
+  }
+
+  /** @return one chunk per partition, starting at the first BCF record in the partition */
+  private JavaRDD<PathChunk> getPathChunks(JavaSparkContext jsc, String path, int splitSize)
+      throws IOException {
+    SerializableHadoopConfiguration confSer =
+        new SerializableHadoopConfiguration(jsc.hadoopConfiguration());
+    return bgzfBlockSource
+        .getBgzfBlocks(jsc, path, splitSize)
+        .mapPartitions(
+            (FlatMapFunction<Iterator<BgzfBlockGuesser.BgzfBlock>, PathChunk>)
+                bgzfBlocks -> {
+                  Configuration conf = confSer.getConf();
+                  PathChunk pathChunk = getFirstRecordInPartition(conf, bgzfBlocks);
+                  if (pathChunk == null) {
+                    return Collections.emptyIterator();
+                  }
+                  return Collections.singleton(pathChunk).iterator();
+                });
+  }
+
+  /**
+   * @return the {@link PathChunk} for the partition, or null if there is none (e.g. in the case of
+   *     very large records, and/or very small partitions).
+   */
+  private PathChunk getFirstRecordInPartition(
+      Configuration conf, Iterator<BgzfBlockGuesser.BgzfBlock> bgzfBlocks) throws IOException {
+    BcfRecordGuesser bcfRecordGuesser = null;
+    try {
+      String partitionPath = null;
+      int index = 0; // limit search to MAX_RECORD_SIZE positions
+      while (bgzfBlocks.hasNext()) {
+        BgzfBlockGuesser.BgzfBlock block = bgzfBlocks.next();
+        if (partitionPath == null) { // assume each partition comes from only a single file path
+          partitionPath = block.path;
+          bcfRecordGuesser = getBcfRecordGuesser(conf, partitionPath);
+        }
+        for (int up = 0; up < block.uSize; up++) {
+          index++;
+          if (index > MAX_RECORD_SIZE) {
+            return null;
+          }
+          long vPos = BlockCompressedFilePointerUtil.makeFilePointer(block.pos, up);
+          // Read all the records that start in blocks before the end of the split. The next
+          // partition starts at the first record in the blocks after that.
+          long vEnd = BlockCompressedFilePointerUtil.makeFilePointer(block.end, 0);
+          if (bcfRecordGuesser.checkRecordStart(vPos)) {
+            block.end();
+            return new PathChunk(partitionPath, new Chunk(vPos, vEnd));
+          }
+        }
+      }
+    } finally {
+      if (bcfRecordGuesser != null) {
+        bcfRecordGuesser.close();
+      }
+    }
+    return null;
+  }
+
+  private BcfRecordGuesser getBcfRecordGuesser(Configuration conf, String path) throws IOException {
+    VCFHeader header;
+    try (SeekableStream headerIn = fileSystemWrapper.open(conf, path)) {
+      header = readHeader(headerIn);
+    }
+    return new BcfRecordGuesser(fileSystemWrapper.open(conf, path), header);
+  }
+
+  private static <T> Stream<T> stream(final Iterator<T> iterator) {
+    return StreamSupport.stream(((Iterable<T>) () -> iterator).spliterator(), false);
+  }
+}
@@ -0,0 +1,81 @@
+package org.disq_bio.disq.impl.formats.bcf;
+
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.writer.VariantContextWriter;
+import htsjdk.variant.variantcontext.writer.VariantContextWriterBuilder;
+import htsjdk.variant.vcf.VCFContigHeaderLine;
+import htsjdk.variant.vcf.VCFHeader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.disq_bio.disq.HtsjdkVariantsRdd;
+
+/**
+ * An output format for writing {@link VariantContext} objects to BCF files that don't have a header
+ * (or terminator), so they can be merged into a single file easily. Files do not have the usual
+ * ".bcf" extension since they are not complete BCF files. This class should not be used directly.
+ *
+ * @see HtsjdkVariantsRdd
+ */
+public class HeaderlessBcfOutputFormat extends FileOutputFormat<Void, VariantContext> {
+
+  public static class BcfRecordWriter extends RecordWriter<Void, VariantContext> {
+
+    private final OutputStream out;
+    private final BlockCompressedOutputStream compressedOut;
+    private final VariantContextWriter variantContextWriter;
+    private final Set<String> contigs = new HashSet<>();
+
+    public BcfRecordWriter(Configuration conf, Path file, VCFHeader header) throws IOException {
+      for (VCFContigHeaderLine contigLine : header.getContigLines()) {
+        contigs.add(contigLine.getID());
+      }
+      this.out = file.getFileSystem(conf).create(file);
+      this.compressedOut = new BlockCompressedOutputStream(out, null);
+      this.variantContextWriter =
+          new VariantContextWriterBuilder()
+              .clearOptions()
+              .setOutputBCFStream(compressedOut)
+              .build();
+      // set up the contig and string dictionaries for encoding, without writing the header
+      variantContextWriter.setHeader(header);
+    }
+
+    @Override
+    public void write(Void ignore, VariantContext variantContext) {
+      if (!contigs.contains(variantContext.getContig())) {
+        throw new IllegalArgumentException(
+            "Cannot write variant to BCF since its contig is not in the header: "
+                + variantContext.getContig());
+      }
+      variantContextWriter.add(variantContext);
+    }
+
+    @Override
+    public void close(TaskAttemptContext taskAttemptContext) throws IOException {
+      compressedOut.flush();
+      out.close(); // don't close BlockCompressedOutputStream since we don't want to write the
+      // terminator
+    }
+  }
+
+  private static VCFHeader header;
+
+  public static void setHeader(VCFHeader vcfHeader) {
+    header = vcfHeader;
+  }
+
+  @Override
+  public RecordWriter<Void, VariantContext> getRecordWriter(TaskAttemptContext taskAttemptContext)
+      throws IOException {
+    Path file = getDefaultWorkFile(taskAttemptContext, "");
+    return new BcfRecordWriter(taskAttemptContext.getConfiguration(), file, header);
+  }
+}
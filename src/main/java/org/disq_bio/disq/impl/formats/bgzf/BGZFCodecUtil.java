@@ -0,0 +1,28 @@
+package org.disq_bio.disq.impl.formats.bgzf;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.compress.GzipCodec;
+
+public class BGZFCodecUtil {
+
+  /**
+   * Register {@link BGZFEnhancedGzipCodec} in place of {@link GzipCodec} (for <code>.gz</code>
+   * files), and {@link BGZFCodec} (for <code>.bgz</code> files), so that Hadoop text input formats
+   * can split BGZF-compressed files.
+   */
+  public static void enableBGZFCodecs(Configuration conf) {
+    List<Class<? extends CompressionCodec>> codecs = CompressionCodecFactory.getCodecClasses(conf);
+    if (!codecs.contains(BGZFEnhancedGzipCodec.class)) {
+      codecs.remove(GzipCodec.class);
+      codecs.add(BGZFEnhancedGzipCodec.class);
+    }
+    if (!codecs.contains(BGZFCodec.class)) {
+      codecs.add(BGZFCodec.class);
+    }
+    CompressionCodecFactory.setCodecClasses(conf, new ArrayList<>(codecs));
+  }
+}
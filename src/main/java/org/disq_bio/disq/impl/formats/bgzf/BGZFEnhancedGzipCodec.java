@@ -45,14 +45,22 @@ public class BGZFEnhancedGzipCodec extends GzipCodec implements SplittableCompre
       throw new IOException("seekableIn must be an instance of " + Seekable.class.getName());
     }
     if (!BlockCompressedInputStream.isValidFile(new BufferedInputStream(seekableIn))) {
-      // data is regular gzip, not BGZF
+      // data is regular gzip, not BGZF, so it can't be split: the split at the start of the file
+      // reads all of it, and any others read nothing
       ((Seekable) seekableIn).seek(0);
       final CompressionInputStream compressionInputStream =
           createInputStream(seekableIn, decompressor);
+      final boolean firstSplit = start == 0;
       return new SplitCompressionInputStream(compressionInputStream, start, end) {
+        {
+          if (firstSplit) {
+            setEnd(Long.MAX_VALUE);
+          }
+        }
+
         @Override
         public int read(byte[] b, int off, int len) throws IOException {
-          return compressionInputStream.read(b, off, len);
+          return firstSplit ? compressionInputStream.read(b, off, len) : -1;
         }
 
         @Override
@@ -62,7 +70,7 @@ public class BGZFEnhancedGzipCodec extends GzipCodec implements SplittableCompre
 
         @Override
         public int read() throws IOException {
-          return compressionInputStream.read();
+          return firstSplit ? compressionInputStream.read() : -1;
         }
       };
     }
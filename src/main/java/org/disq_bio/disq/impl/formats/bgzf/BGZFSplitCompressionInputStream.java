@@ -30,7 +30,8 @@ public class BGZFSplitCompressionInputStream extends SplitCompressionInputStream
     super(in, start, end);
     bufferedIn = new BufferedInputStream(super.in);
     this.startingPos = super.getPos();
-    input = new BlockCompressedInputStream(bufferedIn);
+    // if no block starts in the split then the block that spans it is read by an earlier split
+    input = start < end ? new BlockCompressedInputStream(bufferedIn) : null;
     this.updatePos(false);
   }
 
@@ -69,6 +70,9 @@ public class BGZFSplitCompressionInputStream extends SplitCompressionInputStream
    *     stream while -2 represents end of block.
    */
   private int readWithinBlock(byte[] b, int off, int len) throws IOException {
+    if (input == null) {
+      return -1;
+    }
     if (input.endOfBlock()) {
       final int available = input.available(); // this will read the next block, if there is one
       processedPosition = input.getPosition() >> 16;
@@ -101,6 +105,10 @@ public class BGZFSplitCompressionInputStream extends SplitCompressionInputStream
 
   @Override
   public void close() throws IOException {
+    if (input == null) {
+      bufferedIn.close();
+      return;
+    }
     input.close();
   }
 }
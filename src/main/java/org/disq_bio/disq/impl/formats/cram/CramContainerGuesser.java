@@ -0,0 +1,225 @@
+package org.disq_bio.disq.impl.formats.cram;
+
+import htsjdk.samtools.seekablestream.SeekableStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.zip.CRC32;
+import org.apache.hadoop.io.IOUtils;
+
+/**
+ * Finds the start of the next CRAM container at or after a given file position, without using an
+ * index, by looking for bytes that parse as a container header. This allows container boundaries to
+ * be found independently for each split of a file, in parallel.
+ *
+ * <p>A candidate header must have plausible field values, its landmarks must be increasing and
+ * within the container, and its CRC32 must match. The header of the container that follows it must
+ * also be valid (or the container must end at the end of the file). Since only CRAM 3 container
+ * headers have a CRC32, guessing is only supported for CRAM 3 files.
+ */
+class CramContainerGuesser implements Closeable {
+
+  private static final int FILE_DEFINITION_LENGTH = 26; // "CRAM", major, minor, 20 byte id
+  private static final int MAX_HEADER_SIZE = 64 * 1024;
+  private static final int MAX_LANDMARKS = 10_000;
+  private static final int WINDOW_SIZE = 1024 * 1024;
+
+  private final SeekableStream in;
+  private final long fileLength;
+  private final byte[] buf = new byte[WINDOW_SIZE + MAX_HEADER_SIZE];
+  private final byte[] nextHeaderBuf = new byte[MAX_HEADER_SIZE];
+  private final CRC32 crc32 = new CRC32();
+
+  // fields of the most recently parsed header
+  private int headerLength;
+  private int containerLength;
+  private int numberOfRecords;
+
+  CramContainerGuesser(SeekableStream in, long fileLength) {
+    this.in = in;
+    this.fileLength = fileLength;
+  }
+
+  /** @return the major version of the CRAM file */
+  int getMajorVersion() throws IOException {
+    in.seek(4);
+    return in.read();
+  }
+
+  /**
+   * @return the offset of the first data container, which follows the container holding the SAM
+   *     header
+   * @throws IOException if the header container is not valid
+   */
+  long getFirstDataContainerOffset() throws IOException {
+    int n = fill(nextHeaderBuf, FILE_DEFINITION_LENGTH);
+    if (!parseHeader(nextHeaderBuf, 0, n)) {
+      throw new IOException("Invalid CRAM header container in " + in.getSource());
+    }
+    return FILE_DEFINITION_LENGTH + (long) headerLength + containerLength;
+  }
+
+  /**
+   * Find the start of the first container that contains records at or after the given position,
+   * which must not be before the first data container.
+   *
+   * @return the offset of the container, or the file length if there are no more containers with
+   *     records (so the EOF container is never returned)
+   */
+  long guessNextContainerStart(long pos) throws IOException {
+    long base = pos;
+    while (base < fileLength) {
+      int n = fill(buf, base);
+      int limit = (int) Math.min(WINDOW_SIZE, fileLength - base);
+      for (int i = 0; i < limit; i++) {
+        if (!parseHeader(buf, i, n)) {
+          continue;
+        }
+        long containerStart = base + i;
+        long next = containerStart + headerLength + containerLength;
+        int records = numberOfRecords;
+        if (next != fileLength && !isContainerHeader(next)) {
+          continue;
+        }
+        if (records > 0) {
+          return containerStart;
+        }
+        // skip over containers without records, such as the EOF container
+        return guessNextContainerStart(next);
+      }
+      base += limit;
+    }
+    return fileLength;
+  }
+
+  private boolean isContainerHeader(long pos) throws IOException {
+    if (pos > fileLength) {
+      return false;
+    }
+    // use a separate buffer so the window being scanned is not overwritten
+    int n = fill(nextHeaderBuf, pos);
+    return parseHeader(nextHeaderBuf, 0, n);
+  }
+
+  /** Read from the given position until the buffer is full or the end of the file is reached. */
+  private int fill(byte[] b, long pos) throws IOException {
+    int n = (int) Math.min(b.length, fileLength - pos);
+    in.seek(pos);
+    IOUtils.readFully(in, b, 0, n);
+    return n;
+  }
+
+  /**
+   * Try to parse a CRAM 3 container header from the buffer at the given offset, setting {@link
+   * #headerLength}, {@link #containerLength} and {@link #numberOfRecords} if it is valid.
+   *
+   * @return true if the bytes are a valid container header
+   */
+  private boolean parseHeader(byte[] b, int offset, int limit) {
+    Reader r = new Reader(b, offset, limit);
+    long length = r.int32();
+    r.itf8(); // reference sequence id
+    r.itf8(); // alignment start
+    r.itf8(); // alignment span
+    long records = r.itf8();
+    long recordCounter = r.ltf8();
+    long bases = r.ltf8();
+    long blocks = r.itf8();
+    long landmarks = r.itf8();
+    if (r.overflow
+        || length > fileLength
+        || records < 0
+        || recordCounter < 0
+        || bases < 0
+        || blocks < 0
+        || landmarks < 0
+        || landmarks > MAX_LANDMARKS
+        || landmarks > blocks) {
+      return false;
+    }
+    long previousLandmark = -1;
+    for (int i = 0; i < landmarks; i++) {
+      long landmark = r.itf8();
+      if (r.overflow || landmark <= previousLandmark || landmark >= length) {
+        return false;
+      }
+      previousLandmark = landmark;
+    }
+    int crcOffset = r.pos;
+    long crc = r.int32();
+    if (r.overflow) {
+      return false;
+    }
+    crc32.reset();
+    crc32.update(b, offset, crcOffset - offset);
+    if (crc32.getValue() != crc) {
+      return false;
+    }
+    headerLength = r.pos - offset;
+    containerLength = (int) length;
+    numberOfRecords = (int) records;
+    return true;
+  }
+
+  /**
+   * Reads little-endian and variable length integers from a buffer. Rather than throwing when the
+   * end of the buffer is reached, it sets a flag.
+   */
+  private static class Reader {
+    private final byte[] b;
+    private final int limit;
+    private int pos;
+    private boolean overflow;
+
+    Reader(byte[] b, int pos, int limit) {
+      this.b = b;
+      this.pos = pos;
+      this.limit = limit;
+    }
+
+    private int next() {
+      if (pos >= limit) {
+        overflow = true;
+        return 0;
+      }
+      return b[pos++] & 0xff;
+    }
+
+    /** @return a 32-bit little-endian integer, as an unsigned value */
+    long int32() {
+      return (next() | (next() << 8) | (next() << 16) | (next() << 24)) & 0xffffffffL;
+    }
+
+    long itf8() {
+      int first = next();
+      if ((first & 0x80) == 0) {
+        return first;
+      } else if ((first & 0x40) == 0) {
+        return ((first & 0x7f) << 8) | next();
+      } else if ((first & 0x20) == 0) {
+        return ((first & 0x3f) << 16) | (next() << 8) | next();
+      } else if ((first & 0x10) == 0) {
+        return ((first & 0x1f) << 24) | (next() << 16) | (next() << 8) | next();
+      }
+      return ((first & 0x0f) << 28)
+          | (next() << 20)
+          | (next() << 12)
+          | (next() << 4)
+          | (next() & 0x0f);
+    }
+
+    long ltf8() {
+      int first = next();
+      int extraBytes = Math.min(8, Integer.numberOfLeadingZeros(~first << 24)); // leading ones
+      long value = extraBytes >= 7 ? 0 : first & (0xff >> (extraBytes + 1));
+      for (int i = 0; i < extraBytes; i++) {
+        value = (value << 8) | next();
+      }
+      return value;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+}
@@ -0,0 +1,62 @@
+package org.disq_bio.disq.impl.formats.cram;
+
+import htsjdk.samtools.cram.CRAIIndex;
+import htsjdk.samtools.cram.common.CramVersions;
+import htsjdk.samtools.cram.structure.Container;
+import htsjdk.samtools.cram.structure.ContainerIO;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An output stream for headerless CRAM data that builds a CRAI index of the containers written to
+ * it. The bytes written since the last call to {@link #indexContainers()} are kept, so that the
+ * containers can be read back without having to re-read the file; callers must only call {@link
+ * #indexContainers()} when no container is partially written. The container offsets in the index
+ * are relative to the start of the stream.
+ */
+class CramContainerIndexingOutputStream extends FilterOutputStream {
+
+  private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+  private final CRAIIndex index = new CRAIIndex();
+  private long position;
+
+  CramContainerIndexingOutputStream(OutputStream out) {
+    super(out);
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    out.write(b);
+    pending.write(b);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    out.write(b, off, len);
+    pending.write(b, off, len);
+  }
+
+  /** Add index entries for the containers that have been written since the last call. */
+  void indexContainers() throws IOException {
+    if (pending.size() == 0) {
+      return;
+    }
+    byte[] bytes = pending.toByteArray();
+    ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+    while (in.available() > 0) {
+      long offset = position + bytes.length - in.available();
+      Container container = ContainerIO.readContainer(CramVersions.DEFAULT_CRAM_VERSION, in);
+      container.offset = offset;
+      index.processContainer(container);
+    }
+    position += bytes.length;
+    pending.reset();
+  }
+
+  CRAIIndex getIndex() {
+    return index;
+  }
+}
@@ -1,11 +1,13 @@
 package org.disq_bio.disq.impl.formats.cram;
 
-import htsjdk.samtools.CRAMContainerStreamWriter;
+import htsjdk.samtools.ConfigurableCRAMContainerStreamWriter;
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.cram.CRAIIndex;
 import htsjdk.samtools.cram.ref.CRAMReferenceSource;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.mapreduce.RecordWriter;
@@ -21,6 +23,18 @@ import org.disq_bio.disq.HtsjdkReadsRdd;
  */
 public class CramOutputFormat extends FileOutputFormat<Void, SAMRecord> {
 
+  /** The maximum number of records in a slice. Defaults to htsjdk's value, 10,000. */
+  public static final String RECORDS_PER_SLICE = "disq.cram.recordsperslice";
+
+  /** The maximum number of slices in a container. Defaults to one, as for htsjdk. */
+  public static final String SLICES_PER_CONTAINER = "disq.cram.slicespercontainer";
+
+  /**
+   * The number of threads that each task uses to encode containers. Defaults to zero, which means
+   * that containers are encoded on the task's own thread.
+   */
+  public static final String ENCODING_THREADS = "disq.cram.encodingthreads";
+
   private static SAMFileHeader header;
   private static CRAMReferenceSource refSource;
 
@@ -32,34 +46,109 @@ public class CramOutputFormat extends FileOutputFormat<Void, SAMRecord> {
     refSource = referenceSource;
   }
 
+  /**
+   * @return the path of the (hidden) CRAI index for a headerless CRAM part file, whose container
+   *     offsets are relative to the start of the part
+   */
+  public static Path getIndexPartPath(Path file) {
+    return new Path(file.getParent(), "." + file.getName() + CRAIIndex.CRAI_INDEX_SUFFIX);
+  }
+
   @Override
   public RecordWriter<Void, SAMRecord> getRecordWriter(TaskAttemptContext taskAttemptContext)
       throws IOException {
     Path file = getDefaultWorkFile(taskAttemptContext, "");
-    return new CramRecordWriter(taskAttemptContext.getConfiguration(), file, header, refSource);
+    return new CramRecordWriter(
+        taskAttemptContext.getConfiguration(), file, getIndexPartPath(file), header, refSource);
   }
 
-  static class CramRecordWriter extends RecordWriter<Void, SAMRecord> {
+  public static class CramRecordWriter extends RecordWriter<Void, SAMRecord> {
 
+    private final Configuration conf;
     private final OutputStream out;
-    private final CRAMContainerStreamWriter cramWriter;
+    private final CramContainerIndexingOutputStream indexingOut;
+    private final Path indexFile;
+    private final ConfigurableCRAMContainerStreamWriter cramWriter;
+    private final ParallelCramContainerWriter parallelCramWriter;
 
     public CramRecordWriter(
         Configuration conf, Path file, SAMFileHeader header, CRAMReferenceSource refSource)
         throws IOException {
-      this.out = file.getFileSystem(conf).create(file);
-      cramWriter = new CRAMContainerStreamWriter(out, null, refSource, header, file.toString());
+      this(conf, file, null, header, refSource);
+    }
+
+    /**
+     * @param indexFile if not null, a CRAI index for the part is written to this file when the
+     *     writer is closed
+     */
+    public CramRecordWriter(
+        Configuration conf,
+        Path file,
+        Path indexFile,
+        SAMFileHeader header,
+        CRAMReferenceSource refSource)
+        throws IOException {
+      this.conf = conf;
+      this.indexFile = indexFile;
+      OutputStream fileOut = file.getFileSystem(conf).create(file);
+      if (indexFile == null) {
+        this.indexingOut = null;
+        this.out = fileOut;
+      } else {
+        this.indexingOut = new CramContainerIndexingOutputStream(fileOut);
+        this.out = indexingOut;
+      }
+      int recordsPerSlice =
+          conf.getInt(
+              RECORDS_PER_SLICE, ConfigurableCRAMContainerStreamWriter.getDefaultRecordsPerSlice());
+      int slicesPerContainer = conf.getInt(SLICES_PER_CONTAINER, 1);
+      int encodingThreads = conf.getInt(ENCODING_THREADS, 0);
+      if (encodingThreads > 0) {
+        cramWriter = null;
+        parallelCramWriter =
+            new ParallelCramContainerWriter(
+                out,
+                refSource,
+                header,
+                file.toString(),
+                recordsPerSlice,
+                slicesPerContainer,
+                encodingThreads);
+      } else {
+        cramWriter =
+            ConfigurableCRAMContainerStreamWriter.create(
+                out, refSource, header, file.toString(), recordsPerSlice, slicesPerContainer);
+        parallelCramWriter = null;
+      }
     }
 
     @Override
-    public void write(Void ignore, SAMRecord samRecord) {
-      cramWriter.writeAlignment(samRecord);
+    public void write(Void ignore, SAMRecord samRecord) throws IOException {
+      if (parallelCramWriter != null) {
+        parallelCramWriter.writeAlignment(samRecord);
+      } else {
+        cramWriter.writeAlignment(samRecord);
+      }
+      if (indexingOut != null) {
+        indexingOut.indexContainers(); // a container may have been flushed
+      }
     }
 
     @Override
     public void close(TaskAttemptContext taskAttemptContext) throws IOException {
-      cramWriter.finish(false); // don't write terminator
+      if (parallelCramWriter != null) {
+        parallelCramWriter.finish();
+      } else {
+        cramWriter.finish(false); // don't write terminator
+      }
       out.close();
+      if (indexingOut != null) {
+        indexingOut.indexContainers();
+        try (OutputStream indexOut =
+            new GZIPOutputStream(indexFile.getFileSystem(conf).create(indexFile))) {
+          indexingOut.getIndex().writeIndex(indexOut);
+        }
+      }
     }
   }
 }
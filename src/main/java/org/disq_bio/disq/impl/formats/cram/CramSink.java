@@ -1,14 +1,21 @@
 package org.disq_bio.disq.impl.formats.cram;
 
+import htsjdk.samtools.CRAMCRAIIndexer;
 import htsjdk.samtools.CRAMContainerStreamWriter;
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.cram.CRAIEntry;
+import htsjdk.samtools.cram.CRAIIndex;
 import htsjdk.samtools.cram.build.CramIO;
 import htsjdk.samtools.cram.common.CramVersions;
 import htsjdk.samtools.cram.ref.CRAMReferenceSource;
 import htsjdk.samtools.cram.ref.ReferenceSource;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Map;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.api.java.function.PairFunction;
@@ -18,12 +25,16 @@ import org.disq_bio.disq.impl.file.FileSystemWrapper;
 import org.disq_bio.disq.impl.file.HadoopFileSystemWrapper;
 import org.disq_bio.disq.impl.file.Merger;
 import org.disq_bio.disq.impl.file.NioFileSystemWrapper;
+import org.disq_bio.disq.impl.formats.SerializableHadoopConfiguration;
 import org.disq_bio.disq.impl.formats.sam.AbstractSamSink;
+import org.disq_bio.disq.impl.formats.sam.LazySamFileHeader;
 import scala.Tuple2;
 
 /**
  * Write reads to a single CRAM file on Spark. This is done by writing to multiple headerless CRAM
- * files in parallel, then merging the resulting files into a single CRAM file.
+ * files in parallel, then merging the resulting files into a single CRAM file. If the reads are
+ * coordinate sorted then a CRAI index is written alongside the CRAM file, from the index entries
+ * gathered as each part is written.
  *
  * @see CramSource
  * @see HtsjdkReadsRdd
@@ -44,13 +55,15 @@ public class CramSink extends AbstractSamSink {
 
     ReferenceSource referenceSource =
         new ReferenceSource(NioFileSystemWrapper.asPath(referenceSourcePath));
-    Broadcast<SAMFileHeader> headerBroadcast = jsc.broadcast(header);
-    Broadcast<CRAMReferenceSource> referenceSourceBroadCast = jsc.broadcast(referenceSource);
+    Broadcast<LazySamFileHeader> headerBroadcast = jsc.broadcast(LazySamFileHeader.of(header));
+    SerializableHadoopConfiguration confSer =
+        new SerializableHadoopConfiguration(jsc.hadoopConfiguration());
     reads
         .mapPartitions(
             readIterator -> {
-              CramOutputFormat.setHeader(headerBroadcast.getValue());
-              CramOutputFormat.setReferenceSource(referenceSourceBroadCast.getValue());
+              CramOutputFormat.setHeader(headerBroadcast.getValue().getHeader());
+              CramOutputFormat.setReferenceSource(
+                  getTaskReferenceSource(confSer.getConf(), referenceSourcePath));
               return readIterator;
             })
         .mapToPair(
@@ -60,24 +73,79 @@ public class CramSink extends AbstractSamSink {
             Void.class,
             SAMRecord.class,
             CramOutputFormat.class,
-            jsc.hadoopConfiguration());
+            getWriteConfiguration(jsc));
 
-    String headerFile = tempPartsDirectory + "/header";
-    try (OutputStream out = fileSystemWrapper.create(jsc.hadoopConfiguration(), headerFile)) {
+    writeHeaderAndTerminator(
+        jsc.hadoopConfiguration(), tempPartsDirectory, header, referenceSource);
+    boolean writeCraiFile = header.getSortOrder() == SAMFileHeader.SortOrder.coordinate;
+    Merger merger = new Merger();
+    // merging removes the parts, so find their lengths first to index the merged file after it
+    Map<String, Long> partLengths =
+        writeCraiFile ? merger.getPartLengths(jsc.hadoopConfiguration(), tempPartsDirectory) : null;
+    merger.mergeParts(jsc.hadoopConfiguration(), tempPartsDirectory, path);
+    if (writeCraiFile) {
+      mergeIndexParts(
+          jsc.hadoopConfiguration(), partLengths, path + CRAIIndex.CRAI_INDEX_SUFFIX, header);
+    }
+    fileSystemWrapper.delete(jsc.hadoopConfiguration(), tempPartsDirectory);
+  }
+
+  /**
+   * Write header and terminator files to a directory of headerless CRAM parts, so that merging the
+   * directory produces a complete CRAM file.
+   */
+  public static void writeHeaderAndTerminator(
+      Configuration conf,
+      String partsDirectory,
+      SAMFileHeader header,
+      CRAMReferenceSource referenceSource)
+      throws IOException {
+    FileSystemWrapper fileSystemWrapper = new HadoopFileSystemWrapper();
+    String headerFile = partsDirectory + "/header";
+    try (OutputStream out = fileSystemWrapper.create(conf, headerFile)) {
       writeHeader(header, out, headerFile, referenceSource);
     }
 
-    String terminatorFile = tempPartsDirectory + "/terminator";
-    try (OutputStream out = fileSystemWrapper.create(jsc.hadoopConfiguration(), terminatorFile)) {
+    String terminatorFile = partsDirectory + "/terminator";
+    try (OutputStream out = fileSystemWrapper.create(conf, terminatorFile)) {
       CramIO.issueEOF(CramVersions.DEFAULT_CRAM_VERSION, out);
     }
+  }
 
-    new Merger().mergeParts(jsc.hadoopConfiguration(), tempPartsDirectory, path);
-    fileSystemWrapper.delete(jsc.hadoopConfiguration(), tempPartsDirectory);
+  /**
+   * Write a CRAI index for the file that merging a directory of headerless CRAM parts produces, by
+   * combining the index written for each part. The container offsets in each part's index are
+   * relative to the start of the part, so they are shifted by the total length of the files that
+   * precede the part in the merged file. The part indexes are hidden files, so they are still there
+   * once the parts have been merged, and the index is written after the merged file.
+   */
+  private void mergeIndexParts(
+      Configuration conf, Map<String, Long> partLengths, String indexFile, SAMFileHeader header)
+      throws IOException {
+    try (OutputStream out = fileSystemWrapper.create(conf, indexFile)) {
+      CRAMCRAIIndexer indexer = new CRAMCRAIIndexer(out, header);
+      long partOffset = 0;
+      for (Map.Entry<String, Long> part : partLengths.entrySet()) {
+        String indexPart = CramOutputFormat.getIndexPartPath(new Path(part.getKey())).toString();
+        if (fileSystemWrapper.exists(conf, indexPart)) { // no index for header and terminator
+          try (InputStream in = fileSystemWrapper.open(conf, indexPart)) {
+            for (CRAIEntry entry : CRAMCRAIIndexer.readIndex(in).getCRAIEntries()) {
+              entry.containerStartOffset += partOffset;
+              indexer.addEntry(entry);
+            }
+          }
+        }
+        partOffset += part.getValue();
+      }
+      indexer.finish();
+    }
   }
 
-  private void writeHeader(
-      SAMFileHeader header, OutputStream out, String headerFile, ReferenceSource referenceSource) {
+  private static void writeHeader(
+      SAMFileHeader header,
+      OutputStream out,
+      String headerFile,
+      CRAMReferenceSource referenceSource) {
     CRAMContainerStreamWriter cramWriter =
         new CRAMContainerStreamWriter(out, null, referenceSource, header, headerFile);
     cramWriter.writeHeader(header);
@@ -0,0 +1,394 @@
+package org.disq_bio.disq.impl.formats.cram;
+
+import htsjdk.samtools.QueryInterval;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.SAMUtils;
+import htsjdk.samtools.ValidationStringency;
+import htsjdk.samtools.cram.CRAMException;
+import htsjdk.samtools.cram.build.ContainerParser;
+import htsjdk.samtools.cram.build.Cram2SamRecordFactory;
+import htsjdk.samtools.cram.build.CramIO;
+import htsjdk.samtools.cram.build.CramNormalizer;
+import htsjdk.samtools.cram.ref.CRAMReferenceSource;
+import htsjdk.samtools.cram.structure.Container;
+import htsjdk.samtools.cram.structure.ContainerIO;
+import htsjdk.samtools.cram.structure.CramCompressionRecord;
+import htsjdk.samtools.cram.structure.CramHeader;
+import htsjdk.samtools.cram.structure.Slice;
+import htsjdk.samtools.seekablestream.SeekableStream;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.RuntimeIOException;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.spark.TaskContext;
+import org.apache.spark.util.TaskCompletionListener;
+
+/**
+ * An iterator over the reads in a CRAM file that honours the slice index held in the low 16 bits of
+ * a virtual file pointer. htsjdk's CRAM iterators ignore the slice index and always decode whole
+ * containers, so they can't be used when a container is split between partitions.
+ *
+ * <p>The containers to read are given by pairs of virtual file pointers, as for htsjdk, whose
+ * container offsets are inclusive. Only the slices of those containers from the start pointer up to
+ * (but not including) the end pointer are decoded; the other slices of a container are read but
+ * skipped, while its compression header is used for all of the slices that are decoded.
+ *
+ * <p>Containers may optionally be decoded on a pool of threads. Containers are still read from the
+ * stream in order on the calling thread, and a bounded number of the containers that follow the
+ * current one are decoded ahead, so the reads are returned in the same order. The pool is shut down
+ * when the iterator is closed or exhausted, or when the Spark task that created it completes.
+ */
+class CramSliceIterator implements CloseableIterator<SAMRecord> {
+
+  private final SeekableStream in;
+  private final CramHeader cramHeader;
+  private final CRAMReferenceSource referenceSource;
+  private final ValidationStringency stringency;
+  private final long[] coordinates;
+  private final long startPointer;
+  private final long endPointer;
+  private final QueryInterval[] intervals;
+  private final ContainerDecoder decoder;
+  private final ExecutorService executorService;
+  private final ThreadLocal<ContainerDecoder> threadDecoders;
+  private final int maxPendingContainers;
+  private final Deque<Future<List<SAMRecord>>> pendingContainers = new ArrayDeque<>();
+
+  private int coordinateIndex = -2;
+  private Iterator<SAMRecord> records = Collections.emptyIterator();
+  private boolean containersExhausted;
+  private boolean done;
+
+  /**
+   * @param in the CRAM file, which is closed when iteration is complete
+   * @param coordinates pairs of virtual file pointers for the containers to read, or null if there
+   *     are none
+   * @param startPointer the virtual file pointer of the first slice to decode
+   * @param endPointer the virtual file pointer that slices to decode must come before
+   * @param intervals if not null, only reads overlapping these (optimized) intervals are returned
+   * @param decodingThreads the number of threads to decode containers on, or zero to decode them on
+   *     the calling thread
+   */
+  CramSliceIterator(
+      SeekableStream in,
+      CRAMReferenceSource referenceSource,
+      ValidationStringency stringency,
+      long[] coordinates,
+      long startPointer,
+      long endPointer,
+      QueryInterval[] intervals,
+      int decodingThreads)
+      throws IOException {
+    this.in = in;
+    this.referenceSource = referenceSource;
+    this.stringency = stringency;
+    this.coordinates = coordinates == null ? new long[0] : coordinates;
+    this.startPointer = startPointer;
+    this.endPointer = endPointer;
+    this.intervals = intervals;
+    in.seek(0);
+    this.cramHeader = CramIO.readCramHeader(in);
+    if (decodingThreads > 0) {
+      // containers are read on this thread, and decoded on the pool while the caller consumes the
+      // records from earlier containers
+      this.decoder = null;
+      this.executorService =
+          Executors.newFixedThreadPool(
+              decodingThreads,
+              runnable -> {
+                Thread thread = new Thread(runnable, "cram-decoder");
+                thread.setDaemon(true);
+                return thread;
+              });
+      this.threadDecoders = ThreadLocal.withInitial(ContainerDecoder::new);
+      this.maxPendingContainers = decodingThreads * 2;
+      // stop the threads if the task ends before the reads are exhausted, e.g. because of a limit
+      TaskContext taskContext = TaskContext.get();
+      if (taskContext != null) {
+        taskContext.addTaskCompletionListener((TaskCompletionListener) context -> close());
+      }
+    } else {
+      this.decoder = new ContainerDecoder();
+      this.executorService = null;
+      this.threadDecoders = null;
+      this.maxPendingContainers = 0;
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (!records.hasNext()) {
+      if (done) {
+        return false;
+      }
+      try {
+        List<SAMRecord> nextRecords =
+            executorService == null ? decodeNextContainer() : nextDecodedContainer();
+        if (nextRecords == null) {
+          close();
+        } else {
+          records = nextRecords.iterator();
+        }
+      } catch (IOException | IllegalAccessException e) {
+        throw new RuntimeIOException(e);
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public SAMRecord next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return records.next();
+  }
+
+  private List<SAMRecord> decodeNextContainer() throws IOException, IllegalAccessException {
+    ContainerSlices containerSlices = nextContainer();
+    return containerSlices == null ? null : decoder.decode(containerSlices);
+  }
+
+  /**
+   * Keep the pool busy with the containers that follow, then wait for the next one in file order.
+   */
+  private List<SAMRecord> nextDecodedContainer() throws IOException {
+    while (!containersExhausted && pendingContainers.size() < maxPendingContainers) {
+      ContainerSlices containerSlices = nextContainer();
+      if (containerSlices == null) {
+        containersExhausted = true;
+      } else {
+        pendingContainers.add(
+            executorService.submit(() -> threadDecoders.get().decode(containerSlices)));
+      }
+    }
+    if (pendingContainers.isEmpty()) {
+      return null;
+    }
+    try {
+      return pendingContainers.remove().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeIOException("Interrupted while decoding CRAM container", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new RuntimeIOException(cause);
+    }
+  }
+
+  /**
+   * Read containers until one with slices to decode is found.
+   *
+   * @return the container and its slices to decode, or null if there are no more containers to read
+   */
+  private ContainerSlices nextContainer() throws IOException {
+    while (true) {
+      if (coordinateIndex < 0 || in.position() > coordinates[coordinateIndex + 1] >>> 16) {
+        coordinateIndex += 2;
+        if (coordinateIndex >= coordinates.length) {
+          return null;
+        }
+        in.seek(coordinates[coordinateIndex] >>> 16);
+      }
+      long containerOffset = in.position();
+      if (containerOffset > (endPointer - 1) >>> 16) {
+        return null;
+      }
+      if (containerOffset > coordinates[coordinateIndex + 1] >>> 16) {
+        continue;
+      }
+      Container container = ContainerIO.readContainer(cramHeader.getVersion(), in);
+      if (container.isEOF()) {
+        return null;
+      }
+      List<Slice> slices = new ArrayList<>();
+      for (Slice slice : container.slices) {
+        long pointer = (containerOffset << 16) | slice.index;
+        if (startPointer <= pointer && pointer < endPointer) {
+          slices.add(slice);
+        }
+      }
+      if (!slices.isEmpty()) {
+        return new ContainerSlices(container, slices);
+      }
+    }
+  }
+
+  /** A container that has been read, and the slices in it to decode. */
+  private static class ContainerSlices {
+    private final Container container;
+    private final List<Slice> slices;
+
+    ContainerSlices(Container container, List<Slice> slices) {
+      this.container = container;
+      this.slices = slices;
+    }
+  }
+
+  /**
+   * Decodes containers into reads. htsjdk's parser and normalizer are not thread-safe, so each
+   * thread that decodes containers has its own decoder.
+   */
+  private class ContainerDecoder {
+    private final ContainerParser parser;
+    private final CramNormalizer normalizer;
+    private final Cram2SamRecordFactory recordFactory;
+    private int prevSequenceId = Integer.MIN_VALUE;
+    private byte[] refs;
+
+    ContainerDecoder() {
+      SAMFileHeader header = cramHeader.getSamFileHeader();
+      this.parser = new ContainerParser(header);
+      this.normalizer = new CramNormalizer(header, referenceSource);
+      this.recordFactory = new Cram2SamRecordFactory(header);
+    }
+
+    List<SAMRecord> decode(ContainerSlices containerSlices) throws IllegalAccessException {
+      Container container = containerSlices.container;
+      List<Slice> slices = containerSlices.slices;
+      // the parser decodes every slice in the container, so leave out the ones to skip
+      Slice[] allSlices = container.slices;
+      container.slices = slices.toArray(new Slice[0]);
+      ArrayList<CramCompressionRecord> cramRecords = new ArrayList<>(container.nofRecords);
+      parser.getRecords(container, cramRecords, stringency);
+      if (container.slices.length < allSlices.length && !hasAllMates(cramRecords)) {
+        // some writers (including htsjdk's) link mates in different slices of a container, in
+        // which case the whole container has to be decoded
+        container.slices = allSlices;
+        cramRecords.clear();
+        parser.getRecords(container, cramRecords, stringency);
+      }
+
+      SAMFileHeader header = cramHeader.getSamFileHeader();
+      if (container.sequenceId == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
+        refs = new byte[0];
+      } else if (container.sequenceId == Slice.MULTI_REFERENCE) {
+        refs = null; // the normalizer gets the bases for each record
+      } else if (container.sequenceId != prevSequenceId) {
+        SAMSequenceRecord sequence = header.getSequence(container.sequenceId);
+        refs = referenceSource.getReferenceBases(sequence, true);
+        if (refs == null) {
+          throw new CRAMException(
+              String.format(
+                  "Contig %s not found in the reference file.", sequence.getSequenceName()));
+        }
+      }
+      prevSequenceId = container.sequenceId;
+
+      for (Slice slice : container.slices) {
+        if (slice.sequenceId >= 0 && !slice.validateRefMD5(refs)) {
+          throw new CRAMException(
+              String.format(
+                  "Reference sequence MD5 mismatch for slice: sequence id %d, start %d, span %d",
+                  slice.sequenceId, slice.alignmentStart, slice.alignmentSpan));
+        }
+      }
+
+      normalizer.normalize(cramRecords, refs, 0, container.header.substitutionMatrix);
+
+      int firstSliceIndex = slices.get(0).index;
+      int lastSliceIndex = slices.get(slices.size() - 1).index;
+      List<SAMRecord> samRecords = new ArrayList<>(cramRecords.size());
+      int sliceIndex = -1;
+      long recordIndex = 0;
+      for (CramCompressionRecord cramRecord : cramRecords) {
+        // number records from the start of the file, as far as the writer counted them
+        if (cramRecord.sliceIndex != sliceIndex) {
+          sliceIndex = cramRecord.sliceIndex;
+          recordIndex = allSlices[sliceIndex].globalRecordCounter;
+        } else {
+          recordIndex++;
+        }
+        if (cramRecord.sliceIndex < firstSliceIndex || cramRecord.sliceIndex > lastSliceIndex) {
+          continue;
+        }
+        SAMRecord samRecord = recordFactory.create(cramRecord);
+        samRecord.setValidationStringency(stringency);
+        if (stringency != ValidationStringency.SILENT) {
+          SAMUtils.processValidationErrors(samRecord.isValid(), recordIndex, stringency);
+        }
+        if (intervals == null || overlaps(samRecord)) {
+          samRecords.add(samRecord);
+        }
+      }
+      return samRecords;
+    }
+  }
+
+  /**
+   * @return true if the mate of every read that is linked to its mate (rather than having its mate
+   *     information stored) is in the given reads
+   */
+  private static boolean hasAllMates(List<CramCompressionRecord> cramRecords) {
+    boolean[] hasUpstreamMate = new boolean[cramRecords.size()];
+    for (int i = 0; i < cramRecords.size(); i++) {
+      CramCompressionRecord cramRecord = cramRecords.get(i);
+      if (!cramRecord.isMultiFragment() || cramRecord.isDetached()) {
+        continue;
+      }
+      if (cramRecord.isHasMateDownStream()) {
+        int next = i + cramRecord.recordsToNextFragment + 1;
+        if (next >= cramRecords.size()) {
+          return false;
+        }
+        hasUpstreamMate[next] = true;
+      } else if (!hasUpstreamMate[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** @return true if the read overlaps any of the intervals, in the same way as htsjdk */
+  private boolean overlaps(SAMRecord record) {
+    int referenceIndex = record.getReferenceIndex();
+    if (referenceIndex == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
+      return false;
+    }
+    int start = record.getAlignmentStart();
+    // unmapped reads that are placed with their mate only occupy their start position
+    int end = record.getReadUnmappedFlag() ? start : record.getAlignmentEnd();
+    for (QueryInterval interval : intervals) {
+      if (interval.referenceIndex == referenceIndex
+          && (interval.end <= 0 || start <= interval.end)
+          && interval.start <= end) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public void close() {
+    if (done) {
+      return;
+    }
+    done = true;
+    records = Collections.emptyIterator();
+    if (executorService != null) {
+      pendingContainers.forEach(future -> future.cancel(true));
+      pendingContainers.clear();
+      executorService.shutdownNow();
+    }
+    try {
+      in.close();
+    } catch (IOException e) {
+      throw new RuntimeIOException(e);
+    }
+  }
+}
@@ -1,5 +1,8 @@
 package org.disq_bio.disq.impl.formats.cram;
 
+import htsjdk.samtools.AbstractBAMFileIndex;
+import htsjdk.samtools.BAMFileSpan;
+import htsjdk.samtools.BAMIndex;
 import htsjdk.samtools.CRAMCRAIIndexer;
 import htsjdk.samtools.CRAMFileReader;
 import htsjdk.samtools.Chunk;
@@ -12,140 +15,499 @@ import htsjdk.samtools.ValidationStringency;
 import htsjdk.samtools.cram.CRAIEntry;
 import htsjdk.samtools.cram.CRAIIndex;
 import htsjdk.samtools.cram.build.CramContainerHeaderIterator;
+import htsjdk.samtools.cram.ref.CRAMReferenceSource;
+import htsjdk.samtools.cram.ref.ReferenceSource;
 import htsjdk.samtools.cram.structure.Container;
 import htsjdk.samtools.seekablestream.SeekableStream;
 import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
 import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.Locatable;
 import java.io.IOException;
 import java.io.Serializable;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedHashMap;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.NavigableSet;
-import java.util.TreeSet;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
-import org.apache.spark.api.java.function.FlatMapFunction;
-import org.apache.spark.broadcast.Broadcast;
+import org.disq_bio.disq.HtsjdkReadsTraversalParameters;
 import org.disq_bio.disq.impl.file.FileSystemWrapper;
 import org.disq_bio.disq.impl.file.PathChunk;
+import org.disq_bio.disq.impl.file.PathChunkRdd;
 import org.disq_bio.disq.impl.file.PathSplit;
 import org.disq_bio.disq.impl.file.PathSplitSource;
+import org.disq_bio.disq.impl.formats.BoundedTraversalUtil;
 import org.disq_bio.disq.impl.formats.SerializableHadoopConfiguration;
 import org.disq_bio.disq.impl.formats.sam.AbstractBinarySamSource;
 import org.disq_bio.disq.impl.formats.sam.SamFormat;
+import org.disq_bio.disq.impl.formats.sam.SplitBoundaryKey;
+import scala.Tuple2;
 
 public class CramSource extends AbstractBinarySamSource implements Serializable {
 
+  /**
+   * The number of threads that each task uses to decode containers, so that the containers after
+   * the current one are decoded while its reads are consumed. Defaults to zero, which means that
+   * containers are decoded on the task's own thread, one at a time. This is used if the number of
+   * threads is not set with {@link #setDecodingThreads(int)}.
+   */
+  public static final String DECODING_THREADS = "disq.cram.decodingthreads";
+
   private final PathSplitSource pathSplitSource;
+  private int decodingThreads;
 
   public CramSource(FileSystemWrapper fileSystemWrapper) {
     super(fileSystemWrapper);
     this.pathSplitSource = new PathSplitSource(fileSystemWrapper);
   }
 
+  /**
+   * @param decodingThreads the number of threads that each task uses to decode containers, or zero
+   *     to use the value of {@link #DECODING_THREADS} from the Hadoop configuration
+   */
+  public void setDecodingThreads(int decodingThreads) {
+    this.decodingThreads = decodingThreads;
+  }
+
   @Override
   public SamFormat getSamFormat() {
     return SamFormat.CRAM;
   }
 
   @Override
-  protected JavaRDD<PathChunk> getPathChunks(
+  protected <T extends Locatable> JavaRDD<PathChunk> getPathChunks(
       JavaSparkContext jsc,
       String path,
       int splitSize,
+      HtsjdkReadsTraversalParameters<T> traversalParameters,
       ValidationStringency stringency,
-      String referenceSourcePath)
+      String referenceSourcePath,
+      SplitBoundaryKey splitBoundaryKey)
       throws IOException {
 
+    if (splitBoundaryKey != null) {
+      throw new IllegalArgumentException("Aligning split boundaries is not supported for CRAM.");
+    }
+
     final Configuration conf = jsc.hadoopConfiguration();
 
+    List<String> paths =
+        fileSystemWrapper.isDirectory(conf, path)
+            ? fileSystemWrapper
+                .listDirectory(conf, path)
+                .stream()
+                .filter(SamFormat.CRAM::fileMatches)
+                .collect(Collectors.toList())
+            : Collections.singletonList(path);
+    List<ContainerOffsets> containerOffsetsList = new ArrayList<>();
+    if (paths.size() == 1) {
+      containerOffsetsList.add(getContainerOffsets(conf, paths.get(0)));
+    } else if (!paths.isEmpty()) {
+      // open each file's index (or header) in a Spark job, rather than one at a time on the driver
+      SerializableHadoopConfiguration confSer = new SerializableHadoopConfiguration(conf);
+      containerOffsetsList =
+          jsc.parallelize(paths).map(p -> getContainerOffsets(confSer.getConf(), p)).collect();
+    }
     // store paths (not full URIs) to avoid differences in scheme - this could be improved
-    Map<String, NavigableSet<Long>> pathToContainerOffsets = new LinkedHashMap<>();
-    if (fileSystemWrapper.isDirectory(conf, path)) {
-      List<String> paths =
-          fileSystemWrapper
-              .listDirectory(conf, path)
-              .stream()
-              .filter(SamFormat.CRAM::fileMatches)
-              .collect(Collectors.toList());
+    Map<String, ContainerOffsets> pathToContainerOffsets = new HashMap<>();
+    // each path is normalized once, rather than once for every split in it
+    Map<String, String> normPaths = new HashMap<>();
+    for (ContainerOffsets containerOffsets : containerOffsetsList) {
+      pathToContainerOffsets.put(containerOffsets.normPath, containerOffsets);
+      normPaths.put(containerOffsets.path, containerOffsets.normPath);
+    }
+
+    // plan the partitions on the driver, so that each one can be given its preferred locations
+    List<PathChunk> pathChunks = new ArrayList<>();
+    if (traversalParameters != null) {
+      // for files with an index, only the slices that the traversal reads from are partitioned
+      QueryInterval[] intervals =
+          BoundedTraversalUtil.prepareQueryIntervals(
+              traversalParameters.getIntervalsForTraversal(),
+              getFileHeader(jsc, path, stringency, referenceSourcePath).getSequenceDictionary());
       for (String p : paths) {
-        long cramFileLength = fileSystemWrapper.getFileLength(conf, p);
-        NavigableSet<Long> containerOffsets = getContainerOffsetsFromIndex(conf, p, cramFileLength);
-        String normPath = URI.create(fileSystemWrapper.normalize(conf, p)).getPath();
-        pathToContainerOffsets.put(normPath, containerOffsets);
+        ContainerOffsets containerOffsets =
+            pathToContainerOffsets.get(normPath(conf, p, normPaths));
+        if (containerOffsets.indexedSlices != null) {
+          long unplacedUnmappedStart =
+              traversalParameters.getTraverseUnplacedUnmapped()
+                  ? getUnplacedUnmappedStart(conf, p, stringency, referenceSourcePath)
+                  : -1;
+          pathChunks.addAll(
+              getTraversalPathChunks(
+                  p, containerOffsets, intervals, unplacedUnmappedStart, splitSize));
+        }
+      }
+    }
+
+    List<PathSplit> pathSplits = pathSplitSource.listPathSplits(jsc, path, splitSize);
+    addGuessedContainerOffsets(jsc, pathSplits, pathToContainerOffsets, normPaths);
+
+    for (PathSplit pathSplit : pathSplits) {
+      String p = pathSplit.getPath();
+      ContainerOffsets containerOffsets = pathToContainerOffsets.get(normPath(conf, p, normPaths));
+      if (traversalParameters != null && containerOffsets.indexedSlices != null) {
+        continue; // already planned from the index
+      }
+      int startIndex = containerOffsets.ceilingIndex(pathSplit.getStart());
+      int endIndex = containerOffsets.ceilingIndex(pathSplit.getEnd());
+      if (startIndex == endIndex) {
+        continue;
+      }
+      pathChunks.add(
+          new PathChunk(
+              p,
+              new Chunk(
+                  containerOffsets.getFilePointer(startIndex),
+                  containerOffsets.getFilePointer(endIndex))));
+    }
+    return PathChunkRdd.create(jsc, fileSystemWrapper, pathChunks);
+  }
+
+  /**
+   * Plan partitions for a traversal from the slices in a file's index. Only the slices that overlap
+   * the intervals are assigned to partitions, which are made up of runs of these slices of about
+   * the split size in total. A partition's span may include slices that don't overlap the
+   * intervals, but they are skipped when it is read, since the reads are found from the index.
+   * Unplaced, unmapped reads are read by the partition whose span includes the given file pointer,
+   * so a partition that reads no intervals is added for it if no other partition includes it.
+   *
+   * @param unplacedUnmappedStart the file pointer that the partition reading the unplaced, unmapped
+   *     reads is found from, or -1 if they are not to be traversed
+   */
+  private static List<PathChunk> getTraversalPathChunks(
+      String path,
+      ContainerOffsets containerOffsets,
+      QueryInterval[] intervals,
+      long unplacedUnmappedStart,
+      int splitSize) {
+    // file pointer -> size, for the slices that overlap the intervals, in file order
+    TreeMap<Long, Integer> sliceSizes = new TreeMap<>();
+    if (intervals != null) {
+      for (IndexedSlice slice : containerOffsets.indexedSlices) {
+        if (slice.overlaps(intervals)) {
+          sliceSizes.put(slice.filePointer, slice.size);
+        }
+      }
+    }
+
+    List<PathChunk> pathChunks = new ArrayList<>();
+    long chunkStart = -1;
+    long chunkSize = 0;
+    for (Map.Entry<Long, Integer> slice : sliceSizes.entrySet()) {
+      if (chunkStart == -1) {
+        chunkStart = slice.getKey();
+      }
+      chunkSize += slice.getValue();
+      if (chunkSize >= splitSize) {
+        // the next slice index in the container is an exclusive end for this slice
+        pathChunks.add(new PathChunk(path, new Chunk(chunkStart, slice.getKey() + 1)));
+        chunkStart = -1;
+        chunkSize = 0;
+      }
+    }
+    if (chunkStart != -1) {
+      pathChunks.add(new PathChunk(path, new Chunk(chunkStart, sliceSizes.lastKey() + 1)));
+    }
+    if (unplacedUnmappedStart != -1
+        && pathChunks
+            .stream()
+            .noneMatch(
+                pathChunk ->
+                    pathChunk.getSpan().getChunkStart() <= unplacedUnmappedStart
+                        && unplacedUnmappedStart < pathChunk.getSpan().getChunkEnd())) {
+      // the span only covers one slice, which no other partition reads intervals from
+      pathChunks.add(
+          new PathChunk(path, new Chunk(unplacedUnmappedStart, unplacedUnmappedStart + 1)));
+      pathChunks.sort(Comparator.comparingLong(pathChunk -> pathChunk.getSpan().getChunkStart()));
+    }
+    return pathChunks;
+  }
+
+  /**
+   * @return the file pointer that a partition's span must include for it to read the unplaced,
+   *     unmapped reads (in the same way as {@link AbstractBinarySamSource}), or -1 if there are
+   *     none
+   */
+  private long getUnplacedUnmappedStart(
+      Configuration conf, String path, ValidationStringency stringency, String referenceSourcePath)
+      throws IOException {
+    try (SamReader samReader = createSamReader(conf, path, stringency, referenceSourcePath)) {
+      BAMIndex idx = samReader.indexing().getIndex();
+      long noCoordinateCount = ((AbstractBAMFileIndex) idx).getNoCoordinateCount();
+      if (noCoordinateCount < getMinUnplacedUnmappedReadsCoordinateCount()) {
+        return -1;
+      }
+      return idx.getStartOfLastLinearBin();
+    }
+  }
+
+  /**
+   * A slice in a file's index, for one reference sequence (multi-reference slices have several).
+   */
+  private static class IndexedSlice implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long filePointer;
+    private final int sequenceId;
+    private final int alignmentStart;
+    private final int alignmentEnd;
+    private final int size;
+
+    IndexedSlice(long filePointer, CRAIEntry entry) {
+      this.filePointer = filePointer;
+      this.sequenceId = entry.sequenceId;
+      this.alignmentStart = entry.alignmentStart;
+      this.alignmentEnd = entry.alignmentStart + entry.alignmentSpan - 1;
+      this.size = entry.sliceSize;
+    }
+
+    /** @return true if the slice overlaps any of the (optimized) intervals */
+    boolean overlaps(QueryInterval[] intervals) {
+      for (QueryInterval interval : intervals) {
+        if (interval.referenceIndex == sequenceId
+            && (interval.end <= 0 || alignmentStart <= interval.end)
+            && interval.start <= alignmentEnd) {
+          return true;
+        }
       }
-    } else {
-      long cramFileLength = fileSystemWrapper.getFileLength(conf, path);
-      NavigableSet<Long> containerOffsets =
-          getContainerOffsetsFromIndex(conf, path, cramFileLength);
-      String normPath = URI.create(fileSystemWrapper.normalize(conf, path)).getPath();
-      pathToContainerOffsets.put(normPath, containerOffsets);
-    }
-    Broadcast<Map<String, NavigableSet<Long>>> containerOffsetsBroadcast =
-        jsc.broadcast(pathToContainerOffsets);
-
-    SerializableHadoopConfiguration confSer =
-        new SerializableHadoopConfiguration(jsc.hadoopConfiguration());
-
-    return pathSplitSource
-        .getPathSplits(jsc, path, splitSize)
-        .flatMap(
-            (FlatMapFunction<PathSplit, PathChunk>)
-                pathSplit -> {
+      return false;
+    }
+  }
+
+  /**
+   * The sorted offsets that splits may start at in a file, including the file length as the last
+   * offset. These are the container offsets, and if the file has an index, the offsets of the
+   * slices within containers too. If the file has no index the offsets are not known until they
+   * have been guessed.
+   */
+  private static class ContainerOffsets implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String path;
+    private final String normPath;
+    private long[] offsets;
+    /**
+     * The virtual file pointer (container offset and slice index) for each offset, or null if all
+     * the offsets are container offsets.
+     */
+    private final long[] filePointers;
+    /** The offset to start guessing from, or -1 if the offsets are complete. */
+    private final long firstDataContainerOffset;
+    /** The slices from the file's index, or null if it does not have one. */
+    private final List<IndexedSlice> indexedSlices;
+
+    ContainerOffsets(
+        String path,
+        String normPath,
+        long[] offsets,
+        long[] filePointers,
+        long firstDataContainerOffset) {
+      this(path, normPath, offsets, filePointers, firstDataContainerOffset, null);
+    }
+
+    ContainerOffsets(
+        String path,
+        String normPath,
+        long[] offsets,
+        long[] filePointers,
+        long firstDataContainerOffset,
+        List<IndexedSlice> indexedSlices) {
+      this.path = path;
+      this.normPath = normPath;
+      this.offsets = offsets;
+      this.filePointers = filePointers;
+      this.firstDataContainerOffset = firstDataContainerOffset;
+      this.indexedSlices = indexedSlices;
+    }
+
+    /** @return the index of the least offset greater than or equal to the given value */
+    int ceilingIndex(long value) {
+      int index = Arrays.binarySearch(offsets, value);
+      return index >= 0 ? index : -index - 1;
+    }
+
+    long getFilePointer(int index) {
+      return filePointers == null
+          ? BlockCompressedFilePointerUtil.makeFilePointer(offsets[index])
+          : filePointers[index];
+    }
+  }
+
+  private String normPath(Configuration conf, String path, Map<String, String> normPaths)
+      throws IOException {
+    String normPath = normPaths.get(path);
+    if (normPath == null) {
+      normPath = normPath(conf, path);
+      normPaths.put(path, normPath);
+    }
+    return normPath;
+  }
+
+  private String normPath(Configuration conf, String path) throws IOException {
+    return URI.create(fileSystemWrapper.normalize(conf, path)).getPath();
+  }
+
+  private ContainerOffsets getContainerOffsets(Configuration conf, String path) throws IOException {
+    long cramFileLength = fileSystemWrapper.getFileLength(conf, path);
+    String normPath = normPath(conf, path);
+    ContainerOffsets containerOffsets =
+        getContainerOffsetsFromIndex(conf, path, normPath, cramFileLength);
+    if (containerOffsets != null) {
+      return containerOffsets;
+    }
+    try (CramContainerGuesser guesser =
+        new CramContainerGuesser(fileSystemWrapper.open(conf, path), cramFileLength)) {
+      if (guesser.getMajorVersion() >= 3) {
+        // container boundaries are found for each split in parallel, later
+        return new ContainerOffsets(
+            path,
+            normPath,
+            new long[] {cramFileLength},
+            null,
+            guesser.getFirstDataContainerOffset());
+      }
+    }
+    return new ContainerOffsets(
+        path, normPath, getContainerOffsetsFromFile(conf, path, cramFileLength), null, -1);
+  }
+
+  /**
+   * Find the first container at or after the start of each split, in a Spark job, for files that
+   * have no index. This avoids reading every container header in a file serially on the driver.
+   */
+  private void addGuessedContainerOffsets(
+      JavaSparkContext jsc,
+      List<PathSplit> pathSplits,
+      Map<String, ContainerOffsets> pathToContainerOffsets,
+      Map<String, String> normPaths)
+      throws IOException {
+    Configuration conf = jsc.hadoopConfiguration();
+    List<Tuple2<String, Long>> searchStarts = new ArrayList<>();
+    for (PathSplit pathSplit : pathSplits) {
+      long firstDataContainerOffset =
+          pathToContainerOffsets.get(normPath(conf, pathSplit.getPath(), normPaths))
+              .firstDataContainerOffset;
+      if (firstDataContainerOffset != -1) {
+        searchStarts.add(
+            new Tuple2<>(
+                pathSplit.getPath(), Math.max(pathSplit.getStart(), firstDataContainerOffset)));
+      }
+    }
+    if (searchStarts.isEmpty()) {
+      return;
+    }
+    SerializableHadoopConfiguration confSer = new SerializableHadoopConfiguration(conf);
+    List<Tuple2<String, Long>> guessedOffsets =
+        jsc.parallelize(searchStarts, searchStarts.size())
+            .map(
+                searchStart -> {
                   Configuration c = confSer.getConf();
-                  String p = pathSplit.getPath();
-                  Map<String, NavigableSet<Long>> pathToOffsets =
-                      containerOffsetsBroadcast.getValue();
-                  String normPath = URI.create(fileSystemWrapper.normalize(c, p)).getPath();
-                  NavigableSet<Long> offsets = pathToOffsets.get(normPath);
-                  long newStart = offsets.ceiling(pathSplit.getStart());
-                  long newEnd = offsets.ceiling(pathSplit.getEnd());
-                  if (newStart == newEnd) {
-                    return Collections.emptyIterator();
+                  String p = searchStart._1();
+                  try (CramContainerGuesser guesser =
+                      new CramContainerGuesser(
+                          fileSystemWrapper.open(c, p), fileSystemWrapper.getFileLength(c, p))) {
+                    return new Tuple2<>(p, guesser.guessNextContainerStart(searchStart._2()));
                   }
-                  // Subtract one from end since CRAMIterator's boundaries are inclusive
-                  PathChunk pathChunk =
-                      new PathChunk(
-                          p,
-                          new Chunk(
-                              BlockCompressedFilePointerUtil.makeFilePointer(newStart),
-                              BlockCompressedFilePointerUtil.makeFilePointer(newEnd - 1)));
-                  return Collections.singleton(pathChunk).iterator();
-                });
-  }
-
-  private NavigableSet<Long> getContainerOffsetsFromIndex(
-      Configuration conf, String path, long cramFileLength) throws IOException {
+                })
+            .collect();
+    Map<String, LongStream.Builder> pathToGuessedOffsets = new HashMap<>();
+    for (Tuple2<String, Long> guessedOffset : guessedOffsets) {
+      pathToGuessedOffsets
+          .computeIfAbsent(normPath(conf, guessedOffset._1(), normPaths), p -> LongStream.builder())
+          .add(guessedOffset._2());
+    }
+    for (Map.Entry<String, LongStream.Builder> entry : pathToGuessedOffsets.entrySet()) {
+      ContainerOffsets containerOffsets = pathToContainerOffsets.get(entry.getKey());
+      containerOffsets.offsets =
+          LongStream.concat(Arrays.stream(containerOffsets.offsets), entry.getValue().build())
+              .sorted()
+              .distinct()
+              .toArray();
+    }
+  }
+
+  /**
+   * Find the offsets of the containers, and of the slices within them, from the file's index. A
+   * split may start at any slice, so that files with large containers still have enough splits,
+   * except for slices with unplaced, unmapped reads, which are always read from the start of their
+   * container. The index doesn't record slice indexes, so they are found from the order of the
+   * slices in each container. A slice's offset in the index is relative to its container's data, so
+   * the offset used for it here is a little before its true position, which doesn't matter for
+   * assigning it to a split.
+   *
+   * @return the offsets from the file's index, or null if it does not have one
+   */
+  private ContainerOffsets getContainerOffsetsFromIndex(
+      Configuration conf, String path, String normPath, long cramFileLength) throws IOException {
     try (SeekableStream in = findIndex(conf, path)) {
       if (in == null) {
-        return getContainerOffsetsFromFile(conf, path, cramFileLength);
+        return null;
       }
-      NavigableSet<Long> containerOffsets = new TreeSet<>();
       CRAIIndex index = CRAMCRAIIndexer.readIndex(in);
+      // container offset -> slice offset -> reference sequence id (-1 if it has unmapped reads)
+      Map<Long, TreeMap<Integer, Integer>> containerSlices = new HashMap<>();
       for (CRAIEntry entry : index.getCRAIEntries()) {
-        containerOffsets.add(entry.containerStartOffset);
+        containerSlices
+            .computeIfAbsent(entry.containerStartOffset, c -> new TreeMap<>())
+            .merge(entry.sliceOffset, entry.sequenceId, Math::min);
       }
-      containerOffsets.add(cramFileLength);
-      return containerOffsets;
+      TreeMap<Long, Long> offsetToFilePointer = new TreeMap<>();
+      for (Map.Entry<Long, TreeMap<Integer, Integer>> container : containerSlices.entrySet()) {
+        long containerOffset = container.getKey();
+        offsetToFilePointer.put(
+            containerOffset, BlockCompressedFilePointerUtil.makeFilePointer(containerOffset));
+        int sliceIndex = 0;
+        for (Map.Entry<Integer, Integer> slice : container.getValue().entrySet()) {
+          if (sliceIndex > 0 && slice.getValue() != SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
+            offsetToFilePointer.put(
+                containerOffset + slice.getKey(),
+                BlockCompressedFilePointerUtil.makeFilePointer(containerOffset, sliceIndex));
+          }
+          sliceIndex++;
+        }
+      }
+      offsetToFilePointer.put(
+          cramFileLength, BlockCompressedFilePointerUtil.makeFilePointer(cramFileLength));
+      List<IndexedSlice> indexedSlices = new ArrayList<>();
+      for (CRAIEntry entry : index.getCRAIEntries()) {
+        int sliceIndex =
+            containerSlices.get(entry.containerStartOffset).headMap(entry.sliceOffset).size();
+        indexedSlices.add(
+            new IndexedSlice(
+                BlockCompressedFilePointerUtil.makeFilePointer(
+                    entry.containerStartOffset, sliceIndex),
+                entry));
+      }
+      return new ContainerOffsets(
+          path,
+          normPath,
+          offsetToFilePointer.keySet().stream().mapToLong(Long::longValue).toArray(),
+          offsetToFilePointer.values().stream().mapToLong(Long::longValue).toArray(),
+          -1,
+          indexedSlices);
     }
   }
 
-  private NavigableSet<Long> getContainerOffsetsFromFile(
-      Configuration conf, String path, long cramFileLength) throws IOException {
+  private long[] getContainerOffsetsFromFile(Configuration conf, String path, long cramFileLength)
+      throws IOException {
     try (SeekableStream seekableStream = fileSystemWrapper.open(conf, path)) {
       CramContainerHeaderIterator it = new CramContainerHeaderIterator(seekableStream);
-      NavigableSet<Long> containerOffsets = new TreeSet<>();
+      LongStream.Builder containerOffsets = LongStream.builder();
       while (it.hasNext()) {
         Container container = it.next();
         containerOffsets.add(container.offset);
       }
       containerOffsets.add(cramFileLength);
-      return containerOffsets;
+      return containerOffsets.build().sorted().distinct().toArray();
     }
   }
 
@@ -154,15 +516,101 @@ public class CramSource extends AbstractBinarySamSource implements Serializable
   }
 
   @Override
-  protected CloseableIterator<SAMRecord> getIterator(SamReader samReader, SAMFileSpan chunks) {
-    return getUnderlyingCramFileReader(samReader).getIterator(chunks);
+  protected CloseableIterator<SAMRecord> getIterator(
+      Configuration conf,
+      String path,
+      String referenceSourcePath,
+      SamReader samReader,
+      SAMFileSpan chunks)
+      throws IOException {
+    BAMFileSpan span = (BAMFileSpan) chunks;
+    return createSliceIterator(
+        conf, path, referenceSourcePath, samReader, span, span.toCoordinateArray(), null);
   }
 
   @Override
   protected CloseableIterator<SAMRecord> createIndexIterator(
-      SamReader samReader, QueryInterval[] intervals, boolean contained, long[] filePointers) {
-    return getUnderlyingCramFileReader(samReader)
-        .createIndexIterator(intervals, contained, filePointers);
+      Configuration conf,
+      String path,
+      String referenceSourcePath,
+      SamReader samReader,
+      SAMFileSpan splitSpan,
+      QueryInterval[] intervals,
+      boolean contained,
+      long[] filePointers)
+      throws IOException {
+    if (contained) {
+      throw new IllegalArgumentException("Only overlapping intervals are supported for CRAM.");
+    }
+    return createSliceIterator(
+        conf,
+        path,
+        referenceSourcePath,
+        samReader,
+        (BAMFileSpan) splitSpan,
+        filePointers,
+        intervals);
+  }
+
+  /**
+   * Read the containers given by the file pointers, decoding only the slices in the split, since
+   * the split may start or end part way through a container.
+   */
+  private CloseableIterator<SAMRecord> createSliceIterator(
+      Configuration conf,
+      String path,
+      String referenceSourcePath,
+      SamReader samReader,
+      BAMFileSpan splitSpan,
+      long[] filePointers,
+      QueryInterval[] intervals)
+      throws IOException {
+    List<Chunk> chunks = splitSpan.getChunks();
+    CRAMReferenceSource referenceSource = createReferenceSource(conf, referenceSourcePath);
+    return new CramSliceIterator(
+        fileSystemWrapper.open(conf, path),
+        referenceSource == null ? ReferenceSource.getDefaultCRAMReferenceSource() : referenceSource,
+        getUnderlyingCramFileReader(samReader).getValidationStringency(),
+        filePointers,
+        chunks.get(0).getChunkStart(),
+        chunks.get(chunks.size() - 1).getChunkEnd(),
+        intervals,
+        decodingThreads > 0 ? decodingThreads : conf.getInt(DECODING_THREADS, 0));
+  }
+
+  /**
+   * Use the reference source that is shared by the tasks in the executor if possible, since only
+   * CRAM needs the reference bases.
+   *
+   * @see SharedReferenceSource
+   */
+  @Override
+  protected CRAMReferenceSource createReferenceSource(
+      Configuration conf, String referenceSourcePath) throws IOException {
+    if (referenceSourcePath == null) {
+      return null;
+    }
+    CRAMReferenceSource sharedReferenceSource =
+        SharedReferenceSource.acquire(conf, fileSystemWrapper, referenceSourcePath);
+    return sharedReferenceSource != null
+        ? sharedReferenceSource
+        : super.createReferenceSource(conf, referenceSourcePath);
+  }
+
+  @Override
+  protected BAMFileSpan getIndexSearchSpan(BAMFileSpan splitSpan) {
+    // the index only has file pointers for containers, so use the whole of the containers that the
+    // split starts and ends in, and leave it to the iterator to skip the slices outside the split
+    List<Chunk> chunks = splitSpan.getChunks();
+    long start = chunks.get(0).getChunkStart();
+    long end = chunks.get(chunks.size() - 1).getChunkEnd() - 1; // make inclusive
+    return new BAMFileSpan(
+        new Chunk(
+            BlockCompressedFilePointerUtil.makeFilePointer(
+                BlockCompressedFilePointerUtil.getBlockAddress(start)),
+            BlockCompressedFilePointerUtil.makeFilePointer(
+                BlockCompressedFilePointerUtil.getBlockAddress(end),
+                BlockCompressedFilePointerUtil.MAX_OFFSET)));
   }
 
   @Override
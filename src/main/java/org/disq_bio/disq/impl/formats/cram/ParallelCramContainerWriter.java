@@ -0,0 +1,136 @@
+package org.disq_bio.disq.impl.formats.cram;
+
+import htsjdk.samtools.ConfigurableCRAMContainerStreamWriter;
+import htsjdk.samtools.ConfigurableCRAMContainerStreamWriter.ContainerBoundary;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.cram.ref.CRAMReferenceSource;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.spark.TaskContext;
+import org.apache.spark.util.TaskCompletionListener;
+
+/**
+ * Writes CRAM containers (without a header or terminator), encoding and compressing them on a pool
+ * of threads. Records are grouped into containers on the calling thread, in the same way as htsjdk
+ * does, and each container is then encoded independently while the records for the next ones are
+ * collected. Encoded containers are written to the output stream in order, and the number of
+ * containers that are held in memory waiting to be written is bounded. The threads are stopped when
+ * the writer is finished, or when the Spark task that created it completes.
+ */
+class ParallelCramContainerWriter {
+
+  private final OutputStream out;
+  private final CRAMReferenceSource refSource;
+  private final SAMFileHeader header;
+  private final String cramId;
+  private final int recordsPerSlice;
+  private final int slicesPerContainer;
+  private final int maxPendingContainers;
+  private final ExecutorService executorService;
+  private final ContainerBoundary containerBoundary;
+  private final Deque<Future<byte[]>> pendingContainers = new ArrayDeque<>();
+  private List<SAMRecord> records = new ArrayList<>();
+
+  ParallelCramContainerWriter(
+      OutputStream out,
+      CRAMReferenceSource refSource,
+      SAMFileHeader header,
+      String cramId,
+      int recordsPerSlice,
+      int slicesPerContainer,
+      int threads) {
+    this.out = out;
+    this.refSource = refSource;
+    this.header = header;
+    this.cramId = cramId;
+    this.recordsPerSlice = recordsPerSlice;
+    this.slicesPerContainer = slicesPerContainer;
+    this.maxPendingContainers = threads * 2;
+    this.executorService =
+        Executors.newFixedThreadPool(
+            threads,
+            runnable -> {
+              Thread thread = new Thread(runnable, "cram-encoder");
+              thread.setDaemon(true);
+              return thread;
+            });
+    this.containerBoundary = new ContainerBoundary(header, recordsPerSlice, slicesPerContainer);
+    // stop the threads if the task ends without the writer being finished, e.g. if it fails
+    TaskContext taskContext = TaskContext.get();
+    if (taskContext != null) {
+      taskContext.addTaskCompletionListener(
+          (TaskCompletionListener) context -> executorService.shutdownNow());
+    }
+  }
+
+  /**
+   * Add a record to the current container. If the record starts a new container then the current
+   * one is submitted for encoding, and containers that have finished encoding are written, waiting
+   * for the oldest one if too many are pending.
+   */
+  void writeAlignment(SAMRecord record) throws IOException {
+    if (containerBoundary.isContainerStart(record)) {
+      submit(records);
+      records = new ArrayList<>();
+    }
+    records.add(record);
+  }
+
+  /** Encode and write the remaining records, and wait for all containers to be written. */
+  void finish() throws IOException {
+    try {
+      if (!records.isEmpty()) {
+        submit(records);
+        records = new ArrayList<>();
+      }
+      while (!pendingContainers.isEmpty()) {
+        writeNext();
+      }
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  private void submit(List<SAMRecord> containerRecords) throws IOException {
+    while (pendingContainers.size() >= maxPendingContainers
+        || (!pendingContainers.isEmpty() && pendingContainers.peek().isDone())) {
+      writeNext();
+    }
+    pendingContainers.add(executorService.submit(() -> encode(containerRecords)));
+  }
+
+  private byte[] encode(List<SAMRecord> containerRecords) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ConfigurableCRAMContainerStreamWriter cramWriter =
+        ConfigurableCRAMContainerStreamWriter.create(
+            bytes, refSource, header, cramId, recordsPerSlice, slicesPerContainer);
+    for (SAMRecord record : containerRecords) {
+      cramWriter.writeAlignment(record);
+    }
+    cramWriter.finish(false); // don't write terminator
+    return bytes.toByteArray();
+  }
+
+  private void writeNext() throws IOException {
+    byte[] container;
+    try {
+      container = pendingContainers.remove().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while encoding CRAM container", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Failed to encode CRAM container", e.getCause());
+    }
+    out.write(container);
+  }
+}
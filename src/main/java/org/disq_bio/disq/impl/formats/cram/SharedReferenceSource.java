@@ -0,0 +1,292 @@
+package org.disq_bio.disq.impl.formats.cram;
+
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.cram.ref.CRAMReferenceSource;
+import htsjdk.samtools.reference.FastaSequenceIndex;
+import htsjdk.samtools.reference.FastaSequenceIndexEntry;
+import htsjdk.samtools.seekablestream.SeekableStream;
+import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.samtools.util.StringUtil;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.spark.TaskContext;
+import org.disq_bio.disq.impl.file.FileSystemWrapper;
+
+/**
+ * A {@link CRAMReferenceSource} that is shared by all the Spark tasks in an executor that use the
+ * same reference.
+ *
+ * <p>The first task to use a reference copies the FASTA file to local disk, and reads its index
+ * into memory. The copy is made outside of any lock shared between references, so tasks using other
+ * references are not held up, and tasks using the same reference wait for it to finish. The bases
+ * for each contig are read from a memory-mapped region of the local copy the first time they are
+ * needed, and then kept in memory and shared by the tasks, rather than each task loading its own
+ * copy of every contig it touches. Only the contigs that are asked for are loaded, so a task
+ * writing coordinate-sorted reads only loads the one or two contigs its reads are on. The bases
+ * held for a reference are bounded by {@link #MAX_CACHED_BYTES}: the least recently used contigs
+ * are dropped when it is exceeded, and read again from the local copy if they are needed later.
+ *
+ * <p>A reference source is kept for the lifetime of the executor, so later tasks use the contigs
+ * that are already loaded. It holds its local copy open, which means that the copy can be deleted
+ * without affecting it (on filesystems that allow open files to be deleted). Local copies are
+ * shared by the executors on a host, and a copy that has not been used for {@link
+ * #STALE_COPY_AGE_MILLIS} is deleted when a reference is next copied, rather than when an executor
+ * exits, since another executor may still be using it.
+ *
+ * <p>Compressed references, references without a <code>.fai</code> index, and use outside of a
+ * Spark task (e.g. on the driver) are not supported, in which case {@link #acquire} returns null
+ * and the caller should use htsjdk's reference source.
+ */
+public class SharedReferenceSource implements CRAMReferenceSource {
+
+  /**
+   * The Hadoop configuration property for the maximum number of reference bases to hold in memory
+   * for each reference in an executor. At least one contig is always held, whatever its size.
+   */
+  public static final String MAX_CACHED_BYTES = "disq.cram.reference.maxcachedbytes";
+
+  private static final long DEFAULT_MAX_CACHED_BYTES = 1024L * 1024 * 1024;
+
+  static final String CACHE_DIRECTORY = "disq-reference-cache";
+
+  /** Local copies that have not been used for this long are deleted. */
+  static final long STALE_COPY_AGE_MILLIS = 24L * 60 * 60 * 1000;
+
+  private static final ConcurrentMap<String, FutureTask<SharedReferenceSource>> sources =
+      new ConcurrentHashMap<>();
+
+  private final FileChannel localFasta;
+  private final FastaSequenceIndex index;
+  private final long maxCachedBytes;
+  // in access order, so the least recently used contig is first
+  private final Map<String, byte[]> contigBases = new LinkedHashMap<>(16, 0.75f, true);
+  private long cachedBytes;
+
+  private SharedReferenceSource(
+      FileChannel localFasta, FastaSequenceIndex index, long maxCachedBytes) {
+    this.localFasta = localFasta;
+    this.index = index;
+    this.maxCachedBytes = maxCachedBytes;
+  }
+
+  /**
+   * Get the shared reference source for the given reference, opening it if this is the first use of
+   * the reference in the executor.
+   *
+   * @return the shared reference source, or null if it can't be used for this reference
+   */
+  public static CRAMReferenceSource acquire(
+      Configuration conf, FileSystemWrapper fileSystemWrapper, String referenceSourcePath)
+      throws IOException {
+    if (TaskContext.get() == null
+        || referenceSourcePath.endsWith(".gz")
+        || !fileSystemWrapper.exists(conf, referenceSourcePath + ".fai")) {
+      return null;
+    }
+    String key = fileSystemWrapper.normalize(conf, referenceSourcePath);
+    FutureTask<SharedReferenceSource> created =
+        new FutureTask<>(() -> open(conf, fileSystemWrapper, referenceSourcePath, key));
+    FutureTask<SharedReferenceSource> source = sources.putIfAbsent(key, created);
+    if (source == null) {
+      source = created;
+      source.run(); // other tasks using the same reference wait for this to finish
+    }
+    try {
+      return source.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while opening reference " + key);
+    } catch (ExecutionException e) {
+      sources.remove(key, source); // so a later task can try again
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+
+  private static SharedReferenceSource open(
+      Configuration conf, FileSystemWrapper fileSystemWrapper, String path, String key)
+      throws IOException {
+    Path directory = Paths.get(System.getProperty("java.io.tmpdir"), CACHE_DIRECTORY);
+    Files.createDirectories(directory);
+    deleteStaleCopies(directory);
+    String name = UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)).toString();
+    Path localPath = directory.resolve(name + ".fa");
+    FileChannel localFasta;
+    try {
+      stage(conf, fileSystemWrapper, path, localPath);
+      localFasta = FileChannel.open(localPath, StandardOpenOption.READ);
+    } catch (NoSuchFileException e) {
+      // the copy was deleted as stale by another executor just before it was opened
+      stage(conf, fileSystemWrapper, path, localPath);
+      localFasta = FileChannel.open(localPath, StandardOpenOption.READ);
+    }
+    FastaSequenceIndex index;
+    try (SeekableStream indexIn = fileSystemWrapper.open(conf, path + ".fai")) {
+      index = new FastaSequenceIndex(indexIn);
+    }
+    long maxCachedBytes =
+        conf == null
+            ? DEFAULT_MAX_CACHED_BYTES
+            : conf.getLong(MAX_CACHED_BYTES, DEFAULT_MAX_CACHED_BYTES);
+    return new SharedReferenceSource(localFasta, index, maxCachedBytes);
+  }
+
+  /**
+   * Copy a file to local disk, unless an earlier task (possibly in another executor on the same
+   * host) has already done so, in which case the copy is marked as used so that it is not deleted
+   * as stale.
+   */
+  private static void stage(
+      Configuration conf, FileSystemWrapper fileSystemWrapper, String path, Path localPath)
+      throws IOException {
+    long length = fileSystemWrapper.getFileLength(conf, path);
+    if (Files.exists(localPath) && Files.size(localPath) == length) {
+      Files.setLastModifiedTime(localPath, FileTime.fromMillis(System.currentTimeMillis()));
+      return;
+    }
+    // copy to a temporary file first so that a partial copy is never used
+    Path tempPath = Files.createTempFile(localPath.getParent(), localPath.getFileName() + ".", "");
+    try (SeekableStream in = fileSystemWrapper.open(conf, path)) {
+      Files.copy((InputStream) in, tempPath, StandardCopyOption.REPLACE_EXISTING);
+      Files.move(
+          tempPath, localPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tempPath);
+    }
+  }
+
+  /**
+   * Delete the local copies (and any abandoned partial copies) that have not been used recently.
+   * This is best effort: a copy that can't be deleted, for example because it is open on a
+   * filesystem that doesn't allow that, is left for a later attempt.
+   */
+  static void deleteStaleCopies(Path directory) throws IOException {
+    long staleBefore = System.currentTimeMillis() - STALE_COPY_AGE_MILLIS;
+    try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory)) {
+      for (Path path : paths) {
+        try {
+          if (Files.getLastModifiedTime(path).toMillis() < staleBefore) {
+            Files.deleteIfExists(path);
+          }
+        } catch (IOException e) {
+          // ignore, since another executor may have deleted or replaced it
+        }
+      }
+    }
+  }
+
+  @Override
+  public synchronized byte[] getReferenceBases(SAMSequenceRecord record, boolean tryNameVariants) {
+    List<String> names = new ArrayList<>();
+    names.add(record.getSequenceName());
+    if (tryNameVariants) {
+      names.addAll(getNameVariants(record.getSequenceName()));
+    }
+    for (String name : names) {
+      byte[] bases = contigBases.get(name);
+      if (bases == null && index.hasIndexEntry(name)) {
+        try {
+          bases = readBases(index.getIndexEntry(name));
+        } catch (IOException e) {
+          throw new RuntimeIOException(e);
+        }
+        contigBases.put(name, bases);
+        cachedBytes += bases.length;
+        evict();
+      }
+      if (bases != null) {
+        return bases;
+      }
+    }
+    return null;
+  }
+
+  /** @return the number of reference bases held in memory */
+  synchronized long getCachedBytes() {
+    return cachedBytes;
+  }
+
+  /** Drop the least recently used contigs until the budget is met, keeping at least one. */
+  private void evict() {
+    Iterator<byte[]> it = contigBases.values().iterator();
+    while (cachedBytes > maxCachedBytes && contigBases.size() > 1) {
+      cachedBytes -= it.next().length;
+      it.remove();
+    }
+  }
+
+  /** The same name variants that htsjdk's reference source tries. */
+  private static List<String> getNameVariants(String name) {
+    List<String> variants = new ArrayList<>();
+    if (name.equals("M")) {
+      variants.add("MT");
+    } else if (name.equals("MT")) {
+      variants.add("M");
+    }
+    if (name.regionMatches(true, 0, "chr", 0, 3)) {
+      variants.add(name.substring(3));
+    } else {
+      variants.add("chr" + name);
+    }
+    if (name.equals("chrM")) {
+      variants.add("MT");
+    }
+    return variants;
+  }
+
+  /** Read the bases for a contig from a memory-mapped region of the local FASTA file. */
+  private byte[] readBases(FastaSequenceIndexEntry entry) throws IOException {
+    long size = entry.getSize();
+    int basesPerLine = entry.getBasesPerLine();
+    int bytesPerLine = entry.getBytesPerLine();
+    // the region ends at the last base, since the last line may not have a line terminator
+    long regionLength =
+        size == 0 ? 0 : ((size - 1) / basesPerLine) * bytesPerLine + (size - 1) % basesPerLine + 1;
+    byte[] bases = new byte[(int) size];
+    MappedByteBuffer region =
+        localFasta.map(FileChannel.MapMode.READ_ONLY, entry.getLocation(), regionLength);
+    int offset = 0;
+    int lineStart = 0;
+    while (offset < size) {
+      int n = (int) Math.min(basesPerLine, size - offset);
+      region.position(lineStart);
+      region.get(bases, offset, n);
+      offset += n;
+      lineStart += bytesPerLine;
+    }
+    StringUtil.toUpperCase(bases);
+    return bases;
+  }
+}
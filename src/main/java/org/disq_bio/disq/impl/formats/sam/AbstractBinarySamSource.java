@@ -45,7 +45,8 @@ public abstract class AbstractBinarySamSource extends AbstractSamSource {
       int splitSize,
       HtsjdkReadsTraversalParameters<T> traversalParameters,
       ValidationStringency validationStringency,
-      String referenceSourcePath)
+      String referenceSourcePath,
+      SplitBoundaryKey splitBoundaryKey)
       throws IOException {
     if (traversalParameters != null
         && traversalParameters.getIntervalsForTraversal() == null
@@ -58,7 +59,14 @@ public abstract class AbstractBinarySamSource extends AbstractSamSource {
     SerializableHadoopConfiguration confSer =
         new SerializableHadoopConfiguration(jsc.hadoopConfiguration());
 
-    return getPathChunks(jsc, path, splitSize, validationStringency, referenceSourcePath)
+    return getPathChunks(
+            jsc,
+            path,
+            splitSize,
+            traversalParameters,
+            validationStringency,
+            referenceSourcePath,
+            splitBoundaryKey)
         .mapPartitions(
             (FlatMapFunction<Iterator<PathChunk>, SAMRecord>)
                 pathChunks -> {
@@ -82,7 +90,7 @@ public abstract class AbstractBinarySamSource extends AbstractSamSource {
                   if (traversal == null) {
                     // no intervals or unplaced, unmapped reads
                     return new AutocloseIteratorWrapper<>(
-                        getIterator(samReader, splitSpan), samReader);
+                        getIterator(c, p, referenceSourcePath, samReader, splitSpan), samReader);
                   } else {
                     if (!samReader.hasIndex()) {
                       samReader.close();
@@ -103,12 +111,20 @@ public abstract class AbstractBinarySamSource extends AbstractSamSource {
                           BoundedTraversalUtil.prepareQueryIntervals(
                               traversal.getIntervalsForTraversal(), header.getSequenceDictionary());
                       BAMFileSpan span = BAMFileReader.getFileSpan(queryIntervals, idx);
-                      span = (BAMFileSpan) span.removeContentsBefore(splitSpan);
-                      span = (BAMFileSpan) span.removeContentsAfter(splitSpan);
+                      BAMFileSpan indexSearchSpan = getIndexSearchSpan(splitSpan);
+                      span = (BAMFileSpan) span.removeContentsBefore(indexSearchSpan);
+                      span = (BAMFileSpan) span.removeContentsAfter(indexSearchSpan);
                       intervalReadsIterator =
                           new AutocloseIteratorWrapper<>(
                               createIndexIterator(
-                                  samReader, queryIntervals, false, span.toCoordinateArray()),
+                                  c,
+                                  p,
+                                  referenceSourcePath,
+                                  samReader,
+                                  splitSpan,
+                                  queryIntervals,
+                                  false,
+                                  span.toCoordinateArray()),
                               samReader);
                     }
 
@@ -135,19 +151,52 @@ public abstract class AbstractBinarySamSource extends AbstractSamSource {
                 });
   }
 
-  protected abstract JavaRDD<PathChunk> getPathChunks(
+  /**
+   * @param traversalParameters the traversal that the partitions will be read with, or null; a
+   *     source may use it (and its index) to leave out the parts of a file that the traversal won't
+   *     read from
+   */
+  protected abstract <T extends Locatable> JavaRDD<PathChunk> getPathChunks(
       JavaSparkContext jsc,
       String path,
       int splitSize,
+      HtsjdkReadsTraversalParameters<T> traversalParameters,
       ValidationStringency validationStringency,
-      String referenceSourcePath)
+      String referenceSourcePath,
+      SplitBoundaryKey splitBoundaryKey)
       throws IOException;
 
   protected abstract CloseableIterator<SAMRecord> getIterator(
-      SamReader samReader, SAMFileSpan chunks);
+      Configuration conf,
+      String path,
+      String referenceSourcePath,
+      SamReader samReader,
+      SAMFileSpan chunks)
+      throws IOException;
 
+  /**
+   * @param splitSpan the span of the split being read
+   * @param filePointers the index chunks that overlap the intervals, trimmed to the span returned
+   *     by {@link #getIndexSearchSpan(BAMFileSpan)}
+   */
   protected abstract CloseableIterator<SAMRecord> createIndexIterator(
-      SamReader samReader, QueryInterval[] intervals, boolean contained, long[] filePointers);
+      Configuration conf,
+      String path,
+      String referenceSourcePath,
+      SamReader samReader,
+      SAMFileSpan splitSpan,
+      QueryInterval[] intervals,
+      boolean contained,
+      long[] filePointers)
+      throws IOException;
+
+  /**
+   * @return the span that index chunks are trimmed to before they are read for a split, which is
+   *     the split itself unless the index's file pointers are coarser than the split's
+   */
+  protected BAMFileSpan getIndexSearchSpan(BAMFileSpan splitSpan) {
+    return splitSpan;
+  }
 
   protected int getMinUnplacedUnmappedReadsCoordinateCount() {
     return 1;
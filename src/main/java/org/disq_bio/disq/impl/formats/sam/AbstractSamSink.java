@@ -2,11 +2,43 @@ package org.disq_bio.disq.impl.formats.sam;
 
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.cram.ref.CRAMReferenceSource;
+import htsjdk.samtools.cram.ref.ReferenceSource;
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
+import org.disq_bio.disq.impl.file.NioFileSystemWrapper;
+import org.disq_bio.disq.impl.formats.cram.SharedReferenceSource;
 
 public abstract class AbstractSamSink {
+
+  private final Map<String, String> writeConfiguration = new LinkedHashMap<>();
+
+  /**
+   * Set a Hadoop configuration property for this write only.
+   *
+   * @param name the property name
+   * @param value the property value
+   * @return this sink
+   */
+  public AbstractSamSink setConfiguration(String name, String value) {
+    writeConfiguration.put(name, value);
+    return this;
+  }
+
+  /**
+   * @return a copy of the Spark context's Hadoop configuration with the properties for this write
+   *     set, to pass to the output format
+   */
+  protected Configuration getWriteConfiguration(JavaSparkContext jsc) {
+    Configuration conf = new Configuration(jsc.hadoopConfiguration());
+    writeConfiguration.forEach(conf::set);
+    return conf;
+  }
+
   public abstract void save(
       JavaSparkContext jsc,
       SAMFileHeader header,
@@ -15,4 +47,24 @@ public abstract class AbstractSamSink {
       String referenceSourcePath,
       String tempPartsDirectory)
       throws IOException;
+
+  /**
+   * Get the reference source for writing CRAM in a Spark task. The reference is not broadcast:
+   * instead each contig is loaded the first time a writer needs it, and is shared by the tasks in
+   * the executor if possible.
+   *
+   * @return the reference source, or null if there is no reference
+   * @see SharedReferenceSource
+   */
+  protected static CRAMReferenceSource getTaskReferenceSource(
+      Configuration conf, String referenceSourcePath) throws IOException {
+    if (referenceSourcePath == null) {
+      return null;
+    }
+    CRAMReferenceSource sharedReferenceSource =
+        SharedReferenceSource.acquire(conf, new NioFileSystemWrapper(), referenceSourcePath);
+    return sharedReferenceSource != null
+        ? sharedReferenceSource
+        : new ReferenceSource(NioFileSystemWrapper.asPath(referenceSourcePath));
+  }
 }
@@ -1,6 +1,7 @@
 package org.disq_bio.disq.impl.formats.sam;
 
 import htsjdk.samtools.*;
+import htsjdk.samtools.cram.ref.CRAMReferenceSource;
 import htsjdk.samtools.cram.ref.ReferenceSource;
 import htsjdk.samtools.reference.FastaSequenceIndex;
 import htsjdk.samtools.reference.ReferenceSequenceFile;
@@ -48,13 +49,19 @@ public abstract class AbstractSamSource implements Serializable {
     }
   }
 
+  /**
+   * @param splitBoundaryKey if not null, align partition boundaries so that all the reads with
+   *     equal keys are in the same partition; the input must be sorted or grouped by the key
+   * @return an RDD of reads
+   */
   public abstract <T extends Locatable> JavaRDD<SAMRecord> getReads(
       JavaSparkContext jsc,
       String path,
       int splitSize,
       HtsjdkReadsTraversalParameters<T> traversalParameters,
       ValidationStringency validationStringency,
-      String referenceSourcePath)
+      String referenceSourcePath,
+      SplitBoundaryKey splitBoundaryKey)
       throws IOException;
 
   protected SamReader createSamReader(
@@ -70,15 +77,9 @@ public abstract class AbstractSamSource implements Serializable {
     if (stringency != null) {
       readerFactory.validationStringency(stringency);
     }
-    if (referenceSourcePath != null) {
-      SeekableStream refIn = fileSystemWrapper.open(conf, referenceSourcePath);
-      try (SeekableStream indexIn = fileSystemWrapper.open(conf, referenceSourcePath + ".fai")) {
-        FastaSequenceIndex index = new FastaSequenceIndex(indexIn);
-        ReferenceSequenceFile refSeqFile =
-            ReferenceSequenceFileFactory.getReferenceSequenceFile(
-                referenceSourcePath, refIn, index);
-        readerFactory.referenceSource(new ReferenceSource(refSeqFile));
-      }
+    CRAMReferenceSource referenceSource = createReferenceSource(conf, referenceSourcePath);
+    if (referenceSource != null) {
+      readerFactory.referenceSource(referenceSource);
     }
     SamInputResource resource = SamInputResource.of(in);
     if (indexStream != null) {
@@ -89,6 +90,24 @@ public abstract class AbstractSamSource implements Serializable {
     return samReader;
   }
 
+  /**
+   * @return the reference source to use for reading CRAM files in a task, or null if there is no
+   *     reference
+   */
+  protected CRAMReferenceSource createReferenceSource(
+      Configuration conf, String referenceSourcePath) throws IOException {
+    if (referenceSourcePath == null) {
+      return null;
+    }
+    SeekableStream refIn = fileSystemWrapper.open(conf, referenceSourcePath);
+    try (SeekableStream indexIn = fileSystemWrapper.open(conf, referenceSourcePath + ".fai")) {
+      FastaSequenceIndex index = new FastaSequenceIndex(indexIn);
+      ReferenceSequenceFile refSeqFile =
+          ReferenceSequenceFileFactory.getReferenceSequenceFile(referenceSourcePath, refIn, index);
+      return new ReferenceSource(refSeqFile);
+    }
+  }
+
   protected SeekableStream findIndex(Configuration conf, String path) throws IOException {
     SamFormat samFormat = getSamFormat();
     if (samFormat.getIndexExtension() == null) {
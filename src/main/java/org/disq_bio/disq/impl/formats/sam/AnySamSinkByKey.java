@@ -0,0 +1,145 @@
+package org.disq_bio.disq.impl.formats.sam;
+
+import com.google.common.collect.Iterators;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMReadGroupRecord;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.SAMTag;
+import htsjdk.samtools.cram.ref.ReferenceSource;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.broadcast.Broadcast;
+import org.disq_bio.disq.HtsjdkReadsRdd;
+import org.disq_bio.disq.PartitionByWriteOption;
+import org.disq_bio.disq.impl.file.FileSystemWrapper;
+import org.disq_bio.disq.impl.file.HadoopFileSystemWrapper;
+import org.disq_bio.disq.impl.file.NioFileSystemWrapper;
+import org.disq_bio.disq.impl.formats.KeyedPartsMerger;
+import org.disq_bio.disq.impl.formats.SerializableHadoopConfiguration;
+import org.disq_bio.disq.impl.formats.bam.BamSink;
+import org.disq_bio.disq.impl.formats.cram.CramSink;
+import scala.Tuple2;
+
+/**
+ * Write reads to a BAM/CRAM/SAM file for each contig or read group, in a directory on Spark. This
+ * is done in a single pass by routing each read to a headerless part file for its key, then merging
+ * the parts for each key into a single file.
+ *
+ * @see PartitionByWriteOption
+ * @see HtsjdkReadsRdd
+ */
+public class AnySamSinkByKey extends AbstractSamSink implements Serializable {
+
+  private final SamFormat samFormat;
+  private final PartitionByWriteOption partitionByWriteOption;
+
+  public AnySamSinkByKey(SamFormat samFormat, PartitionByWriteOption partitionByWriteOption) {
+    this.samFormat = samFormat;
+    this.partitionByWriteOption = partitionByWriteOption;
+  }
+
+  @Override
+  public void save(
+      JavaSparkContext jsc,
+      SAMFileHeader header,
+      JavaRDD<SAMRecord> reads,
+      String path,
+      String referenceSourcePath,
+      String tempPartsDirectory)
+      throws IOException {
+
+    FileSystemWrapper fileSystemWrapper = new HadoopFileSystemWrapper();
+    if (fileSystemWrapper.exists(
+        jsc.hadoopConfiguration(), path)) { // delete output path if it exists
+      fileSystemWrapper.delete(jsc.hadoopConfiguration(), path);
+    }
+
+    ReferenceSource referenceSource =
+        referenceSourcePath == null
+            ? null
+            : new ReferenceSource(NioFileSystemWrapper.asPath(referenceSourcePath));
+    Broadcast<LazySamFileHeader> headerBroadcast = jsc.broadcast(LazySamFileHeader.of(header));
+    SerializableHadoopConfiguration confSer =
+        new SerializableHadoopConfiguration(jsc.hadoopConfiguration());
+    PartitionByWriteOption partitionBy = partitionByWriteOption;
+    reads
+        .mapPartitionsToPair(
+            readIterator -> {
+              SAMFileHeader h = headerBroadcast.getValue().getHeader();
+              KeyedHeaderlessSamOutputFormat.setHeader(h);
+              KeyedHeaderlessSamOutputFormat.setSamFormat(samFormat);
+              KeyedHeaderlessSamOutputFormat.setReferenceSource(
+                  samFormat == SamFormat.CRAM
+                      ? getTaskReferenceSource(confSer.getConf(), referenceSourcePath)
+                      : null);
+              Map<String, Integer> readGroupIndexes = new HashMap<>();
+              List<SAMReadGroupRecord> readGroups = h.getReadGroups();
+              for (int i = 0; i < readGroups.size(); i++) {
+                readGroupIndexes.put(readGroups.get(i).getId(), i);
+              }
+              return Iterators.transform(
+                  readIterator,
+                  read -> {
+                    int index;
+                    if (partitionBy == PartitionByWriteOption.CONTIG) {
+                      index = h.getSequenceIndex(read.getReferenceName());
+                    } else {
+                      String readGroup = read.getStringAttribute(SAMTag.RG.name());
+                      index = readGroupIndexes.getOrDefault(readGroup, -1);
+                    }
+                    return new Tuple2<>(KeyedPartsMerger.key(index), read);
+                  });
+            })
+        .saveAsNewAPIHadoopFile(
+            tempPartsDirectory,
+            String.class,
+            SAMRecord.class,
+            KeyedHeaderlessSamOutputFormat.class,
+            getWriteConfiguration(jsc));
+
+    List<String> names =
+        partitionByWriteOption == PartitionByWriteOption.CONTIG
+            ? header
+                .getSequenceDictionary()
+                .getSequences()
+                .stream()
+                .map(SAMSequenceRecord::getSequenceName)
+                .collect(Collectors.toList())
+            : header
+                .getReadGroups()
+                .stream()
+                .map(SAMReadGroupRecord::getId)
+                .collect(Collectors.toList());
+    new KeyedPartsMerger()
+        .mergeParts(
+            jsc.hadoopConfiguration(),
+            tempPartsDirectory,
+            path,
+            names,
+            samFormat.getExtension(),
+            partsDirectory -> {
+              switch (samFormat) {
+                case BAM:
+                  BamSink.writeHeaderAndTerminator(
+                      jsc.hadoopConfiguration(), partsDirectory, header);
+                  break;
+                case CRAM:
+                  CramSink.writeHeaderAndTerminator(
+                      jsc.hadoopConfiguration(), partsDirectory, header, referenceSource);
+                  break;
+                case SAM:
+                  SamSink.writeHeader(jsc.hadoopConfiguration(), partsDirectory, header);
+                  break;
+                default:
+                  throw new IllegalArgumentException("Unrecognized format: " + samFormat);
+              }
+            });
+  }
+}
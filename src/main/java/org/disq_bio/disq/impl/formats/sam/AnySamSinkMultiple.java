@@ -2,8 +2,6 @@ package org.disq_bio.disq.impl.formats.sam;
 
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMRecord;
-import htsjdk.samtools.cram.ref.CRAMReferenceSource;
-import htsjdk.samtools.cram.ref.ReferenceSource;
 import java.io.IOException;
 import java.io.Serializable;
 import org.apache.spark.api.java.JavaRDD;
@@ -13,7 +11,7 @@ import org.apache.spark.broadcast.Broadcast;
 import org.disq_bio.disq.HtsjdkReadsRdd;
 import org.disq_bio.disq.impl.file.FileSystemWrapper;
 import org.disq_bio.disq.impl.file.HadoopFileSystemWrapper;
-import org.disq_bio.disq.impl.file.NioFileSystemWrapper;
+import org.disq_bio.disq.impl.formats.SerializableHadoopConfiguration;
 import org.disq_bio.disq.impl.formats.cram.CramSink;
 import scala.Tuple2;
 
@@ -52,18 +50,18 @@ public class AnySamSinkMultiple extends AbstractSamSink implements Serializable
       fileSystemWrapper.delete(jsc.hadoopConfiguration(), path);
     }
 
-    ReferenceSource referenceSource =
-        referenceSourcePath == null
-            ? null
-            : new ReferenceSource(NioFileSystemWrapper.asPath(referenceSourcePath));
-    Broadcast<SAMFileHeader> headerBroadcast = jsc.broadcast(header);
-    Broadcast<CRAMReferenceSource> referenceSourceBroadCast = jsc.broadcast(referenceSource);
+    Broadcast<LazySamFileHeader> headerBroadcast = jsc.broadcast(LazySamFileHeader.of(header));
+    SerializableHadoopConfiguration confSer =
+        new SerializableHadoopConfiguration(jsc.hadoopConfiguration());
     reads
         .mapPartitions(
             readIterator -> {
-              AnySamOutputFormat.setHeader(headerBroadcast.getValue());
+              AnySamOutputFormat.setHeader(headerBroadcast.getValue().getHeader());
               AnySamOutputFormat.setSamFormat(samFormat);
-              AnySamOutputFormat.setReferenceSource(referenceSourceBroadCast.getValue());
+              AnySamOutputFormat.setReferenceSource(
+                  samFormat == SamFormat.CRAM
+                      ? getTaskReferenceSource(confSer.getConf(), referenceSourcePath)
+                      : null);
               return readIterator;
             })
         .mapToPair(
@@ -0,0 +1,265 @@
+package org.disq_bio.disq.impl.formats.sam;
+
+import htsjdk.samtools.SAMException;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A memory-efficient, read-only view of the names and lengths in a sequence dictionary.
+ *
+ * <p>All sequence names are stored back-to-back in a single byte array, with their offsets and
+ * lengths in primitive arrays, so an assembly with millions of contigs costs a few arrays rather
+ * than millions of {@link SAMSequenceRecord} objects. This makes it cheap to serialize (e.g. in a
+ * Spark broadcast), and name lookups can be done directly against raw bytes without allocating
+ * strings. The hash index used for lookups is not serialized; it is rebuilt on first use.
+ */
+public final class CompactSequenceDictionary implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final int EMPTY = -1;
+
+  private final byte[] names;
+  private final int[] nameOffsets; // nameOffsets[i]..nameOffsets[i + 1] is the name of sequence i
+  private final int[] lengths;
+
+  private transient volatile int[] hashIndex; // open addressing, stores sequence indexes
+
+  private CompactSequenceDictionary(byte[] names, int[] nameOffsets, int[] lengths) {
+    this.names = names;
+    this.nameOffsets = nameOffsets;
+    this.lengths = lengths;
+  }
+
+  /** @return a compact copy of the names and lengths in the given sequence dictionary */
+  public static CompactSequenceDictionary fromSequenceDictionary(
+      SAMSequenceDictionary sequenceDictionary) {
+    Builder builder = new Builder(sequenceDictionary.size());
+    for (SAMSequenceRecord sequenceRecord : sequenceDictionary.getSequences()) {
+      builder.add(sequenceRecord.getSequenceName(), sequenceRecord.getSequenceLength());
+    }
+    return builder.build();
+  }
+
+  /**
+   * Read the reference sequence names and lengths from the binary part of a BAM header, without
+   * parsing the header text.
+   *
+   * @param uncompressedIn the decompressed BAM stream, positioned at the start of the file
+   * @return the sequence dictionary; the stream is left positioned at the first record
+   */
+  public static CompactSequenceDictionary fromBamHeader(InputStream uncompressedIn)
+      throws IOException {
+    DataInputStream in = new DataInputStream(uncompressedIn);
+    byte[] magic = new byte[4];
+    in.readFully(magic);
+    if (magic[0] != 'B' || magic[1] != 'A' || magic[2] != 'M' || magic[3] != 1) {
+      throw new SAMException("Invalid BAM file header");
+    }
+    skipFully(in, readInt(in)); // header text
+    int sequenceCount = readInt(in);
+    if (sequenceCount < 0) {
+      throw new SAMException("Invalid number of reference sequences: " + sequenceCount);
+    }
+    Builder builder = new Builder(sequenceCount);
+    byte[] name = new byte[256];
+    for (int i = 0; i < sequenceCount; i++) {
+      int nameLength = readInt(in); // includes the trailing NUL
+      if (nameLength < 1) {
+        throw new SAMException("Invalid reference sequence name length: " + nameLength);
+      }
+      if (nameLength > name.length) {
+        name = new byte[Math.max(nameLength, name.length * 2)];
+      }
+      in.readFully(name, 0, nameLength);
+      builder.add(name, 0, nameLength - 1, readInt(in));
+    }
+    return builder.build();
+  }
+
+  /** @return the number of sequences in the dictionary */
+  public int size() {
+    return lengths.length;
+  }
+
+  /** @return the length of the sequence with the given index */
+  public int getSequenceLength(int sequenceIndex) {
+    return lengths[sequenceIndex];
+  }
+
+  /** @return the name of the sequence with the given index */
+  public String getSequenceName(int sequenceIndex) {
+    int start = nameOffsets[sequenceIndex];
+    return new String(
+        names, start, nameOffsets[sequenceIndex + 1] - start, StandardCharsets.ISO_8859_1);
+  }
+
+  /** @return the index of the sequence with the given name, or -1 if there is no such sequence */
+  public int getSequenceIndex(String sequenceName) {
+    int[] index = getHashIndex();
+    int mask = index.length - 1;
+    for (int slot = hash(sequenceName) & mask; index[slot] != EMPTY; slot = (slot + 1) & mask) {
+      if (nameEquals(index[slot], sequenceName)) {
+        return index[slot];
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return the index of the sequence whose name is given by the bytes {@code buf[off, off + len)},
+   *     or -1 if there is no such sequence
+   */
+  public int getSequenceIndex(byte[] buf, int off, int len) {
+    int[] index = getHashIndex();
+    int mask = index.length - 1;
+    for (int slot = hash(buf, off, len) & mask; index[slot] != EMPTY; slot = (slot + 1) & mask) {
+      if (nameEquals(index[slot], buf, off, len)) {
+        return index[slot];
+      }
+    }
+    return -1;
+  }
+
+  private int[] getHashIndex() {
+    int[] index = hashIndex;
+    if (index == null) {
+      index = buildHashIndex();
+      hashIndex = index; // benign race: every thread builds an identical index
+    }
+    return index;
+  }
+
+  private int[] buildHashIndex() {
+    // keep the load factor at or below 0.5 so that probe sequences stay short
+    int capacity = Integer.highestOneBit(Math.max(size(), 1) * 2 - 1) << 1;
+    int[] index = new int[capacity];
+    Arrays.fill(index, EMPTY);
+    int mask = capacity - 1;
+    for (int i = 0; i < size(); i++) {
+      int start = nameOffsets[i];
+      int slot = hash(names, start, nameOffsets[i + 1] - start) & mask;
+      while (index[slot] != EMPTY) {
+        if (nameEquals(index[slot], names, start, nameOffsets[i + 1] - start)) {
+          throw new IllegalArgumentException(
+              "Duplicate sequence name in dictionary: " + getSequenceName(i));
+        }
+        slot = (slot + 1) & mask;
+      }
+      index[slot] = i;
+    }
+    return index;
+  }
+
+  private boolean nameEquals(int sequenceIndex, byte[] buf, int off, int len) {
+    int start = nameOffsets[sequenceIndex];
+    if (nameOffsets[sequenceIndex + 1] - start != len) {
+      return false;
+    }
+    for (int i = 0; i < len; i++) {
+      if (names[start + i] != buf[off + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean nameEquals(int sequenceIndex, String name) {
+    int start = nameOffsets[sequenceIndex];
+    if (nameOffsets[sequenceIndex + 1] - start != name.length()) {
+      return false;
+    }
+    for (int i = 0; i < name.length(); i++) {
+      if ((char) (names[start + i] & 0xff) != name.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // FNV-1a, computed identically over bytes and (Latin-1) chars
+  private static int hash(byte[] buf, int off, int len) {
+    int h = 0x811c9dc5;
+    for (int i = off; i < off + len; i++) {
+      h = (h ^ (buf[i] & 0xff)) * 0x01000193;
+    }
+    return mix(h);
+  }
+
+  private static int hash(String s) {
+    int h = 0x811c9dc5;
+    for (int i = 0; i < s.length(); i++) {
+      h = (h ^ (s.charAt(i) & 0xff)) * 0x01000193;
+    }
+    return mix(h);
+  }
+
+  private static int mix(int h) {
+    return h ^ (h >>> 16);
+  }
+
+  private static int readInt(DataInputStream in) throws IOException {
+    return Integer.reverseBytes(in.readInt()); // BAM is little-endian
+  }
+
+  private static void skipFully(InputStream in, long n) throws IOException {
+    while (n > 0) {
+      long skipped = in.skip(n);
+      if (skipped <= 0) {
+        if (in.read() < 0) {
+          throw new EOFException("Premature EOF while skipping BAM header text");
+        }
+        skipped = 1;
+      }
+      n -= skipped;
+    }
+  }
+
+  /** Accumulates names and lengths into growable primitive arrays. */
+  static final class Builder {
+    private byte[] names;
+    private int[] nameOffsets;
+    private int[] lengths;
+    private int size;
+
+    Builder(int expectedSize) {
+      names = new byte[Math.max(16, expectedSize * 8)];
+      nameOffsets = new int[expectedSize + 1];
+      lengths = new int[expectedSize];
+    }
+
+    Builder add(String name, int length) {
+      byte[] bytes = name.getBytes(StandardCharsets.ISO_8859_1);
+      return add(bytes, 0, bytes.length, length);
+    }
+
+    Builder add(byte[] buf, int off, int len, int length) {
+      if (size == lengths.length) {
+        lengths = Arrays.copyOf(lengths, Math.max(8, size * 2));
+        nameOffsets = Arrays.copyOf(nameOffsets, lengths.length + 1);
+      }
+      int start = nameOffsets[size];
+      if (start + len > names.length) {
+        names = Arrays.copyOf(names, Math.max(start + len, names.length * 2));
+      }
+      System.arraycopy(buf, off, names, start, len);
+      lengths[size] = length;
+      nameOffsets[++size] = start + len;
+      return this;
+    }
+
+    CompactSequenceDictionary build() {
+      return new CompactSequenceDictionary(
+          Arrays.copyOf(names, nameOffsets[size]),
+          Arrays.copyOf(nameOffsets, size + 1),
+          Arrays.copyOf(lengths, size));
+    }
+  }
+}
@@ -0,0 +1,270 @@
+package org.disq_bio.disq.impl.formats.sam;
+
+import com.google.common.collect.Iterators;
+import htsjdk.samtools.BAMRecordCodec;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import org.apache.spark.Partitioner;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.broadcast.Broadcast;
+import scala.Tuple2;
+
+/**
+ * Sorts reads by coordinate across a cluster, for writing coordinate-sorted files.
+ *
+ * <p>Each read is given a primitive {@code long} key made from its reference index and alignment
+ * start. Unplaced reads sort last, with keys spread by read name hash so that they can be divided
+ * between several output partitions rather than all going to the last one. Keys are sampled to
+ * build a range partitioner, so that the output partitions are of similar size, and reads are
+ * shuffled as encoded BAM records (which is much more compact than serializing {@link SAMRecord}
+ * objects, and does not include the header). Spark sorts the records by key as part of the shuffle,
+ * spilling to disk if a partition does not fit in memory, and the records are decoded in order as
+ * they are consumed.
+ *
+ * <p>The input reads are not modified. They are computed twice, once to sample the keys and once to
+ * shuffle them, so an input that is expensive to compute should be cached first.
+ */
+public class CoordinateSorter {
+
+  private static final int MAX_SAMPLE_SIZE = 1_000_000;
+  private static final int SAMPLES_PER_OUTPUT_PARTITION = 20;
+
+  private CoordinateSorter() {}
+
+  /** @return a copy of the header with the sort order set to coordinate */
+  public static SAMFileHeader sortedHeader(SAMFileHeader header) {
+    SAMFileHeader sortedHeader = header.clone();
+    sortedHeader.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+    return sortedHeader;
+  }
+
+  /**
+   * @param header the header to associate with the sorted reads, which must contain the references
+   *     that the reads are aligned to
+   * @return the reads, sorted by coordinate, in the same number of partitions as the input. Note
+   *     that the input is computed twice (see the class documentation).
+   */
+  public static JavaRDD<SAMRecord> sort(
+      JavaSparkContext jsc, SAMFileHeader header, JavaRDD<SAMRecord> reads) {
+    Broadcast<LazySamFileHeader> headerBroadcast = jsc.broadcast(LazySamFileHeader.of(header));
+    int numPartitions = reads.getNumPartitions();
+    RangePartitioner partitioner =
+        RangePartitioner.fromSample(
+            reads.map(read -> key(read, headerBroadcast.getValue().getHeader())), numPartitions);
+    return reads
+        .mapPartitionsToPair(
+            readIterator -> {
+              SAMFileHeader h = headerBroadcast.getValue().getHeader();
+              ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+              BAMRecordCodec codec = new BAMRecordCodec(h);
+              codec.setOutputStream(bytes);
+              HeaderMatcher headerMatcher = new HeaderMatcher(h);
+              return Iterators.transform(
+                  readIterator,
+                  read -> {
+                    long key = key(read, h);
+                    bytes.reset();
+                    codec.encode(headerMatcher.withHeader(read));
+                    return new Tuple2<>(key, bytes.toByteArray());
+                  });
+            })
+        .repartitionAndSortWithinPartitions(partitioner)
+        .mapPartitions(
+            records -> {
+              BAMRecordCodec codec = new BAMRecordCodec(headerBroadcast.getValue().getHeader());
+              return Iterators.transform(
+                  records,
+                  record -> {
+                    codec.setInputStream(new ByteArrayInputStream(record._2()));
+                    return codec.decode();
+                  });
+            });
+  }
+
+  /**
+   * @return a key that orders reads by reference index then alignment start, with reads that have
+   *     no reference last. Reads with no reference are ordered by a hash of their read name (which
+   *     keeps reads with the same name together), using keys above those of any reference index
+   *     that a sequence dictionary can have in practice.
+   */
+  static long key(SAMRecord read, SAMFileHeader header) {
+    // resolve the reference against the output header, without changing the read's own header
+    int referenceIndex = header.getSequenceIndex(read.getReferenceName());
+    if (referenceIndex < 0) {
+      String readName = read.getReadName();
+      return Long.MAX_VALUE - ((readName == null ? 0 : readName.hashCode()) & 0x7fffffffL);
+    }
+    return ((long) referenceIndex << 32) | (read.getAlignmentStart() & 0xffffffffL);
+  }
+
+  /**
+   * Encoding a read uses the reference indexes resolved against its own header, so reads whose
+   * header has a different sequence dictionary to the output header are copied and given the output
+   * header, leaving the input reads unchanged.
+   */
+  private static class HeaderMatcher {
+    private final SAMFileHeader header;
+    private SAMFileHeader lastHeader;
+    private boolean lastHeaderMatches;
+
+    HeaderMatcher(SAMFileHeader header) {
+      this.header = header;
+    }
+
+    SAMRecord withHeader(SAMRecord read) {
+      if (read.getHeader() != lastHeader) {
+        lastHeader = read.getHeader();
+        lastHeaderMatches =
+            lastHeader == header
+                || (lastHeader != null
+                    && lastHeader
+                        .getSequenceDictionary()
+                        .isSameDictionary(header.getSequenceDictionary()));
+      }
+      if (lastHeaderMatches) {
+        return read;
+      }
+      try {
+        SAMRecord copy = (SAMRecord) read.clone();
+        copy.setHeader(header);
+        return copy;
+      } catch (CloneNotSupportedException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  /**
+   * Find the order that sorts the given keys, using only primitive sorts. Each key is replaced by
+   * its rank, which is the position of an equal key in a sorted copy of the keys (binary search
+   * always finds the same position for equal keys), and the rank and original index are packed into
+   * a single {@code long}, so that sorting the packed values gives a stable order.
+   *
+   * @return the indexes of the keys, in sorted order
+   */
+  static int[] sortedOrder(long[] keys) {
+    long[] sortedKeys = keys.clone();
+    Arrays.sort(sortedKeys);
+    long[] packed = new long[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      long rank = Arrays.binarySearch(sortedKeys, keys[i]);
+      packed[i] = (rank << 32) | i;
+    }
+    Arrays.sort(packed);
+    int[] order = new int[keys.length];
+    for (int i = 0; i < packed.length; i++) {
+      order[i] = (int) packed[i];
+    }
+    return order;
+  }
+
+  /** A partitioner that assigns {@code long} keys to partitions by range. */
+  static class RangePartitioner extends Partitioner {
+    private static final long serialVersionUID = 1L;
+
+    private final long[] upperBounds; // inclusive upper bound for all but the last partition
+
+    RangePartitioner(long[] upperBounds) {
+      this.upperBounds = upperBounds;
+    }
+
+    /**
+     * Build a partitioner from a sample of each partition of the given keys, weighting each sampled
+     * key by the size of the partition it came from, so that the ranges contain similar numbers of
+     * keys.
+     */
+    static RangePartitioner fromSample(JavaRDD<Long> keys, int numPartitions) {
+      if (numPartitions <= 1) {
+        return new RangePartitioner(new long[0]);
+      }
+      int sampleSize = Math.min(SAMPLES_PER_OUTPUT_PARTITION * numPartitions, MAX_SAMPLE_SIZE);
+      int samplesPerPartition =
+          (int) Math.ceil(3.0 * sampleSize / Math.max(1, keys.getNumPartitions()));
+      List<Tuple2<Long, long[]>> samples =
+          keys.mapPartitionsWithIndex(
+                  (index, it) ->
+                      Collections.singletonList(reservoirSample(it, samplesPerPartition, index))
+                          .iterator(),
+                  false)
+              .collect();
+
+      int total = samples.stream().mapToInt(s -> s._2().length).sum();
+      long[] sampledKeys = new long[total];
+      double[] weights = new double[total];
+      int n = 0;
+      for (Tuple2<Long, long[]> sample : samples) {
+        double weight = sample._2().length == 0 ? 0 : (double) sample._1() / sample._2().length;
+        for (long key : sample._2()) {
+          sampledKeys[n] = key;
+          weights[n] = weight;
+          n++;
+        }
+      }
+      int[] order = sortedOrder(sampledKeys);
+      double totalWeight = Arrays.stream(weights).sum();
+      double step = totalWeight / numPartitions;
+      long[] upperBounds = new long[numPartitions - 1];
+      int numBounds = 0;
+      double cumulativeWeight = 0;
+      for (int i = 0; i < order.length && numBounds < upperBounds.length; i++) {
+        long key = sampledKeys[order[i]];
+        cumulativeWeight += weights[order[i]];
+        if (cumulativeWeight >= step * (numBounds + 1)
+            && (numBounds == 0 || key > upperBounds[numBounds - 1])) {
+          upperBounds[numBounds++] = key;
+        }
+      }
+      return new RangePartitioner(Arrays.copyOf(upperBounds, numBounds));
+    }
+
+    private static Tuple2<Long, long[]> reservoirSample(
+        Iterator<Long> keys, int sampleSize, int seed) {
+      Random random = new Random(seed);
+      long[] sample = new long[sampleSize];
+      long count = 0;
+      while (keys.hasNext()) {
+        long key = keys.next();
+        if (count < sampleSize) {
+          sample[(int) count] = key;
+        } else {
+          long j = (long) (random.nextDouble() * (count + 1));
+          if (j < sampleSize) {
+            sample[(int) j] = key;
+          }
+        }
+        count++;
+      }
+      return new Tuple2<>(count, Arrays.copyOf(sample, (int) Math.min(count, sampleSize)));
+    }
+
+    @Override
+    public int numPartitions() {
+      return upperBounds.length + 1;
+    }
+
+    @Override
+    public int getPartition(Object key) {
+      int i = Arrays.binarySearch(upperBounds, (Long) key);
+      return i < 0 ? -i - 1 : i;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof RangePartitioner
+          && Arrays.equals(upperBounds, ((RangePartitioner) o).upperBounds);
+    }
+
+    @Override
+    public int hashCode() {
+      return Arrays.hashCode(upperBounds);
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package org.disq_bio.disq.impl.formats.sam;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMTextWriter;
+import htsjdk.samtools.cram.ref.CRAMReferenceSource;
+import java.io.IOException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.disq_bio.disq.HtsjdkReadsRdd;
+import org.disq_bio.disq.impl.formats.KeyedRecordWriter;
+import org.disq_bio.disq.impl.formats.bam.HeaderlessBamOutputFormat;
+import org.disq_bio.disq.impl.formats.cram.CramOutputFormat;
+
+/**
+ * An output format for writing {@link SAMRecord} objects to headerless BAM/CRAM/SAM part files, one
+ * for each key, so the parts for each key can be merged into a single file. This class should not
+ * be used directly.
+ *
+ * @see KeyedRecordWriter
+ * @see HtsjdkReadsRdd
+ */
+public class KeyedHeaderlessSamOutputFormat extends FileOutputFormat<String, SAMRecord> {
+
+  static class HeaderlessSamRecordWriter extends RecordWriter<Void, SAMRecord> {
+
+    private final SAMTextWriter samTextWriter;
+
+    public HeaderlessSamRecordWriter(Configuration conf, Path file) throws IOException {
+      samTextWriter = new SAMTextWriter(file.getFileSystem(conf).create(file));
+    }
+
+    @Override
+    public void write(Void ignore, SAMRecord samRecord) {
+      samTextWriter.writeAlignment(samRecord);
+    }
+
+    @Override
+    public void close(TaskAttemptContext taskAttemptContext) {
+      samTextWriter.finish();
+    }
+  }
+
+  private static SAMFileHeader header;
+  private static SamFormat samFormat;
+  private static CRAMReferenceSource refSource;
+
+  public static void setHeader(SAMFileHeader samFileHeader) {
+    KeyedHeaderlessSamOutputFormat.header = samFileHeader;
+  }
+
+  public static void setSamFormat(SamFormat samFormat) {
+    KeyedHeaderlessSamOutputFormat.samFormat = samFormat;
+  }
+
+  public static void setReferenceSource(CRAMReferenceSource referenceSource) {
+    KeyedHeaderlessSamOutputFormat.refSource = referenceSource;
+  }
+
+  @Override
+  public RecordWriter<String, SAMRecord> getRecordWriter(TaskAttemptContext taskAttemptContext)
+      throws IOException {
+    Configuration conf = taskAttemptContext.getConfiguration();
+    Path workFile = getDefaultWorkFile(taskAttemptContext, "");
+    SAMFileHeader header = KeyedHeaderlessSamOutputFormat.header;
+    SamFormat samFormat = KeyedHeaderlessSamOutputFormat.samFormat;
+    CRAMReferenceSource refSource = KeyedHeaderlessSamOutputFormat.refSource;
+    return new KeyedRecordWriter<>(
+        taskAttemptContext,
+        workFile,
+        file -> {
+          switch (samFormat) {
+            case BAM:
+              return new HeaderlessBamOutputFormat.BamRecordWriter(conf, file, header);
+            case CRAM:
+              return new CramOutputFormat.CramRecordWriter(conf, file, header, refSource);
+            case SAM:
+              return new HeaderlessSamRecordWriter(conf, file);
+            default:
+              throw new IllegalArgumentException("Unrecognized format: " + samFormat);
+          }
+        });
+  }
+}
@@ -0,0 +1,130 @@
+package org.disq_bio.disq.impl.formats.sam;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.SAMTextHeaderCodec;
+import htsjdk.samtools.util.BufferedLineReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A serializable form of a {@link SAMFileHeader} that is cheap to broadcast for headers with very
+ * large sequence dictionaries.
+ *
+ * <p>The {@code @SQ} lines are held in a {@link CompactSequenceDictionary}, and any {@code @SQ}
+ * attributes other than name and length are kept as raw text. Everything else in the header is kept
+ * as SAM header text. The full {@link SAMFileHeader} is only built when {@link #getHeader()} is
+ * called, and then once per instance, so a broadcast copy is materialized at most once per
+ * executor.
+ */
+public final class LazySamFileHeader implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final String nonSequenceHeaderText;
+  private final CompactSequenceDictionary sequenceDictionary;
+  private final byte[] sequenceAttributes; // tab-separated TAG:VALUE pairs, or null if none
+  private final int[] sequenceAttributeOffsets;
+
+  private transient volatile SAMFileHeader header;
+
+  private LazySamFileHeader(
+      String nonSequenceHeaderText,
+      CompactSequenceDictionary sequenceDictionary,
+      byte[] sequenceAttributes,
+      int[] sequenceAttributeOffsets,
+      SAMFileHeader header) {
+    this.nonSequenceHeaderText = nonSequenceHeaderText;
+    this.sequenceDictionary = sequenceDictionary;
+    this.sequenceAttributes = sequenceAttributes;
+    this.sequenceAttributeOffsets = sequenceAttributeOffsets;
+    this.header = header;
+  }
+
+  public static LazySamFileHeader of(SAMFileHeader header) {
+    SAMSequenceDictionary dictionary = header.getSequenceDictionary();
+
+    ByteArrayOutputStream attributes = new ByteArrayOutputStream();
+    int[] attributeOffsets = new int[dictionary.size() + 1];
+    for (int i = 0; i < dictionary.size(); i++) {
+      for (Map.Entry<String, String> attribute : dictionary.getSequence(i).getAttributes()) {
+        String text = attribute.getKey() + ":" + attribute.getValue();
+        if (attributes.size() > attributeOffsets[i]) {
+          text = "\t" + text;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        attributes.write(bytes, 0, bytes.length);
+      }
+      attributeOffsets[i + 1] = attributes.size();
+    }
+
+    SAMFileHeader nonSequenceHeader = new SAMFileHeader();
+    for (Map.Entry<String, String> attribute : header.getAttributes()) {
+      nonSequenceHeader.setAttribute(attribute.getKey(), attribute.getValue());
+    }
+    nonSequenceHeader.setReadGroups(header.getReadGroups());
+    nonSequenceHeader.setProgramRecords(header.getProgramRecords());
+    nonSequenceHeader.setComments(header.getComments());
+    StringWriter text = new StringWriter();
+    new SAMTextHeaderCodec().encode(text, nonSequenceHeader, true);
+
+    return new LazySamFileHeader(
+        text.toString(),
+        CompactSequenceDictionary.fromSequenceDictionary(dictionary),
+        attributes.size() == 0 ? null : attributes.toByteArray(),
+        attributes.size() == 0 ? null : attributeOffsets,
+        header);
+  }
+
+  /** @return the sequence names and lengths, without materializing the full header */
+  public CompactSequenceDictionary getSequenceDictionary() {
+    return sequenceDictionary;
+  }
+
+  /** @return the full header, which is built on the first call */
+  public SAMFileHeader getHeader() {
+    SAMFileHeader h = header;
+    if (h == null) {
+      synchronized (this) {
+        h = header;
+        if (h == null) {
+          h = materialize();
+          header = h;
+        }
+      }
+    }
+    return h;
+  }
+
+  private SAMFileHeader materialize() {
+    SAMFileHeader h =
+        new SAMTextHeaderCodec().decode(BufferedLineReader.fromString(nonSequenceHeaderText), null);
+    List<SAMSequenceRecord> sequences = new ArrayList<>(sequenceDictionary.size());
+    for (int i = 0; i < sequenceDictionary.size(); i++) {
+      SAMSequenceRecord sequence =
+          new SAMSequenceRecord(
+              sequenceDictionary.getSequenceName(i), sequenceDictionary.getSequenceLength(i));
+      if (sequenceAttributes != null) {
+        int start = sequenceAttributeOffsets[i];
+        int end = sequenceAttributeOffsets[i + 1];
+        if (end > start) {
+          String attributes =
+              new String(sequenceAttributes, start, end - start, StandardCharsets.UTF_8);
+          for (String attribute : attributes.split("\t")) {
+            int colon = attribute.indexOf(':');
+            sequence.setAttribute(attribute.substring(0, colon), attribute.substring(colon + 1));
+          }
+        }
+      }
+      sequences.add(sequence);
+    }
+    h.setSequenceDictionary(new SAMSequenceDictionary(sequences));
+    return h;
+  }
+}
@@ -13,19 +13,22 @@ import org.disq_bio.disq.impl.formats.cram.CramSource;
 public enum SamFormat {
   BAM(".bam", ".bai", BamSource::new),
   CRAM(".cram", ".crai", CramSource::new),
-  SAM(".sam", null, fileSystemWrapper -> new SamSource());
+  SAM(".sam", null, fileSystemWrapper -> new SamSource(), ".sam.bgz", ".sam.gz");
 
   private final String extension;
   private final String indexExtension;
   private final Function<FileSystemWrapper, AbstractSamSource> sourceProvider;
+  private final String[] compressedExtensions;
 
   SamFormat(
       String extension,
       String indexExtension,
-      Function<FileSystemWrapper, AbstractSamSource> sourceProvider) {
+      Function<FileSystemWrapper, AbstractSamSource> sourceProvider,
+      String... compressedExtensions) {
     this.extension = extension;
     this.indexExtension = indexExtension;
     this.sourceProvider = sourceProvider;
+    this.compressedExtensions = compressedExtensions;
   }
 
   public String getExtension() {
@@ -70,6 +73,25 @@ public enum SamFormat {
     return null;
   }
 
+  /**
+   * @return the format of a file to be read, which unlike {@link #fromPath(String)} also recognizes
+   *     compressed files that can only be read (such as <code>.sam.bgz</code> files)
+   */
+  public static SamFormat fromPathForReading(String path) {
+    SamFormat samFormat = fromPath(path);
+    if (samFormat != null) {
+      return samFormat;
+    }
+    for (SamFormat format : values()) {
+      for (String compressedExtension : format.compressedExtensions) {
+        if (path.endsWith(compressedExtension)) {
+          return format;
+        }
+      }
+    }
+    return null;
+  }
+
   public static FileCardinalityWriteOption fileCardinalityWriteOptionFromPath(String path) {
     return fromPath(path) == null ? MULTIPLE : SINGLE;
   }
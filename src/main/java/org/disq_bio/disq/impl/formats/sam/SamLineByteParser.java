@@ -0,0 +1,379 @@
+package org.disq_bio.disq.impl.formats.sam;
+
+import htsjdk.samtools.DefaultSAMRecordFactory;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMLineParser;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.TagValueAndUnsignedArrayFlag;
+import htsjdk.samtools.TextTagCodec;
+import htsjdk.samtools.ValidationStringency;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import org.apache.hadoop.io.Text;
+
+/**
+ * Parses SAM text lines into {@link SAMRecord}s directly from their UTF-8 bytes, without converting
+ * each line (and each of its fields) to strings first, as {@link SAMLineParser} does.
+ *
+ * <p>Lines are split into fields in place, and numeric fields, bases, and base qualities are
+ * decoded straight from the bytes. Reference names are looked up in a {@link
+ * CompactSequenceDictionary} from their bytes, so the only strings created for a typical record are
+ * its name, CIGAR, and string tag values.
+ *
+ * <p>Only lines that are well-formed and valid are parsed this way. Anything else (or anything this
+ * class doesn't handle, such as a FLAG in hex) is passed to a {@link SAMLineParser}, so problems
+ * are reported in exactly the same way as before, according to the validation stringency.
+ */
+public class SamLineByteParser {
+
+  private static final int QNAME = 0;
+  private static final int FLAG = 1;
+  private static final int RNAME = 2;
+  private static final int POS = 3;
+  private static final int MAPQ = 4;
+  private static final int CIGAR = 5;
+  private static final int RNEXT = 6;
+  private static final int PNEXT = 7;
+  private static final int TLEN = 8;
+  private static final int SEQ = 9;
+  private static final int QUAL = 10;
+  private static final int MANDATORY_FIELDS = 11;
+
+  /** {@link SAMLineParser} reports lines with this many fields or more. */
+  private static final int MAX_FIELDS = 10000;
+
+  /** Returned from {@link #parseInt(int)} for a field that is not a valid int. */
+  private static final long NOT_AN_INT = Long.MIN_VALUE;
+
+  /** The bases that {@link SAMLineParser} accepts. */
+  private static final boolean[] VALID_BASES = new boolean[128];
+
+  static {
+    for (char base : ".=ABCDGHKMNRSTVWYabcdghkmnrstvwy".toCharArray()) {
+      VALID_BASES[base] = true;
+    }
+  }
+
+  private final SAMFileHeader header;
+  private final CompactSequenceDictionary sequenceDictionary;
+  private final ValidationStringency validationStringency;
+  private final SAMLineParser samLineParser;
+  private final TextTagCodec tagCodec = new TextTagCodec();
+  /** Tag names, indexed by their two (ASCII) characters, so they are only created once. */
+  private final String[] tagNames = new String[128 * 128];
+
+  // the line being parsed, and the start and end offsets of each of its fields
+  private byte[] buf;
+  private int[] fieldStarts = new int[16];
+  private int[] fieldEnds = new int[16];
+  private int fieldCount;
+
+  public SamLineByteParser(LazySamFileHeader header, ValidationStringency validationStringency) {
+    this.header = header.getHeader();
+    this.sequenceDictionary = header.getSequenceDictionary();
+    this.validationStringency = validationStringency;
+    this.samLineParser =
+        new SAMLineParser(
+            new DefaultSAMRecordFactory(), validationStringency, this.header, null, null);
+  }
+
+  /** @return the record for the given line, which must not be a header line */
+  public SAMRecord parseLine(Text line) {
+    return parseLine(line.getBytes(), 0, line.getLength());
+  }
+
+  /** @return the record for the line in {@code buf[off, off + len)} */
+  public SAMRecord parseLine(byte[] buf, int off, int len) {
+    SAMRecord record;
+    try {
+      record = parseValidLine(buf, off, len);
+    } catch (RuntimeException e) {
+      record = null; // let htsjdk report it
+    } finally {
+      this.buf = null;
+    }
+    if (record == null) {
+      return samLineParser.parseLine(new String(buf, off, len, StandardCharsets.UTF_8));
+    }
+    return record;
+  }
+
+  /** @return the record for the line, or null if it is not valid or can't be parsed from bytes */
+  private SAMRecord parseValidLine(byte[] buf, int off, int len) {
+    this.buf = buf;
+    if (!split(off, off + len)) {
+      return null;
+    }
+
+    SAMRecord record = new SAMRecord(header);
+    record.setValidationStringency(validationStringency);
+    record.setReadName(string(QNAME));
+    long flags = parseFlag();
+    if (flags == NOT_AN_INT) {
+      return null;
+    }
+    record.setFlags((int) flags);
+
+    int referenceIndex = SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX;
+    if (!isStar(RNAME)) {
+      referenceIndex = referenceIndex(RNAME);
+      if (referenceIndex == -1) {
+        return null;
+      }
+    } else if (!record.getReadUnmappedFlag()) {
+      return null;
+    }
+    long pos = parseInt(POS);
+    long mapq = parseInt(MAPQ);
+    if (pos == NOT_AN_INT || mapq == NOT_AN_INT) {
+      return null;
+    }
+    if (referenceIndex != SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
+      if (pos == 0 || (!record.getReadUnmappedFlag() && isStar(CIGAR))) {
+        return null;
+      }
+      record.setReferenceIndex(referenceIndex);
+    } else if (pos != 0 || mapq != 0 || !isStar(CIGAR)) {
+      return null;
+    }
+    record.setAlignmentStart((int) pos);
+    record.setMappingQuality((int) mapq);
+    record.setCigarString(isStar(CIGAR) ? SAMRecord.NO_ALIGNMENT_CIGAR : string(CIGAR));
+
+    int mateReferenceIndex = SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX;
+    if (isStar(RNEXT)) {
+      if (record.getReadPairedFlag() && !record.getMateUnmappedFlag()) {
+        return null;
+      }
+    } else {
+      if (!record.getReadPairedFlag()) {
+        return null;
+      }
+      if (fieldLength(RNEXT) == 1 && buf[fieldStarts[RNEXT]] == '=') {
+        mateReferenceIndex = referenceIndex;
+      } else {
+        mateReferenceIndex = referenceIndex(RNEXT);
+        if (mateReferenceIndex == -1) {
+          return null;
+        }
+      }
+      record.setMateReferenceIndex(mateReferenceIndex);
+    }
+    long pnext = parseInt(PNEXT);
+    long tlen = parseInt(TLEN);
+    if (pnext == NOT_AN_INT || tlen == NOT_AN_INT) {
+      return null;
+    }
+    if (mateReferenceIndex != SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
+      if (pnext == 0) {
+        return null;
+      }
+    } else if (pnext != 0 || tlen != 0) {
+      return null;
+    }
+    record.setMateAlignmentStart((int) pnext);
+    record.setInferredInsertSize((int) tlen);
+
+    byte[] bases = SAMRecord.NULL_SEQUENCE;
+    if (!isStar(SEQ)) {
+      bases = parseBases();
+      if (bases == null) {
+        return null;
+      }
+    }
+    record.setReadBases(bases);
+    byte[] qualities = SAMRecord.NULL_QUALS;
+    if (!isStar(QUAL)) {
+      if (bases == SAMRecord.NULL_SEQUENCE || fieldLength(QUAL) != bases.length) {
+        return null;
+      }
+      qualities = parseQualities();
+      if (qualities == null) {
+        return null;
+      }
+    }
+    record.setBaseQualities(qualities);
+
+    for (int i = MANDATORY_FIELDS; i < fieldCount; i++) {
+      parseTag(record, i);
+    }
+
+    if (validationStringency != ValidationStringency.SILENT && record.isValid() != null) {
+      return null;
+    }
+    return record;
+  }
+
+  /** @return false if the line doesn't have the right number of fields, or has an empty field */
+  private boolean split(int start, int end) {
+    fieldCount = 0;
+    int fieldStart = start;
+    for (int i = start; i <= end; i++) {
+      if (i == end || buf[i] == '\t') {
+        if (i == fieldStart || fieldCount + 1 >= MAX_FIELDS) {
+          return false;
+        }
+        if (fieldCount == fieldStarts.length) {
+          fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+          fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+        }
+        fieldStarts[fieldCount] = fieldStart;
+        fieldEnds[fieldCount] = i;
+        fieldCount++;
+        fieldStart = i + 1;
+      }
+    }
+    return fieldCount >= MANDATORY_FIELDS;
+  }
+
+  private int fieldLength(int field) {
+    return fieldEnds[field] - fieldStarts[field];
+  }
+
+  private boolean isStar(int field) {
+    return fieldLength(field) == 1 && buf[fieldStarts[field]] == '*';
+  }
+
+  private String string(int field) {
+    return new String(buf, fieldStarts[field], fieldLength(field), StandardCharsets.UTF_8);
+  }
+
+  private int referenceIndex(int field) {
+    return sequenceDictionary.getSequenceIndex(buf, fieldStarts[field], fieldLength(field));
+  }
+
+  /** @return the flags, or {@link #NOT_AN_INT} unless they are in decimal (not hex or octal) */
+  private long parseFlag() {
+    if (fieldLength(FLAG) > 1 && buf[fieldStarts[FLAG]] == '0') {
+      return NOT_AN_INT;
+    }
+    return parseInt(buf, fieldStarts[FLAG], fieldEnds[FLAG], false);
+  }
+
+  private long parseInt(int field) {
+    return parseInt(buf, fieldStarts[field], fieldEnds[field], true);
+  }
+
+  /**
+   * @return the decimal int in {@code buf[start, end)}, or {@link #NOT_AN_INT} if it is not one,
+   *     accepting the same values as {@link Integer#parseInt(String)}
+   */
+  private static long parseInt(byte[] buf, int start, int end, boolean signed) {
+    boolean negative = false;
+    if (signed && start < end && (buf[start] == '-' || buf[start] == '+')) {
+      negative = buf[start] == '-';
+      start++;
+    }
+    if (start == end || end - start > 10) {
+      return NOT_AN_INT;
+    }
+    long value = 0;
+    for (int i = start; i < end; i++) {
+      int digit = buf[i] - '0';
+      if (digit < 0 || digit > 9) {
+        return NOT_AN_INT;
+      }
+      value = value * 10 + digit;
+    }
+    value = negative ? -value : value;
+    return value < Integer.MIN_VALUE || value > Integer.MAX_VALUE ? NOT_AN_INT : value;
+  }
+
+  /** @return the normalized bases, or null if there is a base that is not valid */
+  private byte[] parseBases() {
+    byte[] bases = Arrays.copyOfRange(buf, fieldStarts[SEQ], fieldEnds[SEQ]);
+    for (int i = 0; i < bases.length; i++) {
+      byte base = bases[i];
+      if (base < 0 || !VALID_BASES[base]) {
+        return null;
+      }
+      // the same normalization as SAMRecord#setReadString
+      if (base == '.') {
+        bases[i] = 'N';
+      } else if (base >= 'a' && base <= 'z') {
+        bases[i] = (byte) (base - ('a' - 'A'));
+      }
+    }
+    return bases;
+  }
+
+  /** @return the phred qualities, or null if there is a character that is not a FASTQ quality */
+  private byte[] parseQualities() {
+    byte[] qualities = Arrays.copyOfRange(buf, fieldStarts[QUAL], fieldEnds[QUAL]);
+    for (int i = 0; i < qualities.length; i++) {
+      byte quality = qualities[i];
+      if (quality < 33 || quality > 126) {
+        return null;
+      }
+      qualities[i] = (byte) (quality - 33);
+    }
+    return qualities;
+  }
+
+  /**
+   * Set the tag in the given field on the record. Tags of type A, i, and Z are decoded from bytes,
+   * and others are decoded by htsjdk, which throws an exception if the tag can't be parsed.
+   */
+  private void parseTag(SAMRecord record, int field) {
+    int start = fieldStarts[field];
+    int length = fieldLength(field);
+    String tagName =
+        length >= 5 && buf[start + 2] == ':' && buf[start + 4] == ':' ? tagName(start) : null;
+    if (tagName != null) {
+      int valueStart = start + 5;
+      int valueLength = length - 5;
+      switch (buf[start + 3]) {
+        case 'Z':
+          record.setAttribute(
+              tagName, new String(buf, valueStart, valueLength, StandardCharsets.UTF_8));
+          return;
+        case 'A':
+          if (valueLength == 1 && buf[valueStart] >= 0) {
+            record.setAttribute(tagName, (char) buf[valueStart]);
+            return;
+          }
+          break;
+        case 'i':
+          long value = parseInt(buf, valueStart, valueStart + valueLength, true);
+          if (value != NOT_AN_INT) {
+            record.setAttribute(tagName, (int) value);
+            return;
+          }
+          break; // may be an unsigned int
+        default:
+          break;
+      }
+    }
+
+    // the same as SAMLineParser
+    Map.Entry<String, Object> entry =
+        tagCodec.decode(new String(buf, start, length, StandardCharsets.UTF_8));
+    if (entry.getValue() instanceof TagValueAndUnsignedArrayFlag) {
+      TagValueAndUnsignedArrayFlag valueAndFlag = (TagValueAndUnsignedArrayFlag) entry.getValue();
+      if (valueAndFlag.isUnsignedArray) {
+        record.setUnsignedArrayAttribute(entry.getKey(), valueAndFlag.value);
+      } else {
+        record.setAttribute(entry.getKey(), valueAndFlag.value);
+      }
+    } else {
+      record.setAttribute(entry.getKey(), entry.getValue());
+    }
+  }
+
+  /** @return the (cached) two-character tag name starting at the given offset, or null */
+  private String tagName(int start) {
+    byte first = buf[start];
+    byte second = buf[start + 1];
+    if (first < 0 || second < 0) {
+      return null;
+    }
+    int key = first << 7 | second;
+    String tagName = tagNames[key];
+    if (tagName == null) {
+      tagName = new String(buf, start, 2, StandardCharsets.US_ASCII);
+      tagNames[key] = tagName;
+    }
+    return tagName;
+  }
+}
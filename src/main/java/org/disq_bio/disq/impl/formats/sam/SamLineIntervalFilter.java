@@ -0,0 +1,98 @@
+package org.disq_bio.disq.impl.formats.sam;
+
+import htsjdk.samtools.SAMFlag;
+import htsjdk.samtools.util.Locatable;
+import java.util.List;
+import org.apache.hadoop.io.Text;
+import org.disq_bio.disq.impl.formats.text.SortedIntervals;
+
+/**
+ * Checks whether a SAM text line may overlap a set of intervals, using only the FLAG, RNAME, POS
+ * and CIGAR fields read from the bytes of the line, so that lines that can't overlap are dropped
+ * before they are parsed into records. Unmapped reads and lines whose alignment can't be found this
+ * way (because they are malformed) are passed, and left for the parsed record to be checked.
+ *
+ * <p>This class is not thread safe.
+ */
+class SamLineIntervalFilter {
+
+  private static final int FLAG = 1;
+  private static final int RNAME = 2;
+  private static final int POS = 3;
+  private static final int CIGAR = 5;
+
+  private final SortedIntervals intervals;
+  private final int[] fieldEnds = new int[CIGAR + 1];
+
+  <T extends Locatable> SamLineIntervalFilter(List<T> intervals) {
+    this.intervals = new SortedIntervals(intervals);
+  }
+
+  /** @return false if the line definitely doesn't overlap any of the intervals */
+  boolean mayOverlap(Text line) {
+    return mayOverlap(line.getBytes(), 0, line.getLength());
+  }
+
+  boolean mayOverlap(byte[] buf, int off, int len) {
+    int end = off + len;
+    int fieldStart = off;
+    for (int field = 0; field <= CIGAR; field++) {
+      if (fieldStart > end) {
+        return true; // too few fields
+      }
+      fieldEnds[field] = SortedIntervals.findTab(buf, fieldStart, end);
+      fieldStart = fieldEnds[field] + 1;
+    }
+    long flags = SortedIntervals.parsePosition(buf, fieldEnds[FLAG - 1] + 1, fieldEnds[FLAG]);
+    if (flags < 0 || (flags & SAMFlag.READ_UNMAPPED.intValue()) != 0) {
+      return true;
+    }
+    long pos = SortedIntervals.parsePosition(buf, fieldEnds[POS - 1] + 1, fieldEnds[POS]);
+    long referenceLength = referenceLength(buf, fieldEnds[CIGAR - 1] + 1, fieldEnds[CIGAR]);
+    if (pos <= 0 || referenceLength <= 0) {
+      return true;
+    }
+    return intervals.overlaps(
+        buf, fieldEnds[RNAME - 1] + 1, fieldEnds[RNAME], pos, pos + referenceLength - 1);
+  }
+
+  /** @return the number of reference bases covered by the CIGAR, or -1 if it can't be parsed */
+  private static long referenceLength(byte[] buf, int start, int end) {
+    long referenceLength = 0;
+    long length = 0;
+    boolean hasLength = false;
+    for (int i = start; i < end; i++) {
+      byte b = buf[i];
+      if (b >= '0' && b <= '9') {
+        length = length * 10 + (b - '0');
+        hasLength = true;
+        if (length > Integer.MAX_VALUE) {
+          return -1;
+        }
+        continue;
+      }
+      if (!hasLength) {
+        return -1;
+      }
+      switch (b) {
+        case 'M':
+        case 'D':
+        case 'N':
+        case '=':
+        case 'X':
+          referenceLength += length;
+          break;
+        case 'I':
+        case 'S':
+        case 'H':
+        case 'P':
+          break;
+        default:
+          return -1;
+      }
+      length = 0;
+      hasLength = false;
+    }
+    return hasLength ? -1 : referenceLength;
+  }
+}
@@ -6,6 +6,7 @@ import htsjdk.samtools.SAMTextHeaderCodec;
 import htsjdk.samtools.util.AsciiWriter;
 import java.io.IOException;
 import java.io.Writer;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.disq_bio.disq.HtsjdkReadsRdd;
@@ -36,12 +37,20 @@ public class SamSink extends AbstractSamSink {
 
     reads.map(SAMRecord::getSAMString).map(String::trim).saveAsTextFile(tempPartsDirectory);
 
-    String headerFile = tempPartsDirectory + "/header";
-    try (Writer out =
-        new AsciiWriter(fileSystemWrapper.create(jsc.hadoopConfiguration(), headerFile))) {
-      new SAMTextHeaderCodec().encode(out, header);
-    }
+    writeHeader(jsc.hadoopConfiguration(), tempPartsDirectory, header);
     new Merger().mergeParts(jsc.hadoopConfiguration(), tempPartsDirectory, path);
     fileSystemWrapper.delete(jsc.hadoopConfiguration(), tempPartsDirectory);
   }
+
+  /**
+   * Write a header file to a directory of headerless SAM parts, so that merging the directory
+   * produces a complete SAM file.
+   */
+  public static void writeHeader(Configuration conf, String partsDirectory, SAMFileHeader header)
+      throws IOException {
+    String headerFile = partsDirectory + "/header";
+    try (Writer out = new AsciiWriter(new HadoopFileSystemWrapper().create(conf, headerFile))) {
+      new SAMTextHeaderCodec().encode(out, header);
+    }
+  }
 }
@@ -1,14 +1,18 @@
 package org.disq_bio.disq.impl.formats.sam;
 
-import htsjdk.samtools.DefaultSAMRecordFactory;
 import htsjdk.samtools.SAMFileHeader;
-import htsjdk.samtools.SAMLineParser;
 import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SamInputResource;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.SamStreams;
 import htsjdk.samtools.ValidationStringency;
 import htsjdk.samtools.util.Locatable;
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.Iterator;
+import java.util.zip.GZIPInputStream;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
@@ -20,6 +24,8 @@ import org.apache.spark.api.java.function.FlatMapFunction;
 import org.apache.spark.broadcast.Broadcast;
 import org.disq_bio.disq.HtsjdkReadsTraversalParameters;
 import org.disq_bio.disq.impl.file.HadoopFileSystemWrapper;
+import org.disq_bio.disq.impl.formats.bgzf.BGZFCodecUtil;
+import org.disq_bio.disq.impl.formats.text.KeyAlignedTextInputFormat;
 
 public class SamSource extends AbstractSamSource implements Serializable {
 
@@ -32,6 +38,20 @@ public class SamSource extends AbstractSamSource implements Serializable {
     return SamFormat.SAM;
   }
 
+  @Override
+  protected SamReader createSamReader(
+      Configuration conf, String path, ValidationStringency stringency, String referenceSourcePath)
+      throws IOException {
+    // htsjdk only decompresses SAM files that are opened as files, not as streams
+    BufferedInputStream in = new BufferedInputStream(fileSystemWrapper.open(conf, path));
+    SamReaderFactory readerFactory = SamReaderFactory.makeDefault();
+    if (stringency != null) {
+      readerFactory.validationStringency(stringency);
+    }
+    return readerFactory.open(
+        SamInputResource.of(SamStreams.isGzippedSAMFile(in) ? new GZIPInputStream(in) : in));
+  }
+
   @Override
   public <T extends Locatable> JavaRDD<SAMRecord> getReads(
       JavaSparkContext jsc,
@@ -39,7 +59,8 @@ public class SamSource extends AbstractSamSource implements Serializable {
       int splitSize,
       HtsjdkReadsTraversalParameters<T> traversalParameters,
       ValidationStringency validationStringency,
-      String referenceSourcePath)
+      String referenceSourcePath,
+      SplitBoundaryKey splitBoundaryKey)
       throws IOException {
 
     // Use Hadoop FileSystem API to maintain file locality by using Hadoop's FileInputFormat
@@ -48,29 +69,33 @@ public class SamSource extends AbstractSamSource implements Serializable {
     if (splitSize > 0) {
       conf.setInt(FileInputFormat.SPLIT_MAXSIZE, splitSize);
     }
+    BGZFCodecUtil.enableBGZFCodecs(conf);
 
     SAMFileHeader samHeader = getFileHeader(jsc, path, validationStringency, referenceSourcePath);
-    Broadcast<SAMFileHeader> samHeaderBroadcast = jsc.broadcast(samHeader);
+    Broadcast<LazySamFileHeader> samHeaderBroadcast =
+        jsc.broadcast(LazySamFileHeader.of(samHeader));
     Broadcast<HtsjdkReadsTraversalParameters<T>> traversalParametersBroadcast =
         traversalParameters == null ? null : jsc.broadcast(traversalParameters);
 
-    return textFile(jsc, path)
+    return textLines(jsc, path, splitBoundaryKey)
         .mapPartitions(
-            (FlatMapFunction<Iterator<String>, SAMRecord>)
+            (FlatMapFunction<Iterator<Text>, SAMRecord>)
                 lines -> {
-                  SAMLineParser samLineParser =
-                      new SAMLineParser(
-                          new DefaultSAMRecordFactory(),
-                          validationStringency,
-                          samHeaderBroadcast.getValue(),
-                          null,
-                          null);
+                  SamLineByteParser samLineParser =
+                      new SamLineByteParser(samHeaderBroadcast.getValue(), validationStringency);
                   final TraversalOverlapDetector<T> overlapDetector =
                       traversalParametersBroadcast == null
                           ? null
                           : new TraversalOverlapDetector<>(traversalParametersBroadcast.getValue());
+                  // drop lines that can't overlap the intervals before parsing them
+                  final SamLineIntervalFilter lineFilter =
+                      traversalParametersBroadcast == null
+                          ? null
+                          : new SamLineIntervalFilter(
+                              traversalParametersBroadcast.getValue().getIntervalsForTraversal());
                   return stream(lines)
-                      .filter(line -> !line.startsWith("@"))
+                      .filter(line -> line.getLength() == 0 || line.getBytes()[0] != '@')
+                      .filter(line -> lineFilter == null || lineFilter.mayOverlap(line))
                       .map(samLineParser::parseLine)
                       .filter(
                           record -> overlapDetector == null || overlapDetector.overlapsAny(record))
@@ -78,11 +103,34 @@ public class SamSource extends AbstractSamSource implements Serializable {
                 });
   }
 
-  private <T extends Locatable> JavaRDD<String> textFile(JavaSparkContext jsc, String path) {
+  /**
+   * @return the lines of the file as they are read, which must be consumed before moving on to the
+   *     next line, since Hadoop reuses the {@link Text} object
+   */
+  private JavaRDD<Text> textLines(
+      JavaSparkContext jsc, String path, SplitBoundaryKey splitBoundaryKey) {
     // Use this over JavaSparkContext#textFile since this allows the configuration to be passed in
+    // and the lines are not converted to strings
+    if (splitBoundaryKey == null) {
+      return jsc.newAPIHadoopFile(
+              path,
+              TextInputFormat.class,
+              LongWritable.class,
+              Text.class,
+              jsc.hadoopConfiguration())
+          .map(pair -> pair._2)
+          .setName(path);
+    }
+    Configuration conf = new Configuration(jsc.hadoopConfiguration());
+    KeyAlignedTextInputFormat.setKeyFields(
+        conf, splitBoundaryKey.getFirstSamField(), splitBoundaryKey.getLastSamField());
+    if (splitBoundaryKey.getUnalignedFirstSamFieldValue() != null) {
+      KeyAlignedTextInputFormat.setUnalignedFirstKeyField(
+          conf, splitBoundaryKey.getUnalignedFirstSamFieldValue());
+    }
     return jsc.newAPIHadoopFile(
-            path, TextInputFormat.class, LongWritable.class, Text.class, jsc.hadoopConfiguration())
-        .map(pair -> pair._2.toString())
+            path, KeyAlignedTextInputFormat.class, LongWritable.class, Text.class, conf)
+        .map(pair -> pair._2)
         .setName(path);
   }
 }
@@ -0,0 +1,50 @@
+package org.disq_bio.disq.impl.formats.sam;
+
+import htsjdk.samtools.SAMRecord;
+
+/**
+ * A key that split boundaries can be aligned to, so that all the records with equal keys are read
+ * by the same partition. This is only meaningful for inputs that are sorted (or grouped) by the
+ * key.
+ *
+ * <p>Each boundary is moved forward past any records that share a key with the first record at or
+ * after it, so that no run of equal keys straddles two partitions.
+ */
+public enum SplitBoundaryKey {
+  /**
+   * Reference index and alignment start. Unplaced reads have no position to keep together, so
+   * boundaries are not aligned among them, and the unplaced reads at the end of a coordinate sorted
+   * file are split between partitions as usual.
+   */
+  COORDINATE(2, 3, SAMRecord.NO_ALIGNMENT_REFERENCE_NAME),
+  /** Read name. */
+  QUERYNAME(0, 0, null);
+
+  private final int firstSamField;
+  private final int lastSamField;
+  private final String unalignedFirstSamFieldValue;
+
+  SplitBoundaryKey(int firstSamField, int lastSamField, String unalignedFirstSamFieldValue) {
+    this.firstSamField = firstSamField;
+    this.lastSamField = lastSamField;
+    this.unalignedFirstSamFieldValue = unalignedFirstSamFieldValue;
+  }
+
+  /** @return the index of the first tab-separated SAM field that makes up the key */
+  public int getFirstSamField() {
+    return firstSamField;
+  }
+
+  /** @return the index of the last tab-separated SAM field that makes up the key */
+  public int getLastSamField() {
+    return lastSamField;
+  }
+
+  /**
+   * @return the value of the first SAM field of the key for records that boundaries are not aligned
+   *     to, or null if boundaries are aligned to all records
+   */
+  public String getUnalignedFirstSamFieldValue() {
+    return unalignedFirstSamFieldValue;
+  }
+}
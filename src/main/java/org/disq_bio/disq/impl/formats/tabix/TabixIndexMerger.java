@@ -0,0 +1,198 @@
+package org.disq_bio.disq.impl.formats.tabix;
+
+import htsjdk.samtools.Bin;
+import htsjdk.samtools.BinningIndexContent;
+import htsjdk.samtools.Chunk;
+import htsjdk.samtools.LinearIndex;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.tribble.index.tabix.TabixFormat;
+import htsjdk.tribble.index.tabix.TabixIndex;
+import htsjdk.tribble.util.LittleEndianInputStream;
+import htsjdk.tribble.util.LittleEndianOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IOUtils;
+import org.disq_bio.disq.impl.file.FileSystemWrapper;
+import org.disq_bio.disq.impl.file.Merger;
+
+/**
+ * Merges the tabix indexes for the parts of a block compressed file into a single index for the
+ * whole file. The index for each part is written alongside it as a hidden file (see {@link
+ * #getPartIndexFile(Path)}), so it is not included when the parts are merged. The virtual file
+ * offsets in each part's index are rebased by the total length of the files before it in the
+ * directory, which includes the header.
+ *
+ * <p>The records must be sorted by coordinate across all the parts.
+ */
+public class TabixIndexMerger {
+
+  private static final String TBI_EXTENSION = ".tbi";
+
+  private final FileSystemWrapper fileSystemWrapper;
+
+  private TabixFormat formatSpec;
+  private final Map<String, MergedSequence> sequences = new LinkedHashMap<>();
+  private String lastSequenceName;
+
+  public TabixIndexMerger(FileSystemWrapper fileSystemWrapper) {
+    this.fileSystemWrapper = fileSystemWrapper;
+  }
+
+  /**
+   * @param part the path of a part file
+   * @return the path of the index for the given part file
+   */
+  public static Path getPartIndexFile(Path part) {
+    return new Path(part.getParent(), "." + part.getName() + TBI_EXTENSION);
+  }
+
+  /**
+   * Merge the indexes for the parts of a file, and write the merged index. The part indexes are
+   * hidden files, so they are left in place when the parts themselves are merged, and this may be
+   * called after the merged file has been written, so that the index is not older than it.
+   *
+   * @param conf the Hadoop configuration
+   * @param partLengths the path of each part, in the order that they are merged, mapped to its
+   *     length (see {@link Merger#getPartLengths})
+   * @param outputIndexFile the path to write the merged index to
+   * @throws IOException if an IO error occurs
+   * @throws IllegalArgumentException if the records are not sorted by coordinate
+   */
+  public void mergeParts(Configuration conf, Map<String, Long> partLengths, String outputIndexFile)
+      throws IOException {
+    formatSpec = null;
+    sequences.clear();
+    lastSequenceName = null;
+    long partStart = 0;
+    for (Map.Entry<String, Long> part : partLengths.entrySet()) {
+      String partIndex = getPartIndexFile(new Path(part.getKey())).toString();
+      if (fileSystemWrapper.exists(conf, partIndex)) {
+        addPartIndex(conf, partIndex, partStart);
+      }
+      partStart += part.getValue();
+    }
+    if (formatSpec == null) {
+      throw new IllegalArgumentException(
+          "No tabix indexes found for parts " + partLengths.keySet());
+    }
+    writeIndex(conf, outputIndexFile);
+  }
+
+  private void addPartIndex(Configuration conf, String partIndex, long partStart)
+      throws IOException {
+    // Read the index directly since htsjdk's TabixIndex doesn't expose the bins and linear index.
+    // The format is described in section 5.2 of https://samtools.github.io/hts-specs/tabix.pdf
+    try (LittleEndianInputStream in =
+        new LittleEndianInputStream(
+            new BlockCompressedInputStream(fileSystemWrapper.open(conf, partIndex)))) {
+      if (in.readInt() != TabixIndex.MAGIC_NUMBER) {
+        throw new IOException("Not a tabix index: " + partIndex);
+      }
+      int sequenceCount = in.readInt();
+      TabixFormat partFormatSpec =
+          new TabixFormat(
+              in.readInt(),
+              in.readInt(),
+              in.readInt(),
+              in.readInt(),
+              (char) in.readInt(),
+              in.readInt());
+      if (formatSpec == null) {
+        formatSpec = partFormatSpec;
+      }
+      byte[] names = new byte[in.readInt()];
+      IOUtils.readFully(in, names, 0, names.length);
+      String[] sequenceNames =
+          names.length == 0 ? new String[0] : new String(names, StandardCharsets.UTF_8).split("\0");
+      if (sequenceNames.length != sequenceCount) {
+        throw new IOException("Inconsistent sequence names in tabix index: " + partIndex);
+      }
+
+      long offset = partStart << 16; // rebase virtual file offsets to the start of the part
+      for (String sequenceName : sequenceNames) {
+        MergedSequence sequence = sequences.get(sequenceName);
+        if (sequence == null) {
+          sequence = new MergedSequence();
+          sequences.put(sequenceName, sequence);
+        } else if (!sequenceName.equals(lastSequenceName)) {
+          throw new IllegalArgumentException(
+              "Variants must be sorted by coordinate to write a tabix index, but contig "
+                  + sequenceName
+                  + " is not contiguous");
+        }
+        lastSequenceName = sequenceName;
+
+        int binCount = in.readInt();
+        for (int i = 0; i < binCount; i++) {
+          List<Chunk> chunks =
+              sequence.bins.computeIfAbsent(in.readInt(), binNumber -> new ArrayList<>());
+          int chunkCount = in.readInt();
+          for (int j = 0; j < chunkCount; j++) {
+            chunks.add(new Chunk(in.readLong() + offset, in.readLong() + offset));
+          }
+        }
+
+        // The earlier parts have the lower offsets, so only windows beyond the ones already seen
+        // for the sequence need to be added.
+        int windowCount = in.readInt();
+        long[] linearIndex = new long[windowCount];
+        for (int i = 0; i < windowCount; i++) {
+          linearIndex[i] = in.readLong() + offset;
+        }
+        if (windowCount > sequence.linearIndex.length) {
+          long[] merged = Arrays.copyOf(sequence.linearIndex, windowCount);
+          System.arraycopy(
+              linearIndex,
+              sequence.linearIndex.length,
+              merged,
+              sequence.linearIndex.length,
+              windowCount - sequence.linearIndex.length);
+          sequence.linearIndex = merged;
+        }
+      }
+    }
+  }
+
+  private void writeIndex(Configuration conf, String outputIndexFile) throws IOException {
+    List<String> sequenceNames = new ArrayList<>(sequences.keySet());
+    BinningIndexContent[] indices = new BinningIndexContent[sequenceNames.size()];
+    for (int i = 0; i < indices.length; i++) {
+      indices[i] = sequences.get(sequenceNames.get(i)).toBinningIndexContent(i);
+    }
+    TabixIndex tabixIndex = new TabixIndex(formatSpec, sequenceNames, indices);
+    try (LittleEndianOutputStream out =
+        new LittleEndianOutputStream(
+            new BlockCompressedOutputStream(
+                fileSystemWrapper.create(conf, outputIndexFile), null))) {
+      tabixIndex.write(out);
+    }
+  }
+
+  private static class MergedSequence {
+    private final TreeMap<Integer, List<Chunk>> bins = new TreeMap<>();
+    private long[] linearIndex = new long[0];
+
+    BinningIndexContent toBinningIndexContent(int referenceSequence) {
+      Bin[] binArray = new Bin[bins.lastKey() + 1];
+      for (Map.Entry<Integer, List<Chunk>> entry : bins.entrySet()) {
+        Bin bin = new Bin(referenceSequence, entry.getKey());
+        // chunks that are adjacent across part boundaries are combined
+        bin.setChunkList(Chunk.optimizeChunkList(entry.getValue(), 0));
+        binArray[entry.getKey()] = bin;
+      }
+      return new BinningIndexContent(
+          referenceSequence,
+          new BinningIndexContent.BinList(binArray, bins.size()),
+          new LinearIndex(referenceSequence, 0, linearIndex));
+    }
+  }
+}
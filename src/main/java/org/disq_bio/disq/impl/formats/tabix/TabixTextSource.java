@@ -0,0 +1,304 @@
+package org.disq_bio.disq.impl.formats.tabix;
+
+import htsjdk.samtools.Chunk;
+import htsjdk.samtools.seekablestream.SeekableStream;
+import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.Locatable;
+import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.tribble.index.Block;
+import htsjdk.tribble.index.tabix.TabixIndex;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.api.java.function.FlatMapFunction;
+import org.disq_bio.disq.impl.file.FileSystemWrapper;
+import org.disq_bio.disq.impl.file.PathChunk;
+import org.disq_bio.disq.impl.file.PathChunkRdd;
+import org.disq_bio.disq.impl.formats.SerializableHadoopConfiguration;
+import org.disq_bio.disq.impl.formats.bgzf.BgzfBlockGuesser;
+
+/**
+ * Load the lines of a BGZF-compressed, tabix-indexed text file that may overlap a set of intervals.
+ * Rather than reading every split of the file that overlaps the index chunks for the intervals, the
+ * chunks themselves are read, so only the blocks that the index points to are decompressed.
+ *
+ * <p>The partitions are planned on the driver. Chunks are grouped so that each partition reads
+ * about a split's worth of compressed data, and chunks larger than a split are divided at line
+ * starts, which are found by locating the next BGZF block and reading to the end of the first line
+ * in it.
+ *
+ * <p>Lines that don't overlap the intervals may be returned, so they must be filtered by the
+ * caller.
+ */
+public class TabixTextSource implements Serializable {
+
+  /** The split size to use if none is specified, which is the default HDFS block size. */
+  private static final int DEFAULT_SPLIT_SIZE = 128 * 1024 * 1024;
+
+  private final FileSystemWrapper fileSystemWrapper;
+
+  public TabixTextSource(FileSystemWrapper fileSystemWrapper) {
+    this.fileSystemWrapper = fileSystemWrapper;
+  }
+
+  /**
+   * @param path the path of the BGZF-compressed text file
+   * @param indexPath the path of its tabix index
+   * @param splitSize the number of compressed bytes to read in each partition, or 0 for the default
+   * @param intervals the intervals to read
+   * @return an RDD of lines. Note that the returned {@link Text} objects are reused, so each one
+   *     must be consumed before moving on to the next.
+   */
+  public <T extends Locatable> JavaRDD<Text> getLines(
+      JavaSparkContext jsc, String path, String indexPath, int splitSize, List<T> intervals)
+      throws IOException {
+    Configuration conf = jsc.hadoopConfiguration();
+    TabixIndex index;
+    try (SeekableStream indexIn = fileSystemWrapper.open(conf, indexPath)) {
+      index = new TabixIndex(new BlockCompressedInputStream(indexIn));
+    }
+    List<Chunk> chunks = new ArrayList<>();
+    for (T interval : intervals) {
+      for (Block block :
+          index.getBlocks(interval.getContig(), interval.getStart(), interval.getEnd())) {
+        chunks.add(new Chunk(block.getStartPosition(), block.getEndPosition()));
+      }
+    }
+    // sort the chunks, and merge any that overlap (e.g. from overlapping intervals)
+    chunks = Chunk.optimizeChunkList(chunks, 0);
+
+    List<List<PathChunk>> pathChunkGroups;
+    try (BgzfLineStartFinder lineStartFinder =
+        new BgzfLineStartFinder(
+            fileSystemWrapper.open(conf, path), fileSystemWrapper.open(conf, path), path)) {
+      pathChunkGroups =
+          planPartitions(
+              path, chunks, splitSize > 0 ? splitSize : DEFAULT_SPLIT_SIZE, lineStartFinder);
+    }
+
+    SerializableHadoopConfiguration confSer = new SerializableHadoopConfiguration(conf);
+    return PathChunkRdd.createFromGroups(jsc, fileSystemWrapper, pathChunkGroups)
+        .mapPartitions(
+            (FlatMapFunction<Iterator<PathChunk>, Text>)
+                pathChunks -> {
+                  if (!pathChunks.hasNext()) {
+                    return new ArrayList<Text>().iterator();
+                  }
+                  List<Chunk> partitionChunks = new ArrayList<>();
+                  String partitionPath = null;
+                  while (pathChunks.hasNext()) {
+                    PathChunk pathChunk = pathChunks.next();
+                    partitionPath = pathChunk.getPath();
+                    partitionChunks.add(pathChunk.getSpan());
+                  }
+                  // the iterator closes its stream when the end is reached
+                  return new ChunkLineIterator(
+                      fileSystemWrapper.open(confSer.getConf(), partitionPath),
+                      partitionChunks.iterator());
+                });
+  }
+
+  /** Finds the virtual file offset of a line start in a BGZF-compressed file. */
+  interface LineStartFinder {
+    /**
+     * @param compressedOffset the compressed offset to start searching for a BGZF block from
+     * @param virtualEnd the virtual file offset to stop searching at
+     * @return the virtual file offset of the start of the first line that starts after the
+     *     beginning of the first BGZF block at or after the given offset, or -1 if there is none
+     *     before the end
+     */
+    long findLineStart(long compressedOffset, long virtualEnd) throws IOException;
+  }
+
+  /**
+   * Divide chunks into pieces that are no larger than the split size (where possible), then group
+   * consecutive pieces into partitions, each of which has at least one piece, and no more than the
+   * split size in total (where possible).
+   */
+  static List<List<PathChunk>> planPartitions(
+      String path, List<Chunk> chunks, long splitSize, LineStartFinder lineStartFinder)
+      throws IOException {
+    List<List<PathChunk>> pathChunkGroups = new ArrayList<>();
+    List<PathChunk> pathChunkGroup = new ArrayList<>();
+    long groupSize = 0;
+    for (Chunk chunk : chunks) {
+      for (Chunk piece : splitChunk(chunk, splitSize, lineStartFinder)) {
+        long pieceSize = compressedSize(piece);
+        if (!pathChunkGroup.isEmpty() && groupSize + pieceSize > splitSize) {
+          pathChunkGroups.add(pathChunkGroup);
+          pathChunkGroup = new ArrayList<>();
+          groupSize = 0;
+        }
+        pathChunkGroup.add(new PathChunk(path, piece));
+        groupSize += pieceSize;
+      }
+    }
+    if (!pathChunkGroup.isEmpty()) {
+      pathChunkGroups.add(pathChunkGroup);
+    }
+    return pathChunkGroups;
+  }
+
+  private static List<Chunk> splitChunk(Chunk chunk, long splitSize, LineStartFinder finder)
+      throws IOException {
+    List<Chunk> pieces = new ArrayList<>();
+    long start = chunk.getChunkStart();
+    long end = chunk.getChunkEnd();
+    long endBlockAddress = BlockCompressedFilePointerUtil.getBlockAddress(end);
+    for (long offset = BlockCompressedFilePointerUtil.getBlockAddress(start) + splitSize;
+        offset < endBlockAddress;
+        offset += splitSize) {
+      long lineStart = finder.findLineStart(offset, end);
+      if (lineStart > start && lineStart < end) {
+        pieces.add(new Chunk(start, lineStart));
+        start = lineStart;
+      }
+    }
+    pieces.add(new Chunk(start, end));
+    return pieces;
+  }
+
+  private static long compressedSize(Chunk chunk) {
+    return BlockCompressedFilePointerUtil.getBlockAddress(chunk.getChunkEnd())
+        - BlockCompressedFilePointerUtil.getBlockAddress(chunk.getChunkStart());
+  }
+
+  private static class BgzfLineStartFinder implements LineStartFinder, Closeable {
+    private final BgzfBlockGuesser bgzfBlockGuesser;
+    private final BlockCompressedInputStream in;
+
+    // the guesser and the decompressing stream need their own streams, since they both seek
+    BgzfLineStartFinder(SeekableStream guesserStream, SeekableStream stream, String path) {
+      this.bgzfBlockGuesser = new BgzfBlockGuesser(guesserStream, path);
+      this.in = new BlockCompressedInputStream(stream);
+    }
+
+    @Override
+    public long findLineStart(long compressedOffset, long virtualEnd) throws IOException {
+      BgzfBlockGuesser.BgzfBlock block =
+          bgzfBlockGuesser.guessNextBGZFPos(
+              compressedOffset, BlockCompressedFilePointerUtil.getBlockAddress(virtualEnd) + 1);
+      if (block == null) {
+        return -1;
+      }
+      in.seek(BlockCompressedFilePointerUtil.makeFilePointer(block.pos, 0));
+      int b;
+      while ((b = in.read()) != -1) {
+        if (b == '\n') {
+          long lineStart = in.getFilePointer();
+          return lineStart < virtualEnd ? lineStart : -1;
+        }
+        if (in.getFilePointer() >= virtualEnd) {
+          return -1;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+      bgzfBlockGuesser.close();
+      in.close();
+    }
+  }
+
+  /**
+   * Iterates over the lines that start in a sequence of chunks. A single {@link Text} object is
+   * reused for every line.
+   */
+  static class ChunkLineIterator implements Iterator<Text> {
+    private final BlockCompressedInputStream in;
+    private final Iterator<Chunk> chunks;
+    private final Text line = new Text();
+    private byte[] buffer = new byte[1024];
+    private long chunkEnd = -1;
+    private boolean ready;
+    private boolean done;
+
+    ChunkLineIterator(SeekableStream stream, Iterator<Chunk> chunks) {
+      this.in = new BlockCompressedInputStream(stream);
+      this.chunks = chunks;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (!ready && !done) {
+        try {
+          ready = advance();
+        } catch (IOException e) {
+          throw new RuntimeIOException(e);
+        }
+        if (!ready) {
+          done = true;
+          close();
+        }
+      }
+      return ready;
+    }
+
+    @Override
+    public Text next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      ready = false;
+      return line;
+    }
+
+    private boolean advance() throws IOException {
+      while (true) {
+        if (chunkEnd == -1 || in.getFilePointer() >= chunkEnd) {
+          if (!chunks.hasNext()) {
+            return false;
+          }
+          Chunk chunk = chunks.next();
+          in.seek(chunk.getChunkStart());
+          chunkEnd = chunk.getChunkEnd();
+        } else if (readLine()) {
+          return true;
+        } else {
+          chunkEnd = -1; // end of file
+        }
+      }
+    }
+
+    /** @return false if the end of the stream was reached before any bytes were read */
+    private boolean readLine() throws IOException {
+      int length = 0;
+      int b;
+      while ((b = in.read()) != -1 && b != '\n') {
+        if (length == buffer.length) {
+          byte[] newBuffer = new byte[buffer.length * 2];
+          System.arraycopy(buffer, 0, newBuffer, 0, length);
+          buffer = newBuffer;
+        }
+        buffer[length++] = (byte) b;
+      }
+      if (b == -1 && length == 0) {
+        return false;
+      }
+      if (length > 0 && buffer[length - 1] == '\r') {
+        length--;
+      }
+      line.set(buffer, 0, length);
+      return true;
+    }
+
+    private void close() {
+      try {
+        in.close();
+      } catch (IOException e) {
+        throw new RuntimeIOException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,234 @@
+package org.disq_bio.disq.impl.formats.text;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.LineRecordReader;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+
+/**
+ * A {@link TextInputFormat} that moves split boundaries so that consecutive lines with equal keys
+ * are always read by the same split. The key of a line is a range of its tab-separated fields, set
+ * with {@link #setKeyFields(Configuration, int, int)}, and keys are compared as raw bytes.
+ *
+ * <p>A split skips the run of lines that share a key with its first line (unless it is at the start
+ * of the file), and reads past its end to the end of the run that starts with the first line of the
+ * next split. Both decisions depend only on the split boundary, so every line is read exactly once.
+ *
+ * <p>Lines whose first key field has the value set with {@link
+ * #setUnalignedFirstKeyField(Configuration, String)} are not kept together, so each of them is
+ * treated as a run of its own.
+ */
+public class KeyAlignedTextInputFormat extends TextInputFormat {
+
+  private static final String FIRST_KEY_FIELD = "disq.keyalignedtext.firstkeyfield";
+  private static final String LAST_KEY_FIELD = "disq.keyalignedtext.lastkeyfield";
+  private static final String UNALIGNED_FIRST_KEY_FIELD =
+      "disq.keyalignedtext.unalignedfirstkeyfield";
+
+  /**
+   * Set the range of tab-separated fields (zero-based, inclusive) that make up the key of a line.
+   */
+  public static void setKeyFields(Configuration conf, int firstField, int lastField) {
+    conf.setInt(FIRST_KEY_FIELD, firstField);
+    conf.setInt(LAST_KEY_FIELD, lastField);
+  }
+
+  /**
+   * Set the value of the first key field for lines that are not kept together with lines that have
+   * an equal key, such as unplaced reads in a SAM file.
+   */
+  public static void setUnalignedFirstKeyField(Configuration conf, String value) {
+    conf.set(UNALIGNED_FIRST_KEY_FIELD, value);
+  }
+
+  @Override
+  public RecordReader<LongWritable, Text> createRecordReader(
+      InputSplit split, TaskAttemptContext context) {
+    Configuration conf = context.getConfiguration();
+    String unalignedFirstKeyField = conf.get(UNALIGNED_FIRST_KEY_FIELD);
+    return new KeyAlignedLineRecordReader(
+        conf.getInt(FIRST_KEY_FIELD, 0),
+        conf.getInt(LAST_KEY_FIELD, 0),
+        unalignedFirstKeyField == null
+            ? null
+            : unalignedFirstKeyField.getBytes(StandardCharsets.UTF_8));
+  }
+
+  static class KeyAlignedLineRecordReader extends RecordReader<LongWritable, Text> {
+    private final int firstKeyField;
+    private final int lastKeyField;
+    private final byte[] unalignedFirstKeyField;
+
+    private LineRecordReader head; // lines in this split
+    private LineRecordReader tail; // lines after this split, or null if at the end of the file
+    private boolean inTail;
+    private long tailLinesRead;
+    private byte[] tailKey; // null if unaligned
+    private boolean tailKeyFound;
+    private boolean started;
+    private boolean finished;
+    private LongWritable currentKey;
+    private Text currentValue;
+
+    KeyAlignedLineRecordReader(int firstKeyField, int lastKeyField, byte[] unalignedFirstKeyField) {
+      this.firstKeyField = firstKeyField;
+      this.lastKeyField = lastKeyField;
+      this.unalignedFirstKeyField = unalignedFirstKeyField;
+    }
+
+    @Override
+    public void initialize(InputSplit genericSplit, TaskAttemptContext context) throws IOException {
+      FileSplit split = (FileSplit) genericSplit;
+      Path path = split.getPath();
+      long end = split.getStart() + split.getLength();
+      long fileLength = path.getFileSystem(context.getConfiguration()).getFileStatus(path).getLen();
+      head = new LineRecordReader();
+      head.initialize(split, context);
+      if (end < fileLength) {
+        tail = new LineRecordReader();
+        tail.initialize(new FileSplit(path, end, fileLength - end, null), context);
+      }
+      if (split.getStart() == 0) {
+        started = true; // nothing to skip at the start of the file
+      }
+    }
+
+    @Override
+    public boolean nextKeyValue() throws IOException {
+      finished = finished || !advance();
+      return !finished;
+    }
+
+    private boolean advance() throws IOException {
+      if (!started) {
+        started = true;
+        if (!nextLine()) {
+          return false;
+        }
+        byte[] skipKey = key(currentValue);
+        boolean more;
+        do {
+          more = nextLine();
+        } while (more && keysEqual(key(currentValue), skipKey));
+        // if the skipped run continued past the first line of the next split then the whole of
+        // this split belongs to an earlier one
+        if (!more || (inTail && tailLinesRead > 1)) {
+          return false;
+        }
+      } else if (!nextLine()) {
+        return false;
+      }
+      if (inTail) {
+        byte[] key = key(currentValue);
+        if (!tailKeyFound) {
+          tailKeyFound = true;
+          tailKey = key;
+        } else if (!keysEqual(key, tailKey)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private boolean nextLine() throws IOException {
+      if (!inTail) {
+        if (head.nextKeyValue()) {
+          currentKey = head.getCurrentKey();
+          currentValue = head.getCurrentValue();
+          return true;
+        }
+        inTail = true;
+      }
+      if (tail != null && tail.nextKeyValue()) {
+        tailLinesRead++;
+        currentKey = tail.getCurrentKey();
+        currentValue = tail.getCurrentValue();
+        return true;
+      }
+      return false;
+    }
+
+    /** @return true if the keys are equal, and neither is null (meaning unaligned) */
+    private static boolean keysEqual(byte[] key1, byte[] key2) {
+      return key1 != null && key2 != null && Arrays.equals(key1, key2);
+    }
+
+    /** @return the key of the line, or null if the line is not aligned with equal keys */
+    private byte[] key(Text line) {
+      byte[] bytes = line.getBytes();
+      int length = line.getLength();
+      int field = 0;
+      int start = firstKeyField == 0 ? 0 : -1;
+      int i = 0;
+      for (; i < length; i++) {
+        if (bytes[i] == '\t') {
+          if (field == lastKeyField) {
+            break;
+          }
+          field++;
+          if (field == firstKeyField) {
+            start = i + 1;
+          }
+        }
+      }
+      if (start < 0) {
+        return new byte[0];
+      }
+      if (unalignedFirstKeyField != null && isUnaligned(bytes, start, i)) {
+        return null;
+      }
+      return Arrays.copyOfRange(bytes, start, i);
+    }
+
+    private boolean isUnaligned(byte[] bytes, int keyStart, int keyEnd) {
+      int fieldEnd = keyStart;
+      while (fieldEnd < keyEnd && bytes[fieldEnd] != '\t') {
+        fieldEnd++;
+      }
+      if (fieldEnd - keyStart != unalignedFirstKeyField.length) {
+        return false;
+      }
+      for (int j = 0; j < unalignedFirstKeyField.length; j++) {
+        if (bytes[keyStart + j] != unalignedFirstKeyField[j]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public LongWritable getCurrentKey() {
+      return currentKey;
+    }
+
+    @Override
+    public Text getCurrentValue() {
+      return currentValue;
+    }
+
+    @Override
+    public float getProgress() throws IOException {
+      return inTail ? 1.0f : head.getProgress();
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        head.close();
+      } finally {
+        if (tail != null) {
+          tail.close();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,129 @@
+package org.disq_bio.disq.impl.formats.text;
+
+import htsjdk.samtools.util.Locatable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A set of intervals, held as sorted arrays of the start and end positions of the merged intervals
+ * for each contig, so that coordinates read from the bytes of a text line can be checked for
+ * overlap before the line is decoded. The contig of the last lookup is cached, so runs of lines on
+ * the same contig (as in a sorted file) don't need a string to be created to find their intervals.
+ *
+ * <p>This class is not thread safe.
+ */
+public class SortedIntervals {
+
+  private static final int[] EMPTY = new int[0];
+
+  private final Map<String, int[][]> contigToStartsAndEnds = new HashMap<>();
+
+  private byte[] lastContig = new byte[0];
+  private int[] starts = EMPTY;
+  private int[] ends = EMPTY;
+
+  /** @param intervals the intervals, which may be null to mean no intervals */
+  public <T extends Locatable> SortedIntervals(List<T> intervals) {
+    if (intervals == null) {
+      return;
+    }
+    Map<String, List<Locatable>> contigToIntervals = new HashMap<>();
+    for (T interval : intervals) {
+      contigToIntervals.computeIfAbsent(interval.getContig(), c -> new ArrayList<>()).add(interval);
+    }
+    for (Map.Entry<String, List<Locatable>> entry : contigToIntervals.entrySet()) {
+      Locatable[] sorted = entry.getValue().toArray(new Locatable[0]);
+      Arrays.sort(sorted, (a, b) -> Integer.compare(a.getStart(), b.getStart()));
+      int[] mergedStarts = new int[sorted.length];
+      int[] mergedEnds = new int[sorted.length];
+      int count = 0;
+      for (Locatable interval : sorted) {
+        if (count > 0 && interval.getStart() <= mergedEnds[count - 1] + 1) {
+          mergedEnds[count - 1] = Math.max(mergedEnds[count - 1], interval.getEnd());
+        } else {
+          mergedStarts[count] = interval.getStart();
+          mergedEnds[count] = interval.getEnd();
+          count++;
+        }
+      }
+      contigToStartsAndEnds.put(
+          entry.getKey(),
+          new int[][] {Arrays.copyOf(mergedStarts, count), Arrays.copyOf(mergedEnds, count)});
+    }
+  }
+
+  /**
+   * @param buf the buffer holding the contig name
+   * @param contigStart the offset of the contig name in the buffer
+   * @param contigEnd the offset just after the contig name in the buffer
+   * @param start the 1-based start position
+   * @param end the 1-based end position (inclusive)
+   * @return true if the given range overlaps any of the intervals
+   */
+  public boolean overlaps(byte[] buf, int contigStart, int contigEnd, long start, long end) {
+    setContig(buf, contigStart, contigEnd);
+    // the merged intervals don't overlap, so their ends are sorted too: find the first interval
+    // that ends at or after the start, and check that it starts at or before the end
+    int index = Arrays.binarySearch(ends, (int) Math.min(start, Integer.MAX_VALUE));
+    if (index < 0) {
+      index = -index - 1;
+    }
+    return index < ends.length && starts[index] <= end;
+  }
+
+  private void setContig(byte[] buf, int contigStart, int contigEnd) {
+    int length = contigEnd - contigStart;
+    if (length == lastContig.length) {
+      boolean same = true;
+      for (int i = 0; i < length; i++) {
+        if (buf[contigStart + i] != lastContig[i]) {
+          same = false;
+          break;
+        }
+      }
+      if (same) {
+        return;
+      }
+    }
+    lastContig = Arrays.copyOfRange(buf, contigStart, contigEnd);
+    int[][] startsAndEnds =
+        contigToStartsAndEnds.get(new String(lastContig, StandardCharsets.UTF_8));
+    starts = startsAndEnds == null ? EMPTY : startsAndEnds[0];
+    ends = startsAndEnds == null ? EMPTY : startsAndEnds[1];
+  }
+
+  /**
+   * @return the offset of the first tab at or after the given offset and before the end, or the end
+   *     if there is none
+   */
+  public static int findTab(byte[] buf, int from, int end) {
+    int i = from;
+    while (i < end && buf[i] != '\t') {
+      i++;
+    }
+    return i;
+  }
+
+  /**
+   * @return the non-negative integer in the given range of the buffer, or -1 if the range is empty,
+   *     contains anything other than digits, or is too long to be a position
+   */
+  public static long parsePosition(byte[] buf, int start, int end) {
+    if (start >= end || end - start > 18) {
+      return -1;
+    }
+    long value = 0;
+    for (int i = start; i < end; i++) {
+      int digit = buf[i] - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+}
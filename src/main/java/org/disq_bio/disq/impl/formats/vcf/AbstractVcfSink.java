@@ -12,6 +12,7 @@ public abstract class AbstractVcfSink {
       VCFHeader vcfHeader,
       JavaRDD<VariantContext> variants,
       String path,
-      String tempPartsDirectory)
+      String tempPartsDirectory,
+      boolean writeTbiFile)
       throws IOException;
 }
@@ -0,0 +1,113 @@
+package org.disq_bio.disq.impl.formats.vcf;
+
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.tribble.index.tabix.TabixFormat;
+import htsjdk.tribble.index.tabix.TabixIndex;
+import htsjdk.tribble.index.tabix.TabixIndexCreator;
+import htsjdk.tribble.util.LittleEndianOutputStream;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFHeader;
+import java.io.IOException;
+import java.io.OutputStream;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.disq_bio.disq.HtsjdkVariantsRdd;
+import org.disq_bio.disq.impl.formats.tabix.TabixIndexMerger;
+
+/**
+ * An output format for writing {@link VariantContext} objects to VCF files that don't have a header
+ * (or terminator, if compressed), so they can be merged into a single file easily. If a tabix index
+ * is requested then one is written for each part, so they can be merged into an index for the whole
+ * file. This class should not be used directly.
+ *
+ * @see TabixIndexMerger
+ * @see HtsjdkVariantsRdd
+ */
+public class HeaderlessVcfOutputFormat extends FileOutputFormat<Void, VariantContext> {
+
+  static class HeaderlessVcfRecordWriter extends RecordWriter<Void, VariantContext> {
+
+    private final Configuration conf;
+    private final Path file;
+    private final OutputStream out;
+    private final BlockCompressedOutputStream compressedOut;
+    private final VcfRecordByteEncoder vcfEncoder;
+    private final TabixIndexCreator tabixIndexCreator;
+
+    public HeaderlessVcfRecordWriter(
+        Configuration conf, Path file, VCFHeader header, boolean compressed, boolean writeTbiFile)
+        throws IOException {
+      if (writeTbiFile && !compressed) {
+        throw new IllegalArgumentException("Tabix index can only be written for compressed VCF");
+      }
+      this.conf = conf;
+      this.file = file;
+      this.out = file.getFileSystem(conf).create(file);
+      this.compressedOut = compressed ? new BlockCompressedOutputStream(out, null) : null;
+      this.vcfEncoder = new VcfRecordByteEncoder(header);
+      this.tabixIndexCreator = writeTbiFile ? new TabixIndexCreator(TabixFormat.VCF) : null;
+    }
+
+    @Override
+    public void write(Void ignore, VariantContext variantContext) throws IOException {
+      if (tabixIndexCreator != null) {
+        tabixIndexCreator.addFeature(variantContext, compressedOut.getFilePointer());
+      }
+      // encode straight to bytes, rather than via a string
+      vcfEncoder.encode(variantContext);
+      OutputStream target = compressedOut == null ? out : compressedOut;
+      target.write(vcfEncoder.getBuffer(), 0, vcfEncoder.getLength());
+    }
+
+    @Override
+    public void close(TaskAttemptContext taskAttemptContext) throws IOException {
+      if (compressedOut != null) {
+        compressedOut.flush(); // don't close BlockCompressedOutputStream since we don't want to
+        // write the terminator
+      }
+      if (tabixIndexCreator != null) {
+        // finalize after flushing, so the last chunk ends at the start of the next part (the same
+        // virtual file offset that a reader has after reading the last record)
+        writeTbiFile((TabixIndex) tabixIndexCreator.finalizeIndex(compressedOut.getFilePointer()));
+      }
+      out.close();
+    }
+
+    private void writeTbiFile(TabixIndex tabixIndex) throws IOException {
+      Path indexFile = TabixIndexMerger.getPartIndexFile(file);
+      try (LittleEndianOutputStream indexOut =
+          new LittleEndianOutputStream(
+              new BlockCompressedOutputStream(
+                  indexFile.getFileSystem(conf).create(indexFile), null))) {
+        tabixIndex.write(indexOut);
+      }
+    }
+  }
+
+  private static VCFHeader header;
+  private static boolean compressed;
+  private static boolean writeTbiFile;
+
+  public static void setHeader(VCFHeader vcfHeader) {
+    HeaderlessVcfOutputFormat.header = vcfHeader;
+  }
+
+  public static void setCompressed(boolean compressed) {
+    HeaderlessVcfOutputFormat.compressed = compressed;
+  }
+
+  public static void setWriteTbiFile(boolean writeTbiFile) {
+    HeaderlessVcfOutputFormat.writeTbiFile = writeTbiFile;
+  }
+
+  @Override
+  public RecordWriter<Void, VariantContext> getRecordWriter(TaskAttemptContext taskAttemptContext)
+      throws IOException {
+    Path file = getDefaultWorkFile(taskAttemptContext, "");
+    return new HeaderlessVcfRecordWriter(
+        taskAttemptContext.getConfiguration(), file, header, compressed, writeTbiFile);
+  }
+}
@@ -0,0 +1,52 @@
+package org.disq_bio.disq.impl.formats.vcf;
+
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFHeader;
+import java.io.IOException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.disq_bio.disq.HtsjdkVariantsRdd;
+import org.disq_bio.disq.impl.formats.KeyedRecordWriter;
+import org.disq_bio.disq.impl.formats.bcf.HeaderlessBcfOutputFormat;
+
+/**
+ * An output format for writing {@link VariantContext} objects to headerless VCF or BCF part files
+ * (without a terminator, if compressed), one for each key, so the parts for each key can be merged
+ * into a single file. This class should not be used directly.
+ *
+ * @see KeyedRecordWriter
+ * @see HtsjdkVariantsRdd
+ */
+public class KeyedHeaderlessVcfOutputFormat extends FileOutputFormat<String, VariantContext> {
+
+  private static VCFHeader header;
+  private static VcfFormat vcfFormat;
+
+  public static void setHeader(VCFHeader vcfHeader) {
+    KeyedHeaderlessVcfOutputFormat.header = vcfHeader;
+  }
+
+  public static void setFormat(VcfFormat vcfFormat) {
+    KeyedHeaderlessVcfOutputFormat.vcfFormat = vcfFormat;
+  }
+
+  @Override
+  public RecordWriter<String, VariantContext> getRecordWriter(TaskAttemptContext taskAttemptContext)
+      throws IOException {
+    Configuration conf = taskAttemptContext.getConfiguration();
+    Path workFile = getDefaultWorkFile(taskAttemptContext, "");
+    VCFHeader header = KeyedHeaderlessVcfOutputFormat.header;
+    VcfFormat vcfFormat = KeyedHeaderlessVcfOutputFormat.vcfFormat;
+    return new KeyedRecordWriter<>(
+        taskAttemptContext,
+        workFile,
+        file ->
+            vcfFormat == VcfFormat.BCF
+                ? new HeaderlessBcfOutputFormat.BcfRecordWriter(conf, file, header)
+                : new HeaderlessVcfOutputFormat.HeaderlessVcfRecordWriter(
+                    conf, file, header, vcfFormat.isCompressed(), false));
+  }
+}
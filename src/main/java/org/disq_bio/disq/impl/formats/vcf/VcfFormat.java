@@ -9,7 +9,8 @@ import org.disq_bio.disq.VariantsFormatWriteOption;
 public enum VcfFormat {
   VCF(".vcf", ".idx", false),
   VCF_BGZ(".vcf.bgz", ".tbi", true),
-  VCF_GZ(".vcf.gz", ".tbi", true);
+  VCF_GZ(".vcf.gz", ".tbi", true),
+  BCF(".bcf", ".csi", true);
 
   private String extension;
   private String indexExtension;
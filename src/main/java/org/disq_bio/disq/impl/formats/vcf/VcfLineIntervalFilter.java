@@ -0,0 +1,69 @@
+package org.disq_bio.disq.impl.formats.vcf;
+
+import htsjdk.samtools.util.Locatable;
+import java.util.List;
+import org.apache.hadoop.io.Text;
+import org.disq_bio.disq.impl.formats.text.SortedIntervals;
+
+/**
+ * Checks whether a VCF text line may overlap a set of intervals, using only the CHROM, POS, REF and
+ * INFO columns read from the bytes of the line, so that lines that can't overlap are dropped before
+ * they are decoded. Lines whose extent can't be found this way (because they have an END attribute,
+ * or are malformed) are passed, and left for the decoded variant to be checked.
+ *
+ * <p>This class is not thread safe.
+ */
+class VcfLineIntervalFilter {
+
+  private static final int CHROM = 0;
+  private static final int POS = 1;
+  private static final int REF = 3;
+  private static final int INFO = 7;
+
+  private static final byte[] END_KEY = {'E', 'N', 'D', '='};
+
+  private final SortedIntervals intervals;
+  private final int[] fieldEnds = new int[INFO + 1];
+
+  <T extends Locatable> VcfLineIntervalFilter(List<T> intervals) {
+    this.intervals = new SortedIntervals(intervals);
+  }
+
+  /** @return false if the line definitely doesn't overlap any of the intervals */
+  boolean mayOverlap(Text line) {
+    return mayOverlap(line.getBytes(), 0, line.getLength());
+  }
+
+  boolean mayOverlap(byte[] buf, int off, int len) {
+    int end = off + len;
+    int fieldStart = off;
+    for (int field = 0; field <= INFO; field++) {
+      if (fieldStart > end) {
+        return true; // too few columns
+      }
+      fieldEnds[field] = SortedIntervals.findTab(buf, fieldStart, end);
+      fieldStart = fieldEnds[field] + 1;
+    }
+    long pos = SortedIntervals.parsePosition(buf, fieldEnds[POS - 1] + 1, fieldEnds[POS]);
+    if (pos < 0 || hasEndAttribute(buf, fieldEnds[INFO - 1] + 1, fieldEnds[INFO])) {
+      return true;
+    }
+    int refLength = fieldEnds[REF] - fieldEnds[REF - 1] - 1;
+    return intervals.overlaps(buf, off, fieldEnds[CHROM], pos, pos + Math.max(refLength, 1) - 1);
+  }
+
+  private static boolean hasEndAttribute(byte[] buf, int start, int end) {
+    for (int i = start; i + END_KEY.length <= end; i++) {
+      if (i == start || buf[i - 1] == ';') {
+        int j = 0;
+        while (j < END_KEY.length && buf[i + j] == END_KEY[j]) {
+          j++;
+        }
+        if (j == END_KEY.length) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+}
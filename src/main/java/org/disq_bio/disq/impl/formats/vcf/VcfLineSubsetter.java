@@ -0,0 +1,140 @@
+package org.disq_bio.disq.impl.formats.vcf;
+
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import htsjdk.variant.vcf.VCFHeader;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import org.apache.hadoop.io.Text;
+
+/**
+ * Removes sample columns from VCF text lines before they are decoded, so that the cost of reading a
+ * line depends on the number of samples kept, rather than the number in the file. Lines are
+ * processed as bytes, and only the columns that are kept are converted to a string.
+ *
+ * <p>Samples are kept in the order they appear in the file. If no samples are kept then the FORMAT
+ * column is removed too, so lines end with the INFO column.
+ *
+ * <p>This class is not thread safe.
+ */
+public class VcfLineSubsetter implements Serializable {
+
+  private static final int FORMAT_COLUMN = VCFHeader.HEADER_FIELDS.values().length;
+
+  private final List<String> samples;
+  private final int[] sampleIndexes;
+  private transient byte[] buffer;
+  private transient Set<String> sampleSet;
+
+  private VcfLineSubsetter(List<String> samples, int[] sampleIndexes) {
+    this.samples = samples;
+    this.sampleIndexes = sampleIndexes;
+  }
+
+  /** @return a subsetter that removes all the sample columns, and the FORMAT column */
+  public static VcfLineSubsetter sitesOnly() {
+    return new VcfLineSubsetter(Collections.emptyList(), new int[0]);
+  }
+
+  /**
+   * @param header the header of the file being read
+   * @param samples the names of the samples to keep
+   * @return a subsetter that keeps only the columns for the given samples
+   * @throws IllegalArgumentException if any of the samples are not in the header
+   */
+  public static VcfLineSubsetter forSamples(VCFHeader header, Collection<String> samples) {
+    Map<String, Integer> sampleNameToOffset = header.getSampleNameToOffset();
+    Map<Integer, String> selected = new TreeMap<>();
+    Set<String> missing = new LinkedHashSet<>();
+    for (String sample : samples) {
+      Integer offset = sampleNameToOffset.get(sample);
+      if (offset == null) {
+        missing.add(sample);
+      } else {
+        selected.put(offset, sample);
+      }
+    }
+    if (!missing.isEmpty()) {
+      throw new IllegalArgumentException("Samples not found in VCF header: " + missing);
+    }
+    int[] sampleIndexes = selected.keySet().stream().mapToInt(Integer::intValue).toArray();
+    return new VcfLineSubsetter(new ArrayList<>(selected.values()), sampleIndexes);
+  }
+
+  /**
+   * @param header the header of the file being read
+   * @return a header with the same metadata as the given one, and only the samples that are kept
+   */
+  public VCFHeader subsetHeader(VCFHeader header) {
+    return new VCFHeader(header.getMetaDataInInputOrder(), samples);
+  }
+
+  /**
+   * @param line a VCF record line
+   * @return the line with only the fixed columns, and the FORMAT column and the columns for the
+   *     samples that are kept (if any)
+   */
+  public String subset(Text line) {
+    byte[] bytes = line.getBytes();
+    int length = line.getLength();
+    if (buffer == null || buffer.length < length) {
+      buffer = new byte[Math.max(length, buffer == null ? 0 : buffer.length * 2)];
+    }
+    int lastFixedColumn = sampleIndexes.length == 0 ? FORMAT_COLUMN - 1 : FORMAT_COLUMN;
+    int nextSample = 0;
+    int column = 0;
+    int start = 0;
+    int out = 0;
+    for (int i = 0; i <= length; i++) {
+      if (i < length && bytes[i] != '\t') {
+        continue;
+      }
+      boolean keep =
+          column <= lastFixedColumn
+              || (nextSample < sampleIndexes.length
+                  && column - FORMAT_COLUMN - 1 == sampleIndexes[nextSample]);
+      if (keep) {
+        if (column > 0) {
+          buffer[out++] = '\t';
+        }
+        System.arraycopy(bytes, start, buffer, out, i - start);
+        out += i - start;
+        if (column > lastFixedColumn) {
+          nextSample++;
+        }
+      }
+      if (column >= lastFixedColumn && nextSample == sampleIndexes.length) {
+        break; // no more columns to keep
+      }
+      column++;
+      start = i + 1;
+    }
+    return new String(buffer, 0, out, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Subset a variant that has already been decoded, for formats that are not read line by line
+   * (BCF).
+   *
+   * @param variantContext a variant with genotypes for all the samples in the file
+   * @return the variant with genotypes for only the samples that are kept
+   */
+  public VariantContext subset(VariantContext variantContext) {
+    if (samples.isEmpty()) {
+      return new VariantContextBuilder(variantContext).noGenotypes().make();
+    }
+    if (sampleSet == null) {
+      sampleSet = new HashSet<>(samples);
+    }
+    return variantContext.subContextFromSamples(sampleSet, false);
+  }
+}
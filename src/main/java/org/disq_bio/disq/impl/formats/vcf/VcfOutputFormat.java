@@ -16,8 +16,8 @@ import org.disq_bio.disq.HtsjdkVariantsRdd;
 import org.disq_bio.disq.impl.formats.bgzf.BGZFCodec;
 
 /**
- * An output format for writing {@link VariantContext} objects to VCF files (including header). This
- * class should not be used directly.
+ * An output format for writing {@link VariantContext} objects to VCF or BCF files (including
+ * header). This class should not be used directly.
  *
  * @see HtsjdkVariantsRdd
  */
@@ -30,13 +30,15 @@ public class VcfOutputFormat extends FileOutputFormat<Void, VariantContext> {
     public VcfRecordWriter(Configuration conf, Path file, VCFHeader header, String extension)
         throws IOException {
       OutputStream out = file.getFileSystem(conf).create(file);
+      boolean bcf = VcfFormat.BCF.fileMatches(extension);
       boolean compressed =
-          extension.endsWith(BGZFCodec.DEFAULT_EXTENSION) || extension.endsWith(".gz");
+          bcf || extension.endsWith(BGZFCodec.DEFAULT_EXTENSION) || extension.endsWith(".gz");
       if (compressed) {
         out = new BlockCompressedOutputStream(out, null);
       }
+      VariantContextWriterBuilder builder = new VariantContextWriterBuilder().clearOptions();
       variantContextWriter =
-          new VariantContextWriterBuilder().clearOptions().setOutputVCFStream(out).build();
+          bcf ? builder.setOutputBCFStream(out).build() : builder.setOutputVCFStream(out).build();
       variantContextWriter.writeHeader(header);
     }
 
@@ -0,0 +1,357 @@
+package org.disq_bio.disq.impl.formats.vcf;
+
+import htsjdk.tribble.util.ParsingUtils;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.GenotypesContext;
+import htsjdk.variant.variantcontext.LazyGenotypesContext;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFConstants;
+import htsjdk.variant.vcf.VCFEncoder;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFHeaderLineCount;
+import htsjdk.variant.vcf.VCFInfoHeaderLine;
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes {@link VariantContext} objects as VCF lines (including the trailing newline) directly
+ * into a reusable byte buffer, so no string is built for each record. The output is the same as
+ * htsjdk's {@link VCFEncoder} (without missing header fields allowed, or trailing FORMAT fields).
+ * Genotypes that were read from a VCF file and never decoded are copied as they are; genotypes that
+ * have been decoded are still formatted by htsjdk.
+ *
+ * <p>Integers, and doubles that are whole numbers, are formatted without creating strings. The
+ * bytes for contig names, FORMAT keys, and INFO keys are cached, since they come from a small set
+ * given by the header.
+ *
+ * <p>This class is not thread safe.
+ */
+class VcfRecordByteEncoder {
+
+  private static final byte[] PASS =
+      VCFConstants.PASSES_FILTERS_v4.getBytes(StandardCharsets.UTF_8);
+
+  // the largest magnitude for which a double that is a whole number is formatted directly
+  private static final double MAX_WHOLE_DOUBLE = 1e15;
+
+  private final VCFHeader header;
+  private final VCFEncoder vcfEncoder;
+  private final Map<String, byte[]> stringBytesCache = new HashMap<>();
+  private final Map<String, Boolean> flagInfoKeys = new HashMap<>();
+  private final List<String> infoKeys = new ArrayList<>();
+  private final StringBuilder genotypeData = new StringBuilder();
+  private List<String> lastGenotypeKeys = Collections.emptyList();
+  private byte[] lastGenotypeKeysBytes = new byte[0];
+
+  private byte[] buffer = new byte[1024];
+  private int length;
+
+  VcfRecordByteEncoder(VCFHeader header) {
+    this.header = header;
+    this.vcfEncoder = new VCFEncoder(header, false, false);
+  }
+
+  /** @return the buffer holding the last encoded record, which is reused for the next one */
+  byte[] getBuffer() {
+    return buffer;
+  }
+
+  /** @return the length of the last encoded record in the buffer */
+  int getLength() {
+    return length;
+  }
+
+  /** Encode the given variant into the buffer, replacing any previous record. */
+  void encode(VariantContext vc) {
+    length = 0;
+
+    writeCached(vc.getContig());
+    write('\t');
+    writeLong(vc.getStart());
+    write('\t');
+    writeString(vc.getID());
+    write('\t');
+    writeBytes(vc.getReference().getDisplayBases());
+    write('\t');
+    if (vc.isVariant()) {
+      List<Allele> alternateAlleles = vc.getAlternateAlleles();
+      for (int i = 0; i < alternateAlleles.size(); i++) {
+        if (i > 0) {
+          write(',');
+        }
+        writeBytes(alternateAlleles.get(i).getDisplayBases());
+      }
+    } else {
+      write(VCFConstants.EMPTY_ALTERNATE_ALLELE_FIELD.charAt(0));
+    }
+    write('\t');
+    if (vc.hasLog10PError()) {
+      writeQual(vc.getPhredScaledQual());
+    } else {
+      write(VCFConstants.MISSING_VALUE_v4.charAt(0));
+    }
+    write('\t');
+    writeFilters(vc);
+    write('\t');
+    writeInfo(vc);
+    writeGenotypes(vc);
+    write('\n');
+  }
+
+  private void writeQual(double qual) {
+    if (isWholeNumber(qual)) {
+      writeLong((long) qual); // "%.2f" with the trailing ".00" removed
+    } else {
+      String formatted = String.format("%.2f", qual);
+      if (formatted.endsWith(".00")) {
+        formatted = formatted.substring(0, formatted.length() - 3);
+      }
+      writeString(formatted);
+    }
+  }
+
+  private void writeFilters(VariantContext vc) {
+    if (vc.isFiltered()) {
+      for (String filter : vc.getFilters()) {
+        if (!header.hasFilterLine(filter)) {
+          fieldIsMissingFromHeaderError(vc, filter, "FILTER");
+        }
+      }
+      List<String> filters = ParsingUtils.sortList(vc.getFilters());
+      for (int i = 0; i < filters.size(); i++) {
+        if (i > 0) {
+          write(';');
+        }
+        writeCached(filters.get(i));
+      }
+    } else if (vc.filtersWereApplied()) {
+      writeBytes(PASS);
+    } else {
+      write(VCFConstants.UNFILTERED.charAt(0));
+    }
+  }
+
+  private void writeInfo(VariantContext vc) {
+    Map<String, Object> attributes = vc.getAttributes();
+    infoKeys.clear();
+    for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+      if (!header.hasInfoLine(entry.getKey())) {
+        fieldIsMissingFromHeaderError(vc, entry.getKey(), "INFO");
+      }
+      if (!Boolean.FALSE.equals(entry.getValue())) { // false flags are not written
+        infoKeys.add(entry.getKey());
+      }
+    }
+    if (infoKeys.isEmpty()) {
+      write(VCFConstants.EMPTY_INFO_FIELD.charAt(0));
+      return;
+    }
+    Collections.sort(infoKeys);
+    for (int i = 0; i < infoKeys.size(); i++) {
+      if (i > 0) {
+        write(';');
+      }
+      String key = infoKeys.get(i);
+      writeCached(key);
+      if (!isFlag(key)) {
+        int keyEnd = length;
+        write('=');
+        writeField(attributes.get(key));
+        if (length == keyEnd + 1) {
+          length = keyEnd; // an empty value (a true flag) is written as just the key
+        }
+      }
+    }
+  }
+
+  private boolean isFlag(String key) {
+    return flagInfoKeys.computeIfAbsent(
+        key,
+        k -> {
+          VCFInfoHeaderLine infoHeaderLine = header.getInfoHeaderLine(k);
+          return infoHeaderLine != null
+              && infoHeaderLine.getCountType() == VCFHeaderLineCount.INTEGER
+              && infoHeaderLine.getCount() == 0;
+        });
+  }
+
+  /** Write a field value in the same way as {@code VCFEncoder#formatVCFField}. */
+  private void writeField(Object value) {
+    if (value == null) {
+      write(VCFConstants.MISSING_VALUE_v4.charAt(0));
+    } else if (value instanceof Integer || value instanceof Long) {
+      writeLong(((Number) value).longValue());
+    } else if (value instanceof Double) {
+      writeDouble((Double) value);
+    } else if (value instanceof String) {
+      writeString((String) value);
+    } else if (value instanceof Boolean) {
+      // true is written as an empty value, and false is not written at all
+    } else if (value instanceof List) {
+      List<?> list = (List<?>) value;
+      if (list.isEmpty()) {
+        writeField(null);
+      }
+      for (int i = 0; i < list.size(); i++) {
+        if (i > 0) {
+          write(',');
+        }
+        writeField(list.get(i));
+      }
+    } else if (value instanceof int[]) {
+      int[] array = (int[]) value;
+      if (array.length == 0) {
+        writeField(null);
+      }
+      for (int i = 0; i < array.length; i++) {
+        if (i > 0) {
+          write(',');
+        }
+        writeLong(array[i]);
+      }
+    } else if (value instanceof double[]) {
+      double[] array = (double[]) value;
+      if (array.length == 0) {
+        writeField(null);
+      }
+      for (int i = 0; i < array.length; i++) {
+        if (i > 0) {
+          write(',');
+        }
+        writeDouble(array[i]);
+      }
+    } else if (value.getClass().isArray()) {
+      int arrayLength = Array.getLength(value);
+      if (arrayLength == 0) {
+        writeField(null);
+      }
+      for (int i = 0; i < arrayLength; i++) {
+        if (i > 0) {
+          write(',');
+        }
+        writeField(Array.get(value, i));
+      }
+    } else {
+      writeString(value.toString());
+    }
+  }
+
+  private void writeDouble(double value) {
+    if (value >= 1 && isWholeNumber(value)) {
+      writeLong((long) value); // "%.2f"
+      write('.');
+      write('0');
+      write('0');
+    } else {
+      writeString(VCFEncoder.formatVCFDouble(value));
+    }
+  }
+
+  private static boolean isWholeNumber(double value) {
+    return value == Math.rint(value) && Math.abs(value) < MAX_WHOLE_DOUBLE;
+  }
+
+  private void writeGenotypes(VariantContext vc) {
+    GenotypesContext genotypes = vc.getGenotypes();
+    if (genotypes.isLazyWithData()
+        && ((LazyGenotypesContext) genotypes).getUnparsedGenotypeData() instanceof String) {
+      write('\t');
+      writeString((String) ((LazyGenotypesContext) genotypes).getUnparsedGenotypeData());
+      return;
+    }
+    List<String> genotypeKeys = vc.calcVCFGenotypeKeys(header);
+    if (genotypeKeys.isEmpty()) {
+      return;
+    }
+    if (!genotypeKeys.equals(lastGenotypeKeys)) {
+      for (String key : genotypeKeys) {
+        if (!header.hasFormatLine(key)) {
+          fieldIsMissingFromHeaderError(vc, key, "FORMAT");
+        }
+      }
+      lastGenotypeKeys = genotypeKeys;
+      lastGenotypeKeysBytes = ParsingUtils.join(":", genotypeKeys).getBytes(StandardCharsets.UTF_8);
+    }
+    write('\t');
+    writeBytes(lastGenotypeKeysBytes);
+    genotypeData.setLength(0);
+    vcfEncoder.addGenotypeData(vc, vcfEncoder.buildAlleleStrings(vc), genotypeKeys, genotypeData);
+    writeString(genotypeData);
+  }
+
+  private void fieldIsMissingFromHeaderError(VariantContext vc, String id, String field) {
+    throw new IllegalStateException(
+        "Key "
+            + id
+            + " found in VariantContext field "
+            + field
+            + " at "
+            + vc.getContig()
+            + ":"
+            + vc.getStart()
+            + " but this key isn't defined in the VCFHeader.  We require all VCFs to have"
+            + " complete VCF headers by default.");
+  }
+
+  private void writeCached(String s) {
+    writeBytes(stringBytesCache.computeIfAbsent(s, k -> k.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private void writeLong(long value) {
+    if (value < 0) {
+      if (value == Long.MIN_VALUE) {
+        writeString(Long.toString(value));
+        return;
+      }
+      write('-');
+      value = -value;
+    }
+    int digits = 1;
+    for (long v = value / 10; v > 0; v /= 10) {
+      digits++;
+    }
+    ensureCapacity(digits);
+    for (int i = length + digits - 1; i >= length; i--) {
+      buffer[i] = (byte) ('0' + value % 10);
+      value /= 10;
+    }
+    length += digits;
+  }
+
+  private void writeString(CharSequence s) {
+    int n = s.length();
+    ensureCapacity(n);
+    for (int i = 0; i < n; i++) {
+      char c = s.charAt(i);
+      if (c >= 0x80) {
+        // not ASCII, so encode the rest as UTF-8
+        writeBytes(s.subSequence(i, n).toString().getBytes(StandardCharsets.UTF_8));
+        return;
+      }
+      buffer[length++] = (byte) c;
+    }
+  }
+
+  private void writeBytes(byte[] bytes) {
+    ensureCapacity(bytes.length);
+    System.arraycopy(bytes, 0, buffer, length, bytes.length);
+    length += bytes.length;
+  }
+
+  private void write(char c) {
+    ensureCapacity(1);
+    buffer[length++] = (byte) c;
+  }
+
+  private void ensureCapacity(int extra) {
+    if (length + extra > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+    }
+  }
+}
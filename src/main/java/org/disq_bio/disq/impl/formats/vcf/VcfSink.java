@@ -1,24 +1,25 @@
 package org.disq_bio.disq.impl.formats.vcf;
 
-import com.google.common.collect.Iterators;
 import htsjdk.samtools.util.BlockCompressedOutputStream;
 import htsjdk.samtools.util.BlockCompressedStreamConstants;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.variantcontext.writer.VariantContextWriter;
 import htsjdk.variant.variantcontext.writer.VariantContextWriterBuilder;
-import htsjdk.variant.vcf.VCFEncoder;
 import htsjdk.variant.vcf.VCFHeader;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.Iterator;
+import java.util.Map;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
-import org.apache.spark.api.java.function.FlatMapFunction;
+import org.apache.spark.api.java.function.PairFunction;
 import org.apache.spark.broadcast.Broadcast;
 import org.disq_bio.disq.impl.file.FileSystemWrapper;
 import org.disq_bio.disq.impl.file.HadoopFileSystemWrapper;
 import org.disq_bio.disq.impl.file.Merger;
 import org.disq_bio.disq.impl.formats.bgzf.BGZFCodec;
+import org.disq_bio.disq.impl.formats.tabix.TabixIndexMerger;
+import scala.Tuple2;
 
 public class VcfSink extends AbstractVcfSink {
 
@@ -30,26 +31,54 @@ public class VcfSink extends AbstractVcfSink {
       VCFHeader vcfHeader,
       JavaRDD<VariantContext> variants,
       String path,
-      String tempPartsDirectory)
+      String tempPartsDirectory,
+      boolean writeTbiFile)
       throws IOException {
     Broadcast<VCFHeader> vcfHeaderBroadcast = jsc.broadcast(vcfHeader);
-    JavaRDD<String> variantStrings =
-        variants.mapPartitions(
-            (FlatMapFunction<Iterator<VariantContext>, String>)
-                variantContexts -> {
-                  VCFEncoder vcfEncoder =
-                      new VCFEncoder(vcfHeaderBroadcast.getValue(), false, false);
-                  return Iterators.transform(variantContexts, vcfEncoder::encode);
-                });
     boolean compressed = path.endsWith(BGZFCodec.DEFAULT_EXTENSION) || path.endsWith(".gz");
-    if (compressed) {
-      variantStrings.saveAsTextFile(tempPartsDirectory, BGZFCodec.class);
-    } else {
-      variantStrings.saveAsTextFile(tempPartsDirectory);
+    variants
+        .mapPartitions(
+            variantIterator -> {
+              HeaderlessVcfOutputFormat.setHeader(vcfHeaderBroadcast.getValue());
+              HeaderlessVcfOutputFormat.setCompressed(compressed);
+              HeaderlessVcfOutputFormat.setWriteTbiFile(writeTbiFile);
+              return variantIterator;
+            })
+        .mapToPair(
+            (PairFunction<VariantContext, Void, VariantContext>)
+                variantContext -> new Tuple2<>(null, variantContext))
+        .saveAsNewAPIHadoopFile(
+            tempPartsDirectory,
+            Void.class,
+            VariantContext.class,
+            HeaderlessVcfOutputFormat.class,
+            jsc.hadoopConfiguration());
+
+    writeHeaderAndTerminator(jsc.hadoopConfiguration(), tempPartsDirectory, vcfHeader, compressed);
+    Merger merger = new Merger();
+    // merging removes the parts, so find their lengths first to index the merged file after it
+    Map<String, Long> partLengths =
+        writeTbiFile ? merger.getPartLengths(jsc.hadoopConfiguration(), tempPartsDirectory) : null;
+    merger.mergeParts(jsc.hadoopConfiguration(), tempPartsDirectory, path);
+    if (writeTbiFile) {
+      new TabixIndexMerger(fileSystemWrapper)
+          .mergeParts(
+              jsc.hadoopConfiguration(), partLengths, path + VcfFormat.VCF_BGZ.getIndexExtension());
     }
+    fileSystemWrapper.delete(jsc.hadoopConfiguration(), tempPartsDirectory);
+  }
+
+  /**
+   * Write header and terminator (if compressed) files to a directory of headerless VCF parts, so
+   * that merging the directory produces a complete VCF file.
+   */
+  public static void writeHeaderAndTerminator(
+      Configuration conf, String partsDirectory, VCFHeader vcfHeader, boolean compressed)
+      throws IOException {
+    FileSystemWrapper fileSystemWrapper = new HadoopFileSystemWrapper();
     String headerFile =
-        tempPartsDirectory + "/header" + (compressed ? BGZFCodec.DEFAULT_EXTENSION : "");
-    try (OutputStream headerOut = fileSystemWrapper.create(jsc.hadoopConfiguration(), headerFile)) {
+        partsDirectory + "/header" + (compressed ? BGZFCodec.DEFAULT_EXTENSION : "");
+    try (OutputStream headerOut = fileSystemWrapper.create(conf, headerFile)) {
       OutputStream out = compressed ? new BlockCompressedOutputStream(headerOut, null) : headerOut;
       VariantContextWriter writer =
           new VariantContextWriterBuilder().clearOptions().setOutputVCFStream(out).build();
@@ -58,12 +87,10 @@ public class VcfSink extends AbstractVcfSink {
       // terminator after the header
     }
     if (compressed) {
-      String terminatorFile = tempPartsDirectory + "/terminator";
-      try (OutputStream out = fileSystemWrapper.create(jsc.hadoopConfiguration(), terminatorFile)) {
+      String terminatorFile = partsDirectory + "/terminator";
+      try (OutputStream out = fileSystemWrapper.create(conf, terminatorFile)) {
         out.write(BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK);
       }
     }
-    new Merger().mergeParts(jsc.hadoopConfiguration(), tempPartsDirectory, path);
-    fileSystemWrapper.delete(jsc.hadoopConfiguration(), tempPartsDirectory);
   }
 }
@@ -0,0 +1,104 @@
+package org.disq_bio.disq.impl.formats.vcf;
+
+import com.google.common.collect.Iterators;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFHeader;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.stream.Collectors;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.broadcast.Broadcast;
+import org.disq_bio.disq.PartitionByWriteOption;
+import org.disq_bio.disq.impl.file.FileSystemWrapper;
+import org.disq_bio.disq.impl.file.HadoopFileSystemWrapper;
+import org.disq_bio.disq.impl.formats.KeyedPartsMerger;
+import org.disq_bio.disq.impl.formats.bcf.BcfSink;
+import scala.Tuple2;
+
+/**
+ * Write variants to a VCF file for each contig, in a directory on Spark. This is done in a single
+ * pass by routing each variant to a headerless part file for its contig, then merging the parts for
+ * each contig into a single file.
+ *
+ * @see PartitionByWriteOption
+ */
+public class VcfSinkByKey extends AbstractVcfSink implements Serializable {
+
+  private final VcfFormat vcfFormat;
+
+  public VcfSinkByKey(VcfFormat vcfFormat, PartitionByWriteOption partitionByWriteOption) {
+    if (partitionByWriteOption != PartitionByWriteOption.CONTIG) {
+      throw new IllegalArgumentException(
+          "Variants can only be partitioned by contig, not " + partitionByWriteOption);
+    }
+    this.vcfFormat = vcfFormat;
+  }
+
+  @Override
+  public void save(
+      JavaSparkContext jsc,
+      VCFHeader vcfHeader,
+      JavaRDD<VariantContext> variants,
+      String path,
+      String tempPartsDirectory,
+      boolean writeTbiFile)
+      throws IOException {
+    SAMSequenceDictionary sequenceDictionary = vcfHeader.getSequenceDictionary();
+    if (sequenceDictionary == null) {
+      throw new IllegalArgumentException(
+          "Variants can only be partitioned by contig if the header has contig lines");
+    }
+
+    FileSystemWrapper fileSystemWrapper = new HadoopFileSystemWrapper();
+    if (fileSystemWrapper.exists(
+        jsc.hadoopConfiguration(), path)) { // delete output path if it exists
+      fileSystemWrapper.delete(jsc.hadoopConfiguration(), path);
+    }
+
+    Broadcast<VCFHeader> headerBroadcast = jsc.broadcast(vcfHeader);
+    variants
+        .mapPartitionsToPair(
+            variantIterator -> {
+              VCFHeader header = headerBroadcast.getValue();
+              KeyedHeaderlessVcfOutputFormat.setHeader(header);
+              KeyedHeaderlessVcfOutputFormat.setFormat(vcfFormat);
+              SAMSequenceDictionary dictionary = header.getSequenceDictionary();
+              return Iterators.transform(
+                  variantIterator,
+                  variant ->
+                      new Tuple2<>(
+                          KeyedPartsMerger.key(dictionary.getSequenceIndex(variant.getContig())),
+                          variant));
+            })
+        .saveAsNewAPIHadoopFile(
+            tempPartsDirectory,
+            String.class,
+            VariantContext.class,
+            KeyedHeaderlessVcfOutputFormat.class,
+            jsc.hadoopConfiguration());
+
+    new KeyedPartsMerger()
+        .mergeParts(
+            jsc.hadoopConfiguration(),
+            tempPartsDirectory,
+            path,
+            sequenceDictionary
+                .getSequences()
+                .stream()
+                .map(SAMSequenceRecord::getSequenceName)
+                .collect(Collectors.toList()),
+            vcfFormat.getExtension(),
+            partsDirectory -> {
+              if (vcfFormat == VcfFormat.BCF) {
+                BcfSink.writeHeaderAndTerminator(
+                    jsc.hadoopConfiguration(), partsDirectory, vcfHeader);
+              } else {
+                VcfSink.writeHeaderAndTerminator(
+                    jsc.hadoopConfiguration(), partsDirectory, vcfHeader, vcfFormat.isCompressed());
+              }
+            });
+  }
+}
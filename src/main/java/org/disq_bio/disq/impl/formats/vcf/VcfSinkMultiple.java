@@ -23,7 +23,8 @@ public class VcfSinkMultiple extends AbstractVcfSink implements Serializable {
       VCFHeader vcfHeader,
       JavaRDD<VariantContext> variants,
       String path,
-      String tempPartsDirectory) {
+      String tempPartsDirectory,
+      boolean writeTbiFile) {
     Broadcast<VCFHeader> headerBroadcast = jsc.broadcast(vcfHeader);
     variants
         .mapPartitions(
@@ -6,6 +6,7 @@ import htsjdk.samtools.util.BlockCompressedInputStream;
 import htsjdk.samtools.util.Locatable;
 import htsjdk.samtools.util.OverlapDetector;
 import htsjdk.tribble.FeatureCodecHeader;
+import htsjdk.tribble.TribbleException;
 import htsjdk.tribble.index.Index;
 import htsjdk.tribble.index.IndexFactory;
 import htsjdk.tribble.readers.AsciiLineReader;
@@ -14,11 +15,12 @@ import htsjdk.tribble.util.TabixUtils;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.vcf.VCFCodec;
 import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFHeaderLine;
+import htsjdk.variant.vcf.VCFHeaderVersion;
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.stream.Stream;
@@ -27,9 +29,6 @@ import java.util.zip.GZIPInputStream;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
-import org.apache.hadoop.io.compress.CompressionCodec;
-import org.apache.hadoop.io.compress.CompressionCodecFactory;
-import org.apache.hadoop.io.compress.GzipCodec;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 import org.apache.spark.api.java.JavaRDD;
@@ -38,13 +37,15 @@ import org.apache.spark.api.java.function.FlatMapFunction;
 import org.apache.spark.broadcast.Broadcast;
 import org.disq_bio.disq.impl.file.FileSystemWrapper;
 import org.disq_bio.disq.impl.file.HadoopFileSystemWrapper;
-import org.disq_bio.disq.impl.formats.bgzf.BGZFCodec;
-import org.disq_bio.disq.impl.formats.bgzf.BGZFEnhancedGzipCodec;
+import org.disq_bio.disq.impl.formats.bgzf.BGZFCodecUtil;
+import org.disq_bio.disq.impl.formats.tabix.TabixTextSource;
+import org.disq_bio.disq.impl.formats.text.KeyAlignedTextInputFormat;
 import org.disq_bio.disq.impl.formats.tribble.TribbleIndexIntervalFilteringTextInputFormat;
 
 public class VcfSource implements Serializable {
 
   private FileSystemWrapper fileSystemWrapper = new HadoopFileSystemWrapper();
+  private TabixTextSource tabixTextSource = new TabixTextSource(fileSystemWrapper);
 
   public VCFHeader getFileHeader(JavaSparkContext jsc, String path) throws IOException {
     try (SeekableStream headerIn =
@@ -56,16 +57,32 @@ public class VcfSource implements Serializable {
     }
   }
 
-  private VCFCodec getVCFCodec(JavaSparkContext jsc, String path) throws IOException {
+  private VCFCodec getVCFCodec(JavaSparkContext jsc, String path, VcfLineSubsetter subsetter)
+      throws IOException {
     try (SeekableStream headerIn =
         fileSystemWrapper.open(jsc.hadoopConfiguration(), getFirstPath(jsc, path))) {
       InputStream is = bufferAndDecompressIfNecessary(headerIn);
       VCFCodec vcfCodec = new VCFCodec();
-      vcfCodec.readHeader(new AsciiLineReaderIterator(AsciiLineReader.from(is)));
+      FeatureCodecHeader featureCodecHeader =
+          vcfCodec.readHeader(new AsciiLineReaderIterator(AsciiLineReader.from(is)));
+      if (subsetter != null) {
+        VCFHeader header = (VCFHeader) featureCodecHeader.getHeaderValue();
+        vcfCodec.setVCFHeader(subsetter.subsetHeader(header), getVersion(header));
+      }
       return vcfCodec;
     }
   }
 
+  private static VCFHeaderVersion getVersion(VCFHeader header) {
+    for (VCFHeaderLine line : header.getMetaDataInInputOrder()) {
+      if (VCFHeaderVersion.isFormatString(line.getKey())) {
+        return VCFHeaderVersion.toHeaderVersion(line.getValue());
+      }
+    }
+    throw new TribbleException.InvalidHeader(
+        "We never saw the required header line (starting with one #) for the input VCF file");
+  }
+
   private String getFirstPath(JavaSparkContext jsc, String path) throws IOException {
     Configuration conf = jsc.hadoopConfiguration();
     String firstPath;
@@ -85,8 +102,20 @@ public class VcfSource implements Serializable {
     return SamStreams.isGzippedSAMFile(bis) ? new GZIPInputStream(bis) : bis;
   }
 
+  /**
+   * @param alignSplitsToPositions if true, and there are no intervals, align partition boundaries
+   *     so that all the variants at the same position are in the same partition
+   * @param subsetter if not null, used to remove sample columns from each line before it is decoded
+   * @return an RDD of variants
+   */
   public <T extends Locatable> JavaRDD<VariantContext> getVariants(
-      JavaSparkContext jsc, String path, int splitSize, List<T> intervals) throws IOException {
+      JavaSparkContext jsc,
+      String path,
+      int splitSize,
+      List<T> intervals,
+      boolean alignSplitsToPositions,
+      VcfLineSubsetter subsetter)
+      throws IOException {
 
     // Use Hadoop FileSystem API to maintain file locality by using Hadoop's FileInputFormat
 
@@ -94,43 +123,55 @@ public class VcfSource implements Serializable {
     if (splitSize > 0) {
       conf.setInt(FileInputFormat.SPLIT_MAXSIZE, splitSize);
     }
-    enableBGZFCodecs(conf);
+    BGZFCodecUtil.enableBGZFCodecs(conf);
 
-    Broadcast<VCFCodec> vcfCodecBroadcast = jsc.broadcast(getVCFCodec(jsc, path));
+    Broadcast<VCFCodec> vcfCodecBroadcast = jsc.broadcast(getVCFCodec(jsc, path, subsetter));
     Broadcast<List<T>> intervalsBroadcast = intervals == null ? null : jsc.broadcast(intervals);
 
-    return textFile(jsc, conf, path, intervals)
+    return textFile(jsc, conf, path, splitSize, intervals, alignSplitsToPositions)
         .mapPartitions(
-            (FlatMapFunction<Iterator<String>, VariantContext>)
+            (FlatMapFunction<Iterator<Text>, VariantContext>)
                 lines -> {
                   VCFCodec codec = vcfCodecBroadcast.getValue();
                   final OverlapDetector<T> overlapDetector =
                       intervalsBroadcast == null
                           ? null
                           : OverlapDetector.create(intervalsBroadcast.getValue());
+                  // drop lines that can't overlap the intervals before decoding them
+                  final VcfLineIntervalFilter lineFilter =
+                      intervalsBroadcast == null
+                          ? null
+                          : new VcfLineIntervalFilter(intervalsBroadcast.getValue());
                   return stream(lines)
-                      .filter(line -> !line.startsWith("#"))
+                      .filter(line -> line.getLength() == 0 || line.getBytes()[0] != '#')
+                      .filter(line -> lineFilter == null || lineFilter.mayOverlap(line))
+                      .map(line -> subsetter == null ? line.toString() : subsetter.subset(line))
                       .map(codec::decode)
                       .filter(vc -> overlapDetector == null || overlapDetector.overlapsAny(vc))
                       .iterator();
                 });
   }
 
-  private void enableBGZFCodecs(Configuration conf) {
-    List<Class<? extends CompressionCodec>> codecs = CompressionCodecFactory.getCodecClasses(conf);
-    if (!codecs.contains(BGZFEnhancedGzipCodec.class)) {
-      codecs.remove(GzipCodec.class);
-      codecs.add(BGZFEnhancedGzipCodec.class);
-    }
-    if (!codecs.contains(BGZFCodec.class)) {
-      codecs.add(BGZFCodec.class);
-    }
-    CompressionCodecFactory.setCodecClasses(conf, new ArrayList<>(codecs));
-  }
-
-  private <T extends Locatable> JavaRDD<String> textFile(
-      JavaSparkContext jsc, Configuration conf, String path, List<T> intervals) throws IOException {
-    if (intervals == null) {
+  /**
+   * Note that the returned {@link Text} objects may be reused by the underlying record reader, so
+   * each one must be consumed before moving on to the next.
+   */
+  private <T extends Locatable> JavaRDD<Text> textFile(
+      JavaSparkContext jsc,
+      Configuration conf,
+      String path,
+      int splitSize,
+      List<T> intervals,
+      boolean alignSplitsToPositions)
+      throws IOException {
+    if (intervals == null && alignSplitsToPositions) {
+      Configuration keyConf = new Configuration(conf);
+      KeyAlignedTextInputFormat.setKeyFields(keyConf, 0, 1); // CHROM and POS
+      return jsc.newAPIHadoopFile(
+              path, KeyAlignedTextInputFormat.class, LongWritable.class, Text.class, keyConf)
+          .map(pair -> pair._2)
+          .setName(path);
+    } else if (intervals == null) {
       // Use this over JavaSparkContext#textFile since this allows the configuration to be passed in
       return jsc.newAPIHadoopFile(
               path,
@@ -138,7 +179,7 @@ public class VcfSource implements Serializable {
               LongWritable.class,
               Text.class,
               jsc.hadoopConfiguration())
-          .map(pair -> pair._2.toString())
+          .map(pair -> pair._2)
           .setName(path);
     } else {
       String indexPath;
@@ -152,6 +193,11 @@ public class VcfSource implements Serializable {
         throw new IllegalArgumentException(
             "Intervals set but no index file found for " + path + " at " + indexPath);
       }
+      if (indexPath.endsWith(TabixUtils.STANDARD_INDEX_EXTENSION)
+          && !fileSystemWrapper.isDirectory(conf, path)) {
+        // read only the chunks of the file that the tabix index says may overlap the intervals
+        return tabixTextSource.getLines(jsc, path, indexPath, splitSize, intervals).setName(path);
+      }
       try (InputStream indexIn =
           indexFileInputStream(indexPath, fileSystemWrapper.open(conf, indexPath))) {
         Index index = IndexFactory.loadIndex(indexPath, indexIn);
@@ -163,7 +209,7 @@ public class VcfSource implements Serializable {
                 LongWritable.class,
                 Text.class,
                 jsc.hadoopConfiguration())
-            .map(pair -> pair._2.toString())
+            .map(pair -> pair._2)
             .setName(path);
       }
     }
@@ -0,0 +1,45 @@
+package htsjdk.samtools;
+
+import htsjdk.samtools.cram.ref.CRAMReferenceSource;
+import java.io.OutputStream;
+
+/**
+ * Writes CRAM files with more than one slice per container, which htsjdk's writers never do, but
+ * other writers do. This is in htsjdk's package so it can set the number of records per slice.
+ */
+public class MultiSliceCramWriter {
+
+  public static void write(
+      Iterable<SAMRecord> records,
+      SAMFileHeader header,
+      CRAMReferenceSource referenceSource,
+      int recordsPerSlice,
+      int slicesPerContainer,
+      OutputStream out) {
+    CRAMContainerStreamWriter writer =
+        new CRAMContainerStreamWriter(out, null, referenceSource, header, "multi-slice") {
+          private int recordsInContainer;
+          private int containerReferenceIndex;
+
+          @Override
+          protected boolean shouldFlushContainer(SAMRecord rec) {
+            boolean flush =
+                recordsInContainer > 0
+                    && (recordsInContainer == recordsPerSlice * slicesPerContainer
+                        || rec.getReferenceIndex() != containerReferenceIndex);
+            if (recordsInContainer == 0 || flush) {
+              recordsInContainer = 0;
+              containerReferenceIndex = rec.getReferenceIndex();
+            }
+            recordsInContainer++;
+            return flush;
+          }
+        };
+    ConfigurableCRAMContainerStreamWriter.setRecordsPerSlice(writer, header, recordsPerSlice);
+    writer.writeHeader(header);
+    for (SAMRecord record : records) {
+      writer.writeAlignment(record);
+    }
+    writer.finish(true);
+  }
+}
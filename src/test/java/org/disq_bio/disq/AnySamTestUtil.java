@@ -2,11 +2,13 @@ package org.disq_bio.disq;
 
 import htsjdk.samtools.BAMIndexer;
 import htsjdk.samtools.CRAMCRAIIndexer;
+import htsjdk.samtools.MultiSliceCramWriter;
 import htsjdk.samtools.QueryInterval;
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMFileWriter;
 import htsjdk.samtools.SAMFileWriterFactory;
 import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordCoordinateComparator;
 import htsjdk.samtools.SAMRecordSetBuilder;
 import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.SamInputResource;
@@ -28,6 +30,9 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
 import org.disq_bio.disq.impl.file.NioFileSystemWrapper;
 import org.disq_bio.disq.impl.formats.BoundedTraversalUtil;
 import org.disq_bio.disq.impl.formats.sam.SamFormat;
@@ -41,27 +46,7 @@ public class AnySamTestUtil {
       String refPath)
       throws IOException {
     SamFormat samFormat = SamFormat.fromFormatWriteOption(formatWriteOption);
-    // file will be both queryname and coordinate sorted, so use one or the other
-    SAMRecordSetBuilder samRecordSetBuilder = new SAMRecordSetBuilder(true, sortOrder);
-    for (int i = 0; i < numPairs; i++) {
-      int chr = 20;
-      int start1 = (i + 1) * 1000;
-      int start2 = start1 + 100;
-      if (i == 5) { // add two unmapped fragments instead of a mapped pair
-        samRecordSetBuilder.addFrag(
-            String.format("test-read-%03d-1", i), chr, start1, false, true, null, null, -1, false);
-        samRecordSetBuilder.addFrag(
-            String.format("test-read-%03d-2", i), chr, start2, false, true, null, null, -1, false);
-      } else {
-        samRecordSetBuilder.addPair(String.format("test-read-%03d", i), chr, start1, start2);
-      }
-    }
-    if (numPairs > 0) { // add two unplaced unmapped fragments if non-empty
-      samRecordSetBuilder.addUnmappedFragment(
-          String.format("test-read-%03d-unplaced-unmapped", numPairs++));
-      samRecordSetBuilder.addUnmappedFragment(
-          String.format("test-read-%03d-unplaced-unmapped", numPairs++));
-    }
+    SAMRecordSetBuilder samRecordSetBuilder = createRecords(numPairs, sortOrder);
 
     final File bamFile = File.createTempFile("test", samFormat.getExtension());
     bamFile.deleteOnExit();
@@ -104,6 +89,59 @@ public class AnySamTestUtil {
     return bamFile.toURI().toString();
   }
 
+  /**
+   * Write a coordinate-sorted CRAM file, and its index, with the given number of slices in each
+   * container.
+   */
+  public static String writeMultiSliceCramFile(
+      int numPairs, String refPath, int recordsPerSlice, int slicesPerContainer)
+      throws IOException {
+    SAMRecordSetBuilder samRecordSetBuilder =
+        createRecords(numPairs, SAMFileHeader.SortOrder.coordinate);
+    final File cramFile = File.createTempFile("test", SamFormat.CRAM.getExtension());
+    cramFile.deleteOnExit();
+    try (OutputStream out = new FileOutputStream(cramFile)) {
+      MultiSliceCramWriter.write(
+          samRecordSetBuilder.getRecords(),
+          samRecordSetBuilder.getHeader(),
+          new ReferenceSource(new File(URI.create(refPath))),
+          recordsPerSlice,
+          slicesPerContainer,
+          out);
+    }
+    try (OutputStream out =
+        new FileOutputStream(cramFile.getAbsolutePath() + SamFormat.CRAM.getIndexExtension())) {
+      CRAMCRAIIndexer.writeIndex(new SeekableFileStream(cramFile), out);
+    }
+    return cramFile.toURI().toString();
+  }
+
+  private static SAMRecordSetBuilder createRecords(
+      int numPairs, SAMFileHeader.SortOrder sortOrder) {
+    // file will be both queryname and coordinate sorted, so use one or the other
+    SAMRecordSetBuilder samRecordSetBuilder = new SAMRecordSetBuilder(true, sortOrder);
+    for (int i = 0; i < numPairs; i++) {
+      int chr = 20;
+      int start1 = (i + 1) * 1000;
+      int start2 = start1 + 100;
+      if (i == 5) { // add two unmapped fragments instead of a mapped pair
+        samRecordSetBuilder.addFrag(
+            String.format("test-read-%03d-1", i), chr, start1, false, true, null, null, -1, false);
+        samRecordSetBuilder.addFrag(
+            String.format("test-read-%03d-2", i), chr, start2, false, true, null, null, -1, false);
+      } else {
+        samRecordSetBuilder.addPair(String.format("test-read-%03d", i), chr, start1, start2);
+      }
+    }
+    if (numPairs > 0) { // add two unplaced unmapped fragments if non-empty
+      samRecordSetBuilder.addUnmappedFragment(
+          String.format("test-read-%03d-unplaced-unmapped", numPairs++));
+      samRecordSetBuilder.addUnmappedFragment(
+          String.format("test-read-%03d-unplaced-unmapped", numPairs++));
+    }
+    return samRecordSetBuilder;
+  }
+
   public static int countReads(final String samPath) throws IOException {
     return countReads(samPath, null);
   }
@@ -219,6 +257,48 @@ public class AnySamTestUtil {
     return recCount;
   }
 
+  public static Map<String, Integer> countReadsByKey(
+      final String samPath, String refPath, Function<SAMRecord, String> keyFunction)
+      throws IOException {
+    final Path samFile = NioFileSystemWrapper.asPath(samPath);
+    final File refFile = refPath == null ? null : new File(URI.create(refPath));
+    ReferenceSource referenceSource = refFile == null ? null : new ReferenceSource(refFile);
+    Map<String, Integer> counts = new TreeMap<>();
+    try (SamReader samReader =
+        SamReaderFactory.makeDefault()
+            .referenceSource(referenceSource)
+            .open(SamInputResource.of(samFile))) {
+      for (SAMRecord record : samReader) {
+        counts.merge(keyFunction.apply(record), 1, Integer::sum);
+      }
+    }
+    return counts;
+  }
+
+  public static void assertCoordinateSorted(final String samPath, String refPath)
+      throws IOException {
+    final Path samFile = NioFileSystemWrapper.asPath(samPath);
+    final File refFile = refPath == null ? null : new File(URI.create(refPath));
+    ReferenceSource referenceSource = refFile == null ? null : new ReferenceSource(refFile);
+    try (SamReader samReader =
+        SamReaderFactory.makeDefault()
+            .referenceSource(referenceSource)
+            .open(SamInputResource.of(samFile))) {
+      Assert.assertEquals(
+          SAMFileHeader.SortOrder.coordinate, samReader.getFileHeader().getSortOrder());
+      SAMRecordCoordinateComparator comparator = new SAMRecordCoordinateComparator();
+      SAMRecord previous = null;
+      for (SAMRecord record : samReader) {
+        if (previous != null) {
+          Assert.assertTrue(
+              "Out of order: " + previous + ", " + record,
+              comparator.fileOrderCompare(previous, record) <= 0);
+        }
+        previous = record;
+      }
+    }
+  }
+
   private static int size(Iterator<SAMRecord> iterator) {
     int count = 0;
     while (iterator.hasNext()) {
@@ -1,22 +1,48 @@
 package org.disq_bio.disq;
 
+import htsjdk.samtools.CRAMCRAIIndexer;
 import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.cram.CRAIEntry;
+import htsjdk.samtools.cram.CRAIIndex;
+import htsjdk.samtools.seekablestream.SeekableFileStream;
+import htsjdk.samtools.seekablestream.SeekableStream;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
 import htsjdk.samtools.util.Interval;
 import htsjdk.samtools.util.Locatable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 import junitparams.JUnitParamsRunner;
 import junitparams.Parameters;
+import org.apache.spark.api.java.JavaPairRDD;
+import org.apache.spark.api.java.JavaRDD;
+import org.disq_bio.disq.impl.formats.cram.CramSource;
 import org.disq_bio.disq.impl.formats.sam.SamFormat;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import scala.Tuple2;
 
 @RunWith(JUnitParamsRunner.class)
 public class HtsjdkReadsRddTest extends BaseTest {
@@ -300,6 +326,519 @@ public class HtsjdkReadsRddTest extends BaseTest {
     }
   }
 
+  private Object[] parametersForTestGenomicRangePartitioner() {
+    return new Object[][] {
+      {"1.bam", 40000, false},
+      {"1.bam", 40000, true},
+      {"1.bam", 8000, false},
+      {null, 40000, false}, // generated SAM
+    };
+  }
+
+  @Test
+  @Parameters
+  public void testGenomicRangePartitioner(String inputFile, int splitSize, boolean useNio)
+      throws Exception {
+    String inputPath =
+        inputFile == null
+            ? AnySamTestUtil.writeAnySamFile(
+                1000, SAMFileHeader.SortOrder.coordinate, ReadsFormatWriteOption.SAM, null)
+            : getPath(inputFile);
+
+    HtsjdkReadsRddStorage htsjdkReadsRddStorage =
+        HtsjdkReadsRddStorage.makeDefault(jsc)
+            .splitSize(splitSize)
+            .useNio(useNio)
+            .genomicRangePartitioner(true);
+
+    HtsjdkReadsRdd htsjdkReadsRdd = htsjdkReadsRddStorage.read(inputPath);
+    GenomicRangePartitioner partitioner = htsjdkReadsRdd.getPartitioner();
+    Assert.assertNotNull(partitioner);
+    Assert.assertTrue(partitioner.numPartitions() > 1);
+
+    int expectedCount = AnySamTestUtil.countReads(inputPath);
+    Assert.assertEquals(expectedCount, htsjdkReadsRdd.getReads().count());
+
+    // every placed read's position maps to the partition it is in
+    JavaPairRDD<GenomicPosition, SAMRecord> readsByPosition = htsjdkReadsRdd.getReadsByPosition();
+    Assert.assertEquals(partitioner, readsByPosition.partitioner().get());
+    List<Integer> misplaced =
+        readsByPosition
+            .mapPartitionsWithIndex(
+                (index, reads) -> {
+                  int count = 0;
+                  while (reads.hasNext()) {
+                    GenomicPosition position = reads.next()._1();
+                    if (!SAMRecord.NO_ALIGNMENT_REFERENCE_NAME.equals(position.getContig())
+                        && partitioner.getPartition(position) != index) {
+                      count++;
+                    }
+                  }
+                  return Collections.singletonList(count).iterator();
+                },
+                false)
+            .collect();
+    Assert.assertEquals(0, misplaced.stream().mapToInt(Integer::intValue).sum());
+
+    // no shuffle is needed when grouping by position with the same partitioner
+    Assert.assertFalse(
+        readsByPosition.groupByKey(partitioner).toDebugString().contains("ShuffledRDD"));
+
+    // unplaced positions go to the first partition that starts with an unplaced read, or the last
+    // non-empty partition if there is none
+    List<String> firstContigs =
+        htsjdkReadsRdd
+            .getReads()
+            .mapPartitions(
+                reads ->
+                    Collections.singletonList(
+                            reads.hasNext() ? reads.next().getReferenceName() : null)
+                        .iterator())
+            .collect();
+    int expectedPartition = firstContigs.indexOf(SAMRecord.NO_ALIGNMENT_REFERENCE_NAME);
+    if (expectedPartition == -1) {
+      expectedPartition = firstContigs.size() - 1;
+      while (firstContigs.get(expectedPartition) == null) {
+        expectedPartition--;
+      }
+    }
+    Assert.assertEquals(
+        expectedPartition,
+        partitioner.getPartition(new GenomicPosition(SAMRecord.NO_ALIGNMENT_REFERENCE_NAME, 0)));
+    Assert.assertEquals(expectedPartition, partitioner.getPartition(new GenomicPosition(null, 0)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testGenomicRangePartitionerRejectsUnknownContig() throws Exception {
+    HtsjdkReadsRdd htsjdkReadsRdd =
+        HtsjdkReadsRddStorage.makeDefault(jsc)
+            .splitSize(40000)
+            .genomicRangePartitioner(true)
+            .read(getPath("1.bam"));
+    htsjdkReadsRdd.getPartitioner().getPartition(new GenomicPosition("no-such-contig", 1));
+  }
+
+  @Test
+  public void testGenomicRangePartitionerNotFoundForUnsortedInput() throws Exception {
+    String inputPath =
+        AnySamTestUtil.writeAnySamFile(
+            1000, SAMFileHeader.SortOrder.queryname, ReadsFormatWriteOption.BAM, null);
+
+    HtsjdkReadsRdd htsjdkReadsRdd =
+        HtsjdkReadsRddStorage.makeDefault(jsc)
+            .splitSize(40000)
+            .genomicRangePartitioner(true)
+            .read(inputPath);
+
+    Assert.assertNull(htsjdkReadsRdd.getPartitioner());
+    Assert.assertFalse(htsjdkReadsRdd.getReadsByPosition().partitioner().isPresent());
+  }
+
+  private Object[] parametersForTestQuerynameSortedReadsAreNotSplit() {
+    return new Object[][] {
+      {ReadsFormatWriteOption.BAM, 10000, false},
+      {ReadsFormatWriteOption.BAM, 10000, true},
+      {ReadsFormatWriteOption.SAM, 10000, false},
+    };
+  }
+
+  @Test
+  @Parameters
+  public void testQuerynameSortedReadsAreNotSplit(
+      ReadsFormatWriteOption formatWriteOption, int splitSize, boolean useNio) throws Exception {
+    String inputPath =
+        AnySamTestUtil.writeAnySamFile(
+            1000, SAMFileHeader.SortOrder.queryname, formatWriteOption, null);
+
+    HtsjdkReadsRdd htsjdkReadsRdd =
+        HtsjdkReadsRddStorage.makeDefault(jsc)
+            .splitSize(splitSize)
+            .useNio(useNio)
+            .querynameSplitAlignment(true)
+            .read(inputPath);
+    JavaRDD<SAMRecord> reads = htsjdkReadsRdd.getReads();
+    Assert.assertTrue(reads.getNumPartitions() > 1);
+
+    int expectedCount = AnySamTestUtil.countReads(inputPath);
+    Assert.assertEquals(expectedCount, reads.count());
+
+    // each read name is only found in a single partition
+    List<Tuple2<String, Integer>> partitionsPerName =
+        reads
+            .mapPartitionsWithIndex(
+                (index, it) -> {
+                  Set<String> names = new LinkedHashSet<>();
+                  it.forEachRemaining(read -> names.add(read.getReadName()));
+                  return names.iterator();
+                },
+                false)
+            .mapToPair(name -> new Tuple2<>(name, 1))
+            .reduceByKey((a, b) -> a + b)
+            .filter(t -> t._2() > 1)
+            .collect();
+    Assert.assertEquals(Collections.emptyList(), partitionsPerName);
+  }
+
+  private Object[] parametersForTestReadCompressedSam() {
+    return new Object[][] {
+      {".sam.bgz", SAMFileHeader.SortOrder.coordinate, true},
+      {".sam.bgz", SAMFileHeader.SortOrder.queryname, true},
+      {".sam.gz", SAMFileHeader.SortOrder.coordinate, false},
+    };
+  }
+
+  @Test
+  @Parameters
+  public void testReadCompressedSam(
+      String extension, SAMFileHeader.SortOrder sortOrder, boolean bgzf) throws Exception {
+    String samPath =
+        AnySamTestUtil.writeAnySamFile(1000, sortOrder, ReadsFormatWriteOption.SAM, null);
+    File compressedFile = File.createTempFile("test", extension);
+    compressedFile.deleteOnExit();
+    try (OutputStream out =
+        bgzf
+            ? new BlockCompressedOutputStream(compressedFile)
+            : new GZIPOutputStream(new FileOutputStream(compressedFile))) {
+      Files.copy(Paths.get(URI.create(samPath)), out);
+    }
+    String compressedPath = compressedFile.toURI().toString();
+
+    HtsjdkReadsRddStorage htsjdkReadsRddStorage =
+        HtsjdkReadsRddStorage.makeDefault(jsc).splitSize(16 * 1024);
+    JavaRDD<SAMRecord> reads = htsjdkReadsRddStorage.read(compressedPath).getReads();
+
+    // gzip files are read by a single partition, but BGZF files can be split
+    if (bgzf) {
+      Assert.assertTrue(reads.getNumPartitions() > 1);
+    }
+    Assert.assertEquals(
+        htsjdkReadsRddStorage.read(samPath).getReads().map(SAMRecord::getSAMString).collect(),
+        reads.map(SAMRecord::getSAMString).collect());
+  }
+
+  private Object[] parametersForTestWriteCoordinateSorted() {
+    return new Object[][] {
+      {null, ReadsFormatWriteOption.BAM, FileCardinalityWriteOption.SINGLE},
+      {"test.fa", ReadsFormatWriteOption.CRAM, FileCardinalityWriteOption.SINGLE},
+      {null, ReadsFormatWriteOption.SAM, FileCardinalityWriteOption.SINGLE},
+      {null, ReadsFormatWriteOption.BAM, FileCardinalityWriteOption.MULTIPLE},
+    };
+  }
+
+  @Test
+  @Parameters
+  public void testWriteCoordinateSorted(
+      String cramReferenceFile,
+      ReadsFormatWriteOption formatWriteOption,
+      FileCardinalityWriteOption fileCardinalityWriteOption)
+      throws Exception {
+    String refPath = getPath(cramReferenceFile);
+
+    // generate a file with reads that fit in the reference, then reverse the order of the reads
+    String inputPath =
+        AnySamTestUtil.writeAnySamFile(
+            40, SAMFileHeader.SortOrder.unsorted, ReadsFormatWriteOption.SAM, null);
+    Path inputFile = Paths.get(URI.create(inputPath));
+    List<String> lines = Files.readAllLines(inputFile);
+    List<String> headerLines =
+        lines.stream().filter(line -> line.startsWith("@")).collect(Collectors.toList());
+    List<String> readLines =
+        lines.stream().filter(line -> !line.startsWith("@")).collect(Collectors.toList());
+    Collections.reverse(readLines);
+    headerLines.addAll(readLines);
+    Files.write(inputFile, headerLines);
+
+    HtsjdkReadsRddStorage htsjdkReadsRddStorage =
+        HtsjdkReadsRddStorage.makeDefault(jsc).splitSize(2000).referenceSourcePath(refPath);
+    HtsjdkReadsRdd htsjdkReadsRdd = htsjdkReadsRddStorage.read(inputPath);
+    Assert.assertTrue(htsjdkReadsRdd.getReads().getNumPartitions() > 1);
+
+    String outputPath =
+        createTempPath(
+            fileCardinalityWriteOption == FileCardinalityWriteOption.MULTIPLE
+                ? ""
+                : SamFormat.fromFormatWriteOption(formatWriteOption).getExtension());
+    htsjdkReadsRddStorage.write(
+        htsjdkReadsRdd,
+        outputPath,
+        formatWriteOption,
+        fileCardinalityWriteOption,
+        ReadsSortOrderWriteOption.COORDINATE);
+
+    int expectedCount = AnySamTestUtil.countReads(inputPath);
+    if (fileCardinalityWriteOption == FileCardinalityWriteOption.MULTIPLE) {
+      int totalCount = 0;
+      for (String part : listPartFiles(outputPath)) {
+        AnySamTestUtil.assertCoordinateSorted(part, refPath);
+        totalCount += AnySamTestUtil.countReads(part, refPath);
+      }
+      Assert.assertEquals(expectedCount, totalCount);
+    } else {
+      AnySamTestUtil.assertCoordinateSorted(outputPath, refPath);
+      Assert.assertEquals(expectedCount, AnySamTestUtil.countReads(outputPath, refPath));
+    }
+  }
+
+  @Test
+  public void testReadCramWithoutIndexInParallel() throws Exception {
+    String refPath = getPath("test.fa");
+
+    // write a CRAM 3 file that has a container for each partition, and remove its index
+    String inputPath =
+        AnySamTestUtil.writeAnySamFile(
+            40, SAMFileHeader.SortOrder.coordinate, ReadsFormatWriteOption.SAM, null);
+    HtsjdkReadsRddStorage htsjdkReadsRddStorage =
+        HtsjdkReadsRddStorage.makeDefault(jsc).splitSize(2000).referenceSourcePath(refPath);
+    HtsjdkReadsRdd htsjdkReadsRdd = htsjdkReadsRddStorage.read(inputPath);
+    Assert.assertTrue(htsjdkReadsRdd.getReads().getNumPartitions() > 1);
+    String cramPath = createTempPath(SamFormat.CRAM.getExtension());
+    htsjdkReadsRddStorage.write(htsjdkReadsRdd, cramPath, ReadsFormatWriteOption.CRAM);
+    Files.delete(Paths.get(URI.create(cramPath + ".crai")));
+
+    // container boundaries are found for each split, rather than by reading the whole file
+    HtsjdkReadsRdd cramReadsRdd =
+        HtsjdkReadsRddStorage.makeDefault(jsc)
+            .splitSize(1024)
+            .referenceSourcePath(refPath)
+            .read(cramPath);
+    Assert.assertTrue(cramReadsRdd.getReads().getNumPartitions() > 1);
+    Assert.assertEquals(
+        AnySamTestUtil.countReads(cramPath, refPath), cramReadsRdd.getReads().count());
+  }
+
+  @Test
+  public void testWriteCramIndex() throws Exception {
+    String refPath = getPath("test.fa");
+
+    String inputPath =
+        AnySamTestUtil.writeAnySamFile(
+            40, SAMFileHeader.SortOrder.coordinate, ReadsFormatWriteOption.SAM, null);
+    HtsjdkReadsRddStorage htsjdkReadsRddStorage =
+        HtsjdkReadsRddStorage.makeDefault(jsc).splitSize(2000).referenceSourcePath(refPath);
+    HtsjdkReadsRdd htsjdkReadsRdd = htsjdkReadsRddStorage.read(inputPath);
+    Assert.assertTrue(htsjdkReadsRdd.getReads().getNumPartitions() > 1);
+    String cramPath = createTempPath(SamFormat.CRAM.getExtension());
+    htsjdkReadsRddStorage.write(htsjdkReadsRdd, cramPath, ReadsFormatWriteOption.CRAM);
+
+    // the index merged from the parts is the same as one built from the whole file
+    List<String> expected;
+    try (SeekableStream in = new SeekableFileStream(new File(URI.create(cramPath)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+      CRAMCRAIIndexer.writeIndex(in, out);
+      expected = craiLines(CRAMCRAIIndexer.readIndex(new ByteArrayInputStream(out.toByteArray())));
+    }
+    List<String> actual;
+    try (InputStream in = new FileInputStream(new File(URI.create(cramPath + ".crai")))) {
+      actual = craiLines(CRAMCRAIIndexer.readIndex(in));
+    }
+    Assert.assertTrue(actual.size() > 1);
+    Assert.assertEquals(expected, actual);
+  }
+
+  private Object[] parametersForTestWriteCramContainerSize() {
+    return new Object[][] {{null}, {new CramEncodingThreadsWriteOption(2)}};
+  }
+
+  @Test
+  @Parameters
+  public void testWriteCramContainerSize(CramEncodingThreadsWriteOption encodingThreadsWriteOption)
+      throws Exception {
+    String refPath = getPath("test.fa");
+
+    String inputPath =
+        AnySamTestUtil.writeAnySamFile(
+            40, SAMFileHeader.SortOrder.coordinate, ReadsFormatWriteOption.SAM, null);
+    HtsjdkReadsRddStorage htsjdkReadsRddStorage =
+        HtsjdkReadsRddStorage.makeDefault(jsc).splitSize(2000).referenceSourcePath(refPath);
+    HtsjdkReadsRdd htsjdkReadsRdd = htsjdkReadsRddStorage.read(inputPath);
+    Assert.assertTrue(htsjdkReadsRdd.getReads().getNumPartitions() > 1);
+    String cramPath = createTempPath(SamFormat.CRAM.getExtension());
+    List<WriteOption> writeOptions = new ArrayList<>();
+    writeOptions.add(ReadsFormatWriteOption.CRAM);
+    writeOptions.add(new CramContainerSizeWriteOption(5, 4));
+    if (encodingThreadsWriteOption != null) {
+      writeOptions.add(encodingThreadsWriteOption);
+    }
+    htsjdkReadsRddStorage.write(htsjdkReadsRdd, cramPath, writeOptions.toArray(new WriteOption[0]));
+
+    // containers have several slices
+    List<CRAIEntry> entries;
+    try (InputStream in = new FileInputStream(new File(URI.create(cramPath + ".crai")))) {
+      entries = CRAMCRAIIndexer.readIndex(in).getCRAIEntries();
+    }
+    Map<Long, Long> slicesPerContainer =
+        entries
+            .stream()
+            .collect(
+                Collectors.groupingBy(entry -> entry.containerStartOffset, Collectors.counting()));
+    Assert.assertTrue(slicesPerContainer.values().stream().anyMatch(slices -> slices > 1));
+    Assert.assertTrue(slicesPerContainer.values().stream().allMatch(slices -> slices <= 4));
+
+    // the same reads are written, in the same order
+    HtsjdkReadsRdd cramReadsRdd =
+        HtsjdkReadsRddStorage.makeDefault(jsc)
+            .splitSize(256)
+            .referenceSourcePath(refPath)
+            .read(cramPath);
+    Assert.assertTrue(cramReadsRdd.getReads().getNumPartitions() > 1);
+    Assert.assertEquals(
+        htsjdkReadsRdd.getReads().map(SAMRecord::getSAMString).collect(),
+        cramReadsRdd.getReads().map(SAMRecord::getSAMString).collect());
+  }
+
+  private static List<String> craiLines(CRAIIndex index) {
+    return index.getCRAIEntries().stream().map(CRAIEntry::toString).collect(Collectors.toList());
+  }
+
+  private Object[] parametersForTestReadCramSplitWithinContainers() {
+    return new Object[][] {
+      {null},
+      {
+        new HtsjdkReadsTraversalParameters<>(
+            Arrays.asList(
+                new Interval("chr21", 5000, 9999), // includes two unpaired fragments
+                new Interval("chr21", 20000, 22999)),
+            true)
+      },
+    };
+  }
+
+  @Test
+  @Parameters
+  public <T extends Locatable> void testReadCramSplitWithinContainers(
+      HtsjdkReadsTraversalParameters<T> traversalParameters) throws Exception {
+    String refPath = getPath("test.fa");
+
+    // four slices of five reads in each container, so the 82 reads are in five containers
+    String cramPath = AnySamTestUtil.writeMultiSliceCramFile(40, refPath, 5, 4);
+
+    HtsjdkReadsRdd htsjdkReadsRdd =
+        HtsjdkReadsRddStorage.makeDefault(jsc)
+            .splitSize(256)
+            .referenceSourcePath(refPath)
+            .read(cramPath, traversalParameters);
+
+    // splits can start at slices, so there are more partitions than containers
+    Assert.assertTrue(htsjdkReadsRdd.getReads().getNumPartitions() > 5);
+    long count = htsjdkReadsRdd.getReads().count();
+    Assert.assertEquals(AnySamTestUtil.countReads(cramPath, refPath, traversalParameters), count);
+    // no read is in more than one partition
+    Assert.assertEquals(
+        count,
+        htsjdkReadsRdd
+            .getReads()
+            .map(read -> read.getReadName() + read.getFlags())
+            .distinct()
+            .count());
+  }
+
+  @Test
+  public void testReadCramTraversalPartitionsFromIndex() throws Exception {
+    String refPath = getPath("test.fa");
+    String cramPath = AnySamTestUtil.writeMultiSliceCramFile(40, refPath, 5, 4);
+
+    HtsjdkReadsRddStorage htsjdkReadsRddStorage =
+        HtsjdkReadsRddStorage.makeDefault(jsc).splitSize(256).referenceSourcePath(refPath);
+    HtsjdkReadsTraversalParameters<Interval> traversalParameters =
+        new HtsjdkReadsTraversalParameters<>(
+            Collections.singletonList(new Interval("chr21", 20000, 22999)), false);
+    HtsjdkReadsRdd htsjdkReadsRdd = htsjdkReadsRddStorage.read(cramPath, traversalParameters);
+
+    // only the slices that overlap the interval are partitioned
+    Assert.assertTrue(
+        htsjdkReadsRdd.getReads().getNumPartitions()
+            < htsjdkReadsRddStorage.read(cramPath).getReads().getNumPartitions());
+    Assert.assertEquals(
+        AnySamTestUtil.countReads(cramPath, refPath, traversalParameters),
+        htsjdkReadsRdd.getReads().count());
+  }
+
+  @Test
+  public void testReadCramWithDecodingThreads() throws Exception {
+    String refPath = getPath("test.fa");
+    String cramPath = AnySamTestUtil.writeMultiSliceCramFile(40, refPath, 5, 4);
+
+    HtsjdkReadsRddStorage htsjdkReadsRddStorage =
+        HtsjdkReadsRddStorage.makeDefault(jsc).splitSize(1024).referenceSourcePath(refPath);
+    List<String> expected =
+        htsjdkReadsRddStorage.read(cramPath).getReads().map(SAMRecord::getSAMString).collect();
+
+    HtsjdkReadsRdd htsjdkReadsRdd = htsjdkReadsRddStorage.cramDecodingThreads(2).read(cramPath);
+    Assert.assertTrue(htsjdkReadsRdd.getReads().getNumPartitions() > 1);
+    Assert.assertEquals(expected, htsjdkReadsRdd.getReads().map(SAMRecord::getSAMString).collect());
+
+    // only take some of the reads, so the iterators are not exhausted
+    Assert.assertEquals(
+        expected.subList(0, 3), htsjdkReadsRdd.getReads().map(SAMRecord::getSAMString).take(3));
+
+    jsc.hadoopConfiguration().setInt(CramSource.DECODING_THREADS, 2);
+    try {
+      Assert.assertEquals(
+          expected,
+          HtsjdkReadsRddStorage.makeDefault(jsc)
+              .splitSize(1024)
+              .referenceSourcePath(refPath)
+              .read(cramPath)
+              .getReads()
+              .map(SAMRecord::getSAMString)
+              .collect());
+    } finally {
+      jsc.hadoopConfiguration().unset(CramSource.DECODING_THREADS);
+    }
+  }
+
+  private Object[] parametersForTestWritePartitionBy() {
+    return new Object[][] {
+      {"1.bam", null, ReadsFormatWriteOption.BAM, PartitionByWriteOption.CONTIG},
+      {"1.bam", null, ReadsFormatWriteOption.SAM, PartitionByWriteOption.READ_GROUP},
+      {"valid.cram", "valid.fasta", ReadsFormatWriteOption.CRAM, PartitionByWriteOption.CONTIG},
+      {"test.sam", null, ReadsFormatWriteOption.BAM, PartitionByWriteOption.READ_GROUP},
+    };
+  }
+
+  @Test
+  @Parameters
+  public void testWritePartitionBy(
+      String inputFile,
+      String cramReferenceFile,
+      ReadsFormatWriteOption formatWriteOption,
+      PartitionByWriteOption partitionByWriteOption)
+      throws Exception {
+    String inputPath = getPath(inputFile);
+    String refPath = getPath(cramReferenceFile);
+
+    HtsjdkReadsRddStorage htsjdkReadsRddStorage =
+        HtsjdkReadsRddStorage.makeDefault(jsc).splitSize(40000).referenceSourcePath(refPath);
+    HtsjdkReadsRdd htsjdkReadsRdd = htsjdkReadsRddStorage.read(inputPath);
+
+    String outputPath = createTempPath("");
+    htsjdkReadsRddStorage.write(
+        htsjdkReadsRdd, outputPath, formatWriteOption, partitionByWriteOption);
+
+    Map<String, Integer> expectedCounts =
+        AnySamTestUtil.countReadsByKey(
+            inputPath,
+            refPath,
+            read -> {
+              String key =
+                  partitionByWriteOption == PartitionByWriteOption.CONTIG
+                      ? read.getReferenceName()
+                      : read.getStringAttribute("RG");
+              return key == null || key.equals("*") ? "unassigned" : key;
+            });
+    String extension = SamFormat.fromFormatWriteOption(formatWriteOption).getExtension();
+    Map<String, Integer> actualCounts = new TreeMap<>();
+    for (File file :
+        new File(URI.create(outputPath)).listFiles(f -> !f.getName().startsWith("."))) {
+      String name = file.getName();
+      Assert.assertTrue(name.endsWith(extension));
+      actualCounts.put(
+          name.substring(0, name.length() - extension.length()),
+          AnySamTestUtil.countReads(file.toURI().toString(), refPath));
+    }
+    Assert.assertEquals(expectedCounts, actualCounts);
+  }
+
   @Test(expected = IllegalArgumentException.class)
   public void testMappedOnlyFails() throws Exception {
     String inputPath =
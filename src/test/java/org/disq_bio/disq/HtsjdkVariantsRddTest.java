@@ -4,15 +4,25 @@ import static org.disq_bio.disq.VcfTestUtil.countVariants;
 
 import htsjdk.samtools.util.Interval;
 import htsjdk.variant.variantcontext.VariantContext;
+import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import junitparams.JUnitParamsRunner;
 import junitparams.Parameters;
+import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaRDD;
 import org.disq_bio.disq.impl.formats.vcf.VcfFormat;
 import org.junit.Assert;
@@ -30,6 +40,7 @@ public class HtsjdkVariantsRddTest extends BaseTest {
       {"test.vcf.bgz", VariantsFormatWriteOption.VCF, 128 * 1024},
       {"test.vcf.bgzf.gz", VariantsFormatWriteOption.VCF, 128 * 1024},
       {"test.vcf.gz", VariantsFormatWriteOption.VCF, 128 * 1024},
+      {"test.vcf", VariantsFormatWriteOption.BCF, 128 * 1024},
     };
   }
 
@@ -74,6 +85,7 @@ public class HtsjdkVariantsRddTest extends BaseTest {
       {"HiSeq.10000.vcf.bgz", 128 * 1024, VariantsFormatWriteOption.VCF},
       {"HiSeq.10000.vcf.bgz", 128 * 1024, VariantsFormatWriteOption.VCF_GZ},
       {"HiSeq.10000.vcf.bgz", 128 * 1024, VariantsFormatWriteOption.VCF_BGZ},
+      {"HiSeq.10000.vcf.bgz", 128 * 1024, VariantsFormatWriteOption.BCF},
     };
   }
 
@@ -126,7 +138,9 @@ public class HtsjdkVariantsRddTest extends BaseTest {
     return new Object[][] {
       {"HiSeq.10000.vcf.bgz", null, 4},
       {"HiSeq.10000.vcf.bgz", new Interval("chr1", 2700000, 2800000), 1},
+      {"HiSeq.10000.vcf.bgz", new Interval("chr1", 1, 10000000), 4},
       {"HiSeq.10000.vcf.bgzf.gz", null, 4},
+      {"HiSeq.10000.vcf.bgzf.gz", new Interval("chr1", 1000000, 3000000), 2},
     };
   }
 
@@ -149,6 +163,325 @@ public class HtsjdkVariantsRddTest extends BaseTest {
     Assert.assertEquals(expectedCount, variants.count());
   }
 
+  private Object[] parametersForTestBcfIsSplitIntoMultiplePartitions() {
+    return new Object[][] {
+      {null, null},
+      {new Interval("chr1", 2700000, 2800000), null},
+      {null, Collections.emptyList()},
+      {null, Collections.singletonList("NA12878")},
+    };
+  }
+
+  @Test
+  @Parameters
+  public void testBcfIsSplitIntoMultiplePartitions(Interval interval, List<String> samples)
+      throws IOException, URISyntaxException {
+    String inputPath = getPath("HiSeq.10000.vcf.bgz");
+    List<Interval> intervals = interval == null ? null : Collections.singletonList(interval);
+
+    HtsjdkVariantsRddStorage htsjdkVariantsRddStorage =
+        HtsjdkVariantsRddStorage.makeDefault(jsc).splitSize(32 * 1024);
+    String bcfPath = createTempPath(VcfFormat.BCF.getExtension());
+    htsjdkVariantsRddStorage.write(
+        htsjdkVariantsRddStorage.read(inputPath), bcfPath, VariantsFormatWriteOption.BCF);
+
+    HtsjdkVariantsRdd vcfRdd =
+        htsjdkVariantsRddStorage
+            .sitesOnly(samples != null && samples.isEmpty())
+            .samples(samples)
+            .read(inputPath, intervals);
+    HtsjdkVariantsRdd bcfRdd = htsjdkVariantsRddStorage.read(bcfPath, intervals);
+    Assert.assertTrue(bcfRdd.getVariants().getNumPartitions() > 1);
+    Assert.assertEquals(
+        vcfRdd.getHeader().getGenotypeSamples(), bcfRdd.getHeader().getGenotypeSamples());
+
+    // the variants decoded from BCF are the same as those decoded from VCF (INFO fields are not
+    // compared since BCF stores floats with less precision than their string representation)
+    List<String> expected =
+        vcfRdd.getVariants().map(HtsjdkVariantsRddTest::siteAndGenotypes).collect();
+    Assert.assertEquals(countVariants(inputPath, interval), expected.size());
+    Assert.assertEquals(
+        expected, bcfRdd.getVariants().map(HtsjdkVariantsRddTest::siteAndGenotypes).collect());
+  }
+
+  private static String siteAndGenotypes(VariantContext vc) {
+    return vc.getContig()
+        + ":"
+        + vc.getStart()
+        + " "
+        + vc.getID()
+        + " "
+        + vc.getAlleles()
+        + " "
+        + vc.getFilters()
+        + " "
+        + vc.getGenotypes();
+  }
+
+  private Object[] parametersForTestGenomicRangePartitioner() {
+    return new Object[][] {
+      {"HiSeq.10000.vcf.bgz", 32 * 1024},
+      {"HiSeq.10000.vcf.bgzf.gz", 32 * 1024},
+      {"test.vcf", 200},
+    };
+  }
+
+  @Test
+  @Parameters
+  public void testGenomicRangePartitioner(String inputFile, int splitSize)
+      throws IOException, URISyntaxException {
+    String inputPath = getPath(inputFile);
+
+    HtsjdkVariantsRdd htsjdkVariantsRdd =
+        HtsjdkVariantsRddStorage.makeDefault(jsc)
+            .splitSize(splitSize)
+            .genomicRangePartitioner(true)
+            .read(inputPath);
+    GenomicRangePartitioner partitioner = htsjdkVariantsRdd.getPartitioner();
+    Assert.assertNotNull(partitioner);
+    Assert.assertTrue(partitioner.numPartitions() > 1);
+
+    int expectedCount = countVariants(inputPath);
+    Assert.assertEquals(expectedCount, htsjdkVariantsRdd.getVariants().count());
+
+    // every variant's position maps to the partition it is in
+    JavaPairRDD<GenomicPosition, VariantContext> variantsByPosition =
+        htsjdkVariantsRdd.getVariantsByPosition();
+    Assert.assertEquals(partitioner, variantsByPosition.partitioner().get());
+    List<Integer> misplaced =
+        variantsByPosition
+            .mapPartitionsWithIndex(
+                (index, variants) -> {
+                  int count = 0;
+                  while (variants.hasNext()) {
+                    if (partitioner.getPartition(variants.next()._1()) != index) {
+                      count++;
+                    }
+                  }
+                  return Collections.singletonList(count).iterator();
+                },
+                false)
+            .collect();
+    Assert.assertEquals(0, misplaced.stream().mapToInt(Integer::intValue).sum());
+  }
+
+  private Object[] parametersForTestReadSitesOnly() {
+    return new Object[][] {
+      {"test.vcf", null},
+      {"HiSeq.10000.vcf.bgz", null},
+      {"HiSeq.10000.vcf.bgz", new Interval("chr1", 2700000, 2800000)},
+    };
+  }
+
+  @Test
+  @Parameters
+  public void testReadSitesOnly(String inputFile, Interval interval)
+      throws IOException, URISyntaxException {
+    String inputPath = getPath(inputFile);
+    List<Interval> intervals = interval == null ? null : Collections.singletonList(interval);
+
+    HtsjdkVariantsRddStorage htsjdkVariantsRddStorage =
+        HtsjdkVariantsRddStorage.makeDefault(jsc).splitSize(128 * 1024);
+    HtsjdkVariantsRdd htsjdkVariantsRdd = htsjdkVariantsRddStorage.read(inputPath, intervals);
+    HtsjdkVariantsRdd sitesOnlyRdd =
+        htsjdkVariantsRddStorage.sitesOnly(true).read(inputPath, intervals);
+
+    Assert.assertTrue(htsjdkVariantsRdd.getHeader().hasGenotypingData());
+    Assert.assertFalse(sitesOnlyRdd.getHeader().hasGenotypingData());
+    Assert.assertEquals(
+        htsjdkVariantsRdd.getHeader().getMetaDataInInputOrder(),
+        sitesOnlyRdd.getHeader().getMetaDataInInputOrder());
+
+    // the sites are the same as when reading the whole file, but there are no genotypes
+    List<String> expected =
+        htsjdkVariantsRdd.getVariants().map(VariantContext::toStringWithoutGenotypes).collect();
+    Assert.assertEquals(countVariants(inputPath, interval), expected.size());
+    Assert.assertEquals(
+        expected,
+        sitesOnlyRdd.getVariants().map(VariantContext::toStringWithoutGenotypes).collect());
+    Assert.assertEquals(0, sitesOnlyRdd.getVariants().filter(VariantContext::hasGenotypes).count());
+
+    // check we can write and read back a sites-only file
+    String outputPath = createTempPath(".vcf");
+    htsjdkVariantsRddStorage.write(sitesOnlyRdd, outputPath);
+    Assert.assertEquals(expected.size(), countVariants(outputPath));
+    Assert.assertEquals(
+        expected.size(),
+        htsjdkVariantsRddStorage.sitesOnly(false).read(outputPath).getVariants().count());
+  }
+
+  private Object[] parametersForTestReadSamples() {
+    return new Object[][] {
+      {Collections.singletonList("NA00002")},
+      {Arrays.asList("NA00003", "NA00001")},
+      {Arrays.asList("NA00001", "NA00002", "NA00003")},
+    };
+  }
+
+  @Test
+  @Parameters
+  public void testReadSamples(List<String> samples) throws IOException, URISyntaxException {
+    String inputPath = getPath("test.vcf.bgz");
+
+    HtsjdkVariantsRddStorage htsjdkVariantsRddStorage =
+        HtsjdkVariantsRddStorage.makeDefault(jsc).splitSize(200);
+    HtsjdkVariantsRdd htsjdkVariantsRdd = htsjdkVariantsRddStorage.read(inputPath);
+    HtsjdkVariantsRdd samplesRdd = htsjdkVariantsRddStorage.samples(samples).read(inputPath);
+
+    // samples are in file order
+    List<String> expectedSamples = new ArrayList<>(samples);
+    expectedSamples.sort(
+        Comparator.comparing(htsjdkVariantsRdd.getHeader().getSampleNameToOffset()::get));
+    Assert.assertEquals(expectedSamples, samplesRdd.getHeader().getGenotypeSamples());
+
+    Set<String> sampleSet = new HashSet<>(samples);
+    List<String> expected =
+        htsjdkVariantsRdd
+            .getVariants()
+            .map(vc -> vc.subContextFromSamples(sampleSet, false).toStringDecodeGenotypes())
+            .collect();
+    Assert.assertEquals(countVariants(inputPath), expected.size());
+    Assert.assertEquals(
+        expected, samplesRdd.getVariants().map(VariantContext::toStringDecodeGenotypes).collect());
+
+    // check we can write and read back the subsetted file
+    String outputPath = createTempPath(".vcf");
+    htsjdkVariantsRddStorage.write(samplesRdd, outputPath);
+    Assert.assertEquals(expected.size(), countVariants(outputPath));
+    Assert.assertEquals(
+        expectedSamples,
+        htsjdkVariantsRddStorage.samples(null).read(outputPath).getHeader().getGenotypeSamples());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testReadMissingSample() throws IOException, URISyntaxException {
+    HtsjdkVariantsRddStorage.makeDefault(jsc)
+        .samples(Collections.singletonList("NA99999"))
+        .read(getPath("test.vcf"));
+  }
+
+  private Object[] parametersForTestWritePartitionByContig() {
+    return new Object[][] {
+      {VariantsFormatWriteOption.VCF},
+      {VariantsFormatWriteOption.VCF_BGZ},
+      {VariantsFormatWriteOption.BCF},
+    };
+  }
+
+  @Test
+  @Parameters
+  public void testWritePartitionByContig(VariantsFormatWriteOption formatWriteOption)
+      throws IOException, URISyntaxException {
+    // move some variants to a second contig, and one to a contig that is not in the header (except
+    // for BCF, which can only encode variants on contigs in the header)
+    boolean bcf = formatWriteOption == VariantsFormatWriteOption.BCF;
+    List<String> lines = Files.readAllLines(Paths.get(URI.create(getPath("test.vcf"))));
+    List<String> newLines = new ArrayList<>();
+    int variantCount = 0;
+    for (String line : lines) {
+      if (line.startsWith("#CHROM")) {
+        newLines.add("##contig=<ID=21,length=48129895>");
+      } else if (!line.startsWith("#") && variantCount++ >= 2) {
+        line = (variantCount == 5 && !bcf ? "X" : "21") + line.substring(line.indexOf('\t'));
+      }
+      newLines.add(line);
+    }
+    String inputPath = createTempPath(".vcf");
+    Files.write(Paths.get(URI.create(inputPath)), newLines);
+
+    HtsjdkVariantsRddStorage htsjdkVariantsRddStorage =
+        HtsjdkVariantsRddStorage.makeDefault(jsc).splitSize(200);
+    HtsjdkVariantsRdd htsjdkVariantsRdd = htsjdkVariantsRddStorage.read(inputPath);
+    Assert.assertTrue(htsjdkVariantsRdd.getVariants().getNumPartitions() > 1);
+
+    String outputPath = createTempPath("");
+    htsjdkVariantsRddStorage.write(
+        htsjdkVariantsRdd, outputPath, formatWriteOption, PartitionByWriteOption.CONTIG);
+
+    String extension = VcfFormat.fromFormatWriteOption(formatWriteOption).getExtension();
+    Map<String, Integer> expectedCounts = new TreeMap<>();
+    expectedCounts.put("20", 2);
+    if (bcf) {
+      expectedCounts.put("21", 3);
+    } else {
+      expectedCounts.put("21", 2);
+      expectedCounts.put("unassigned", 1);
+    }
+    Map<String, Integer> actualCounts = new TreeMap<>();
+    for (File file :
+        new File(URI.create(outputPath)).listFiles(f -> !f.getName().startsWith("."))) {
+      String name = file.getName();
+      Assert.assertTrue(name.endsWith(extension));
+      String path = file.toURI().toString();
+      Assert.assertEquals(
+          "block compressed",
+          VcfFormat.fromFormatWriteOption(formatWriteOption).isCompressed(),
+          VcfTestUtil.isBlockCompressed(path));
+      actualCounts.put(name.substring(0, name.length() - extension.length()), countVariants(path));
+    }
+    Assert.assertEquals(expectedCounts, actualCounts);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWritePartitionByReadGroupFails() throws IOException, URISyntaxException {
+    HtsjdkVariantsRddStorage htsjdkVariantsRddStorage = HtsjdkVariantsRddStorage.makeDefault(jsc);
+    HtsjdkVariantsRdd htsjdkVariantsRdd = htsjdkVariantsRddStorage.read(getPath("test.vcf"));
+    htsjdkVariantsRddStorage.write(
+        htsjdkVariantsRdd,
+        createTempPath(""),
+        VariantsFormatWriteOption.VCF,
+        PartitionByWriteOption.READ_GROUP);
+  }
+
+  private Object[] parametersForTestWriteTabixIndex() {
+    return new Object[][] {
+      {null},
+      {new Interval("chr1", 1, 100)},
+      {new Interval("chr1", 800000, 1100000)},
+      {new Interval("chr1", 2700000, 2800000)},
+      {new Interval("chr1", 5042400, 5042500)},
+    };
+  }
+
+  @Test
+  @Parameters
+  public void testWriteTabixIndex(Interval interval) throws IOException, URISyntaxException {
+    String inputPath = getPath("HiSeq.10000.vcf.bgz");
+
+    // use a small split size so the index is merged from several parts
+    HtsjdkVariantsRddStorage htsjdkVariantsRddStorage =
+        HtsjdkVariantsRddStorage.makeDefault(jsc).splitSize(32 * 1024);
+    HtsjdkVariantsRdd htsjdkVariantsRdd = htsjdkVariantsRddStorage.read(inputPath);
+    Assert.assertTrue(htsjdkVariantsRdd.getVariants().getNumPartitions() > 1);
+
+    String outputPath = createTempPath(VcfFormat.VCF_BGZ.getExtension());
+    htsjdkVariantsRddStorage.write(htsjdkVariantsRdd, outputPath, TabixIndexWriteOption.ENABLE);
+
+    String indexPath = outputPath + VcfFormat.VCF_BGZ.getIndexExtension();
+    Assert.assertTrue(Files.exists(Paths.get(URI.create(indexPath))));
+
+    // htsjdk uses the index to query the written file
+    int expectedCount = countVariants(inputPath, interval);
+    Assert.assertEquals(expectedCount, countVariants(outputPath, interval));
+    Assert.assertEquals(
+        expectedCount,
+        htsjdkVariantsRddStorage
+            .read(outputPath, interval == null ? null : Collections.singletonList(interval))
+            .getVariants()
+            .count());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWriteTabixIndexForUncompressedVcfFails() throws IOException, URISyntaxException {
+    String inputPath = getPath("test.vcf");
+
+    HtsjdkVariantsRddStorage htsjdkVariantsRddStorage = HtsjdkVariantsRddStorage.makeDefault(jsc);
+    HtsjdkVariantsRdd htsjdkVariantsRdd = htsjdkVariantsRddStorage.read(inputPath);
+
+    String outputPath = createTempPath(VcfFormat.VCF.getExtension());
+    htsjdkVariantsRddStorage.write(htsjdkVariantsRdd, outputPath, TabixIndexWriteOption.ENABLE);
+  }
+
   @Test
   public void testOverwrite() throws IOException, URISyntaxException {
     String inputPath = getPath("test.vcf");
@@ -3,7 +3,9 @@ package org.disq_bio.disq;
 import com.google.common.io.Files;
 import htsjdk.samtools.util.BlockCompressedInputStream;
 import htsjdk.samtools.util.Interval;
+import htsjdk.tribble.readers.PositionalBufferedStream;
 import htsjdk.tribble.util.TabixUtils;
+import htsjdk.variant.bcf2.BCF2Codec;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.vcf.VCFFileReader;
 import java.io.*;
@@ -37,6 +39,9 @@ public class VcfTestUtil {
   }
 
   public static int countVariants(final String vcfPath, Interval interval) throws IOException {
+    if (vcfPath.endsWith(".bcf")) {
+      return countBcfVariants(vcfPath, interval);
+    }
     File vcfFile = new File(URI.create(vcfPath));
     final VCFFileReader vcfFileReader = parseVcf(vcfFile);
     final Iterator<VariantContext> it;
@@ -54,6 +59,23 @@ public class VcfTestUtil {
     return recCount;
   }
 
+  // htsjdk can't read block compressed BCF files with VCFFileReader, so decode the stream directly
+  private static int countBcfVariants(final String bcfPath, Interval interval) throws IOException {
+    try (InputStream in = new BlockCompressedInputStream(new File(URI.create(bcfPath)))) {
+      PositionalBufferedStream pbs = new PositionalBufferedStream(in);
+      BCF2Codec codec = new BCF2Codec();
+      codec.readHeader(pbs);
+      int recCount = 0;
+      while (!pbs.isDone()) {
+        VariantContext vc = codec.decode(pbs);
+        if (interval == null || interval.overlaps(vc)) {
+          recCount++;
+        }
+      }
+      return recCount;
+    }
+  }
+
   public static boolean isBlockCompressed(String path) throws IOException {
     try (InputStream in =
         new BufferedInputStream(new FileInputStream(new File(URI.create(path))))) {
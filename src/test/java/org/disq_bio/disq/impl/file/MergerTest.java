@@ -6,6 +6,9 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
 import org.apache.commons.io.IOUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileUtil;
@@ -87,6 +90,23 @@ public class MergerTest {
     Assert.assertEquals("contents1contents2", Files.toString(file3, Charset.forName("UTF8")));
   }
 
+  @Test
+  public void testPartLengths() throws IOException {
+    Configuration conf = new Configuration();
+    File dir = File.createTempFile("dir", "");
+    dir.delete();
+    dir.mkdir();
+    Files.write("contents1", new File(dir, "part-r-00000"), Charset.forName("UTF8"));
+    Files.write("contents22", new File(dir, "part-r-00001"), Charset.forName("UTF8"));
+    Files.write("hidden", new File(dir, ".part-r-00000.tbi"), Charset.forName("UTF8"));
+
+    Map<String, Long> partLengths = new Merger().getPartLengths(conf, dir.toURI().toString());
+
+    Assert.assertEquals(Arrays.asList(9L, 10L), new ArrayList<>(partLengths.values()));
+    Assert.assertTrue(
+        partLengths.keySet().stream().noneMatch(part -> new Path(part).getName().startsWith(".")));
+  }
+
   @Test
   public void testHdfsFiles() throws IOException {
     File dir = File.createTempFile("dir", "");
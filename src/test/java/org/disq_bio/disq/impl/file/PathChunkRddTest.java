@@ -0,0 +1,74 @@
+package org.disq_bio.disq.impl.file;
+
+import htsjdk.samtools.Chunk;
+import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
+import java.io.IOException;
+import java.util.Arrays;
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.spark.api.java.JavaRDD;
+import org.disq_bio.disq.BaseTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PathChunkRddTest extends BaseTest {
+
+  @Test
+  public void testPreferredHosts() throws IOException {
+    BlockLocation[] blockLocations = {
+      new BlockLocation(null, new String[] {"host1", "host2"}, 0, 100),
+      new BlockLocation(null, new String[] {"host2", "host3"}, 100, 100),
+      new BlockLocation(null, new String[] {"host4"}, 200, 100)
+    };
+    Assert.assertArrayEquals(
+        new String[] {"host2", "host3", "host1"},
+        PathChunkRdd.getPreferredHosts(blockLocations, 90, 200));
+    Assert.assertArrayEquals(
+        new String[] {"host4"}, PathChunkRdd.getPreferredHosts(blockLocations, 250, 260));
+    Assert.assertArrayEquals(
+        new String[0], PathChunkRdd.getPreferredHosts(new BlockLocation[0], 0, 100));
+  }
+
+  @Test
+  public void testOnePartitionPerChunk() throws Exception {
+    String path = getPath("1.bam");
+    PathChunk first =
+        new PathChunk(
+            path,
+            new Chunk(
+                BlockCompressedFilePointerUtil.makeFilePointer(0),
+                BlockCompressedFilePointerUtil.makeFilePointer(100)));
+    PathChunk second =
+        new PathChunk(
+            path,
+            new Chunk(
+                BlockCompressedFilePointerUtil.makeFilePointer(100),
+                BlockCompressedFilePointerUtil.makeFilePointer(200)));
+    JavaRDD<PathChunk> rdd =
+        PathChunkRdd.create(jsc, new HadoopFileSystemWrapper(), Arrays.asList(first, second));
+    Assert.assertEquals(2, rdd.getNumPartitions());
+    Assert.assertEquals(Arrays.asList(first, second), rdd.collect());
+    Assert.assertFalse(rdd.rdd().preferredLocations(rdd.partitions().get(0)).isEmpty());
+  }
+
+  @Test
+  public void testChunksInSeveralFiles() throws Exception {
+    PathChunk first =
+        new PathChunk(
+            getPath("1.bam"),
+            new Chunk(
+                BlockCompressedFilePointerUtil.makeFilePointer(0),
+                BlockCompressedFilePointerUtil.makeFilePointer(100)));
+    PathChunk second =
+        new PathChunk(
+            getPath("1-with-splitting-index.bam"),
+            new Chunk(
+                BlockCompressedFilePointerUtil.makeFilePointer(0),
+                BlockCompressedFilePointerUtil.makeFilePointer(100)));
+    JavaRDD<PathChunk> rdd =
+        PathChunkRdd.create(jsc, new HadoopFileSystemWrapper(), Arrays.asList(first, second));
+    Assert.assertEquals(2, rdd.getNumPartitions());
+    Assert.assertEquals(Arrays.asList(first, second), rdd.collect());
+    Assert.assertFalse(rdd.rdd().preferredLocations(rdd.partitions().get(0)).isEmpty());
+    Assert.assertFalse(rdd.rdd().preferredLocations(rdd.partitions().get(1)).isEmpty());
+  }
+}
@@ -0,0 +1,100 @@
+package org.disq_bio.disq.impl.file;
+
+import htsjdk.samtools.seekablestream.SeekableStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import org.apache.spark.TaskContext;
+import org.apache.spark.util.TaskCompletionListener;
+import org.disq_bio.disq.BaseTest;
+import org.disq_bio.disq.impl.formats.SerializableHadoopConfiguration;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PooledFileSystemWrapperTest extends BaseTest {
+
+  @Test
+  public void testInterleavedViewsInTask() throws Exception {
+    String path = getPath("1.bam");
+    byte[] expected = Files.readAllBytes(new File(new URI(path)).toPath());
+
+    FileSystemWrapper fileSystemWrapper =
+        new PooledFileSystemWrapper(new HadoopFileSystemWrapper());
+    SerializableHadoopConfiguration confSer =
+        new SerializableHadoopConfiguration(jsc.hadoopConfiguration());
+    List<byte[]> result =
+        jsc.parallelize(Collections.singletonList(path))
+            .map(
+                p -> {
+                  byte[] bytes = new byte[5];
+                  try (SeekableStream first = fileSystemWrapper.open(confSer.getConf(), p);
+                      SeekableStream second = fileSystemWrapper.open(confSer.getConf(), p)) {
+                    first.seek(100);
+                    second.seek(5000);
+                    bytes[0] = (byte) first.read(); // 100
+                    bytes[1] = (byte) second.read(); // 5000
+                    bytes[2] = (byte) first.read(); // 101
+                    second.seek(10);
+                    bytes[3] = (byte) second.read(); // 10
+                    bytes[4] = (byte) first.read(); // 102
+                    Assert.assertEquals(103, first.position());
+                    Assert.assertEquals(11, second.position());
+                  }
+                  return bytes;
+                })
+            .collect();
+
+    byte[] bytes = result.get(0);
+    Assert.assertEquals(expected[100], bytes[0]);
+    Assert.assertEquals(expected[5000], bytes[1]);
+    Assert.assertEquals(expected[101], bytes[2]);
+    Assert.assertEquals(expected[10], bytes[3]);
+    Assert.assertEquals(expected[102], bytes[4]);
+  }
+
+  @Test
+  public void testOpenAfterTaskCompleted() throws Exception {
+    String path = getPath("1.bam");
+
+    FileSystemWrapper fileSystemWrapper =
+        new PooledFileSystemWrapper(new HadoopFileSystemWrapper());
+    SerializableHadoopConfiguration confSer =
+        new SerializableHadoopConfiguration(jsc.hadoopConfiguration());
+    List<Integer> result =
+        jsc.parallelize(Collections.singletonList(path))
+            .map(
+                p -> {
+                  // open from a completion listener, when the task has already completed, so the
+                  // listener that closes the stream is run as soon as it is registered
+                  TaskContext.get()
+                      .addTaskCompletionListener(
+                          (TaskCompletionListener)
+                              context -> {
+                                try (SeekableStream in =
+                                    fileSystemWrapper.open(confSer.getConf(), p)) {
+                                  in.read();
+                                } catch (IOException e) {
+                                  throw new UncheckedIOException(e);
+                                }
+                              });
+                  return p.length();
+                })
+            .collect();
+
+    Assert.assertEquals(Collections.singletonList(path.length()), result);
+  }
+
+  @Test
+  public void testOpenOnDriverIsNotPooled() throws Exception {
+    String path = getPath("1.bam");
+    FileSystemWrapper fileSystemWrapper =
+        new PooledFileSystemWrapper(new HadoopFileSystemWrapper());
+    try (SeekableStream in = fileSystemWrapper.open(jsc.hadoopConfiguration(), path)) {
+      Assert.assertFalse(in instanceof PooledFileSystemWrapper.SharedStreamView);
+    }
+  }
+}
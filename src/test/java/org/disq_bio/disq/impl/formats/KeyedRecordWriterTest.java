@@ -0,0 +1,61 @@
+package org.disq_bio.disq.impl.formats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class KeyedRecordWriterTest {
+
+  @Test
+  public void testReopenedKeyWritesToLaterPart() throws Exception {
+    List<String> events = new ArrayList<>();
+    KeyedRecordWriter<Integer> writer =
+        new KeyedRecordWriter<>(
+            null,
+            new Path("/tmp/out/part-r-00003"),
+            file ->
+                new RecordWriter<Void, Integer>() {
+                  @Override
+                  public void write(Void key, Integer value) {
+                    events.add(file + " " + value);
+                  }
+
+                  @Override
+                  public void close(TaskAttemptContext context) {
+                    events.add(file + " closed");
+                  }
+                });
+
+    writer.write("0", -1);
+    for (int i = 1; i <= KeyedRecordWriter.MAX_OPEN_WRITERS; i++) {
+      writer.write(Integer.toString(i), i); // evicts key 0 once there are too many writers
+    }
+    writer.write("0", -2);
+    writer.close(null);
+
+    Assert.assertEquals(
+        Arrays.asList(
+            "/tmp/out/0/part-r-00003 -1",
+            "/tmp/out/0/part-r-00003 closed",
+            "/tmp/out/0/part-r-00003-00001 -2",
+            "/tmp/out/0/part-r-00003-00001 closed"),
+        events.stream().filter(e -> e.startsWith("/tmp/out/0/")).collect(Collectors.toList()));
+    Assert.assertEquals(
+        KeyedRecordWriter.MAX_OPEN_WRITERS + 2,
+        events.stream().filter(e -> e.endsWith("closed")).count());
+  }
+
+  @Test
+  public void testFileNames() {
+    Assert.assertArrayEquals(
+        new String[] {"chr1", "HLA-A_01_01", "HLA-A_01_01-2", "unassigned-3", "-4"},
+        KeyedPartsMerger.fileNames(
+            Arrays.asList("chr1", "HLA-A*01:01", "HLA-A*01_01", "unassigned", "")));
+  }
+}
@@ -0,0 +1,63 @@
+package org.disq_bio.disq.impl.formats.cram;
+
+import htsjdk.samtools.CRAMCRAIIndexer;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.cram.CRAIEntry;
+import htsjdk.samtools.seekablestream.SeekableFileStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import org.disq_bio.disq.AnySamTestUtil;
+import org.disq_bio.disq.ReadsFormatWriteOption;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CramContainerGuesserTest {
+
+  @Test
+  public void testGuessMatchesIndex() throws IOException {
+    String refPath = ClassLoader.getSystemClassLoader().getResource("test.fa").toString();
+    File cramFile =
+        new File(
+            URI.create(
+                AnySamTestUtil.writeAnySamFile(
+                    40, SAMFileHeader.SortOrder.coordinate, ReadsFormatWriteOption.CRAM, refPath)));
+    long fileLength = cramFile.length();
+
+    // the index has an entry for each slice in a container with records
+    NavigableSet<Long> expectedOffsets = new TreeSet<>();
+    try (InputStream in = new FileInputStream(cramFile.getPath() + ".crai")) {
+      for (CRAIEntry entry : CRAMCRAIIndexer.readIndex(in).getCRAIEntries()) {
+        expectedOffsets.add(entry.containerStartOffset);
+      }
+    }
+    expectedOffsets.add(fileLength);
+
+    try (CramContainerGuesser guesser =
+        new CramContainerGuesser(new SeekableFileStream(cramFile), fileLength)) {
+      Assert.assertEquals(3, guesser.getMajorVersion());
+      long firstDataContainerOffset = guesser.getFirstDataContainerOffset();
+      Assert.assertEquals(expectedOffsets.first().longValue(), firstDataContainerOffset);
+      for (long pos = firstDataContainerOffset; pos < fileLength; pos++) {
+        Assert.assertEquals(
+            "Position " + pos,
+            expectedOffsets.ceiling(pos).longValue(),
+            guesser.guessNextContainerStart(pos));
+      }
+    }
+  }
+
+  @Test
+  public void testCram2IsNotGuessed() throws Exception {
+    File cramFile =
+        new File(ClassLoader.getSystemClassLoader().getResource("valid_no_index.cram").toURI());
+    try (CramContainerGuesser guesser =
+        new CramContainerGuesser(new SeekableFileStream(cramFile), cramFile.length())) {
+      Assert.assertEquals(2, guesser.getMajorVersion());
+    }
+  }
+}
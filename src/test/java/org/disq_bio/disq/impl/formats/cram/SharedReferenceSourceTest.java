@@ -0,0 +1,132 @@
+package org.disq_bio.disq.impl.formats.cram;
+
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.cram.ref.CRAMReferenceSource;
+import htsjdk.samtools.cram.ref.ReferenceSource;
+import htsjdk.samtools.reference.FastaSequenceIndex;
+import htsjdk.samtools.reference.FastaSequenceIndexEntry;
+import java.io.File;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.spark.api.java.function.Function;
+import org.disq_bio.disq.BaseTest;
+import org.disq_bio.disq.impl.file.NioFileSystemWrapper;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(JUnitParamsRunner.class)
+public class SharedReferenceSourceTest extends BaseTest {
+
+  @Test
+  @Parameters({"test.fa", "valid.fasta"})
+  public void testBasesMatchHtsjdk(String referenceFile) throws Exception {
+    String refPath = ClassLoader.getSystemClassLoader().getResource(referenceFile).toString();
+
+    List<Boolean> results =
+        jsc.parallelize(Collections.singletonList(refPath), 1)
+            .map(
+                path -> {
+                  CRAMReferenceSource shared =
+                      SharedReferenceSource.acquire(null, new NioFileSystemWrapper(), path);
+                  // a second use in the same executor gets the same source
+                  if (shared
+                      != SharedReferenceSource.acquire(null, new NioFileSystemWrapper(), path)) {
+                    return false;
+                  }
+                  File fasta = new File(URI.create(path));
+                  ReferenceSource expected = new ReferenceSource(fasta);
+                  for (FastaSequenceIndexEntry entry :
+                      new FastaSequenceIndex(new File(fasta.getPath() + ".fai"))) {
+                    SAMSequenceRecord record =
+                        new SAMSequenceRecord(entry.getContig(), (int) entry.getSize());
+                    if (!Arrays.equals(
+                        expected.getReferenceBases(record, false),
+                        shared.getReferenceBases(record, false))) {
+                      return false;
+                    }
+                  }
+                  return true;
+                })
+            .collect();
+    Assert.assertEquals(Collections.singletonList(true), results);
+  }
+
+  @Test
+  public void testLeastRecentlyUsedContigsAreDropped() throws Exception {
+    // use a copy of the reference, since a source that is already open keeps its budget
+    Path directory = Files.createTempDirectory("shared-reference");
+    for (String name : Arrays.asList("valid.fasta", "valid.fasta.fai")) {
+      Files.copy(
+          Paths.get(ClassLoader.getSystemClassLoader().getResource(name).toURI()),
+          directory.resolve(name));
+    }
+    String refPath = directory.resolve("valid.fasta").toUri().toString();
+
+    List<List<Long>> results =
+        jsc.parallelize(Collections.singletonList(refPath), 1)
+            .map(
+                path -> {
+                  Configuration conf = new Configuration();
+                  conf.setLong(SharedReferenceSource.MAX_CACHED_BYTES, 250);
+                  SharedReferenceSource source =
+                      (SharedReferenceSource)
+                          SharedReferenceSource.acquire(conf, new NioFileSystemWrapper(), path);
+                  List<Long> cachedBytes = new ArrayList<>();
+                  // chr1, chr2 and chr3 have 101 bases, chr7 has 404
+                  for (String contig : Arrays.asList("chr1", "chr2", "chr3", "chr7", "chr1")) {
+                    source.getReferenceBases(new SAMSequenceRecord(contig, 0), false);
+                    cachedBytes.add(source.getCachedBytes());
+                  }
+                  return cachedBytes;
+                })
+            .collect();
+    Assert.assertEquals(Arrays.asList(101L, 202L, 202L, 404L, 101L), results.get(0));
+  }
+
+  @Test
+  public void testKeptAfterTaskCompletes() throws Exception {
+    String refPath = ClassLoader.getSystemClassLoader().getResource("test.fa").toString();
+
+    Function<String, Integer> identity =
+        path ->
+            System.identityHashCode(
+                SharedReferenceSource.acquire(null, new NioFileSystemWrapper(), path));
+    List<Integer> first =
+        jsc.parallelize(Collections.singletonList(refPath), 1).map(identity).collect();
+    List<Integer> second =
+        jsc.parallelize(Collections.singletonList(refPath), 1).map(identity).collect();
+    Assert.assertEquals(first, second);
+  }
+
+  @Test
+  public void testStaleCopiesAreDeleted() throws Exception {
+    Path directory = Files.createTempDirectory("shared-reference");
+    Path stale = Files.createFile(directory.resolve("stale.fa"));
+    Path fresh = Files.createFile(directory.resolve("fresh.fa"));
+    Files.setLastModifiedTime(
+        stale,
+        FileTime.fromMillis(
+            System.currentTimeMillis() - SharedReferenceSource.STALE_COPY_AGE_MILLIS - 1000));
+
+    SharedReferenceSource.deleteStaleCopies(directory);
+    Assert.assertFalse(Files.exists(stale));
+    Assert.assertTrue(Files.exists(fresh));
+  }
+
+  @Test
+  public void testNotSharedOutsideTask() throws Exception {
+    String refPath = ClassLoader.getSystemClassLoader().getResource("test.fa").toString();
+    Assert.assertNull(SharedReferenceSource.acquire(null, new NioFileSystemWrapper(), refPath));
+  }
+}
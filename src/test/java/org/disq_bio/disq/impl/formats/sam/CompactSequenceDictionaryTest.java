@@ -0,0 +1,87 @@
+package org.disq_bio.disq.impl.formats.sam;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompactSequenceDictionaryTest {
+
+  @Test
+  public void testLookups() {
+    SAMSequenceDictionary dictionary = new SAMSequenceDictionary();
+    for (int i = 0; i < 1000; i++) {
+      dictionary.addSequence(new SAMSequenceRecord("contig_" + i, i + 1));
+    }
+    CompactSequenceDictionary compact =
+        CompactSequenceDictionary.fromSequenceDictionary(dictionary);
+
+    Assert.assertEquals(1000, compact.size());
+    for (int i = 0; i < 1000; i++) {
+      String name = "contig_" + i;
+      Assert.assertEquals(name, compact.getSequenceName(i));
+      Assert.assertEquals(i + 1, compact.getSequenceLength(i));
+      Assert.assertEquals(i, compact.getSequenceIndex(name));
+      byte[] padded = ("\t" + name + "\t").getBytes(StandardCharsets.US_ASCII);
+      Assert.assertEquals(i, compact.getSequenceIndex(padded, 1, name.length()));
+    }
+    Assert.assertEquals(-1, compact.getSequenceIndex("contig_1000"));
+    Assert.assertEquals(-1, compact.getSequenceIndex("contig_"));
+  }
+
+  @Test
+  public void testFromBamHeader() throws IOException, URISyntaxException {
+    File bam = new File(ClassLoader.getSystemClassLoader().getResource("1.bam").toURI());
+    SAMSequenceDictionary expected;
+    try (SamReader samReader = SamReaderFactory.makeDefault().open(bam)) {
+      expected = samReader.getFileHeader().getSequenceDictionary();
+    }
+    CompactSequenceDictionary compact;
+    try (BlockCompressedInputStream in = new BlockCompressedInputStream(bam)) {
+      compact = CompactSequenceDictionary.fromBamHeader(in);
+    }
+    Assert.assertEquals(expected.size(), compact.size());
+    for (SAMSequenceRecord sequence : expected.getSequences()) {
+      int index = compact.getSequenceIndex(sequence.getSequenceName());
+      Assert.assertEquals(sequence.getSequenceIndex(), index);
+      Assert.assertEquals(sequence.getSequenceLength(), compact.getSequenceLength(index));
+    }
+  }
+
+  @Test
+  public void testLazyHeaderRoundTrip() throws IOException, ClassNotFoundException {
+    SAMFileHeader header = new SAMFileHeader();
+    header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+    SAMSequenceRecord chr1 = new SAMSequenceRecord("chr1", 1000);
+    chr1.setAttribute(SAMSequenceRecord.MD5_TAG, "0123456789abcdef0123456789abcdef");
+    header.addSequence(chr1);
+    header.addSequence(new SAMSequenceRecord("chr2", 2000));
+    header.addComment("a comment");
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(LazySamFileHeader.of(header));
+    }
+    LazySamFileHeader lazyHeader;
+    try (ObjectInputStream in =
+        new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      lazyHeader = (LazySamFileHeader) in.readObject();
+    }
+
+    Assert.assertEquals(1, lazyHeader.getSequenceDictionary().getSequenceIndex("chr2"));
+    Assert.assertEquals(header, lazyHeader.getHeader());
+    Assert.assertSame(lazyHeader.getHeader(), lazyHeader.getHeader());
+  }
+}
@@ -0,0 +1,72 @@
+package org.disq_bio.disq.impl.formats.sam;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CoordinateSorterTest {
+
+  @Test
+  public void testSortedOrderIsStable() {
+    long[] keys = {5, 3, Long.MAX_VALUE, 3, 0, 5, 3};
+    Assert.assertArrayEquals(new int[] {4, 1, 3, 6, 0, 5, 2}, CoordinateSorter.sortedOrder(keys));
+    Assert.assertArrayEquals(new int[0], CoordinateSorter.sortedOrder(new long[0]));
+  }
+
+  @Test
+  public void testRangePartitioner() {
+    CoordinateSorter.RangePartitioner partitioner =
+        new CoordinateSorter.RangePartitioner(new long[] {10, 20});
+    Assert.assertEquals(3, partitioner.numPartitions());
+    Assert.assertEquals(0, partitioner.getPartition(0L));
+    Assert.assertEquals(0, partitioner.getPartition(10L));
+    Assert.assertEquals(1, partitioner.getPartition(11L));
+    Assert.assertEquals(1, partitioner.getPartition(20L));
+    Assert.assertEquals(2, partitioner.getPartition(Long.MAX_VALUE));
+  }
+
+  @Test
+  public void testKeyDoesNotChangeRead() {
+    SAMFileHeader inputHeader =
+        new SAMFileHeader(
+            new SAMSequenceDictionary(
+                Arrays.asList(new SAMSequenceRecord("a", 100), new SAMSequenceRecord("b", 100))));
+    SAMFileHeader outputHeader =
+        new SAMFileHeader(
+            new SAMSequenceDictionary(
+                Arrays.asList(new SAMSequenceRecord("b", 100), new SAMSequenceRecord("a", 100))));
+    SAMRecord read = new SAMRecord(inputHeader);
+    read.setReferenceName("b");
+    read.setAlignmentStart(7);
+
+    Assert.assertEquals(7L, CoordinateSorter.key(read, outputHeader));
+    Assert.assertSame(inputHeader, read.getHeader());
+    Assert.assertEquals(1, read.getReferenceIndex().intValue());
+
+    read.setReferenceName(SAMRecord.NO_ALIGNMENT_REFERENCE_NAME);
+    read.setReadName("read1");
+    long unplacedKey = CoordinateSorter.key(read, outputHeader);
+    Assert.assertTrue(unplacedKey > ((long) Integer.MAX_VALUE << 32));
+    Assert.assertEquals(unplacedKey, CoordinateSorter.key(read.deepCopy(), outputHeader));
+  }
+
+  @Test
+  public void testUnplacedKeysAreSpread() {
+    SAMFileHeader header =
+        new SAMFileHeader(
+            new SAMSequenceDictionary(Arrays.asList(new SAMSequenceRecord("a", 100))));
+    Set<Long> keys = new HashSet<>();
+    for (int i = 0; i < 100; i++) {
+      SAMRecord read = new SAMRecord(header);
+      read.setReadName("read" + i);
+      keys.add(CoordinateSorter.key(read, header));
+    }
+    Assert.assertEquals(100, keys.size());
+  }
+}
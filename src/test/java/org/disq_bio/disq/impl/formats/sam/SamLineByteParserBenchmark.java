@@ -0,0 +1,95 @@
+package org.disq_bio.disq.impl.formats.sam;
+
+import htsjdk.samtools.DefaultSAMRecordFactory;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMLineParser;
+import htsjdk.samtools.SAMReadGroupRecord;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.ValidationStringency;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.apache.hadoop.io.Text;
+
+/**
+ * Compares the time taken to parse SAM text lines with {@link SamLineByteParser} and with {@link
+ * SAMLineParser} (converting each {@link Text} line to a string first, as {@link SamSource} used
+ * to). This is not run as part of the tests.
+ *
+ * <p>Usage: {@code SamLineByteParserBenchmark [lines] [iterations] [validation stringency]}
+ */
+public class SamLineByteParserBenchmark {
+
+  public static void main(String[] args) {
+    int lineCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+    ValidationStringency stringency =
+        args.length > 2 ? ValidationStringency.valueOf(args[2]) : ValidationStringency.STRICT;
+
+    SAMSequenceDictionary dictionary = new SAMSequenceDictionary();
+    for (int i = 1; i <= 25; i++) {
+      dictionary.addSequence(new SAMSequenceRecord("chr" + i, 250_000_000));
+    }
+    SAMFileHeader header = new SAMFileHeader(dictionary);
+    header.addReadGroup(new SAMReadGroupRecord("group1"));
+    List<Text> lines = createLines(lineCount, dictionary.size());
+
+    for (int i = 0; i < iterations; i++) {
+      SAMLineParser samLineParser =
+          new SAMLineParser(new DefaultSAMRecordFactory(), stringency, header, null, null);
+      long start = System.nanoTime();
+      for (Text line : lines) {
+        samLineParser.parseLine(line.toString());
+      }
+      long samLineParserNanos = System.nanoTime() - start;
+
+      SamLineByteParser samLineByteParser =
+          new SamLineByteParser(LazySamFileHeader.of(header), stringency);
+      start = System.nanoTime();
+      for (Text line : lines) {
+        samLineByteParser.parseLine(line);
+      }
+      long samLineByteParserNanos = System.nanoTime() - start;
+
+      System.out.printf(
+          "Iteration %d: SAMLineParser %d ms, SamLineByteParser %d ms (%.2fx)%n",
+          i,
+          samLineParserNanos / 1_000_000,
+          samLineByteParserNanos / 1_000_000,
+          (double) samLineParserNanos / samLineByteParserNanos);
+    }
+  }
+
+  /** @return properly paired 150 base reads, with typical tags */
+  private static List<Text> createLines(int lineCount, int sequenceCount) {
+    Random random = new Random(0);
+    char[] bases = "ACGT".toCharArray();
+    List<Text> lines = new ArrayList<>(lineCount);
+    StringBuilder line = new StringBuilder();
+    for (int i = 0; i < lineCount; i++) {
+      int readLength = 150;
+      int start = 1 + random.nextInt(100_000_000);
+      int mateStart = start + 200 + random.nextInt(200);
+      line.setLength(0);
+      line.append("read-").append(i / 2).append('\t');
+      line.append(i % 2 == 0 ? 99 : 147).append('\t');
+      line.append("chr").append(1 + random.nextInt(sequenceCount)).append('\t');
+      line.append(start).append('\t').append(60).append('\t');
+      line.append(readLength).append("M\t=\t").append(mateStart).append('\t');
+      line.append(mateStart + readLength - start).append('\t');
+      for (int j = 0; j < readLength; j++) {
+        line.append(bases[random.nextInt(bases.length)]);
+      }
+      line.append('\t');
+      for (int j = 0; j < readLength; j++) {
+        line.append((char) ('#' + random.nextInt(40)));
+      }
+      line.append("\tRG:Z:group1\tNM:i:").append(random.nextInt(5));
+      line.append("\tAS:i:").append(readLength - random.nextInt(20));
+      line.append("\tMD:Z:").append(readLength);
+      lines.add(new Text(line.toString()));
+    }
+    return lines;
+  }
+}
@@ -0,0 +1,108 @@
+package org.disq_bio.disq.impl.formats.sam;
+
+import htsjdk.samtools.DefaultSAMRecordFactory;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFormatException;
+import htsjdk.samtools.SAMLineParser;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.ValidationStringency;
+import java.nio.charset.StandardCharsets;
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+import org.apache.hadoop.io.Text;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(JUnitParamsRunner.class)
+public class SamLineByteParserTest {
+
+  private static final String[] LINES = {
+    // paired reads
+    "read1\t99\tchr1\t100\t60\t10M\t=\t200\t110\tACGTACGTAC\tABCDEFGHIJ\tRG:Z:rg1\tNM:i:0",
+    "read1\t147\tchr1\t200\t60\t5M1I4M\t=\t100\t-110\tacgtn.ACGT\t!!!!!~~~~~\tAS:i:-5",
+    "read2\t97\tchr1\t100\t0\t10M\tchr2\t50\t0\tNNNNNNNNNN\t*",
+    // unmapped reads, placed and unplaced
+    "read3\t69\tchr2\t300\t0\t*\t=\t300\t0\tACGTACGTAC\t##########",
+    "read4\t4\t*\t0\t0\t*\t*\t0\t0\t*\t*",
+    // tags of every type
+    "read5\t0\tchr2\t1\t255\t3M\t*\t0\t0\tRYK\t*\tXA:A:c\tXF:f:1.5\tXH:H:1AE3\tXB:B:c,-1,2"
+        + "\tXC:B:S,1,65535\tXU:i:4294967295\tXZ:Z:a b:c\tXP:i:+7",
+    // a flag in hex, which is left to SAMLineParser
+    "read6\t0x10\tchr1\t1\t60\t2M\t*\t0\t0\tAC\tII",
+    // lines with problems
+    "read7\t0\tchr3\t1\t60\t2M\t*\t0\t0\tAC\tII",
+    "read8\t0\t*\t1\t60\t2M\t*\t0\t0\tAC\tII",
+    "read9\t0\tchr1\t1\t60\t2M\t*\t0\t0\tAC\tI",
+    "read10\t0\tchr1\t1\t60\t2M\t*\t0\t0\tAJ\tII",
+    "read11\t0\tchr1\t1\t60\t2M\t*\t0\t0\tAC\tII\tXX:i:abc",
+    "read12\t0\tchr1\t1\t60\t2M\t*\t0\t0\tAC",
+    "read13\t0\tchr1\t1\t60\t2M\t*\t0\t0\t\tII",
+    "read14\t1\tchr1\t1\t60\t2M\t*\t0\t0\tAC\tII",
+    "read15\t0\tchr1\t1\t60\t3M\t*\t0\t0\tAC\tII",
+    "read16\t0\tchr1\tx\t60\t2M\t*\t0\t0\tAC\tII",
+  };
+
+  private Object[] parametersForTestSameAsSamLineParser() {
+    Object[][] parameters = new Object[LINES.length * 3][];
+    int i = 0;
+    for (String line : LINES) {
+      for (ValidationStringency stringency :
+          new ValidationStringency[] {
+            ValidationStringency.STRICT, ValidationStringency.LENIENT, ValidationStringency.SILENT
+          }) {
+        parameters[i++] = new Object[] {line, stringency};
+      }
+    }
+    return parameters;
+  }
+
+  @Test
+  @Parameters
+  public void testSameAsSamLineParser(String line, ValidationStringency stringency) {
+    SAMFileHeader header = createHeader();
+    SAMLineParser samLineParser =
+        new SAMLineParser(new DefaultSAMRecordFactory(), stringency, header, null, null);
+    SamLineByteParser samLineByteParser =
+        new SamLineByteParser(LazySamFileHeader.of(header), stringency);
+
+    SAMRecord expected;
+    try {
+      expected = samLineParser.parseLine(line);
+    } catch (SAMFormatException e) {
+      try {
+        samLineByteParser.parseLine(new Text(line));
+        Assert.fail("Expected exception: " + e.getMessage());
+      } catch (SAMFormatException e2) {
+        Assert.assertEquals(e.getMessage(), e2.getMessage());
+      }
+      return;
+    }
+
+    // parse from the middle of a buffer
+    byte[] bytes = ("@HD\t" + line + "\n").getBytes(StandardCharsets.UTF_8);
+    SAMRecord actual = samLineByteParser.parseLine(bytes, 4, bytes.length - 5);
+    assertSameRecord(expected, actual);
+    assertSameRecord(expected, samLineByteParser.parseLine(new Text(line)));
+  }
+
+  private static void assertSameRecord(SAMRecord expected, SAMRecord actual) {
+    Assert.assertEquals(expected.getSAMString(), actual.getSAMString());
+    Assert.assertEquals(expected.getReferenceIndex(), actual.getReferenceIndex());
+    Assert.assertEquals(expected.getMateReferenceIndex(), actual.getMateReferenceIndex());
+    Assert.assertEquals(expected.getCigar(), actual.getCigar());
+    // equals() compares lazily computed fields, so only compare after they have been computed
+    Assert.assertEquals(expected, actual);
+  }
+
+  private static SAMFileHeader createHeader() {
+    SAMSequenceDictionary dictionary = new SAMSequenceDictionary();
+    dictionary.addSequence(new SAMSequenceRecord("chr1", 1000));
+    dictionary.addSequence(new SAMSequenceRecord("chr2", 1000));
+    SAMFileHeader header = new SAMFileHeader(dictionary);
+    header.setSortOrder(SAMFileHeader.SortOrder.unsorted);
+    return header;
+  }
+}
@@ -0,0 +1,46 @@
+package org.disq_bio.disq.impl.formats.sam;
+
+import htsjdk.samtools.util.Interval;
+import java.util.Arrays;
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+import org.apache.hadoop.io.Text;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(JUnitParamsRunner.class)
+public class SamLineIntervalFilterTest {
+
+  private static final SamLineIntervalFilter FILTER =
+      new SamLineIntervalFilter(
+          Arrays.asList(new Interval("chr1", 1000, 2000), new Interval("chr2", 500, 600)));
+
+  private static String line(String flag, String rname, String pos, String cigar) {
+    return "r1\t" + flag + "\t" + rname + "\t" + pos + "\t30\t" + cigar + "\t*\t0\t0\tACGT\t*";
+  }
+
+  private Object[] parametersForTestMayOverlap() {
+    return new Object[][] {
+      {line("0", "chr1", "1000", "4M"), true},
+      {line("0", "chr1", "997", "4M"), true},
+      {line("0", "chr1", "996", "4M"), false},
+      {line("0", "chr1", "990", "2S4M10D"), true}, // deletion reaches the interval
+      {line("0", "chr1", "990", "5S4M"), false},
+      {line("0", "chr1", "2001", "4M"), false},
+      {line("0", "chr2", "550", "4M"), true},
+      {line("0", "chr3", "550", "4M"), false},
+      {line("4", "chr3", "550", "*"), true}, // unmapped
+      {line("4", "*", "0", "*"), true}, // unplaced unmapped
+      {line("0x10", "chr3", "550", "4M"), true}, // flag not parsed
+      {line("0", "chr3", "550", "4Q"), true}, // malformed CIGAR
+      {"r1\t0\tchr3\t550", true}, // too few fields
+    };
+  }
+
+  @Test
+  @Parameters
+  public void testMayOverlap(String line, boolean expected) {
+    Assert.assertEquals(expected, FILTER.mayOverlap(new Text(line)));
+  }
+}
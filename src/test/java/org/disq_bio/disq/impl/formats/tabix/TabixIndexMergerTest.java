@@ -0,0 +1,122 @@
+package org.disq_bio.disq.impl.formats.tabix;
+
+import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.tribble.index.Block;
+import htsjdk.tribble.index.tabix.TabixFormat;
+import htsjdk.tribble.index.tabix.TabixIndex;
+import htsjdk.tribble.index.tabix.TabixIndexCreator;
+import htsjdk.tribble.util.LittleEndianOutputStream;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.disq_bio.disq.impl.file.HadoopFileSystemWrapper;
+import org.disq_bio.disq.impl.file.Merger;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TabixIndexMergerTest {
+
+  private File dir;
+
+  @Before
+  public void setup() throws IOException {
+    dir = Files.createTempDirectory("parts").toFile();
+    Files.write(new File(dir, "header").toPath(), new byte[10]);
+    Files.write(new File(dir, "part-r-00000").toPath(), new byte[100]);
+    Files.write(new File(dir, "part-r-00001").toPath(), new byte[50]);
+    Files.write(new File(dir, "terminator").toPath(), new byte[28]);
+  }
+
+  @Test
+  public void testMerge() throws IOException {
+    writePartIndex("part-r-00000", 100, "chr1", 100, 0, "chr1", 200, 40);
+    writePartIndex("part-r-00001", 50, "chr1", 300, 0, "chr2", 100, 20);
+
+    File output = new File(dir, "merged.tbi");
+    new TabixIndexMerger(new HadoopFileSystemWrapper())
+        .mergeParts(
+            new Configuration(),
+            new Merger().getPartLengths(new Configuration(), dir.toURI().toString()),
+            output.toURI().toString());
+
+    TabixIndex index = new TabixIndex(output);
+    Assert.assertEquals(Arrays.asList("chr1", "chr2"), index.getSequenceNames());
+
+    // chr1 starts at the beginning of the first part, after the header, and continues into the
+    // start of the second part
+    List<Block> chr1Blocks = index.getBlocks("chr1", 1, 1000);
+    Assert.assertEquals(1, chr1Blocks.size());
+    Assert.assertEquals(pointer(10), chr1Blocks.get(0).getStartPosition());
+    Assert.assertEquals(pointer(10 + 100 + 20), chr1Blocks.get(0).getEndPosition());
+
+    // chr2 is at the end of the second part
+    List<Block> chr2Blocks = index.getBlocks("chr2", 1, 1000);
+    Assert.assertEquals(1, chr2Blocks.size());
+    Assert.assertEquals(pointer(10 + 100 + 20), chr2Blocks.get(0).getStartPosition());
+    Assert.assertEquals(pointer(10 + 100 + 50), chr2Blocks.get(0).getEndPosition());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnsortedParts() throws IOException {
+    writePartIndex("part-r-00000", 100, "chr1", 100, 0, "chr2", 200, 40);
+    writePartIndex("part-r-00001", 50, "chr1", 300, 0, "chr1", 400, 20);
+
+    File output = new File(dir, "merged.tbi");
+    new TabixIndexMerger(new HadoopFileSystemWrapper())
+        .mergeParts(
+            new Configuration(),
+            new Merger().getPartLengths(new Configuration(), dir.toURI().toString()),
+            output.toURI().toString());
+  }
+
+  private static long pointer(long blockAddress) {
+    return BlockCompressedFilePointerUtil.makeFilePointer(blockAddress);
+  }
+
+  /**
+   * Write an index for a part with two single base variants, where the variants start at the
+   * beginning of the BGZF blocks at the given addresses in the part.
+   */
+  private void writePartIndex(
+      String part,
+      int partLength,
+      String contig1,
+      int start1,
+      long blockAddress1,
+      String contig2,
+      int start2,
+      long blockAddress2)
+      throws IOException {
+    TabixIndexCreator tabixIndexCreator = new TabixIndexCreator(TabixFormat.VCF);
+    tabixIndexCreator.addFeature(
+        new VariantContextBuilder()
+            .chr(contig1)
+            .start(start1)
+            .stop(start1)
+            .alleles("A", "C")
+            .make(),
+        pointer(blockAddress1));
+    tabixIndexCreator.addFeature(
+        new VariantContextBuilder()
+            .chr(contig2)
+            .start(start2)
+            .stop(start2)
+            .alleles("A", "C")
+            .make(),
+        pointer(blockAddress2));
+    TabixIndex tabixIndex = (TabixIndex) tabixIndexCreator.finalizeIndex(pointer(partLength));
+    File indexFile =
+        new File(TabixIndexMerger.getPartIndexFile(new Path(new File(dir, part).toURI())).toUri());
+    try (LittleEndianOutputStream out =
+        new LittleEndianOutputStream(new BlockCompressedOutputStream(indexFile))) {
+      tabixIndex.write(out);
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package org.disq_bio.disq.impl.formats.tabix;
+
+import htsjdk.samtools.Chunk;
+import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.disq_bio.disq.impl.file.PathChunk;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TabixTextSourceTest {
+
+  // pretend that each line starts 10 bytes into the block after the given offset
+  private static final TabixTextSource.LineStartFinder LINE_START_FINDER =
+      (compressedOffset, virtualEnd) -> {
+        long lineStart = pointer(compressedOffset, 10);
+        return lineStart < virtualEnd ? lineStart : -1;
+      };
+
+  @Test
+  public void testSmallChunksAreGrouped() throws IOException {
+    List<Chunk> chunks =
+        Arrays.asList(
+            chunk(0, 0, 100, 0),
+            chunk(200, 0, 300, 0),
+            chunk(400, 0, 500, 0),
+            chunk(600, 0, 700, 5));
+    List<List<PathChunk>> groups =
+        TabixTextSource.planPartitions("path", chunks, 250, LINE_START_FINDER);
+    Assert.assertEquals(
+        Arrays.asList(
+            Arrays.asList(chunk(0, 0, 100, 0), chunk(200, 0, 300, 0)),
+            Arrays.asList(chunk(400, 0, 500, 0), chunk(600, 0, 700, 5))),
+        spans(groups));
+  }
+
+  @Test
+  public void testLargeChunkIsSplitAtLineStarts() throws IOException {
+    List<Chunk> chunks = Collections.singletonList(chunk(50, 3, 300, 7));
+    List<List<PathChunk>> groups =
+        TabixTextSource.planPartitions("path", chunks, 100, LINE_START_FINDER);
+    Assert.assertEquals(
+        Arrays.asList(
+            Collections.singletonList(chunk(50, 3, 150, 10)),
+            Collections.singletonList(chunk(150, 10, 250, 10)),
+            Collections.singletonList(chunk(250, 10, 300, 7))),
+        spans(groups));
+  }
+
+  @Test
+  public void testChunkIsNotSplitIfNoLineStartIsFound() throws IOException {
+    List<Chunk> chunks = Collections.singletonList(chunk(0, 0, 300, 0));
+    List<List<PathChunk>> groups =
+        TabixTextSource.planPartitions("path", chunks, 100, (compressedOffset, virtualEnd) -> -1L);
+    Assert.assertEquals(
+        Collections.singletonList(Collections.singletonList(chunk(0, 0, 300, 0))), spans(groups));
+  }
+
+  @Test
+  public void testNoChunks() throws IOException {
+    Assert.assertTrue(
+        TabixTextSource.planPartitions("path", Collections.emptyList(), 100, LINE_START_FINDER)
+            .isEmpty());
+  }
+
+  private static List<List<Chunk>> spans(List<List<PathChunk>> groups) {
+    return groups
+        .stream()
+        .map(group -> group.stream().map(PathChunk::getSpan).collect(Collectors.toList()))
+        .collect(Collectors.toList());
+  }
+
+  private static Chunk chunk(
+      long startBlockAddress, int startOffset, long endBlockAddress, int endOffset) {
+    return new Chunk(pointer(startBlockAddress, startOffset), pointer(endBlockAddress, endOffset));
+  }
+
+  private static long pointer(long blockAddress, int blockOffset) {
+    return BlockCompressedFilePointerUtil.makeFilePointer(blockAddress, blockOffset);
+  }
+}
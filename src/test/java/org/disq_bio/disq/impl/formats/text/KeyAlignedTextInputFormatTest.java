@@ -0,0 +1,102 @@
+package org.disq_bio.disq.impl.formats.text;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.disq_bio.disq.BaseTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class KeyAlignedTextInputFormatTest extends BaseTest {
+
+  @Test
+  public void testLinesWithEqualKeysAreInTheSamePartition() throws Exception {
+    // runs of between one and five lines with the same key (the first two fields)
+    List<String> lines = new ArrayList<>();
+    for (int i = 0; i < 60; i++) {
+      for (int j = 0; j <= i % 5; j++) {
+        lines.add("chr1\t" + i + "\tline-" + lines.size());
+      }
+    }
+    String path = createTempPath(".txt");
+    Files.write(new File(URI.create(path)).toPath(), lines, StandardCharsets.UTF_8);
+
+    for (int splitSize : new int[] {7, 20, 64, 100, 1000}) {
+      Configuration conf = new Configuration(jsc.hadoopConfiguration());
+      conf.setInt(FileInputFormat.SPLIT_MAXSIZE, splitSize);
+      KeyAlignedTextInputFormat.setKeyFields(conf, 0, 1);
+      List<List<String>> partitions =
+          jsc.newAPIHadoopFile(
+                  path, KeyAlignedTextInputFormat.class, LongWritable.class, Text.class, conf)
+              .map(pair -> pair._2.toString())
+              .glom()
+              .collect();
+
+      // every line is read exactly once, in order
+      Assert.assertEquals(
+          lines, partitions.stream().flatMap(List::stream).collect(Collectors.toList()));
+
+      // no key is in more than one partition
+      Set<String> seenKeys = new HashSet<>();
+      for (List<String> partition : partitions) {
+        Set<String> keys =
+            partition
+                .stream()
+                .map(line -> line.substring(0, line.lastIndexOf('\t')))
+                .collect(Collectors.toSet());
+        for (String key : keys) {
+          Assert.assertTrue("Key in more than one partition: " + key, seenKeys.add(key));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testUnalignedLinesAreSplit() throws Exception {
+    // a few runs of lines with the same key, followed by many lines with unaligned keys
+    List<String> lines = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      for (int j = 0; j < 3; j++) {
+        lines.add("chr1\t" + i + "\tline-" + lines.size());
+      }
+    }
+    for (int i = 0; i < 200; i++) {
+      lines.add("*\t0\tline-" + lines.size());
+    }
+    String path = createTempPath(".txt");
+    Files.write(new File(URI.create(path)).toPath(), lines, StandardCharsets.UTF_8);
+
+    Configuration conf = new Configuration(jsc.hadoopConfiguration());
+    conf.setInt(FileInputFormat.SPLIT_MAXSIZE, 100);
+    KeyAlignedTextInputFormat.setKeyFields(conf, 0, 1);
+    KeyAlignedTextInputFormat.setUnalignedFirstKeyField(conf, "*");
+    List<List<String>> partitions =
+        jsc.newAPIHadoopFile(
+                path, KeyAlignedTextInputFormat.class, LongWritable.class, Text.class, conf)
+            .map(pair -> pair._2.toString())
+            .glom()
+            .collect();
+
+    // every line is read exactly once, in order
+    Assert.assertEquals(
+        lines, partitions.stream().flatMap(List::stream).collect(Collectors.toList()));
+
+    // the unaligned lines are spread over several partitions
+    long partitionsWithUnalignedLines =
+        partitions
+            .stream()
+            .filter(partition -> partition.stream().anyMatch(line -> line.startsWith("*")))
+            .count();
+    Assert.assertTrue(partitionsWithUnalignedLines > 1);
+  }
+}
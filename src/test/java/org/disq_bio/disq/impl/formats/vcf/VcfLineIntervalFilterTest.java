@@ -0,0 +1,52 @@
+package org.disq_bio.disq.impl.formats.vcf;
+
+import htsjdk.samtools.util.Interval;
+import java.util.Arrays;
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+import org.apache.hadoop.io.Text;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(JUnitParamsRunner.class)
+public class VcfLineIntervalFilterTest {
+
+  private static final VcfLineIntervalFilter FILTER =
+      new VcfLineIntervalFilter(
+          Arrays.asList(
+              new Interval("20", 2000, 3000),
+              new Interval("20", 1000, 1500),
+              new Interval("20", 1400, 1600),
+              new Interval("X", 100, 100)));
+
+  private Object[] parametersForTestMayOverlap() {
+    return new Object[][] {
+      {"20\t1000\t.\tG\tA\t29\tPASS\tDP=14", true},
+      {"20\t1600\t.\tG\tA\t29\tPASS\tDP=14", true},
+      {"20\t1601\t.\tG\tA\t29\tPASS\tDP=14", false},
+      {"20\t999\t.\tG\tA\t29\tPASS\tDP=14", false},
+      {"20\t999\t.\tGT\tA\t29\tPASS\tDP=14", true}, // deletion reaches the interval
+      {"20\t3001\t.\tG\tA\t29\tPASS\tDP=14\tGT\t0|1", false},
+      {"20\t1800\t.\tG\t<DEL>\t29\tPASS\tEND=2100", true}, // END is not checked
+      {"20\t1800\t.\tG\tA\t29\tPASS\tDP=14;SVEND=2100", false},
+      {"X\t100\t.\tG\tA\t29\tPASS\t.", true},
+      {"X\t101\t.\tG\tA\t29\tPASS\t.", false},
+      {"21\t1000\t.\tG\tA\t29\tPASS\t.", false},
+      {"20\t1800\t.\tG\tA", true}, // too few columns
+      {"20\tabc\t.\tG\tA\t29\tPASS\t.", true}, // malformed POS
+    };
+  }
+
+  @Test
+  @Parameters
+  public void testMayOverlap(String line, boolean expected) {
+    Assert.assertEquals(expected, FILTER.mayOverlap(new Text(line)));
+  }
+
+  @Test
+  public void testNoIntervals() {
+    Assert.assertFalse(
+        new VcfLineIntervalFilter(null).mayOverlap(new Text("20\t1000\t.\tG\tA\t29\tPASS\t.")));
+  }
+}
@@ -0,0 +1,65 @@
+package org.disq_bio.disq.impl.formats.vcf;
+
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFHeaderLine;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+import org.apache.hadoop.io.Text;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(JUnitParamsRunner.class)
+public class VcfLineSubsetterTest {
+
+  private static final String FIXED = "20\t14370\trs6054257\tG\tA\t29\tPASS\tNS=3;DP=14";
+  private static final String LINE = FIXED + "\tGT:GQ\t0|0:48\t1|0:48\t1/1:43";
+
+  private static final VCFHeader HEADER =
+      new VCFHeader(
+          Collections.singleton(new VCFHeaderLine("fileformat", "VCFv4.2")),
+          Arrays.asList("s1", "s2", "s3"));
+
+  private Object[] parametersForTestSubset() {
+    return new Object[][] {
+      {Collections.emptyList(), FIXED},
+      {Collections.singletonList("s1"), FIXED + "\tGT:GQ\t0|0:48"},
+      {Collections.singletonList("s2"), FIXED + "\tGT:GQ\t1|0:48"},
+      {Collections.singletonList("s3"), FIXED + "\tGT:GQ\t1/1:43"},
+      {Arrays.asList("s3", "s1"), FIXED + "\tGT:GQ\t0|0:48\t1/1:43"},
+      {Arrays.asList("s1", "s2", "s3", "s1"), LINE},
+    };
+  }
+
+  @Test
+  @Parameters
+  public void testSubset(List<String> samples, String expected) {
+    VcfLineSubsetter subsetter = VcfLineSubsetter.forSamples(HEADER, samples);
+    Assert.assertEquals(expected, subsetter.subset(new Text(LINE)));
+    // check that the buffer is reused correctly for a shorter line
+    Assert.assertEquals(FIXED, subsetter.subset(new Text(FIXED)));
+    Assert.assertEquals(expected, subsetter.subset(new Text(LINE)));
+  }
+
+  @Test
+  public void testSubsetHeader() {
+    VCFHeader header =
+        VcfLineSubsetter.forSamples(HEADER, Arrays.asList("s3", "s1")).subsetHeader(HEADER);
+    Assert.assertEquals(Arrays.asList("s1", "s3"), header.getGenotypeSamples());
+    Assert.assertEquals(HEADER.getMetaDataInInputOrder(), header.getMetaDataInInputOrder());
+    Assert.assertFalse(VcfLineSubsetter.sitesOnly().subsetHeader(HEADER).hasGenotypingData());
+  }
+
+  @Test
+  public void testSitesOnly() {
+    Assert.assertEquals(FIXED, VcfLineSubsetter.sitesOnly().subset(new Text(LINE)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMissingSample() {
+    VcfLineSubsetter.forSamples(HEADER, Arrays.asList("s1", "s4"));
+  }
+}
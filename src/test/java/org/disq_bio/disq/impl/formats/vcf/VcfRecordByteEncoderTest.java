@@ -0,0 +1,116 @@
+package org.disq_bio.disq.impl.formats.vcf;
+
+import htsjdk.variant.variantcontext.GenotypesContext;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import htsjdk.variant.vcf.VCFEncoder;
+import htsjdk.variant.vcf.VCFFileReader;
+import htsjdk.variant.vcf.VCFHeader;
+import java.io.File;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(JUnitParamsRunner.class)
+public class VcfRecordByteEncoderTest {
+
+  private Object[] parametersForTestEncodeFile() {
+    return new Object[][] {
+      {"test.vcf", false},
+      {"test.vcf", true},
+      {"HiSeq.10000.vcf.bgz", false},
+      {"HiSeq.10000.vcf.bgz", true},
+    };
+  }
+
+  @Test
+  @Parameters
+  public void testEncodeFile(String inputFile, boolean decodeGenotypes) throws URISyntaxException {
+    File file = new File(ClassLoader.getSystemClassLoader().getResource(inputFile).toURI());
+    try (VCFFileReader reader = new VCFFileReader(file, false)) {
+      VCFHeader header = reader.getFileHeader();
+      VCFEncoder vcfEncoder = new VCFEncoder(header, false, false);
+      VcfRecordByteEncoder byteEncoder = new VcfRecordByteEncoder(header);
+      for (VariantContext vc : reader) {
+        if (decodeGenotypes) {
+          vc =
+              new VariantContextBuilder(vc)
+                  .genotypes(GenotypesContext.copy(vc.getGenotypes()))
+                  .make();
+        }
+        assertEncodedSame(vcfEncoder, byteEncoder, vc);
+      }
+    }
+  }
+
+  @Test
+  public void testEncodeAttributes() throws URISyntaxException {
+    File file = new File(ClassLoader.getSystemClassLoader().getResource("test.vcf").toURI());
+    VCFHeader header;
+    try (VCFFileReader reader = new VCFFileReader(file, false)) {
+      header = reader.getFileHeader();
+    }
+    Map<String, Object> attributes = new HashMap<>();
+    attributes.put("NS", -3);
+    attributes.put("DP", 14L);
+    attributes.put("AF", Arrays.asList(0.5, 2.0, 0.005, 1e-30, 123.456));
+    attributes.put("AA", new int[] {1, 2});
+    attributes.put("DB", true);
+    attributes.put("H2", false);
+    VariantContext vc =
+        new VariantContextBuilder()
+            .chr("20")
+            .start(100)
+            .stop(100)
+            .alleles("A", "C")
+            .log10PError(-2.947)
+            .filters("s50", "q10")
+            .attributes(attributes)
+            .make();
+
+    assertEncodedSame(new VCFEncoder(header, false, false), new VcfRecordByteEncoder(header), vc);
+
+    VariantContext sitesOnly =
+        new VariantContextBuilder(vc)
+            .attributes(Collections.singletonMap("AF", new double[0]))
+            .log10PError(-5)
+            .unfiltered()
+            .make();
+    assertEncodedSame(
+        new VCFEncoder(header, false, false), new VcfRecordByteEncoder(header), sitesOnly);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testEncodeMissingInfoField() throws URISyntaxException {
+    File file = new File(ClassLoader.getSystemClassLoader().getResource("test.vcf").toURI());
+    VCFHeader header;
+    try (VCFFileReader reader = new VCFFileReader(file, false)) {
+      header = reader.getFileHeader();
+    }
+    new VcfRecordByteEncoder(header)
+        .encode(
+            new VariantContextBuilder()
+                .chr("20")
+                .start(100)
+                .stop(100)
+                .alleles("A", "C")
+                .attribute("XX", 1)
+                .make());
+  }
+
+  private static void assertEncodedSame(
+      VCFEncoder vcfEncoder, VcfRecordByteEncoder byteEncoder, VariantContext vc) {
+    byteEncoder.encode(vc);
+    Assert.assertEquals(
+        vcfEncoder.encode(vc) + "\n",
+        new String(byteEncoder.getBuffer(), 0, byteEncoder.getLength(), StandardCharsets.UTF_8));
+  }
+}